@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.cascade;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.gargoylesoftware.css.dom.AbstractCSSRuleImpl;
+import com.gargoylesoftware.css.dom.CSSMediaRuleImpl;
+import com.gargoylesoftware.css.dom.CSSRuleListImpl;
+import com.gargoylesoftware.css.dom.CSSStyleSheetImpl;
+import com.gargoylesoftware.css.parser.media.MediaDevice;
+import com.gargoylesoftware.css.parser.media.MediaQueryPredicate;
+
+/**
+ * Tracks which media rules of a style sheet are active for a device and
+ * re-evaluates only the rules that may flip if the viewport is resized.
+ * All width and height thresholds of the media queries are kept in sorted
+ * arrays; a resize from A to B only checks the rules with a threshold
+ * between A and B (plus the rules depending on aspect-ratio or orientation).
+ * A nested media rule is active if its own media and the media of all
+ * enclosing media rules match; it is indexed with the thresholds of the
+ * enclosing rules too.
+ * The index has to be rebuilt if the rules of the sheet change.
+ * This class is not thread safe.
+ *
+ * @author Ronald Brill
+ */
+public class BreakpointIndex {
+
+    private final List<CSSMediaRuleImpl> rules_ = new ArrayList<>();
+    private final List<MediaQueryPredicate> predicates_ = new ArrayList<>();
+    // index of the enclosing media rule or -1
+    private int[] parents_ = new int[0];
+    private final BitSet active_ = new BitSet();
+    private final BitSet shapeDependent_ = new BitSet();
+
+    private MediaDevice device_;
+    private double[] widthBreakpoints_;
+    private int[][] widthRules_;
+    private double[] heightBreakpoints_;
+    private int[][] heightRules_;
+    private long evaluations_;
+
+    /**
+     * Ctor.
+     * @param sheet the style sheet
+     * @param device the device
+     */
+    public BreakpointIndex(final CSSStyleSheetImpl sheet, final MediaDevice device) {
+        collect(sheet.getCssRules(), -1);
+        device_ = device;
+        buildBreakpoints();
+        for (int i = 0; i < rules_.size(); i++) {
+            active_.set(i, evaluate(i));
+        }
+    }
+
+    /**
+     * @return all media rules of the sheet in document order; the position
+     *         in this list is the bit in {@link #getActiveRules()}
+     */
+    public List<CSSMediaRuleImpl> getMediaRules() {
+        return Collections.unmodifiableList(rules_);
+    }
+
+    /**
+     * @return a copy of the set of the active media rules
+     */
+    public BitSet getActiveRules() {
+        return (BitSet) active_.clone();
+    }
+
+    /**
+     * @param index the position of the rule in {@link #getMediaRules()}
+     * @return true if the rule is active
+     */
+    public boolean isActive(final int index) {
+        return active_.get(index);
+    }
+
+    /**
+     * @return the device
+     */
+    public MediaDevice getDevice() {
+        return device_;
+    }
+
+    /**
+     * @return the sorted distinct width thresholds in pixels
+     */
+    public double[] getWidthBreakpoints() {
+        return widthBreakpoints_.clone();
+    }
+
+    /**
+     * @return the number of media rule evaluations done so far
+     */
+    public long getEvaluationCount() {
+        return evaluations_;
+    }
+
+    /**
+     * Changes the viewport size and updates the active rules.
+     * @param width the new width
+     * @param height the new height
+     * @return the media rules whose activation flipped, in document order
+     */
+    public List<CSSMediaRuleImpl> resize(final double width, final double height) {
+        final MediaDevice old = device_;
+        device_ = old.withSize(width, height);
+
+        final BitSet candidates = (BitSet) shapeDependent_.clone();
+        addCandidates(candidates, widthBreakpoints_, widthRules_, old.getWidth(), width);
+        addCandidates(candidates, heightBreakpoints_, heightRules_, old.getHeight(), height);
+        return update(candidates);
+    }
+
+    /**
+     * Changes the device and updates the active rules. If only the viewport size
+     * differs this is the same as {@link #resize(double, double)}, otherwise all
+     * rules are evaluated again.
+     * @param device the new device
+     * @return the media rules whose activation flipped, in document order
+     */
+    public List<CSSMediaRuleImpl> setDevice(final MediaDevice device) {
+        if (device.withSize(device_.getWidth(), device_.getHeight()).equals(device_)) {
+            return resize(device.getWidth(), device.getHeight());
+        }
+
+        final boolean fontSizeChanged = device.getFontSize() != device_.getFontSize();
+        device_ = device;
+        if (fontSizeChanged) {
+            buildBreakpoints();
+        }
+        final BitSet all = new BitSet();
+        all.set(0, rules_.size());
+        return update(all);
+    }
+
+    private List<CSSMediaRuleImpl> update(final BitSet candidates) {
+        final List<CSSMediaRuleImpl> flipped = new ArrayList<>();
+        // parents are evaluated before their children
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            final boolean active = evaluate(i);
+            if (active != active_.get(i)) {
+                active_.set(i, active);
+                flipped.add(rules_.get(i));
+            }
+        }
+        return flipped;
+    }
+
+    private boolean evaluate(final int index) {
+        final int parent = parents_[index];
+        if (parent >= 0 && !active_.get(parent)) {
+            return false;
+        }
+        evaluations_++;
+        return predicates_.get(index).matches(device_);
+    }
+
+    private static void addCandidates(final BitSet candidates, final double[] breakpoints, final int[][] rules,
+            final double from, final double to) {
+        if (from == to) {
+            return;
+        }
+        final double low = Math.min(from, to);
+        final double high = Math.max(from, to);
+        // the first breakpoint >= low
+        int pos = Arrays.binarySearch(breakpoints, low);
+        if (pos < 0) {
+            pos = -pos - 1;
+        }
+        while (pos < breakpoints.length && breakpoints[pos] <= high) {
+            for (final int rule : rules[pos]) {
+                candidates.set(rule);
+            }
+            pos++;
+        }
+    }
+
+    private void collect(final CSSRuleListImpl rules, final int parent) {
+        for (final AbstractCSSRuleImpl rule : rules.getRules()) {
+            if (rule instanceof CSSMediaRuleImpl) {
+                final CSSMediaRuleImpl mediaRule = (CSSMediaRuleImpl) rule;
+                final int index = rules_.size();
+                rules_.add(mediaRule);
+                predicates_.add(MediaQueryPredicate.compile(mediaRule.getMediaList()));
+                if (index == parents_.length) {
+                    parents_ = Arrays.copyOf(parents_, Math.max(16, index * 2));
+                }
+                parents_[index] = parent;
+                collect(mediaRule.getCssRules(), index);
+            }
+        }
+    }
+
+    private void buildBreakpoints() {
+        final Map<Double, BitSet> widths = new TreeMap<>();
+        final Map<Double, BitSet> heights = new TreeMap<>();
+        shapeDependent_.clear();
+        for (int i = 0; i < rules_.size(); i++) {
+            // a rule depends on the thresholds of all enclosing rules
+            for (int rule = i; rule >= 0; rule = parents_[rule]) {
+                final MediaQueryPredicate predicate = predicates_.get(rule);
+                for (final double breakpoint : predicate.getBreakpoints(true, device_.getFontSize())) {
+                    widths.computeIfAbsent(breakpoint, b -> new BitSet()).set(i);
+                }
+                for (final double breakpoint : predicate.getBreakpoints(false, device_.getFontSize())) {
+                    heights.computeIfAbsent(breakpoint, b -> new BitSet()).set(i);
+                }
+                if (predicate.dependsOnViewportShape()) {
+                    shapeDependent_.set(i);
+                }
+            }
+        }
+
+        widthBreakpoints_ = new double[widths.size()];
+        widthRules_ = new int[widths.size()][];
+        toArrays(widths, widthBreakpoints_, widthRules_);
+        heightBreakpoints_ = new double[heights.size()];
+        heightRules_ = new int[heights.size()][];
+        toArrays(heights, heightBreakpoints_, heightRules_);
+    }
+
+    private static void toArrays(final Map<Double, BitSet> map, final double[] breakpoints, final int[][] rules) {
+        int i = 0;
+        for (final Map.Entry<Double, BitSet> entry : map.entrySet()) {
+            breakpoints[i] = entry.getKey();
+            rules[i] = entry.getValue().stream().toArray();
+            i++;
+        }
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.cascade;
+
+import java.util.Locale;
+
+import com.gargoylesoftware.css.cascade.CalcExpression.Type;
+import com.gargoylesoftware.css.parser.LexicalUnit;
+import com.gargoylesoftware.css.parser.LexicalUnit.LexicalUnitType;
+import com.gargoylesoftware.css.util.LRUCache;
+
+/**
+ * Compiles the lexical units of a calc() function into a {@link CalcExpression}.
+ * The parameters of the function are parsed once following the calc() grammar
+ * (sums of products, parentheses and nested calc() functions); absolute units are
+ * converted to the canonical unit of their type and all constant parts are folded.
+ * ex and ch are approximated as half an em.
+ * Expressions using var(), mixing incompatible types, multiplying two dimensions or
+ * dividing by zero can not be compiled.
+ * The compiled expressions are cached by the text of the function.
+ * This class is thread safe.
+ *
+ * @author Ronald Brill
+ */
+public class CalcCompiler {
+
+    private static final double PX_PER_IN = 96;
+    private static final CalcExpression INVALID = new CalcExpression(Type.NUMBER, new double[CalcExpression.SIZE]);
+
+    private final LRUCache<String, CalcExpression> cache_;
+
+    /**
+     * Ctor.
+     * @param maxSize the maximum number of cached expressions
+     */
+    public CalcCompiler(final int maxSize) {
+        cache_ = new LRUCache<>(maxSize);
+    }
+
+    /**
+     * @param calc the calc() function
+     * @return the compiled expression or null if the function can not be compiled
+     */
+    public CalcExpression compile(final LexicalUnit calc) {
+        if (calc == null || calc.getLexicalUnitType() != LexicalUnitType.FUNCTION
+                || !"calc".equalsIgnoreCase(calc.getFunctionName())) {
+            return null;
+        }
+
+        final String key = calc.toString();
+        CalcExpression expression = cache_.get(key);
+        if (expression == null) {
+            expression = compileUncached(calc);
+            cache_.put(key, expression == null ? INVALID : expression);
+        }
+        return expression == INVALID ? null : expression;
+    }
+
+    /**
+     * Compiles the calc() function without using the cache.
+     * @param calc the calc() function
+     * @return the compiled expression or null if the function can not be compiled
+     */
+    public static CalcExpression compileUncached(final LexicalUnit calc) {
+        final Term result = new Parser(calc.getParameters()).parse();
+        if (result == null) {
+            return null;
+        }
+        return new CalcExpression(result.type_, result.coefficients_);
+    }
+
+    /**
+     * @return the number of cached expressions
+     */
+    public int size() {
+        return cache_.size();
+    }
+
+    /**
+     * Removes all cached expressions and resets the statistics.
+     */
+    public void clear() {
+        cache_.clear();
+    }
+
+    /**
+     * @return the number of compilations answered from the cache
+     */
+    public long getHitCount() {
+        return cache_.getHitCount();
+    }
+
+    /**
+     * @return the number of compilations that required parsing
+     */
+    public long getMissCount() {
+        return cache_.getMissCount();
+    }
+
+    // a linear combination of the units of one type
+    private static final class Term {
+        private final Type type_;
+        private final double[] coefficients_ = new double[CalcExpression.SIZE];
+
+        Term(final Type type, final int unit, final double value) {
+            type_ = type;
+            coefficients_[unit] = value;
+        }
+
+        boolean isNumber() {
+            return type_ == Type.NUMBER;
+        }
+
+        boolean add(final Term other, final double sign) {
+            if (type_ != other.type_) {
+                return false;
+            }
+            for (int i = 0; i < coefficients_.length; i++) {
+                coefficients_[i] += sign * other.coefficients_[i];
+            }
+            return true;
+        }
+
+        void scale(final double factor) {
+            for (int i = 0; i < coefficients_.length; i++) {
+                coefficients_[i] *= factor;
+            }
+        }
+    }
+
+    // recursive descent over the flat parameter chain; every method returns null for invalid input
+    private static final class Parser {
+        private LexicalUnit current_;
+
+        Parser(final LexicalUnit parameters) {
+            current_ = parameters;
+        }
+
+        Term parse() {
+            final Term result = sum();
+            if (current_ != null) {
+                return null;
+            }
+            return result;
+        }
+
+        private Term sum() {
+            final Term result = product();
+            while (result != null && current_ != null) {
+                final LexicalUnitType type = current_.getLexicalUnitType();
+                if (type != LexicalUnitType.OPERATOR_PLUS && type != LexicalUnitType.OPERATOR_MINUS) {
+                    break;
+                }
+                current_ = current_.getNextLexicalUnit();
+                final Term right = product();
+                if (right == null || !result.add(right, type == LexicalUnitType.OPERATOR_PLUS ? 1 : -1)) {
+                    return null;
+                }
+            }
+            return result;
+        }
+
+        private Term product() {
+            Term result = value();
+            while (result != null && current_ != null) {
+                final LexicalUnitType type = current_.getLexicalUnitType();
+                if (type != LexicalUnitType.OPERATOR_MULTIPLY && type != LexicalUnitType.OPERATOR_SLASH) {
+                    break;
+                }
+                current_ = current_.getNextLexicalUnit();
+                final Term right = value();
+                if (right == null) {
+                    return null;
+                }
+
+                if (type == LexicalUnitType.OPERATOR_SLASH) {
+                    final double divisor = right.coefficients_[CalcExpression.CONSTANT];
+                    if (!right.isNumber() || divisor == 0) {
+                        return null;
+                    }
+                    result.scale(1 / divisor);
+                }
+                else if (right.isNumber()) {
+                    result.scale(right.coefficients_[CalcExpression.CONSTANT]);
+                }
+                else if (result.isNumber()) {
+                    right.scale(result.coefficients_[CalcExpression.CONSTANT]);
+                    result = right;
+                }
+                else {
+                    return null;
+                }
+            }
+            return result;
+        }
+
+        private Term value() {
+            final LexicalUnit unit = current_;
+            if (unit == null) {
+                return null;
+            }
+            current_ = unit.getNextLexicalUnit();
+
+            final double value = unit.getDoubleValue();
+            switch (unit.getLexicalUnitType()) {
+                case INTEGER:
+                case REAL:
+                    return new Term(Type.NUMBER, CalcExpression.CONSTANT, value);
+                case PIXEL:
+                    return length(value);
+                case INCH:
+                    return length(value * PX_PER_IN);
+                case CENTIMETER:
+                    return length(value * PX_PER_IN / 2.54);
+                case MILLIMETER:
+                    return length(value * PX_PER_IN / 25.4);
+                case POINT:
+                    return length(value * PX_PER_IN / 72);
+                case PICA:
+                    return length(value * PX_PER_IN / 6);
+                case EM:
+                    return new Term(Type.LENGTH, CalcExpression.EM, value);
+                case EX:
+                case CH:
+                    return new Term(Type.LENGTH, CalcExpression.EM, value / 2);
+                case REM:
+                    return new Term(Type.LENGTH, CalcExpression.REM, value);
+                case VW:
+                    return new Term(Type.LENGTH, CalcExpression.VW, value);
+                case VH:
+                    return new Term(Type.LENGTH, CalcExpression.VH, value);
+                case VMIN:
+                    return new Term(Type.LENGTH, CalcExpression.VMIN, value);
+                case VMAX:
+                    return new Term(Type.LENGTH, CalcExpression.VMAX, value);
+                case PERCENTAGE:
+                    return new Term(Type.LENGTH, CalcExpression.PERCENT, value);
+                case DEGREE:
+                    return new Term(Type.ANGLE, CalcExpression.CONSTANT, value);
+                case RADIAN:
+                    return new Term(Type.ANGLE, CalcExpression.CONSTANT, Math.toDegrees(value));
+                case GRADIAN:
+                    return new Term(Type.ANGLE, CalcExpression.CONSTANT, value * 0.9);
+                case MILLISECOND:
+                    return new Term(Type.TIME, CalcExpression.CONSTANT, value);
+                case SECOND:
+                    return new Term(Type.TIME, CalcExpression.CONSTANT, value * 1000);
+                case HERTZ:
+                    return new Term(Type.FREQUENCY, CalcExpression.CONSTANT, value);
+                case KILOHERTZ:
+                    return new Term(Type.FREQUENCY, CalcExpression.CONSTANT, value * 1000);
+                case DIMENSION:
+                    return dimension(value, unit.getDimensionUnitText());
+                case FUNCTION:
+                    final String name = unit.getFunctionName();
+                    // parentheses are stored as function without name
+                    if (name == null || name.isEmpty() || "calc".equalsIgnoreCase(name)) {
+                        return new Parser(unit.getParameters()).parse();
+                    }
+                    return null;
+                default:
+                    return null;
+            }
+        }
+
+        private static Term length(final double px) {
+            return new Term(Type.LENGTH, CalcExpression.CONSTANT, px);
+        }
+
+        private static Term dimension(final double value, final String unit) {
+            switch (unit.toLowerCase(Locale.ROOT)) {
+                case "q":
+                    return length(value * PX_PER_IN / 101.6);
+                case "turn":
+                    return new Term(Type.ANGLE, CalcExpression.CONSTANT, value * 360);
+                case "dppx":
+                case "x":
+                    return new Term(Type.RESOLUTION, CalcExpression.CONSTANT, value);
+                case "dpi":
+                    return new Term(Type.RESOLUTION, CalcExpression.CONSTANT, value / PX_PER_IN);
+                case "dpcm":
+                    return new Term(Type.RESOLUTION, CalcExpression.CONSTANT, value * 2.54 / PX_PER_IN);
+                default:
+                    return null;
+            }
+        }
+    }
+}
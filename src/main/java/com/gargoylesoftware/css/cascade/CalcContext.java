@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.cascade;
+
+/**
+ * The values relative lengths are resolved against when a {@link CalcExpression}
+ * is evaluated. The context is mutable to allow reusing one instance for many
+ * elements without allocation.
+ * This class is not thread safe.
+ *
+ * @author Ronald Brill
+ */
+public class CalcContext {
+
+    private double fontSize_ = 16;
+    private double rootFontSize_ = 16;
+    private double viewportWidth_;
+    private double viewportHeight_;
+    private double percentageBasis_;
+
+    /**
+     * @return the font size of the element in pixels (for em, ex and ch)
+     */
+    public double getFontSize() {
+        return fontSize_;
+    }
+
+    /**
+     * @param fontSize the font size of the element in pixels
+     * @return this
+     */
+    public CalcContext setFontSize(final double fontSize) {
+        fontSize_ = fontSize;
+        return this;
+    }
+
+    /**
+     * @return the font size of the root element in pixels (for rem)
+     */
+    public double getRootFontSize() {
+        return rootFontSize_;
+    }
+
+    /**
+     * @param rootFontSize the font size of the root element in pixels
+     * @return this
+     */
+    public CalcContext setRootFontSize(final double rootFontSize) {
+        rootFontSize_ = rootFontSize;
+        return this;
+    }
+
+    /**
+     * @return the viewport width in pixels
+     */
+    public double getViewportWidth() {
+        return viewportWidth_;
+    }
+
+    /**
+     * @return the viewport height in pixels
+     */
+    public double getViewportHeight() {
+        return viewportHeight_;
+    }
+
+    /**
+     * @param width the viewport width in pixels
+     * @param height the viewport height in pixels
+     * @return this
+     */
+    public CalcContext setViewport(final double width, final double height) {
+        viewportWidth_ = width;
+        viewportHeight_ = height;
+        return this;
+    }
+
+    /**
+     * @return the value in pixels percentages refer to
+     */
+    public double getPercentageBasis() {
+        return percentageBasis_;
+    }
+
+    /**
+     * @param percentageBasis the value in pixels percentages refer to (like the width of the containing block)
+     * @return this
+     */
+    public CalcContext setPercentageBasis(final double percentageBasis) {
+        percentageBasis_ = percentageBasis;
+        return this;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.cascade;
+
+/**
+ * A compiled calc() expression. Valid calc() expressions are linear in their units
+ * (products and divisions need a number on one side), therefore every expression is
+ * folded into one coefficient per relative unit plus a constant in the canonical
+ * unit of its type (px, deg, ms, Hz or dppx). Evaluating is a few multiplications
+ * and additions without allocation.
+ * Instances are immutable and can be shared.
+ *
+ * @author Ronald Brill
+ *
+ * @see CalcCompiler
+ */
+public final class CalcExpression {
+
+    /**
+     * The type of the result.
+     */
+    public enum Type {
+        /** A plain number. */
+        NUMBER,
+        /** A length (or percentage) in px. */
+        LENGTH,
+        /** An angle in deg. */
+        ANGLE,
+        /** A time in ms. */
+        TIME,
+        /** A frequency in Hz. */
+        FREQUENCY,
+        /** A resolution in dppx. */
+        RESOLUTION
+    }
+
+    static final int CONSTANT = 0;
+    static final int EM = 1;
+    static final int REM = 2;
+    static final int VW = 3;
+    static final int VH = 4;
+    static final int VMIN = 5;
+    static final int VMAX = 6;
+    static final int PERCENT = 7;
+    static final int SIZE = 8;
+
+    private final Type type_;
+    private final double constant_;
+    private final double em_;
+    private final double rem_;
+    private final double vw_;
+    private final double vh_;
+    private final double vmin_;
+    private final double vmax_;
+    private final double percent_;
+
+    CalcExpression(final Type type, final double[] coefficients) {
+        type_ = type;
+        constant_ = coefficients[CONSTANT];
+        em_ = coefficients[EM];
+        rem_ = coefficients[REM];
+        vw_ = coefficients[VW];
+        vh_ = coefficients[VH];
+        vmin_ = coefficients[VMIN];
+        vmax_ = coefficients[VMAX];
+        percent_ = coefficients[PERCENT];
+    }
+
+    /**
+     * @return the type of the result
+     */
+    public Type getType() {
+        return type_;
+    }
+
+    /**
+     * @return true if the result does not depend on the context
+     */
+    public boolean isConstant() {
+        return em_ == 0 && rem_ == 0 && vw_ == 0 && vh_ == 0 && vmin_ == 0 && vmax_ == 0 && percent_ == 0;
+    }
+
+    /**
+     * @return true if the result depends on the percentage basis
+     */
+    public boolean hasPercentage() {
+        return percent_ != 0;
+    }
+
+    /**
+     * @param context the context to resolve the relative units; may be null for constant expressions
+     * @return the value in the canonical unit of the type (px, deg, ms, Hz or dppx)
+     */
+    public double evaluate(final CalcContext context) {
+        if (context == null) {
+            return constant_;
+        }
+
+        final double width = context.getViewportWidth();
+        final double height = context.getViewportHeight();
+        return constant_
+                + em_ * context.getFontSize()
+                + rem_ * context.getRootFontSize()
+                + (vw_ * width
+                    + vh_ * height
+                    + vmin_ * Math.min(width, height)
+                    + vmax_ * Math.max(width, height)
+                    + percent_ * context.getPercentageBasis()) / 100;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder(type_.name()).append('(').append(constant_);
+        append(sb, em_, "em");
+        append(sb, rem_, "rem");
+        append(sb, vw_, "vw");
+        append(sb, vh_, "vh");
+        append(sb, vmin_, "vmin");
+        append(sb, vmax_, "vmax");
+        append(sb, percent_, "%");
+        return sb.append(')').toString();
+    }
+
+    private static void append(final StringBuilder sb, final double coefficient, final String unit) {
+        if (coefficient != 0) {
+            sb.append(" + ").append(coefficient).append(unit);
+        }
+    }
+}
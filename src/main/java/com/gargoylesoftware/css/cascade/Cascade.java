@@ -0,0 +1,358 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.cascade;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import com.gargoylesoftware.css.dom.CSSStyleDeclarationImpl;
+import com.gargoylesoftware.css.dom.CSSStyleRuleImpl;
+import com.gargoylesoftware.css.dom.CSSStyleSheetImpl;
+import com.gargoylesoftware.css.dom.CSSStyleSheetImpl.CSSStyleSheetRuleIndex;
+import com.gargoylesoftware.css.dom.CSSStyleSheetImpl.SelectorEntry;
+import com.gargoylesoftware.css.dom.CSSStyleSheetImpl.SelectorEntryCursor;
+import com.gargoylesoftware.css.dom.MediaListImpl;
+import com.gargoylesoftware.css.dom.Property;
+import com.gargoylesoftware.css.dom.RuleIndexBuilder;
+import com.gargoylesoftware.css.matching.CompiledSelector;
+import com.gargoylesoftware.css.matching.ElementAdapter;
+import com.gargoylesoftware.css.parser.selector.Selector;
+import com.gargoylesoftware.css.parser.selector.SelectorSpecificity;
+import com.gargoylesoftware.css.util.LRUCache;
+
+/**
+ * Determines the winning declaration of every property for an element.
+ * The style sheets are processed in the order they were added; disabled sheets are
+ * skipped. Imported style sheets are not resolved, add them before the importing sheet.
+ * The candidates are taken from the rule index of the sheets (the index is built if
+ * the sheet has none). Every declaration gets a long key made of the origin/importance
+ * level, the specificity and the position in the cascade; the declaration with the
+ * highest key wins. The keys and winners are stored in arrays indexed by
+ * {@link PropertyIds property id}; the ids are assigned per cascade.
+ * This class is not thread safe.
+ *
+ * @param <E> the type of the elements
+ *
+ * @author Ronald Brill
+ */
+public class Cascade<E> {
+
+    private static final int ORDER_BITS = 29;
+    private static final int LEVEL_SHIFT = 60;
+    private static final int COMPILED_SELECTORS_CACHE_SIZE = 10_000;
+
+    private final ElementAdapter<E> adapter_;
+    private final MediaContext mediaContext_;
+    private final List<CSSStyleSheetImpl> styleSheets_ = new ArrayList<>();
+    private final List<Origin> origins_ = new ArrayList<>();
+    // selectors have no equals, the cache compares them by identity; bounded because
+    // the selectors of deleted rules and removed sheets are never removed explicitly
+    private final LRUCache<Selector, CompiledSelector> compiledSelectors_ =
+            new LRUCache<>(COMPILED_SELECTORS_CACHE_SIZE);
+    private final SelectorEntryCursor cursor_ = new SelectorEntryCursor();
+    private final PropertyIds propertyIds_ = new PropertyIds();
+
+    // reused between the calls; only the touched slots are reset
+    private Property[] winners_ = new Property[64];
+    private long[] keys_ = new long[64];
+    private int[] touched_ = new int[64];
+    private int touchedCount_;
+    private int order_;
+    private int dependencies_;
+
+    /**
+     * Ctor.
+     * @param adapter the adapter to access the element tree
+     * @param mediaContext decides which media rules apply
+     */
+    public Cascade(final ElementAdapter<E> adapter, final MediaContext mediaContext) {
+        adapter_ = adapter;
+        mediaContext_ = mediaContext;
+    }
+
+    /**
+     * Adds a style sheet; later sheets win over earlier ones of the same origin.
+     * @param styleSheet the style sheet
+     * @param origin the origin of the style sheet
+     */
+    public void addStyleSheet(final CSSStyleSheetImpl styleSheet, final Origin origin) {
+        styleSheets_.add(styleSheet);
+        origins_.add(origin);
+    }
+
+    /**
+     * @return the property ids used by the results of this cascade
+     */
+    public PropertyIds getPropertyIds() {
+        return propertyIds_;
+    }
+
+    /**
+     * @param element the element
+     * @return the winning declarations for the element itself
+     */
+    public CascadedStyle compute(final E element) {
+        return compute(element, null, null);
+    }
+
+    /**
+     * @param element the element
+     * @param pseudoElement the pseudo element (like 'before'); null for the element itself
+     * @param inlineStyle the declarations of the style attribute; may be null
+     * @return the winning declarations
+     */
+    public CascadedStyle compute(final E element, final String pseudoElement,
+            final CSSStyleDeclarationImpl inlineStyle) {
+        touchedCount_ = 0;
+        order_ = 0;
+        dependencies_ = 0;
+
+        final String elementName = elementName(element);
+        final String id = adapter_.getId(element);
+        final String[] classes = adapter_.getClassNames(element);
+        final String[] attributeNames = adapter_.getAttributeNames(element);
+
+        for (int i = 0; i < styleSheets_.size(); i++) {
+            final CSSStyleSheetRuleIndex index = ruleIndex(styleSheets_.get(i));
+            if (index == null) {
+                continue;
+            }
+
+            resetCursor(index, elementName, id, classes, attributeNames, pseudoElement);
+            final Origin origin = origins_.get(i);
+            SelectorEntry entry = cursor_.next();
+            while (entry != null) {
+                final CompiledSelector compiled = compiledSelector(entry.getSelector());
+                dependencies_ |= compiled.getSubjectDependencies();
+                if (compiled.matches(adapter_, element, pseudoElement)) {
+                    apply(entry.getRule().getStyle(), origin, entry.getSpecificity());
+                }
+                entry = cursor_.next();
+            }
+        }
+
+        if (inlineStyle != null && pseudoElement == null) {
+            apply(inlineStyle, Origin.AUTHOR, SelectorSpecificity.STYLE_ATTRIBUTE);
+        }
+
+        return result();
+    }
+
+    /**
+     * Determines the winning declaration of a single property. Only the candidate
+     * selectors of rules declaring the property (see
+     * {@link CSSStyleSheetRuleIndex#getRulesDeclaring(String)}) are matched; sheets
+     * without such a rule are skipped. Shorthands are not expanded, the property
+     * is looked up by the name used in the declarations.
+     *
+     * @param element the element
+     * @param pseudoElement the pseudo element (like 'before'); null for the element itself
+     * @param inlineStyle the declarations of the style attribute; may be null
+     * @param propertyName the name of the property
+     * @return the winning declaration or null
+     */
+    public Property computeProperty(final E element, final String pseudoElement,
+            final CSSStyleDeclarationImpl inlineStyle, final String propertyName) {
+        dependencies_ = 0;
+
+        final String elementName = elementName(element);
+        final String id = adapter_.getId(element);
+        final String[] classes = adapter_.getClassNames(element);
+        final String[] attributeNames = adapter_.getAttributeNames(element);
+
+        Property winner = null;
+        long winnerKey = 0;
+        int order = 0;
+        for (int i = 0; i < styleSheets_.size(); i++) {
+            final CSSStyleSheetRuleIndex index = ruleIndex(styleSheets_.get(i));
+            if (index == null) {
+                continue;
+            }
+            final Set<CSSStyleRuleImpl> declaring = index.getRulesDeclaring(propertyName);
+            if (declaring.isEmpty()) {
+                continue;
+            }
+
+            resetCursor(index, elementName, id, classes, attributeNames, pseudoElement);
+            final Origin origin = origins_.get(i);
+            SelectorEntry entry = cursor_.next();
+            while (entry != null) {
+                if (declaring.contains(entry.getRule())) {
+                    final CompiledSelector compiled = compiledSelector(entry.getSelector());
+                    dependencies_ |= compiled.getSubjectDependencies();
+                    if (compiled.matches(adapter_, element, pseudoElement)) {
+                        for (final Property property : entry.getRule().getStyle().getProperties()) {
+                            if (propertyName.equalsIgnoreCase(property.getName())) {
+                                final long key = key(origin, property, entry.getSpecificity(), order++);
+                                if (winner == null || key > winnerKey) {
+                                    winner = property;
+                                    winnerKey = key;
+                                }
+                            }
+                        }
+                    }
+                }
+                entry = cursor_.next();
+            }
+        }
+
+        if (inlineStyle != null && pseudoElement == null) {
+            for (final Property property : inlineStyle.getProperties()) {
+                if (propertyName.equalsIgnoreCase(property.getName())) {
+                    final long key = key(Origin.AUTHOR, property, SelectorSpecificity.STYLE_ATTRIBUTE, order++);
+                    if (winner == null || key > winnerKey) {
+                        winner = property;
+                        winnerKey = key;
+                    }
+                }
+            }
+        }
+        return winner;
+    }
+
+    /**
+     * @return the adapter
+     */
+    public ElementAdapter<E> getAdapter() {
+        return adapter_;
+    }
+
+    /**
+     * @return the combined {@link CompiledSelector#getSubjectDependencies() dependencies}
+     *         of all candidate selectors checked by the last compute call
+     */
+    int getLastDependencies() {
+        return dependencies_;
+    }
+
+    private void includeChildren(final CSSStyleSheetRuleIndex index, final String elementName, final String id,
+            final String[] classes, final String[] attributeNames, final String pseudoElement) {
+        for (final CSSStyleSheetRuleIndex child : index.getChildren()) {
+            final MediaListImpl media = child.getMediaList();
+            if (media == null || media.getLength() == 0 || mediaContext_.matches(child)) {
+                cursor_.include(child, elementName, id, classes, attributeNames, pseudoElement);
+                if (attributeNames == null) {
+                    cursor_.includeAttributeSelectors(child, pseudoElement);
+                }
+                includeChildren(child, elementName, id, classes, attributeNames, pseudoElement);
+            }
+        }
+    }
+
+    /**
+     * The element buckets of the rule index use lower case names.
+     */
+    private String elementName(final E element) {
+        final String localName = adapter_.getLocalName(element);
+        if (localName == null) {
+            return null;
+        }
+        return localName.toLowerCase(Locale.ROOT);
+    }
+
+    // null if the sheet is disabled or the media of the sheet does not match
+    private CSSStyleSheetRuleIndex ruleIndex(final CSSStyleSheetImpl styleSheet) {
+        if (styleSheet.getDisabled() || !matches(styleSheet.getMedia())) {
+            return null;
+        }
+
+        CSSStyleSheetRuleIndex index = styleSheet.getRuleIndex();
+        if (index == null) {
+            index = RuleIndexBuilder.build(styleSheet);
+            styleSheet.setRuleIndex(index);
+        }
+        return index;
+    }
+
+    private void resetCursor(final CSSStyleSheetRuleIndex index, final String elementName, final String id,
+            final String[] classes, final String[] attributeNames, final String pseudoElement) {
+        cursor_.reset(index, elementName, id, classes, attributeNames, pseudoElement);
+        if (attributeNames == null) {
+            cursor_.includeAttributeSelectors(index, pseudoElement);
+        }
+        includeChildren(index, elementName, id, classes, attributeNames, pseudoElement);
+    }
+
+    private boolean matches(final MediaListImpl media) {
+        return media == null || media.getLength() == 0 || mediaContext_.matches(media);
+    }
+
+    private CompiledSelector compiledSelector(final Selector selector) {
+        CompiledSelector compiled = compiledSelectors_.get(selector);
+        if (compiled == null) {
+            compiled = new CompiledSelector(selector);
+            compiledSelectors_.put(selector, compiled);
+        }
+        return compiled;
+    }
+
+    private void apply(final CSSStyleDeclarationImpl declaration, final Origin origin, final int specificity) {
+        if (declaration == null) {
+            return;
+        }
+
+        for (final Property property : declaration.getProperties()) {
+            final int id = propertyIds_.getId(property);
+            final long key = key(origin, property, specificity, order_++);
+
+            ensureCapacity(id);
+            if (winners_[id] == null) {
+                if (touchedCount_ == touched_.length) {
+                    touched_ = Arrays.copyOf(touched_, touchedCount_ * 2);
+                }
+                touched_[touchedCount_++] = id;
+                winners_[id] = property;
+                keys_[id] = key;
+            }
+            else if (key > keys_[id]) {
+                winners_[id] = property;
+                keys_[id] = key;
+            }
+        }
+    }
+
+    private static long key(final Origin origin, final Property property, final int specificity,
+            final int order) {
+        return (long) origin.getLevel(property.isImportant()) << LEVEL_SHIFT
+                | (long) specificity << ORDER_BITS
+                | order;
+    }
+
+    private void ensureCapacity(final int id) {
+        if (id >= winners_.length) {
+            final int length = Math.max(winners_.length * 2, id + 1);
+            winners_ = Arrays.copyOf(winners_, length);
+            keys_ = Arrays.copyOf(keys_, length);
+        }
+    }
+
+    private CascadedStyle result() {
+        final int[] ids = Arrays.copyOf(touched_, touchedCount_);
+        int maxId = -1;
+        for (final int id : ids) {
+            maxId = Math.max(maxId, id);
+        }
+
+        final Property[] byId = new Property[maxId + 1];
+        for (final int id : ids) {
+            byId[id] = winners_[id];
+            winners_[id] = null;
+        }
+        return new CascadedStyle(propertyIds_, ids, byId);
+    }
+}
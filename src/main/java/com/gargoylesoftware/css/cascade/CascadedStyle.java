@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.cascade;
+
+import com.gargoylesoftware.css.dom.Property;
+
+/**
+ * The winning declarations of all properties set for an element.
+ *
+ * @author Ronald Brill
+ */
+public class CascadedStyle {
+
+    private final PropertyIds ids_;
+    private final int[] propertyIds_;
+    private final Property[] byId_;
+
+    CascadedStyle(final PropertyIds ids, final int[] propertyIds, final Property[] byId) {
+        ids_ = ids;
+        propertyIds_ = propertyIds;
+        byId_ = byId;
+    }
+
+    /**
+     * @return the number of properties
+     */
+    public int getLength() {
+        return propertyIds_.length;
+    }
+
+    /**
+     * @param index the index (0 to getLength() - 1)
+     * @return the id of the property at the given index
+     */
+    public int getPropertyId(final int index) {
+        return propertyIds_[index];
+    }
+
+    /**
+     * @param id the property id
+     * @return the winning declaration or null
+     * @see Cascade#getPropertyIds()
+     */
+    public Property getProperty(final int id) {
+        if (id < 0 || id >= byId_.length) {
+            return null;
+        }
+        return byId_[id];
+    }
+
+    /**
+     * @param name the property name
+     * @return the winning declaration or null
+     */
+    public Property getProperty(final String name) {
+        return getProperty(ids_.lookup(name));
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        for (final int id : propertyIds_) {
+            if (sb.length() > 0) {
+                sb.append("; ");
+            }
+            sb.append(byId_[id]);
+        }
+        return sb.toString();
+    }
+}
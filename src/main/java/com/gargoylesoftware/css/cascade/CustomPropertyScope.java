@@ -0,0 +1,451 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.cascade;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.gargoylesoftware.css.dom.Property;
+import com.gargoylesoftware.css.parser.LexicalUnit;
+import com.gargoylesoftware.css.parser.LexicalUnit.LexicalUnitType;
+import com.gargoylesoftware.css.parser.LexicalUnitImpl;
+
+/**
+ * The custom properties (--*) of one element and the resolution of var() references.
+ * Every scope knows the custom properties declared for the element; all other custom
+ * properties are inherited from the parent scope (with the value computed for the parent).
+ * The var() references of the declared values form a dependency graph; all custom properties
+ * being part of a cycle are invalid. A reference to a missing or invalid custom property uses
+ * the fallback of the var() function; without a fallback the whole value is invalid.
+ * The substitution works directly on the {@link LexicalUnit} chains; units and function
+ * parameters without var() are shared with the declared values, the declared chains are
+ * never modified.
+ * The resolved values are memoized; changing a declaration invalidates only the custom
+ * properties depending on it, a change of a parent scope invalidates all resolved values.
+ * This class is not thread safe.
+ *
+ * @author Ronald Brill
+ */
+public class CustomPropertyScope {
+
+    private static final LexicalUnit INVALID = LexicalUnitImpl.createIdent(null, "");
+    private static final LexicalUnit EMPTY = LexicalUnitImpl.createIdent(null, "");
+
+    private final CustomPropertyScope parent_;
+    private final Map<String, LexicalUnit> declared_ = new LinkedHashMap<>();
+    private final Map<String, Set<String>> dependencies_ = new HashMap<>();
+    private final Map<String, Set<String>> dependents_ = new HashMap<>();
+    private final Map<String, LexicalUnit> resolved_ = new HashMap<>();
+    private Set<String> cyclic_;
+
+    private long version_;
+    private long parentVersion_;
+
+    /**
+     * Ctor.
+     * @param parent the scope of the parent element or null for the root element
+     */
+    public CustomPropertyScope(final CustomPropertyScope parent) {
+        parent_ = parent;
+        if (parent_ != null) {
+            parentVersion_ = parent_.getVersion();
+        }
+    }
+
+    /**
+     * @return the scope of the parent element or null
+     */
+    public CustomPropertyScope getParent() {
+        return parent_;
+    }
+
+    /**
+     * Declares a custom property for this element, replaces a former declaration.
+     * @param name the name of the custom property including the leading dashes
+     * @param value the declared value, null removes the declaration
+     */
+    public void setProperty(final String name, final LexicalUnit value) {
+        final LexicalUnit old = value == null ? declared_.remove(name) : declared_.put(name, value);
+        if (old == value) {
+            return;
+        }
+
+        final Set<String> oldDependencies = dependencies_.remove(name);
+        if (oldDependencies != null) {
+            for (final String dependency : oldDependencies) {
+                final Set<String> dependents = dependents_.get(dependency);
+                dependents.remove(name);
+                if (dependents.isEmpty()) {
+                    dependents_.remove(dependency);
+                }
+            }
+        }
+        if (value != null) {
+            final Set<String> dependencies = new HashSet<>();
+            collectReferences(value, dependencies);
+            if (!dependencies.isEmpty()) {
+                dependencies_.put(name, dependencies);
+                for (final String dependency : dependencies) {
+                    dependents_.computeIfAbsent(dependency, k -> new HashSet<>()).add(name);
+                }
+            }
+        }
+
+        invalidate(name);
+        cyclic_ = null;
+        version_++;
+    }
+
+    /**
+     * Removes the declaration of a custom property.
+     * @param name the name of the custom property
+     */
+    public void removeProperty(final String name) {
+        setProperty(name, null);
+    }
+
+    /**
+     * Replaces the declared custom properties with the custom properties of the given style.
+     * Declarations with the same lexical units as before are not touched, therefore
+     * memoized values depending only on them are kept.
+     * @param style the cascaded style of the element
+     */
+    public void setProperties(final CascadedStyle style) {
+        final Map<String, LexicalUnit> values = new HashMap<>();
+        for (int i = 0; i < style.getLength(); i++) {
+            final Property property = style.getProperty(style.getPropertyId(i));
+            if (isCustomProperty(property.getName()) && property.getValue() != null) {
+                values.put(property.getName(), property.getValue().getLexicalUnit());
+            }
+        }
+
+        for (final String name : new ArrayList<>(declared_.keySet())) {
+            if (!values.containsKey(name)) {
+                setProperty(name, null);
+            }
+        }
+        for (final Map.Entry<String, LexicalUnit> entry : values.entrySet()) {
+            setProperty(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * @return the names of the custom properties declared for this element
+     */
+    public Set<String> getDeclaredNames() {
+        return declared_.keySet();
+    }
+
+    /**
+     * @param name the name of the custom property
+     * @return the declared value or null
+     */
+    public LexicalUnit getDeclaredValue(final String name) {
+        return declared_.get(name);
+    }
+
+    /**
+     * @param name the name of the custom property
+     * @return true if the custom property is declared for this element and part of a dependency cycle
+     */
+    public boolean isCyclic(final String name) {
+        return getCyclic().contains(name);
+    }
+
+    /**
+     * Returns the computed value of a custom property; the var() references are substituted.
+     * @param name the name of the custom property
+     * @return the computed value or null if the custom property is not defined or invalid
+     */
+    public LexicalUnit getValue(final String name) {
+        validate();
+        final LexicalUnit value = lookup(name);
+        if (value == INVALID || value == EMPTY) {
+            return null;
+        }
+        return value;
+    }
+
+    /**
+     * Substitutes all var() references of the given value (usually the value of a
+     * standard property of this element).
+     * @param value the value
+     * @return the value with all references substituted (the value itself if there is
+     *         no reference) or null if the value is invalid at computed-value time
+     */
+    public LexicalUnit resolve(final LexicalUnit value) {
+        if (value == null || !containsReference(value)) {
+            return value;
+        }
+        validate();
+        final LexicalUnit result = substitute(value);
+        if (result == INVALID || result == EMPTY) {
+            return null;
+        }
+        return result;
+    }
+
+    /**
+     * @param name the property name
+     * @return true if the name is the name of a custom property
+     */
+    public static boolean isCustomProperty(final String name) {
+        return name != null && name.length() > 2 && name.startsWith("--");
+    }
+
+    /**
+     * @param value the value
+     * @return true if the value contains a var() function (maybe as parameter of another function)
+     */
+    public static boolean containsReference(final LexicalUnit value) {
+        LexicalUnit unit = value;
+        while (unit != null) {
+            if (isVar(unit)) {
+                return true;
+            }
+            if (unit.getParameters() != null && containsReference(unit.getParameters())) {
+                return true;
+            }
+            unit = unit.getNextLexicalUnit();
+        }
+        return false;
+    }
+
+    private long getVersion() {
+        validate();
+        return version_;
+    }
+
+    /**
+     * Drops all resolved values if the parent scope (or one of its parents) was changed.
+     */
+    private void validate() {
+        if (parent_ != null) {
+            final long parentVersion = parent_.getVersion();
+            if (parentVersion != parentVersion_) {
+                parentVersion_ = parentVersion;
+                resolved_.clear();
+                version_++;
+            }
+        }
+    }
+
+    private void invalidate(final String name) {
+        final Deque<String> todo = new ArrayDeque<>();
+        final Set<String> seen = new HashSet<>();
+        todo.add(name);
+        seen.add(name);
+        while (!todo.isEmpty()) {
+            final String current = todo.poll();
+            resolved_.remove(current);
+            final Set<String> dependents = dependents_.get(current);
+            if (dependents != null) {
+                for (final String dependent : dependents) {
+                    if (seen.add(dependent)) {
+                        todo.add(dependent);
+                    }
+                }
+            }
+        }
+    }
+
+    private LexicalUnit lookup(final String name) {
+        if (!declared_.containsKey(name)) {
+            if (parent_ == null) {
+                return INVALID;
+            }
+            return parent_.lookup(name);
+        }
+
+        LexicalUnit value = resolved_.get(name);
+        if (value == null) {
+            if (getCyclic().contains(name)) {
+                value = INVALID;
+            }
+            else {
+                value = substitute(declared_.get(name));
+            }
+            resolved_.put(name, value);
+        }
+        return value;
+    }
+
+    /**
+     * Builds a new chain with all var() functions replaced by the referenced values.
+     * @return the new chain, EMPTY or INVALID
+     */
+    private LexicalUnit substitute(final LexicalUnit value) {
+        if (!containsReference(value)) {
+            return value;
+        }
+
+        LexicalUnit first = null;
+        LexicalUnit last = null;
+        LexicalUnit unit = value;
+        while (unit != null) {
+            if (isVar(unit)) {
+                final LexicalUnit replacement = resolveVar(unit);
+                if (replacement == INVALID) {
+                    return INVALID;
+                }
+                if (replacement != EMPTY) {
+                    for (LexicalUnit u = replacement; u != null; u = u.getNextLexicalUnit()) {
+                        last = LexicalUnitImpl.copyOf(last, u);
+                        if (first == null) {
+                            first = last;
+                        }
+                    }
+                }
+            }
+            else {
+                last = LexicalUnitImpl.copyOf(last, unit);
+                if (first == null) {
+                    first = last;
+                }
+                final LexicalUnit params = unit.getParameters();
+                if (params != null && containsReference(params)) {
+                    final LexicalUnit newParams = substitute(params);
+                    if (newParams == INVALID) {
+                        return INVALID;
+                    }
+                    ((LexicalUnitImpl) last).setParameters(newParams == EMPTY ? null : newParams);
+                }
+            }
+            unit = unit.getNextLexicalUnit();
+        }
+
+        if (first == null) {
+            return EMPTY;
+        }
+        return first;
+    }
+
+    private LexicalUnit resolveVar(final LexicalUnit var) {
+        final LexicalUnit params = var.getParameters();
+        if (params == null || params.getLexicalUnitType() != LexicalUnitType.IDENT) {
+            return INVALID;
+        }
+
+        final LexicalUnit value = lookup(params.getStringValue());
+        if (value != INVALID) {
+            return value;
+        }
+
+        final LexicalUnit comma = params.getNextLexicalUnit();
+        if (comma == null || comma.getLexicalUnitType() != LexicalUnitType.OPERATOR_COMMA) {
+            return INVALID;
+        }
+        final LexicalUnit fallback = comma.getNextLexicalUnit();
+        if (fallback == null) {
+            return EMPTY;
+        }
+        // the fallback is the rest of the parameters; the caller copies the units
+        return substitute(fallback);
+    }
+
+    /**
+     * Determines all declared custom properties being part of a dependency cycle
+     * (Tarjan's strongly connected components algorithm).
+     */
+    private Set<String> getCyclic() {
+        if (cyclic_ == null) {
+            cyclic_ = new Tarjan().run();
+        }
+        return cyclic_;
+    }
+
+    private static boolean isVar(final LexicalUnit unit) {
+        return unit.getLexicalUnitType() == LexicalUnitType.FUNCTION
+                && "var".equalsIgnoreCase(unit.getFunctionName());
+    }
+
+    private static void collectReferences(final LexicalUnit value, final Set<String> references) {
+        LexicalUnit unit = value;
+        while (unit != null) {
+            final LexicalUnit params = unit.getParameters();
+            if (isVar(unit) && params != null && params.getLexicalUnitType() == LexicalUnitType.IDENT) {
+                references.add(params.getStringValue());
+            }
+            if (params != null) {
+                collectReferences(params, references);
+            }
+            unit = unit.getNextLexicalUnit();
+        }
+    }
+
+    private final class Tarjan {
+        private final Map<String, Integer> index_ = new HashMap<>();
+        private final Map<String, Integer> lowLink_ = new HashMap<>();
+        private final Deque<String> stack_ = new ArrayDeque<>();
+        private final Set<String> onStack_ = new HashSet<>();
+        private final Set<String> result_ = new HashSet<>();
+
+        Set<String> run() {
+            for (final String name : dependencies_.keySet()) {
+                if (!index_.containsKey(name)) {
+                    connect(name);
+                }
+            }
+            return result_;
+        }
+
+        private void connect(final String name) {
+            final int index = index_.size();
+            index_.put(name, index);
+            lowLink_.put(name, index);
+            stack_.push(name);
+            onStack_.add(name);
+
+            final Set<String> dependencies = dependencies_.get(name);
+            if (dependencies != null) {
+                for (final String dependency : dependencies) {
+                    // only declared properties are part of this graph, all others are inherited
+                    if (!declared_.containsKey(dependency)) {
+                        continue;
+                    }
+                    if (!index_.containsKey(dependency)) {
+                        connect(dependency);
+                        lowLink_.put(name, Math.min(lowLink_.get(name), lowLink_.get(dependency)));
+                    }
+                    else if (onStack_.contains(dependency)) {
+                        lowLink_.put(name, Math.min(lowLink_.get(name), index_.get(dependency)));
+                    }
+                }
+            }
+
+            if (lowLink_.get(name) == index) {
+                final List<String> component = new ArrayList<>();
+                String member;
+                do {
+                    member = stack_.pop();
+                    onStack_.remove(member);
+                    component.add(member);
+                }
+                while (!member.equals(name));
+
+                if (component.size() > 1 || dependencies != null && dependencies.contains(name)) {
+                    result_.addAll(component);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.cascade;
+
+import com.gargoylesoftware.css.dom.CSSStyleSheetImpl.CSSStyleSheetRuleIndex;
+import com.gargoylesoftware.css.dom.MediaListImpl;
+import com.gargoylesoftware.css.parser.media.MediaDevice;
+import com.gargoylesoftware.css.parser.media.MediaQueryEvaluator;
+
+/**
+ * Evaluates the media queries against a {@link MediaDevice}.
+ *
+ * @author Ronald Brill
+ */
+public class DeviceMediaContext implements MediaContext {
+
+    private final MediaDevice device_;
+    private final MediaQueryEvaluator evaluator_;
+
+    /**
+     * Ctor.
+     * @param device the device
+     * @param evaluator the evaluator caching the results; can be shared between contexts
+     */
+    public DeviceMediaContext(final MediaDevice device, final MediaQueryEvaluator evaluator) {
+        device_ = device;
+        evaluator_ = evaluator;
+    }
+
+    /**
+     * @return the device
+     */
+    public MediaDevice getDevice() {
+        return device_;
+    }
+
+    @Override
+    public boolean matches(final MediaListImpl media) {
+        return evaluator_.matches(media, device_);
+    }
+
+    @Override
+    public boolean matches(final CSSStyleSheetRuleIndex index) {
+        return evaluator_.matches(index.getMediaPredicate(), device_);
+    }
+}
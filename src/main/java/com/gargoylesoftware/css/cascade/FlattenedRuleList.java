@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.cascade;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.gargoylesoftware.css.dom.AbstractCSSRuleImpl;
+import com.gargoylesoftware.css.dom.CSSMediaRuleImpl;
+import com.gargoylesoftware.css.dom.CSSRuleListImpl;
+import com.gargoylesoftware.css.dom.CSSStyleRuleImpl;
+import com.gargoylesoftware.css.dom.CSSStyleSheetImpl;
+import com.gargoylesoftware.css.dom.CSSStyleSheetListImpl;
+import com.gargoylesoftware.css.dom.MediaListImpl;
+import com.gargoylesoftware.css.parser.media.MediaDevice;
+import com.gargoylesoftware.css.parser.media.MediaQueryPredicate;
+import com.gargoylesoftware.css.util.LRUCache;
+
+/**
+ * Read-only flattened view of the style rules of one or many style sheets.
+ * All style rules are stored in a single array in cascade order; every rule is
+ * tagged with the id of its media condition. A condition is the combination of the
+ * media of the style sheet and of all enclosing media rules; rules with the same
+ * combination share the id. Condition 0 is used for rules without media restriction.
+ * The conditions active for a device are available as a bitmask, so iterating the
+ * rules for a device is a linear loop with one bit test per rule:
+ * <pre>
+ * final Activation activation = rules.getActivation(device);
+ * for (int i = 0; i &lt; rules.size(); i++) {
+ *     if (activation.isActive(i)) {
+ *         ... rules.getRule(i) ...
+ *     }
+ * }
+ * </pre>
+ * Disabled style sheets are skipped, imported style sheets are not resolved and
+ * deferred media rules are parsed. The view has to be rebuilt if the rules change.
+ * This class is thread safe.
+ *
+ * @author Ronald Brill
+ */
+public class FlattenedRuleList {
+
+    private static final int ACTIVATION_CACHE_SIZE = 16;
+
+    private CSSStyleRuleImpl[] rules_ = new CSSStyleRuleImpl[16];
+    private int[] conditions_ = new int[16];
+    private int size_;
+
+    private final List<MediaQueryPredicate[]> predicates_ = new ArrayList<>();
+    private final Map<String, Integer> conditionIds_ = new HashMap<>();
+    private final LRUCache<MediaDevice, Activation> activations_ = new LRUCache<>(ACTIVATION_CACHE_SIZE);
+
+    /**
+     * Ctor.
+     * @param styleSheet the style sheet
+     */
+    public FlattenedRuleList(final CSSStyleSheetImpl styleSheet) {
+        this(Arrays.asList(styleSheet));
+    }
+
+    /**
+     * Ctor.
+     * @param styleSheets the style sheets in cascade order
+     */
+    public FlattenedRuleList(final CSSStyleSheetListImpl styleSheets) {
+        this(styleSheets.getCSSStyleSheets());
+    }
+
+    /**
+     * Ctor.
+     * @param styleSheets the style sheets in cascade order
+     */
+    public FlattenedRuleList(final List<CSSStyleSheetImpl> styleSheets) {
+        predicates_.add(new MediaQueryPredicate[0]);
+        conditionIds_.put("", 0);
+
+        for (final CSSStyleSheetImpl styleSheet : styleSheets) {
+            if (!styleSheet.getDisabled()) {
+                final int condition = condition(0, styleSheet.getMedia());
+                collect(styleSheet.getCssRules(), condition);
+            }
+        }
+
+        rules_ = Arrays.copyOf(rules_, size_);
+        conditions_ = Arrays.copyOf(conditions_, size_);
+    }
+
+    private void collect(final CSSRuleListImpl ruleList, final int condition) {
+        for (final AbstractCSSRuleImpl rule : ruleList.getRules()) {
+            if (rule instanceof CSSStyleRuleImpl) {
+                if (size_ == rules_.length) {
+                    rules_ = Arrays.copyOf(rules_, size_ * 2);
+                    conditions_ = Arrays.copyOf(conditions_, size_ * 2);
+                }
+                rules_[size_] = (CSSStyleRuleImpl) rule;
+                conditions_[size_] = condition;
+                size_++;
+            }
+            else if (rule instanceof CSSMediaRuleImpl) {
+                final CSSMediaRuleImpl mediaRule = (CSSMediaRuleImpl) rule;
+                collect(mediaRule.getCssRules(), condition(condition, mediaRule.getMediaList()));
+            }
+        }
+    }
+
+    private int condition(final int parent, final MediaListImpl media) {
+        if (media == null || media.getLength() == 0) {
+            return parent;
+        }
+
+        final MediaQueryPredicate predicate = MediaQueryPredicate.compile(media);
+        if (predicate.isAll()) {
+            return parent;
+        }
+
+        final MediaQueryPredicate[] parentPredicates = predicates_.get(parent);
+        final StringBuilder key = new StringBuilder();
+        for (final MediaQueryPredicate p : parentPredicates) {
+            key.append(p.getMediaText()).append('\n');
+        }
+        key.append(predicate.getMediaText());
+
+        final Integer existing = conditionIds_.get(key.toString());
+        if (existing != null) {
+            return existing;
+        }
+
+        final MediaQueryPredicate[] predicates = Arrays.copyOf(parentPredicates, parentPredicates.length + 1);
+        predicates[parentPredicates.length] = predicate;
+        final int id = predicates_.size();
+        predicates_.add(predicates);
+        conditionIds_.put(key.toString(), id);
+        return id;
+    }
+
+    /**
+     * @return the number of style rules
+     */
+    public int size() {
+        return size_;
+    }
+
+    /**
+     * @param index the position in cascade order
+     * @return the style rule
+     */
+    public CSSStyleRuleImpl getRule(final int index) {
+        return rules_[index];
+    }
+
+    /**
+     * @param index the position in cascade order
+     * @return the id of the media condition of the rule; 0 if the rule is not media dependent
+     */
+    public int getCondition(final int index) {
+        return conditions_[index];
+    }
+
+    /**
+     * @return the number of distinct media conditions including the unconditional one
+     */
+    public int getConditionCount() {
+        return predicates_.size();
+    }
+
+    /**
+     * @param condition the id of the condition
+     * @return the media text of the style sheet and the media rules forming the condition,
+     *         outermost first
+     */
+    public String[] getConditionMediaTexts(final int condition) {
+        final MediaQueryPredicate[] predicates = predicates_.get(condition);
+        final String[] texts = new String[predicates.length];
+        for (int i = 0; i < predicates.length; i++) {
+            texts[i] = predicates[i].getMediaText();
+        }
+        return texts;
+    }
+
+    /**
+     * Evaluates all conditions for the device; the result is cached for
+     * the most recently used devices.
+     * @param device the device
+     * @return the activation of the conditions
+     */
+    public Activation getActivation(final MediaDevice device) {
+        Activation activation = activations_.get(device);
+        if (activation == null) {
+            final long[] words = new long[(predicates_.size() + 63) >>> 6];
+            for (int c = 0; c < predicates_.size(); c++) {
+                if (matches(predicates_.get(c), device)) {
+                    words[c >>> 6] |= 1L << c;
+                }
+            }
+            activation = new Activation(conditions_, words);
+            activations_.put(device, activation);
+        }
+        return activation;
+    }
+
+    private static boolean matches(final MediaQueryPredicate[] predicates, final MediaDevice device) {
+        for (final MediaQueryPredicate predicate : predicates) {
+            if (!predicate.matches(device)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param device the device
+     * @return the style rules active for the device in cascade order
+     */
+    public List<CSSStyleRuleImpl> getActiveRules(final MediaDevice device) {
+        final Activation activation = getActivation(device);
+        final List<CSSStyleRuleImpl> result = new ArrayList<>(size_);
+        for (int i = 0; i < size_; i++) {
+            if (activation.isActive(i)) {
+                result.add(rules_[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The bitmask of the media conditions active for one device.
+     */
+    public static final class Activation {
+        private final int[] conditions_;
+        private final long[] words_;
+
+        Activation(final int[] conditions, final long[] words) {
+            conditions_ = conditions;
+            words_ = words;
+        }
+
+        /**
+         * @param index the position of the rule in cascade order
+         * @return true if the media condition of the rule is active
+         */
+        public boolean isActive(final int index) {
+            final int condition = conditions_[index];
+            return (words_[condition >>> 6] & (1L << condition)) != 0;
+        }
+
+        /**
+         * @param condition the id of the condition
+         * @return true if the condition is active
+         */
+        public boolean isConditionActive(final int condition) {
+            return (words_[condition >>> 6] & (1L << condition)) != 0;
+        }
+    }
+}
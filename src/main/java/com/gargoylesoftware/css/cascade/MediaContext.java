@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.cascade;
+
+import com.gargoylesoftware.css.dom.CSSStyleSheetImpl.CSSStyleSheetRuleIndex;
+import com.gargoylesoftware.css.dom.MediaListImpl;
+
+/**
+ * Decides which media rules and style sheets apply.
+ *
+ * @author Ronald Brill
+ */
+public interface MediaContext {
+
+    /** Accepts all media. */
+    MediaContext ALL = media -> true;
+
+    /**
+     * @param media the media list, never empty
+     * @return true if the media list applies
+     */
+    boolean matches(MediaListImpl media);
+
+    /**
+     * Decides about the media rules collected in a child of a rule index;
+     * implementations can use the {@link CSSStyleSheetRuleIndex#getMediaPredicate() compiled media}.
+     * @param index the rule index, the media list is never empty
+     * @return true if the media rules apply
+     */
+    default boolean matches(final CSSStyleSheetRuleIndex index) {
+        return matches(index.getMediaList());
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.cascade;
+
+/**
+ * The origin of a style sheet.
+ * @see <a href="https://www.w3.org/TR/css-cascade-3/#cascading-origins">Cascading Origins</a>
+ *
+ * @author Ronald Brill
+ */
+public enum Origin {
+    /** The default styles of the browser. */
+    USER_AGENT(0, 5),
+    /** Styles defined by the user. */
+    USER(1, 4),
+    /** Styles of the document. */
+    AUTHOR(2, 3);
+
+    private final int normalLevel_;
+    private final int importantLevel_;
+
+    Origin(final int normalLevel, final int importantLevel) {
+        normalLevel_ = normalLevel;
+        importantLevel_ = importantLevel;
+    }
+
+    /**
+     * Important declarations reverse the order of the origins.
+     * @param important if the declaration is important
+     * @return the precedence of declarations from this origin; higher levels win
+     */
+    public int getLevel(final boolean important) {
+        if (important) {
+            return importantLevel_;
+        }
+        return normalLevel_;
+    }
+}
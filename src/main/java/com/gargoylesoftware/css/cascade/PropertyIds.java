@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.cascade;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import com.gargoylesoftware.css.dom.Property;
+
+/**
+ * Maps property names to small consecutive ints. The ids are assigned when a name is
+ * seen for the first time and are stable for the lifetime of this object;
+ * this allows to use arrays indexed by id instead of maps keyed by name.
+ * Every {@link Cascade} has its own ids, therefore the names are released together
+ * with the cascade.
+ * Property names are case insensitive.
+ * This class is not thread safe.
+ *
+ * @author Ronald Brill
+ */
+public final class PropertyIds {
+
+    private final Map<String, Integer> ids_ = new HashMap<>();
+    private String[] names_ = new String[64];
+    private int size_;
+
+    /**
+     * @param name the property name
+     * @return the id of the property; a new id is assigned for unknown names
+     */
+    public int getId(final String name) {
+        final String lowerCaseName = name.toLowerCase(Locale.ROOT);
+        final Integer id = ids_.get(lowerCaseName);
+        if (id != null) {
+            return id;
+        }
+
+        if (size_ == names_.length) {
+            names_ = Arrays.copyOf(names_, size_ * 2);
+        }
+        names_[size_] = lowerCaseName;
+        ids_.put(lowerCaseName, size_);
+        return size_++;
+    }
+
+    /**
+     * Returns the id of the name of the property; the id is cached by the property,
+     * therefore the name is looked up only once per property.
+     * @param property the property
+     * @return the id of the property; a new id is assigned for unknown names
+     */
+    public int getId(final Property property) {
+        int id = property.getCachedId(this);
+        if (id < 0) {
+            id = getId(property.getName());
+            property.setCachedId(this, id);
+        }
+        return id;
+    }
+
+    /**
+     * @param name the property name
+     * @return the id of the property or -1 if the name was never seen
+     */
+    public int lookup(final String name) {
+        final Integer id = ids_.get(name.toLowerCase(Locale.ROOT));
+        if (id == null) {
+            return -1;
+        }
+        return id;
+    }
+
+    /**
+     * @param id the id
+     * @return the lower case property name
+     */
+    public String getName(final int id) {
+        if (id < 0 || id >= size_) {
+            throw new IndexOutOfBoundsException("Unknown property id " + id + ".");
+        }
+        return names_[id];
+    }
+
+    /**
+     * @return the number of assigned ids
+     */
+    public int size() {
+        return size_;
+    }
+}
@@ -0,0 +1,766 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.cascade;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import com.gargoylesoftware.css.dom.CSSValueImpl;
+import com.gargoylesoftware.css.dom.Property;
+import com.gargoylesoftware.css.parser.LexicalUnit;
+import com.gargoylesoftware.css.parser.LexicalUnit.LexicalUnitType;
+import com.gargoylesoftware.css.parser.LexicalUnitImpl;
+import com.gargoylesoftware.css.util.LRUCache;
+
+/**
+ * Expands shorthand properties (like margin, border, font or flex) into their longhand properties.
+ * The expansion works on the {@link LexicalUnit} chain of the value; the units are distributed
+ * to slots (like width, style and color for border) and the longhands are created from a table
+ * mapping every longhand to a slot. Longhands without a value get their initial value, CSS-wide
+ * keywords are copied to all longhands.
+ * Values using var() and values that are not valid for the shorthand are not expanded.
+ * The background shorthand is only expanded for a single layer.
+ * The results are cached per shorthand name and lexical unit chain (the chains created by the
+ * parser are never modified); every call creates new {@link Property}, {@link CSSValueImpl}
+ * and {@link LexicalUnit} objects, modifications are not visible to other callers.
+ * This class is thread safe.
+ *
+ * @author Ronald Brill
+ */
+public class ShorthandExpander {
+
+    private static final String[] SIDES = {"top", "right", "bottom", "left"};
+
+    private static final Set<String> BORDER_STYLES = set("none", "hidden", "dotted", "dashed", "solid",
+            "double", "groove", "ridge", "inset", "outset");
+    private static final Set<String> BORDER_WIDTHS = set("thin", "medium", "thick");
+    private static final Set<String> CSS_WIDE_KEYWORDS = set("initial", "inherit", "unset", "revert");
+    private static final Set<String> LIST_STYLE_POSITIONS = set("inside", "outside");
+    private static final Set<String> FLEX_DIRECTIONS = set("row", "row-reverse", "column", "column-reverse");
+    private static final Set<String> FLEX_WRAPS = set("nowrap", "wrap", "wrap-reverse");
+    private static final Set<String> FONT_STYLES = set("italic", "oblique");
+    private static final Set<String> FONT_VARIANTS = set("small-caps");
+    private static final Set<String> FONT_WEIGHTS = set("bold", "bolder", "lighter");
+    private static final Set<String> FONT_STRETCHES = set("ultra-condensed", "extra-condensed", "condensed",
+            "semi-condensed", "semi-expanded", "expanded", "extra-expanded", "ultra-expanded");
+    private static final Set<String> FONT_SIZES = set("xx-small", "x-small", "small", "medium", "large",
+            "x-large", "xx-large", "xxx-large", "larger", "smaller");
+    private static final Set<String> BACKGROUND_REPEATS = set("repeat", "repeat-x", "repeat-y", "no-repeat",
+            "space", "round");
+    private static final Set<String> BACKGROUND_ATTACHMENTS = set("scroll", "fixed", "local");
+    private static final Set<String> BACKGROUND_BOXES = set("border-box", "padding-box", "content-box");
+    private static final Set<String> BACKGROUND_POSITIONS = set("left", "right", "top", "bottom", "center");
+    private static final Set<String> BACKGROUND_SIZES = set("auto", "cover", "contain");
+
+    private static final Map<String, Shorthand> SHORTHANDS = new HashMap<>();
+
+    static {
+        box("margin", "margin-%s");
+        box("padding", "padding-%s");
+        box("inset", "%s");
+        box("border-width", "border-%s-width");
+        box("border-style", "border-%s-style");
+        box("border-color", "border-%s-color");
+        add(new Shorthand("border-radius", ShorthandExpander::parseRadius,
+                new String[] {"border-top-left-radius", "border-top-right-radius",
+                    "border-bottom-right-radius", "border-bottom-left-radius"}, null, null));
+
+        final LexicalUnit[] borderInitials = {ident("medium"), ident("none"), ident("currentcolor")};
+        final String[] border = new String[12];
+        final int[] borderSlots = new int[12];
+        for (int i = 0; i < 12; i++) {
+            border[i] = "border-" + SIDES[i % 4] + "-" + new String[] {"width", "style", "color"}[i / 4];
+            borderSlots[i] = i / 4;
+        }
+        add(new Shorthand("border", ShorthandExpander::parseBorderSide, border, borderSlots, borderInitials));
+        for (final String side : SIDES) {
+            final String prefix = "border-" + side;
+            add(new Shorthand(prefix, ShorthandExpander::parseBorderSide,
+                    new String[] {prefix + "-width", prefix + "-style", prefix + "-color"}, null, borderInitials));
+        }
+        add(new Shorthand("outline", ShorthandExpander::parseBorderSide,
+                new String[] {"outline-width", "outline-style", "outline-color"}, null, borderInitials));
+        add(new Shorthand("column-rule", ShorthandExpander::parseBorderSide,
+                new String[] {"column-rule-width", "column-rule-style", "column-rule-color"}, null, borderInitials));
+
+        add(new Shorthand("overflow", ShorthandExpander::parsePair,
+                new String[] {"overflow-x", "overflow-y"}, null, null));
+        add(new Shorthand("gap", ShorthandExpander::parsePair,
+                new String[] {"row-gap", "column-gap"}, null, null));
+
+        add(new Shorthand("list-style", ShorthandExpander::parseListStyle,
+                new String[] {"list-style-type", "list-style-position", "list-style-image"}, null,
+                new LexicalUnit[] {ident("disc"), ident("outside"), ident("none")}));
+
+        add(new Shorthand("flex", ShorthandExpander::parseFlex,
+                new String[] {"flex-grow", "flex-shrink", "flex-basis"}, null,
+                new LexicalUnit[] {LexicalUnitImpl.createNumber(null, 1), LexicalUnitImpl.createNumber(null, 1),
+                    LexicalUnitImpl.createPercentage(null, 0)}));
+        add(new Shorthand("flex-flow", ShorthandExpander::parseFlexFlow,
+                new String[] {"flex-direction", "flex-wrap"}, null,
+                new LexicalUnit[] {ident("row"), ident("nowrap")}));
+
+        final LexicalUnit[] autos = {ident("auto"), ident("auto"), ident("auto"), ident("auto")};
+        add(new Shorthand("grid-area", ShorthandExpander::parseGridArea,
+                new String[] {"grid-row-start", "grid-column-start", "grid-row-end", "grid-column-end"}, null,
+                autos));
+        add(new Shorthand("grid-row", ShorthandExpander::parseGridLine,
+                new String[] {"grid-row-start", "grid-row-end"}, null, autos));
+        add(new Shorthand("grid-column", ShorthandExpander::parseGridLine,
+                new String[] {"grid-column-start", "grid-column-end"}, null, autos));
+
+        add(new Shorthand("font", ShorthandExpander::parseFont,
+                new String[] {"font-style", "font-variant", "font-weight", "font-stretch", "font-size",
+                    "line-height", "font-family"}, null,
+                new LexicalUnit[] {ident("normal"), ident("normal"), ident("normal"), ident("normal"), null,
+                    ident("normal"), null}));
+
+        final LexicalUnit position = LexicalUnitImpl.createPercentage(null, 0);
+        LexicalUnitImpl.createPercentage(position, 0);
+        add(new Shorthand("background", ShorthandExpander::parseBackground,
+                new String[] {"background-color", "background-image", "background-repeat",
+                    "background-attachment", "background-position", "background-size",
+                    "background-origin", "background-clip"}, null,
+                new LexicalUnit[] {ident("transparent"), ident("none"), ident("repeat"), ident("scroll"),
+                    position, ident("auto"), ident("padding-box"),
+                    ident("border-box")}));
+    }
+
+    private final LRUCache<Key, Expansion> cache_;
+
+    /**
+     * Ctor.
+     * @param maxSize the maximum number of cached expansions
+     */
+    public ShorthandExpander(final int maxSize) {
+        cache_ = new LRUCache<>(maxSize);
+    }
+
+    /**
+     * @param propertyName the property name
+     * @return true if the property is a shorthand known to this expander
+     */
+    public static boolean isShorthand(final String propertyName) {
+        return SHORTHANDS.containsKey(propertyName.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * @param propertyName the property name
+     * @return the names of the longhands set by the shorthand; empty if the property is no shorthand
+     */
+    public static List<String> getLonghands(final String propertyName) {
+        final Shorthand shorthand = SHORTHANDS.get(propertyName.toLowerCase(Locale.ROOT));
+        if (shorthand == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(Arrays.asList(shorthand.longhands_));
+    }
+
+    /**
+     * Expands the given property. The longhands get the importance and the locator of the shorthand.
+     *
+     * @param property the property
+     * @return the longhand properties; null if the property is no shorthand or can not be expanded
+     */
+    public List<Property> expand(final Property property) {
+        final String name = property.getName().toLowerCase(Locale.ROOT);
+        final Shorthand shorthand = SHORTHANDS.get(name);
+        final CSSValueImpl value = property.getValue();
+        if (shorthand == null || value == null || value.getLexicalUnit() == null) {
+            return null;
+        }
+
+        final Key key = new Key(name, value.getLexicalUnit());
+        Expansion expansion = cache_.get(key);
+        if (expansion == null) {
+            expansion = shorthand.expand(value.getLexicalUnit());
+            cache_.put(key, expansion);
+        }
+        if (expansion.values_ == null) {
+            return null;
+        }
+
+        final List<Property> result = new ArrayList<>(expansion.values_.length);
+        for (int i = 0; i < expansion.values_.length; i++) {
+            // the cached units are never handed out, the caller may modify the copy
+            final Property longhand = new Property(shorthand.longhands_[i],
+                    new CSSValueImpl(LexicalUnitImpl.copyChain(expansion.values_[i])), property.isImportant());
+            longhand.setLocator(property.getLocator());
+            result.add(longhand);
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of cached expansions
+     */
+    public int size() {
+        return cache_.size();
+    }
+
+    /**
+     * Removes all cached expansions and resets the statistics.
+     */
+    public void clear() {
+        cache_.clear();
+    }
+
+    /**
+     * @return the number of expansions answered from the cache
+     */
+    public long getHitCount() {
+        return cache_.getHitCount();
+    }
+
+    /**
+     * @return the number of expansions that had to be computed
+     */
+    public long getMissCount() {
+        return cache_.getMissCount();
+    }
+
+    private static void box(final String name, final String pattern) {
+        final String[] longhands = new String[4];
+        for (int i = 0; i < 4; i++) {
+            longhands[i] = String.format(pattern, SIDES[i]);
+        }
+        add(new Shorthand(name, ShorthandExpander::parseBox, longhands, null, null));
+    }
+
+    private static void add(final Shorthand shorthand) {
+        SHORTHANDS.put(shorthand.name_, shorthand);
+    }
+
+    private static Set<String> set(final String... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+
+    private static LexicalUnit ident(final String value) {
+        return LexicalUnitImpl.createIdent(null, value);
+    }
+
+    // the slots of a shorthand; null if the units are not valid for the shorthand
+    private interface SlotParser {
+        LexicalUnit[][] parse(LexicalUnit[] units);
+    }
+
+    private static LexicalUnit[][] parseBox(final LexicalUnit[] units) {
+        if (units.length > 4 || hasOperator(units, 0, units.length)) {
+            return null;
+        }
+        return new LexicalUnit[][] {
+            {units[0]},
+            {units[units.length > 1 ? 1 : 0]},
+            {units[units.length > 2 ? 2 : 0]},
+            {units[units.length > 3 ? 3 : units.length > 1 ? 1 : 0]}};
+    }
+
+    private static LexicalUnit[][] parseRadius(final LexicalUnit[] units) {
+        final List<LexicalUnit[]> parts = split(units, LexicalUnitType.OPERATOR_SLASH);
+        if (parts == null || parts.size() > 2) {
+            return null;
+        }
+        final LexicalUnit[][] horizontal = parseBox(parts.get(0));
+        if (horizontal == null || parts.size() == 1) {
+            return horizontal;
+        }
+        final LexicalUnit[][] vertical = parseBox(parts.get(1));
+        if (vertical == null) {
+            return null;
+        }
+        for (int i = 0; i < 4; i++) {
+            horizontal[i] = new LexicalUnit[] {horizontal[i][0], vertical[i][0]};
+        }
+        return horizontal;
+    }
+
+    private static LexicalUnit[][] parsePair(final LexicalUnit[] units) {
+        if (units.length > 2 || hasOperator(units, 0, units.length)) {
+            return null;
+        }
+        return new LexicalUnit[][] {{units[0]}, {units[units.length - 1]}};
+    }
+
+    private static LexicalUnit[][] parseBorderSide(final LexicalUnit[] units) {
+        final LexicalUnit[][] slots = new LexicalUnit[3][];
+        for (final LexicalUnit unit : units) {
+            final int slot;
+            if (isIdent(unit, BORDER_STYLES)) {
+                slot = 1;
+            }
+            else if (isIdent(unit, BORDER_WIDTHS) || isLength(unit)) {
+                slot = 0;
+            }
+            else if (isColor(unit)) {
+                slot = 2;
+            }
+            else {
+                return null;
+            }
+            if (!set(slots, slot, unit)) {
+                return null;
+            }
+        }
+        return slots;
+    }
+
+    private static LexicalUnit[][] parseListStyle(final LexicalUnit[] units) {
+        final LexicalUnit[][] slots = new LexicalUnit[3][];
+        for (final LexicalUnit unit : units) {
+            final int slot;
+            if (isIdent(unit, LIST_STYLE_POSITIONS)) {
+                slot = 1;
+            }
+            else if (unit.getLexicalUnitType() == LexicalUnitType.URI
+                    || unit.getLexicalUnitType() == LexicalUnitType.FUNCTION) {
+                slot = 2;
+            }
+            else if (isIdent(unit, Collections.singleton("none"))) {
+                // none sets the type first (the initial image is none anyway)
+                slot = slots[0] == null ? 0 : 2;
+            }
+            else if (unit.getLexicalUnitType() == LexicalUnitType.IDENT
+                    || unit.getLexicalUnitType() == LexicalUnitType.STRING_VALUE) {
+                slot = 0;
+            }
+            else {
+                return null;
+            }
+            if (!set(slots, slot, unit)) {
+                return null;
+            }
+        }
+        return slots;
+    }
+
+    private static LexicalUnit[][] parseFlex(final LexicalUnit[] units) {
+        final LexicalUnit[][] slots = new LexicalUnit[3][];
+        if (units.length == 1 && units[0].getLexicalUnitType() == LexicalUnitType.IDENT) {
+            final String value = units[0].getStringValue().toLowerCase(Locale.ROOT);
+            if ("none".equals(value)) {
+                return new LexicalUnit[][] {
+                    {LexicalUnitImpl.createNumber(null, 0)}, {LexicalUnitImpl.createNumber(null, 0)}, {ident("auto")}};
+            }
+            if ("auto".equals(value)) {
+                return new LexicalUnit[][] {
+                    {LexicalUnitImpl.createNumber(null, 1)}, {LexicalUnitImpl.createNumber(null, 1)}, {ident("auto")}};
+            }
+        }
+
+        for (final LexicalUnit unit : units) {
+            if (isNumber(unit) && slots[2] == null
+                    && (slots[0] == null || slots[1] == null)) {
+                set(slots, slots[0] == null ? 0 : 1, unit);
+            }
+            else if (slots[2] == null && (isLength(unit) || unit.getLexicalUnitType() == LexicalUnitType.IDENT)) {
+                set(slots, 2, unit);
+            }
+            else {
+                return null;
+            }
+        }
+        return slots;
+    }
+
+    private static LexicalUnit[][] parseFlexFlow(final LexicalUnit[] units) {
+        final LexicalUnit[][] slots = new LexicalUnit[2][];
+        for (final LexicalUnit unit : units) {
+            final int slot;
+            if (isIdent(unit, FLEX_DIRECTIONS)) {
+                slot = 0;
+            }
+            else if (isIdent(unit, FLEX_WRAPS)) {
+                slot = 1;
+            }
+            else {
+                return null;
+            }
+            if (!set(slots, slot, unit)) {
+                return null;
+            }
+        }
+        return slots;
+    }
+
+    private static LexicalUnit[][] parseGridArea(final LexicalUnit[] units) {
+        final List<LexicalUnit[]> parts = split(units, LexicalUnitType.OPERATOR_SLASH);
+        if (parts == null || parts.size() > 4) {
+            return null;
+        }
+        final LexicalUnit[][] slots = new LexicalUnit[4][];
+        for (int i = 0; i < parts.size(); i++) {
+            slots[i] = parts.get(i);
+        }
+        // omitted lines copy a custom identifier, otherwise they are auto
+        if (slots[1] == null) {
+            slots[1] = customIdent(slots[0]);
+        }
+        if (slots[2] == null) {
+            slots[2] = customIdent(slots[0]);
+        }
+        if (slots[3] == null) {
+            slots[3] = customIdent(slots[1]);
+        }
+        return slots;
+    }
+
+    private static LexicalUnit[][] parseGridLine(final LexicalUnit[] units) {
+        final List<LexicalUnit[]> parts = split(units, LexicalUnitType.OPERATOR_SLASH);
+        if (parts == null || parts.size() > 2) {
+            return null;
+        }
+        final LexicalUnit[][] slots = new LexicalUnit[2][];
+        slots[0] = parts.get(0);
+        slots[1] = parts.size() > 1 ? parts.get(1) : customIdent(slots[0]);
+        return slots;
+    }
+
+    private static LexicalUnit[] customIdent(final LexicalUnit[] line) {
+        if (line != null && line.length == 1 && line[0].getLexicalUnitType() == LexicalUnitType.IDENT
+                && !"auto".equalsIgnoreCase(line[0].getStringValue())) {
+            return line;
+        }
+        return null;
+    }
+
+    private static LexicalUnit[][] parseFont(final LexicalUnit[] units) {
+        final LexicalUnit[][] slots = new LexicalUnit[7][];
+        int pos = 0;
+        // style, variant, weight and stretch in any order (normal resets one of them)
+        for (int count = 0; pos < units.length && count < 4; count++, pos++) {
+            final LexicalUnit unit = units[pos];
+            final int slot;
+            if (isIdent(unit, FONT_STYLES)) {
+                slot = 0;
+            }
+            else if (isIdent(unit, FONT_VARIANTS)) {
+                slot = 1;
+            }
+            else if (isIdent(unit, FONT_WEIGHTS) || unit.getLexicalUnitType() == LexicalUnitType.INTEGER) {
+                slot = 2;
+            }
+            else if (isIdent(unit, FONT_STRETCHES)) {
+                slot = 3;
+            }
+            else if (isIdent(unit, Collections.singleton("normal"))) {
+                continue;
+            }
+            else {
+                break;
+            }
+            if (!set(slots, slot, unit)) {
+                return null;
+            }
+        }
+
+        if (pos >= units.length || !(isLength(units[pos]) || isIdent(units[pos], FONT_SIZES))) {
+            return null;
+        }
+        slots[4] = new LexicalUnit[] {units[pos++]};
+
+        if (pos < units.length && units[pos].getLexicalUnitType() == LexicalUnitType.OPERATOR_SLASH) {
+            if (pos + 1 >= units.length) {
+                return null;
+            }
+            slots[5] = new LexicalUnit[] {units[pos + 1]};
+            pos += 2;
+        }
+
+        if (pos >= units.length || units[pos].getLexicalUnitType() == LexicalUnitType.OPERATOR_COMMA
+                || hasOperator(units, pos, units.length, LexicalUnitType.OPERATOR_SLASH)) {
+            return null;
+        }
+        slots[6] = Arrays.copyOfRange(units, pos, units.length);
+        return slots;
+    }
+
+    private static LexicalUnit[][] parseBackground(final LexicalUnit[] units) {
+        final LexicalUnit[][] slots = new LexicalUnit[8][];
+        final List<LexicalUnit> position = new ArrayList<>();
+        final List<LexicalUnit> size = new ArrayList<>();
+        for (int i = 0; i < units.length; i++) {
+            final LexicalUnit unit = units[i];
+            final LexicalUnitType type = unit.getLexicalUnitType();
+            if (type == LexicalUnitType.OPERATOR_SLASH) {
+                if (position.isEmpty() || !size.isEmpty()) {
+                    return null;
+                }
+                while (i + 1 < units.length && size.size() < 2
+                        && (isLength(units[i + 1]) || isIdent(units[i + 1], BACKGROUND_SIZES))) {
+                    size.add(units[++i]);
+                }
+                if (size.isEmpty()) {
+                    return null;
+                }
+                continue;
+            }
+
+            final int slot;
+            if (isIdent(unit, BACKGROUND_POSITIONS) || isLength(unit)) {
+                if (!size.isEmpty()) {
+                    return null;
+                }
+                position.add(unit);
+                continue;
+            }
+            if (isIdent(unit, BACKGROUND_REPEATS)) {
+                // two repeat values are allowed (horizontal and vertical)
+                if (slots[2] != null && slots[2].length == 1) {
+                    slots[2] = new LexicalUnit[] {slots[2][0], unit};
+                    continue;
+                }
+                slot = 2;
+            }
+            else if (isIdent(unit, BACKGROUND_ATTACHMENTS)) {
+                slot = 3;
+            }
+            else if (isIdent(unit, BACKGROUND_BOXES)) {
+                slot = slots[6] == null ? 6 : 7;
+            }
+            else if (type == LexicalUnitType.URI || isIdent(unit, Collections.singleton("none"))
+                    || type == LexicalUnitType.FUNCTION && unit.getFunctionName().toLowerCase(Locale.ROOT)
+                            .endsWith("gradient")) {
+                slot = 1;
+            }
+            else if (isColor(unit)) {
+                slot = 0;
+            }
+            else {
+                return null;
+            }
+            if (!set(slots, slot, unit)) {
+                return null;
+            }
+        }
+
+        if (!position.isEmpty()) {
+            slots[4] = position.toArray(new LexicalUnit[position.size()]);
+        }
+        if (!size.isEmpty()) {
+            slots[5] = size.toArray(new LexicalUnit[size.size()]);
+        }
+        // a single box sets origin and clip
+        if (slots[6] != null && slots[7] == null) {
+            slots[7] = slots[6];
+        }
+        return slots;
+    }
+
+    private static boolean set(final LexicalUnit[][] slots, final int slot, final LexicalUnit unit) {
+        if (slots[slot] != null) {
+            return false;
+        }
+        slots[slot] = new LexicalUnit[] {unit};
+        return true;
+    }
+
+    // null if one of the parts is empty
+    private static List<LexicalUnit[]> split(final LexicalUnit[] units, final LexicalUnitType separator) {
+        final List<LexicalUnit[]> parts = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i <= units.length; i++) {
+            if (i == units.length || units[i].getLexicalUnitType() == separator) {
+                if (i == start) {
+                    return null;
+                }
+                parts.add(Arrays.copyOfRange(units, start, i));
+                start = i + 1;
+            }
+        }
+        return parts;
+    }
+
+    private static boolean hasOperator(final LexicalUnit[] units, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            if (isOperator(units[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasOperator(final LexicalUnit[] units, final int from, final int to,
+            final LexicalUnitType operator) {
+        for (int i = from; i < to; i++) {
+            if (units[i].getLexicalUnitType() == operator) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isOperator(final LexicalUnit unit) {
+        return unit.getLexicalUnitType().name().startsWith("OPERATOR_");
+    }
+
+    private static boolean isIdent(final LexicalUnit unit, final Set<String> values) {
+        return unit.getLexicalUnitType() == LexicalUnitType.IDENT
+                && values.contains(unit.getStringValue().toLowerCase(Locale.ROOT));
+    }
+
+    private static boolean isNumber(final LexicalUnit unit) {
+        return unit.getLexicalUnitType() == LexicalUnitType.INTEGER
+                || unit.getLexicalUnitType() == LexicalUnitType.REAL;
+    }
+
+    private static boolean isLength(final LexicalUnit unit) {
+        switch (unit.getLexicalUnitType()) {
+            case EM:
+            case REM:
+            case EX:
+            case CH:
+            case VW:
+            case VH:
+            case VMIN:
+            case VMAX:
+            case PIXEL:
+            case INCH:
+            case CENTIMETER:
+            case MILLIMETER:
+            case POINT:
+            case PICA:
+            case PERCENTAGE:
+                return true;
+            case INTEGER:
+            case REAL:
+                return unit.getDoubleValue() == 0;
+            case FUNCTION:
+                return "calc".equalsIgnoreCase(unit.getFunctionName());
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isColor(final LexicalUnit unit) {
+        switch (unit.getLexicalUnitType()) {
+            case RGBCOLOR:
+                return true;
+            case IDENT:
+                return !CSS_WIDE_KEYWORDS.contains(unit.getStringValue().toLowerCase(Locale.ROOT));
+            case FUNCTION:
+                final String name = unit.getFunctionName().toLowerCase(Locale.ROOT);
+                return name.startsWith("rgb") || name.startsWith("hsl");
+            default:
+                return false;
+        }
+    }
+
+    private static final class Shorthand {
+        private final String name_;
+        private final SlotParser parser_;
+        private final String[] longhands_;
+        // slot of every longhand; null if the longhand i uses slot i
+        private final int[] slots_;
+        // initial value for every slot; null if all slots are always set
+        private final LexicalUnit[] initials_;
+
+        Shorthand(final String name, final SlotParser parser, final String[] longhands, final int[] slots,
+                final LexicalUnit[] initials) {
+            name_ = name;
+            parser_ = parser;
+            longhands_ = longhands;
+            slots_ = slots;
+            initials_ = initials;
+        }
+
+        Expansion expand(final LexicalUnit value) {
+            final List<LexicalUnit> list = new ArrayList<>();
+            for (LexicalUnit unit = value; unit != null; unit = unit.getNextLexicalUnit()) {
+                if (unit.getLexicalUnitType() == LexicalUnitType.FUNCTION
+                        && "var".equalsIgnoreCase(unit.getFunctionName())) {
+                    return Expansion.NOT_EXPANDABLE;
+                }
+                list.add(unit);
+            }
+            final LexicalUnit[] units = list.toArray(new LexicalUnit[list.size()]);
+
+            final LexicalUnit[] values = new LexicalUnit[longhands_.length];
+            if (units.length == 1 && (units[0].getLexicalUnitType() == LexicalUnitType.INHERIT
+                    || isIdent(units[0], CSS_WIDE_KEYWORDS))) {
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = LexicalUnitImpl.copyOf(null, units[0]);
+                }
+                return new Expansion(values);
+            }
+
+            final LexicalUnit[][] slots = parser_.parse(units);
+            if (slots == null) {
+                return Expansion.NOT_EXPANDABLE;
+            }
+            for (int i = 0; i < values.length; i++) {
+                final int slot = slots_ == null ? i : slots_[i];
+                if (slots[slot] == null) {
+                    values[i] = LexicalUnitImpl.copyChain(initials_[slot]);
+                }
+                else {
+                    values[i] = copy(slots[slot]);
+                }
+            }
+            return new Expansion(values);
+        }
+
+        // the units of the shorthand are still linked, the longhands need their own chains
+        private static LexicalUnit copy(final LexicalUnit[] units) {
+            final LexicalUnit first = LexicalUnitImpl.copyOf(null, units[0]);
+            LexicalUnit last = first;
+            for (int i = 1; i < units.length; i++) {
+                last = LexicalUnitImpl.copyOf(last, units[i]);
+            }
+            return first;
+        }
+    }
+
+    private static final class Expansion {
+        private static final Expansion NOT_EXPANDABLE = new Expansion(null);
+
+        // null if the value can not be expanded
+        private final LexicalUnit[] values_;
+
+        Expansion(final LexicalUnit[] values) {
+            values_ = values;
+        }
+    }
+
+    private static final class Key {
+        private final String name_;
+        private final LexicalUnit value_;
+
+        Key(final String name, final LexicalUnit value) {
+            name_ = name;
+            value_ = value;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return value_ == other.value_ && name_.equals(other.name_);
+        }
+
+        @Override
+        public int hashCode() {
+            return name_.hashCode() * 31 + System.identityHashCode(value_);
+        }
+    }
+}
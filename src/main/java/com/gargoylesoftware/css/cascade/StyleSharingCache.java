@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.cascade;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import com.gargoylesoftware.css.matching.CompiledSelector;
+import com.gargoylesoftware.css.matching.ElementAdapter;
+import com.gargoylesoftware.css.util.LRUCache;
+
+/**
+ * Shares the cascade result between siblings with the same matching relevant features:
+ * the same parent (and parent style), element name, class names and - if the adapter
+ * provides them - attributes. A result is only shared if none of the candidate selectors
+ * depends on the position among the siblings, the state or the id of the element;
+ * if the attribute names are not available, selectors testing attributes also
+ * prevent sharing. Elements with an id are never shared.
+ * This class is not thread safe.
+ *
+ * @param <E> the type of the elements
+ *
+ * @author Ronald Brill
+ */
+public class StyleSharingCache<E> {
+
+    private static final int NOT_SHAREABLE = CompiledSelector.DEPENDS_ON_SIBLINGS
+            | CompiledSelector.DEPENDS_ON_STATE
+            | CompiledSelector.DEPENDS_ON_ID;
+
+    private final Cascade<E> cascade_;
+    private final LRUCache<SharingKey, CascadedStyle> cache_;
+    private long hits_;
+    private long misses_;
+
+    /**
+     * Ctor.
+     * @param cascade the cascade computing the styles
+     * @param maxSize the maximum number of cached results
+     */
+    public StyleSharingCache(final Cascade<E> cascade, final int maxSize) {
+        cascade_ = cascade;
+        cache_ = new LRUCache<>(maxSize);
+    }
+
+    /**
+     * Computes the winning declarations of the element itself or reuses the
+     * result of a sibling.
+     * @param element the element
+     * @param parentStyle the computed style of the parent as used by the caller;
+     *        compared by identity, may be null
+     * @return the winning declarations
+     */
+    public CascadedStyle compute(final E element, final Object parentStyle) {
+        final ElementAdapter<E> adapter = cascade_.getAdapter();
+        if (adapter.getId(element) != null) {
+            misses_++;
+            return cascade_.compute(element);
+        }
+
+        final String[] attributes = attributes(adapter, element);
+        final SharingKey key = new SharingKey(adapter.getParent(element), parentStyle,
+                adapter.getLocalName(element), adapter.getClassNames(element), attributes);
+        final CascadedStyle cached = cache_.get(key);
+        if (cached != null) {
+            hits_++;
+            return cached;
+        }
+
+        misses_++;
+        final CascadedStyle style = cascade_.compute(element);
+
+        int notShareable = NOT_SHAREABLE;
+        if (attributes == null) {
+            notShareable |= CompiledSelector.DEPENDS_ON_ATTRIBUTES;
+        }
+        if ((cascade_.getLastDependencies() & notShareable) == 0) {
+            cache_.put(key, style);
+        }
+        return style;
+    }
+
+    /**
+     * @return the number of shared results
+     */
+    public long getHitCount() {
+        return hits_;
+    }
+
+    /**
+     * @return the number of computed results
+     */
+    public long getMissCount() {
+        return misses_;
+    }
+
+    /**
+     * @return the number of cached results
+     */
+    public int size() {
+        return cache_.size();
+    }
+
+    /**
+     * Removes all cached results (required if the style sheets or the tree change)
+     * and resets the statistics.
+     */
+    public void clear() {
+        cache_.clear();
+        hits_ = 0;
+        misses_ = 0;
+    }
+
+    // sorted name=value pairs or null if the attribute names are unknown
+    private static <E> String[] attributes(final ElementAdapter<E> adapter, final E element) {
+        final String[] names = adapter.getAttributeNames(element);
+        if (names == null) {
+            return null;
+        }
+        final String[] attributes = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            attributes[i] = names[i].toLowerCase(Locale.ROOT) + '=' + adapter.getAttribute(element, names[i]);
+        }
+        Arrays.sort(attributes);
+        return attributes;
+    }
+
+    private static final class SharingKey {
+        private final Object parent_;
+        private final Object parentStyle_;
+        private final String localName_;
+        private final String[] classes_;
+        private final String[] attributes_;
+        private final int hash_;
+
+        SharingKey(final Object parent, final Object parentStyle, final String localName,
+                final String[] classes, final String[] attributes) {
+            parent_ = parent;
+            parentStyle_ = parentStyle;
+            localName_ = localName == null ? null : localName.toLowerCase(Locale.ROOT);
+            if (classes == null) {
+                classes_ = null;
+            }
+            else {
+                classes_ = classes.clone();
+                Arrays.sort(classes_);
+            }
+            attributes_ = attributes;
+
+            int hash = System.identityHashCode(parent);
+            hash = 31 * hash + System.identityHashCode(parentStyle);
+            hash = 31 * hash + (localName_ == null ? 0 : localName_.hashCode());
+            hash = 31 * hash + Arrays.hashCode(classes_);
+            hash = 31 * hash + Arrays.hashCode(attributes_);
+            hash_ = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash_;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof SharingKey)) {
+                return false;
+            }
+            final SharingKey other = (SharingKey) obj;
+            return parent_ == other.parent_
+                    && parentStyle_ == other.parentStyle_
+                    && hash_ == other.hash_
+                    && (localName_ == null ? other.localName_ == null : localName_.equals(other.localName_))
+                    && Arrays.equals(classes_, other.classes_)
+                    && Arrays.equals(attributes_, other.attributes_);
+        }
+    }
+}
@@ -17,11 +17,16 @@
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.StringReader;
 
 import org.w3c.dom.DOMException;
 
+import com.gargoylesoftware.css.parser.CSSErrorHandler;
 import com.gargoylesoftware.css.parser.CSSException;
 import com.gargoylesoftware.css.parser.CSSOMParser;
+import com.gargoylesoftware.css.parser.InputSource;
+import com.gargoylesoftware.css.parser.Locator;
+import com.gargoylesoftware.css.parser.media.MediaDevice;
 import com.gargoylesoftware.css.util.LangUtils;
 import com.gargoylesoftware.css.util.ThrowCssExceptionErrorHandler;
 
@@ -34,6 +39,7 @@ public class CSSMediaRuleImpl extends AbstractCSSRuleImpl {
 
     private MediaListImpl mediaList_;
     private CSSRuleListImpl cssRules_;
+    private DeferredRules deferredRules_;
 
     /**
      * Ctor.
@@ -58,8 +64,7 @@ public String getCssText() {
 
         sb.append(getMediaList().getMediaText());
         sb.append(" {");
-        for (int i = 0; i < getCssRules().getLength(); i++) {
-            final AbstractCSSRuleImpl rule = getCssRules().getRules().get(i);
+        for (final AbstractCSSRuleImpl rule : getCssRules().getRules()) {
             sb.append(rule.getCssText()).append(" ");
         }
         sb.append("}");
@@ -79,6 +84,7 @@ public void setCssText(final String cssText) throws DOMException {
             if (r instanceof CSSMediaRuleImpl) {
                 mediaList_ = ((CSSMediaRuleImpl) r).mediaList_;
                 cssRules_ = ((CSSMediaRuleImpl) r).cssRules_;
+                deferredRules_ = null;
             }
             else {
                 throw new DOMExceptionImpl(
@@ -108,15 +114,79 @@ public MediaListImpl getMediaList() {
     }
 
     /**
+     * Returns the rules; if the parsing of the rules was deferred
+     * they are parsed now.
      * @return the css rules
      */
     public CSSRuleListImpl getCssRules() {
+        if (deferredRules_ != null) {
+            parseDeferredRules(deferredRules_.device_);
+        }
         if (cssRules_ == null) {
             cssRules_ = new CSSRuleListImpl();
         }
         return cssRules_;
     }
 
+    /**
+     * Defers the parsing of the rules until they are accessed.
+     * @param rules the source of the rules
+     * @param locator the position of the source
+     * @param device the device used to defer nested media rules, may be null
+     * @param errorHandler the error handler used when parsing the rules, may be null
+     */
+    public void setDeferredRules(final String rules, final Locator locator, final MediaDevice device,
+            final CSSErrorHandler errorHandler) {
+        cssRules_ = null;
+        deferredRules_ = new DeferredRules(rules, locator, device, errorHandler);
+    }
+
+    /**
+     * @return true if the rules are not parsed so far
+     */
+    public boolean isDeferred() {
+        return deferredRules_ != null;
+    }
+
+    /**
+     * Parses the deferred rules and adds them to the rule index of the style sheet.
+     * @param device the device used to defer nested media rules, may be null
+     */
+    void parseDeferredRules(final MediaDevice device) {
+        final DeferredRules deferred = deferredRules_;
+        deferredRules_ = null;
+
+        final CSSOMParser parser = new CSSOMParser();
+        parser.setParentStyleSheet(getParentStyleSheet());
+        parser.setMediaDevice(device);
+        if (deferred.errorHandler_ != null) {
+            parser.setErrorHandler(deferred.errorHandler_);
+        }
+
+        CSSRuleListImpl rules;
+        try (InputSource source = new InputSource(new StringReader(deferred.rules_))) {
+            if (deferred.locator_ != null) {
+                source.setURI(deferred.locator_.getUri());
+                source.setStartPosition(deferred.locator_.getLineNumber(), deferred.locator_.getColumnNumber());
+            }
+            rules = parser.parseRules(source);
+        }
+        catch (final IOException e) {
+            // not possible for a StringReader
+            rules = new CSSRuleListImpl();
+        }
+
+        for (final AbstractCSSRuleImpl rule : rules.getRules()) {
+            rule.setParentRule(this);
+        }
+        cssRules_ = rules;
+
+        final CSSStyleSheetImpl parentStyleSheet = getParentStyleSheet();
+        if (parentStyleSheet != null && rules.getLength() > 0) {
+            parentStyleSheet.rulesInserted(rules.getRules(), this, 0);
+        }
+    }
+
     /**
      * Insert a new rule at the given index.
      * @param rule the rule to be inserted
@@ -131,10 +201,13 @@ public void insertRule(final String rule, final int index) throws DOMException {
             parser.setParentStyleSheet(parentStyleSheet);
             parser.setErrorHandler(ThrowCssExceptionErrorHandler.INSTANCE);
             final AbstractCSSRuleImpl r = parser.parseRule(rule);
+            r.setParentRule(this);
 
             // Insert the rule into the list of rules
             getCssRules().insert(r, index);
-
+            if (parentStyleSheet != null) {
+                parentStyleSheet.ruleInserted(r, this, index);
+            }
         }
         catch (final IndexOutOfBoundsException e) {
             throw new DOMExceptionImpl(
@@ -163,7 +236,11 @@ public void insertRule(final String rule, final int index) throws DOMException {
      */
     public void deleteRule(final int index) throws DOMException {
         try {
+            final AbstractCSSRuleImpl r = getCssRules().getRules().get(index);
             getCssRules().delete(index);
+            if (getParentStyleSheet() != null) {
+                getParentStyleSheet().ruleDeleted(r);
+            }
         }
         catch (final IndexOutOfBoundsException e) {
             throw new DOMExceptionImpl(
@@ -179,6 +256,7 @@ public void deleteRule(final int index) throws DOMException {
      */
     public void setRuleList(final CSSRuleListImpl rules) {
         cssRules_ = rules;
+        deferredRules_ = null;
     }
 
     @Override
@@ -195,20 +273,31 @@ public boolean equals(final Object obj) {
             return false;
         }
         final CSSMediaRuleImpl cmr = (CSSMediaRuleImpl) obj;
-        return super.equals(obj)
-            && LangUtils.equals(getMediaList(), cmr.getMediaList())
-            && LangUtils.equals(getCssRules(), cmr.getCssRules());
+        if (!super.equals(obj) || !LangUtils.equals(getMediaList(), cmr.getMediaList())) {
+            return false;
+        }
+        if (deferredRules_ != null && cmr.deferredRules_ != null
+                && deferredRules_.rules_.equals(cmr.deferredRules_.rules_)) {
+            // same source, no need to parse
+            return true;
+        }
+        return LangUtils.equals(getCssRules(), cmr.getCssRules());
     }
 
     @Override
     public int hashCode() {
+        // the rules are not part of the hash code; equal rules may be deferred or not
+        // and deferred rules are not parsed to calculate the hash code
         int hash = super.hashCode();
         hash = LangUtils.hashCode(hash, mediaList_);
-        hash = LangUtils.hashCode(hash, cssRules_);
         return hash;
     }
 
     private void writeObject(final ObjectOutputStream out) throws IOException {
+        // deferred rules are parsed to keep the serialized form
+        if (deferredRules_ != null) {
+            parseDeferredRules(deferredRules_.device_);
+        }
         out.writeObject(cssRules_);
         out.writeObject(mediaList_);
     }
@@ -218,12 +307,26 @@ private void readObject(final ObjectInputStream in)
 
         cssRules_ = (CSSRuleListImpl) in.readObject();
         if (cssRules_ != null) {
-            for (int i = 0; i < cssRules_.getLength(); i++) {
-                final AbstractCSSRuleImpl cssRule = cssRules_.getRules().get(i);
+            for (final AbstractCSSRuleImpl cssRule : cssRules_.getRules()) {
                 cssRule.setParentRule(this);
                 cssRule.setParentStyleSheet(getParentStyleSheet());
             }
         }
         mediaList_ = (MediaListImpl) in.readObject();
     }
+
+    private static final class DeferredRules {
+        private final String rules_;
+        private final Locator locator_;
+        private final MediaDevice device_;
+        private final CSSErrorHandler errorHandler_;
+
+        DeferredRules(final String rules, final Locator locator, final MediaDevice device,
+                final CSSErrorHandler errorHandler) {
+            rules_ = rules;
+            locator_ = locator;
+            device_ = device;
+            errorHandler_ = errorHandler;
+        }
+    }
 }
@@ -15,9 +15,11 @@
 package com.gargoylesoftware.css.dom;
 
 import java.io.Serializable;
-import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 
+import com.gargoylesoftware.css.util.ChunkedList;
 import com.gargoylesoftware.css.util.LangUtils;
 
 /**
@@ -27,7 +29,7 @@
  */
 public class CSSRuleListImpl implements Serializable {
 
-    private List<AbstractCSSRuleImpl> rules_ = new ArrayList<>();
+    private RuleList rules_ = new RuleList();
 
     /**
      * @return the rules
@@ -67,6 +69,15 @@ public void insert(final AbstractCSSRuleImpl rule, final int index) {
         getRules().add(index, rule);
     }
 
+    /**
+     * Insert the rules at the given pos.
+     * @param rules the rules to be inserted
+     * @param index the insert pos
+     */
+    public void insertAll(final List<AbstractCSSRuleImpl> rules, final int index) {
+        getRules().addAll(index, rules);
+    }
+
     /**
      * Delete the rule at the given pos.
      * @param index the delete pos
@@ -75,16 +86,23 @@ public void delete(final int index) {
         getRules().remove(index);
     }
 
+    /**
+     * @return the number of charset and import rules at the start of the list
+     */
+    int getLeadingCharsetAndImportCount() {
+        return rules_.prefixLength_;
+    }
+
+    /**
+     * @return the number of charset and import rules
+     */
+    int getCharsetAndImportCount() {
+        return rules_.charsetAndImportCount_;
+    }
+
     @Override
     public String toString() {
-        final StringBuilder sb = new StringBuilder();
-        for (final AbstractCSSRuleImpl rule : rules_) {
-            if (sb.length() > 0) {
-                sb.append("\r\n");
-            }
-            sb.append(rule.toString());
-        }
-        return sb.toString();
+        return CSSSerializer.PRETTY.serialize(this);
     }
 
     @Override
@@ -103,13 +121,12 @@ private boolean equalsRules(final CSSRuleListImpl crl) {
         if ((crl == null) || (getLength() != crl.getLength())) {
             return false;
         }
-        int i = 0;
+        final Iterator<AbstractCSSRuleImpl> it = crl.rules_.iterator();
         for (final AbstractCSSRuleImpl rule : rules_) {
-            final AbstractCSSRuleImpl cssRule2 = crl.rules_.get(i);
+            final AbstractCSSRuleImpl cssRule2 = it.next();
             if (!LangUtils.equals(rule, cssRule2)) {
                 return false;
             }
-            i++;
         }
         return true;
     }
@@ -120,4 +137,122 @@ public int hashCode() {
         hash = LangUtils.hashCode(hash, rules_);
         return hash;
     }
+
+    /**
+     * The list of rules; tracks the charset and import rules to make
+     * the placement checks of insertRule cheap.
+     */
+    private static final class RuleList extends ChunkedList<AbstractCSSRuleImpl> {
+        private int charsetAndImportCount_;
+        private int prefixLength_;
+
+        @Override
+        public void add(final int index, final AbstractCSSRuleImpl rule) {
+            super.add(index, rule);
+
+            final boolean charsetOrImport = isCharsetOrImport(rule);
+            if (charsetOrImport) {
+                charsetAndImportCount_++;
+            }
+            if (index < prefixLength_) {
+                if (charsetOrImport) {
+                    prefixLength_++;
+                }
+                else {
+                    prefixLength_ = index;
+                }
+            }
+            else if (index == prefixLength_ && charsetOrImport) {
+                prefixLength_++;
+                extendPrefix();
+            }
+        }
+
+        @Override
+        public boolean addAll(final int index, final Collection<? extends AbstractCSSRuleImpl> rules) {
+            int count = 0;
+            int leading = -1;
+            int i = 0;
+            for (final AbstractCSSRuleImpl rule : rules) {
+                if (isCharsetOrImport(rule)) {
+                    count++;
+                }
+                else if (leading < 0) {
+                    leading = i;
+                }
+                i++;
+            }
+            if (!super.addAll(index, rules)) {
+                return false;
+            }
+
+            charsetAndImportCount_ += count;
+            if (index <= prefixLength_) {
+                if (leading < 0) {
+                    // the rule following the inserted ones is unchanged
+                    prefixLength_ += i;
+                }
+                else {
+                    prefixLength_ = index + leading;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public AbstractCSSRuleImpl remove(final int index) {
+            final AbstractCSSRuleImpl removed = super.remove(index);
+
+            if (isCharsetOrImport(removed)) {
+                charsetAndImportCount_--;
+            }
+            if (index < prefixLength_) {
+                prefixLength_--;
+            }
+            else if (index == prefixLength_) {
+                extendPrefix();
+            }
+            return removed;
+        }
+
+        @Override
+        public AbstractCSSRuleImpl set(final int index, final AbstractCSSRuleImpl rule) {
+            final AbstractCSSRuleImpl old = super.set(index, rule);
+
+            final boolean charsetOrImport = isCharsetOrImport(rule);
+            if (charsetOrImport != isCharsetOrImport(old)) {
+                if (charsetOrImport) {
+                    charsetAndImportCount_++;
+                    if (index == prefixLength_) {
+                        prefixLength_++;
+                        extendPrefix();
+                    }
+                }
+                else {
+                    charsetAndImportCount_--;
+                    if (index < prefixLength_) {
+                        prefixLength_ = index;
+                    }
+                }
+            }
+            return old;
+        }
+
+        @Override
+        public void clear() {
+            super.clear();
+            charsetAndImportCount_ = 0;
+            prefixLength_ = 0;
+        }
+
+        private void extendPrefix() {
+            while (prefixLength_ < size() && isCharsetOrImport(get(prefixLength_))) {
+                prefixLength_++;
+            }
+        }
+
+        private static boolean isCharsetOrImport(final AbstractCSSRuleImpl rule) {
+            return rule instanceof CSSCharsetRuleImpl || rule instanceof CSSImportRuleImpl;
+        }
+    }
 }
@@ -0,0 +1,704 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.dom;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.gargoylesoftware.css.parser.LexicalUnit;
+import com.gargoylesoftware.css.parser.LexicalUnit.LexicalUnitType;
+import com.gargoylesoftware.css.parser.condition.Condition;
+import com.gargoylesoftware.css.parser.condition.PseudoClassCondition;
+import com.gargoylesoftware.css.parser.media.MediaQuery;
+import com.gargoylesoftware.css.parser.selector.ChildSelector;
+import com.gargoylesoftware.css.parser.selector.DescendantSelector;
+import com.gargoylesoftware.css.parser.selector.DirectAdjacentSelector;
+import com.gargoylesoftware.css.parser.selector.ElementSelector;
+import com.gargoylesoftware.css.parser.selector.GeneralAdjacentSelector;
+import com.gargoylesoftware.css.parser.selector.PseudoElementSelector;
+import com.gargoylesoftware.css.parser.selector.Selector;
+import com.gargoylesoftware.css.parser.selector.SelectorList;
+
+/**
+ * Writes the CSSOM (or parts of it) in one pass to an {@link Appendable} like a
+ * {@link java.io.Writer} or a {@link StringBuilder}; the text of the parts is not
+ * built and concatenated up the tree.
+ * The {@link #PRETTY} serializer produces the same text as the getCssText() and
+ * toString() methods of the CSSOM classes.
+ * The {@link #MINIFIED} serializer omits all whitespace not required, writes numbers
+ * without leading zero (.5em) and rgb colors as (short) hex colors.
+ * This class is thread safe.
+ *
+ * @author Ronald Brill
+ */
+public final class CSSSerializer {
+
+    /** Serializer producing the same text as the CSSOM classes. */
+    public static final CSSSerializer PRETTY = new CSSSerializer(false);
+
+    /** Serializer producing minified text. */
+    public static final CSSSerializer MINIFIED = new CSSSerializer(true);
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final boolean minify_;
+
+    private CSSSerializer(final boolean minify) {
+        minify_ = minify;
+    }
+
+    /**
+     * @return true if this serializer produces minified text
+     */
+    public boolean isMinified() {
+        return minify_;
+    }
+
+    /**
+     * Serializes the style sheet.
+     * @param sheet the style sheet
+     * @return the text
+     */
+    public String serialize(final CSSStyleSheetImpl sheet) {
+        final StringBuilder sb = new StringBuilder();
+        try {
+            write(sb, sheet);
+        }
+        catch (final IOException e) {
+            // StringBuilder never throws
+            throw new IllegalStateException(e);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Serializes the rule list.
+     * @param rules the rules
+     * @return the text
+     */
+    public String serialize(final CSSRuleListImpl rules) {
+        final StringBuilder sb = new StringBuilder();
+        try {
+            write(sb, rules);
+        }
+        catch (final IOException e) {
+            // StringBuilder never throws
+            throw new IllegalStateException(e);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes all rules of the style sheet.
+     * @param out the target
+     * @param sheet the style sheet
+     * @throws IOException in case of error
+     */
+    public void write(final Appendable out, final CSSStyleSheetImpl sheet) throws IOException {
+        write(out, sheet.getCssRules());
+    }
+
+    /**
+     * Writes the rules; the pretty serializer separates them by line breaks.
+     * @param out the target
+     * @param rules the rules
+     * @throws IOException in case of error
+     */
+    public void write(final Appendable out, final CSSRuleListImpl rules) throws IOException {
+        boolean first = true;
+        for (final AbstractCSSRuleImpl rule : rules.getRules()) {
+            if (!first && !minify_) {
+                out.append("\r\n");
+            }
+            first = false;
+            write(out, rule);
+        }
+    }
+
+    /**
+     * Writes a single rule.
+     * @param out the target
+     * @param rule the rule
+     * @throws IOException in case of error
+     */
+    public void write(final Appendable out, final AbstractCSSRuleImpl rule) throws IOException {
+        if (rule instanceof CSSStyleRuleImpl) {
+            writeStyleRule(out, (CSSStyleRuleImpl) rule);
+        }
+        else if (rule instanceof CSSMediaRuleImpl) {
+            writeMediaRule(out, (CSSMediaRuleImpl) rule);
+        }
+        else if (rule instanceof CSSImportRuleImpl) {
+            writeImportRule(out, (CSSImportRuleImpl) rule);
+        }
+        else if (rule instanceof CSSPageRuleImpl) {
+            writePageRule(out, (CSSPageRuleImpl) rule);
+        }
+        else if (rule instanceof CSSFontFaceRuleImpl) {
+            out.append(minify_ ? "@font-face{" : "@font-face {");
+            final CSSStyleDeclarationImpl style = ((CSSFontFaceRuleImpl) rule).getStyle();
+            if (null != style) {
+                write(out, style);
+            }
+            out.append('}');
+        }
+        else {
+            // charset and unknown rules
+            out.append(rule.getCssText());
+        }
+    }
+
+    private void writeStyleRule(final Appendable out, final CSSStyleRuleImpl rule) throws IOException {
+        final CSSStyleDeclarationImpl style = rule.getStyle();
+        if (null == style) {
+            return;
+        }
+
+        write(out, rule.getSelectors());
+        if (minify_) {
+            out.append('{');
+            write(out, style);
+            out.append('}');
+        }
+        else if (style.getProperties().isEmpty()) {
+            out.append(" { }");
+        }
+        else {
+            out.append(" { ");
+            write(out, style);
+            out.append(" }");
+        }
+    }
+
+    private void writeMediaRule(final Appendable out, final CSSMediaRuleImpl rule) throws IOException {
+        out.append("@media ");
+        write(out, rule.getMediaList());
+        out.append(minify_ ? "{" : " {");
+        for (final AbstractCSSRuleImpl child : rule.getCssRules().getRules()) {
+            write(out, child);
+            if (!minify_) {
+                out.append(' ');
+            }
+        }
+        out.append('}');
+    }
+
+    private void writeImportRule(final Appendable out, final CSSImportRuleImpl rule) throws IOException {
+        out.append("@import");
+        final String href = rule.getHref();
+        if (null != href) {
+            out.append(" url(").append(href).append(')');
+        }
+        final MediaListImpl media = rule.getMedia();
+        if (null != media && media.getLength() > 0) {
+            out.append(' ');
+            write(out, media);
+        }
+        out.append(';');
+    }
+
+    private void writePageRule(final Appendable out, final CSSPageRuleImpl rule) throws IOException {
+        final String sel = rule.getSelectorText();
+        if (minify_) {
+            out.append("@page");
+            if (sel.length() > 0) {
+                out.append(' ').append(sel);
+            }
+        }
+        else {
+            out.append("@page ").append(sel);
+            if (sel.length() > 0) {
+                out.append(' ');
+            }
+        }
+        out.append('{');
+        final CSSStyleDeclarationImpl style = rule.getStyle();
+        if (null != style) {
+            write(out, style);
+        }
+        out.append('}');
+    }
+
+    /**
+     * Writes the media queries of the list.
+     * @param out the target
+     * @param media the media list
+     * @throws IOException in case of error
+     */
+    public void write(final Appendable out, final MediaListImpl media) throws IOException {
+        for (int i = 0; i < media.getLength(); i++) {
+            if (i > 0) {
+                out.append(minify_ ? "," : ", ");
+            }
+            final MediaQuery query = media.mediaQuery(i);
+            if (query.isOnly()) {
+                out.append("only ");
+            }
+            if (query.isNot()) {
+                out.append("not ");
+            }
+            out.append(query.getMedia());
+            for (final Property property : query.getProperties()) {
+                out.append(" and (");
+                write(out, property);
+                out.append(')');
+            }
+        }
+    }
+
+    /**
+     * Writes the selectors of the list.
+     * @param out the target
+     * @param selectors the selectors
+     * @throws IOException in case of error
+     */
+    public void write(final Appendable out, final SelectorList selectors) throws IOException {
+        boolean first = true;
+        for (final Selector selector : selectors) {
+            if (!first) {
+                out.append(minify_ ? "," : ", ");
+            }
+            first = false;
+            write(out, selector);
+        }
+    }
+
+    /**
+     * Writes a selector.
+     * @param out the target
+     * @param selector the selector
+     * @throws IOException in case of error
+     */
+    public void write(final Appendable out, final Selector selector) throws IOException {
+        switch (selector.getSelectorType()) {
+            case CHILD_SELECTOR:
+                final ChildSelector child = (ChildSelector) selector;
+                writeCombinator(out, child.getAncestorSelector(), minify_ ? ">" : " > ", child.getSimpleSelector());
+                break;
+            case DESCENDANT_SELECTOR:
+                final DescendantSelector descendant = (DescendantSelector) selector;
+                final boolean pseudo = Selector.SelectorType.PSEUDO_ELEMENT_SELECTOR
+                        == descendant.getSimpleSelector().getSelectorType();
+                writeCombinator(out, descendant.getAncestorSelector(), pseudo ? "" : " ",
+                        descendant.getSimpleSelector());
+                break;
+            case DIRECT_ADJACENT_SELECTOR:
+                final DirectAdjacentSelector direct = (DirectAdjacentSelector) selector;
+                writeCombinator(out, direct.getSelector(), minify_ ? "+" : " + ", direct.getSimpleSelector());
+                break;
+            case GENERAL_ADJACENT_SELECTOR:
+                final GeneralAdjacentSelector general = (GeneralAdjacentSelector) selector;
+                writeCombinator(out, general.getSelector(), minify_ ? "~" : " ~ ", general.getSimpleSelector());
+                break;
+            case ELEMENT_NODE_SELECTOR:
+                final ElementSelector element = (ElementSelector) selector;
+                final List<Condition> conditions = element.getConditions();
+                final boolean hasConditions = conditions != null && !conditions.isEmpty();
+                if (!minify_ || !hasConditions || element.getLocalName() != null) {
+                    out.append(element.getElementName());
+                }
+                if (hasConditions) {
+                    for (final Condition condition : conditions) {
+                        write(out, condition);
+                    }
+                }
+                break;
+            case PSEUDO_ELEMENT_SELECTOR:
+                final PseudoElementSelector pseudoElement = (PseudoElementSelector) selector;
+                if (pseudoElement.getLocalName() == null) {
+                    out.append("null");
+                }
+                else {
+                    out.append(pseudoElement.isDoubleColon() ? "::" : ":").append(pseudoElement.getLocalName());
+                }
+                break;
+            default:
+                out.append(selector.toString());
+                break;
+        }
+    }
+
+    private void writeCombinator(final Appendable out, final Selector left, final String combinator,
+            final Selector right) throws IOException {
+        if (null != left) {
+            write(out, left);
+        }
+        out.append(combinator);
+        if (null != right) {
+            write(out, right);
+        }
+    }
+
+    private static void write(final Appendable out, final Condition condition) throws IOException {
+        final String value = condition.getValue();
+        switch (condition.getConditionType()) {
+            case ATTRIBUTE_CONDITION:
+                writeAttributeCondition(out, condition, "=");
+                break;
+            case BEGIN_HYPHEN_ATTRIBUTE_CONDITION:
+                writeAttributeCondition(out, condition, "|=");
+                break;
+            case ONE_OF_ATTRIBUTE_CONDITION:
+                writeAttributeCondition(out, condition, "~=");
+                break;
+            case PREFIX_ATTRIBUTE_CONDITION:
+                writeAttributeCondition(out, condition, "^=");
+                break;
+            case SUBSTRING_ATTRIBUTE_CONDITION:
+                writeAttributeCondition(out, condition, "*=");
+                break;
+            case SUFFIX_ATTRIBUTE_CONDITION:
+                writeAttributeCondition(out, condition, "$=");
+                break;
+            case CLASS_CONDITION:
+                out.append('.');
+                if (value != null) {
+                    out.append(value);
+                }
+                break;
+            case ID_CONDITION:
+                out.append('#');
+                if (value != null) {
+                    out.append(value);
+                }
+                break;
+            case LANG_CONDITION:
+                out.append(":lang(");
+                if (value != null) {
+                    out.append(value);
+                }
+                out.append(')');
+                break;
+            case PSEUDO_CLASS_CONDITION:
+                if (value == null) {
+                    out.append("null");
+                }
+                else {
+                    out.append(((PseudoClassCondition) condition).isDoubleColon() ? "::" : ":").append(value);
+                }
+                break;
+            default:
+                out.append(condition.toString());
+                break;
+        }
+    }
+
+    private static void writeAttributeCondition(final Appendable out, final Condition condition,
+            final String operator) throws IOException {
+        out.append('[').append(condition.getLocalName());
+        final String value = condition.getValue();
+        if (value != null) {
+            out.append(operator).append('"').append(value).append('"');
+        }
+        out.append(']');
+    }
+
+    /**
+     * Writes the properties of the declaration.
+     * @param out the target
+     * @param style the declaration
+     * @throws IOException in case of error
+     */
+    public void write(final Appendable out, final CSSStyleDeclarationImpl style) throws IOException {
+        final List<Property> properties = style.getProperties();
+        for (int i = 0; i < properties.size(); i++) {
+            final Property property = properties.get(i);
+            if (property != null) {
+                write(out, property);
+            }
+            if (i < properties.size() - 1) {
+                out.append(minify_ ? ";" : "; ");
+            }
+        }
+    }
+
+    /**
+     * Writes a property.
+     * @param out the target
+     * @param property the property
+     * @throws IOException in case of error
+     */
+    public void write(final Appendable out, final Property property) throws IOException {
+        out.append(property.getName());
+        final CSSValueImpl value = property.getValue();
+        if (null != value) {
+            out.append(minify_ ? ":" : ": ");
+            write(out, value);
+        }
+        if (property.isImportant()) {
+            out.append(minify_ ? "!important" : " !important");
+        }
+    }
+
+    /**
+     * Writes a value.
+     * @param out the target
+     * @param value the value
+     * @throws IOException in case of error
+     */
+    public void write(final Appendable out, final CSSValueImpl value) throws IOException {
+        final Object v = value.getValue();
+        if (v instanceof List) {
+            boolean separate = false;
+            for (final Object item : (List<?>) v) {
+                final CSSValueImpl itemValue = (CSSValueImpl) item;
+                final Object itemObject = itemValue.getValue();
+                final boolean comma = itemObject instanceof LexicalUnit
+                        && ((LexicalUnit) itemObject).getLexicalUnitType() == LexicalUnitType.OPERATOR_COMMA;
+                final boolean tight = itemObject instanceof LexicalUnit && isTight((LexicalUnit) itemObject);
+                if (separate && !comma && !tight) {
+                    out.append(' ');
+                }
+                write(out, itemValue);
+                separate = !tight;
+            }
+        }
+        else if (v instanceof LexicalUnit) {
+            writeUnit(out, (LexicalUnit) v);
+        }
+        else if (v instanceof RGBColorImpl) {
+            final RGBColorImpl color = (RGBColorImpl) v;
+            if (!minify_ || !writeHexColor(out, color.getRed(), color.getGreen(), color.getBlue())) {
+                out.append("rgb(");
+                writeOrNull(out, color.getRed());
+                out.append(minify_ ? "," : ", ");
+                writeOrNull(out, color.getGreen());
+                out.append(minify_ ? "," : ", ");
+                writeOrNull(out, color.getBlue());
+                out.append(')');
+            }
+        }
+        else if (v instanceof RectImpl) {
+            final RectImpl rect = (RectImpl) v;
+            out.append("rect(");
+            writeOrNull(out, rect.getTop());
+            out.append(minify_ ? "," : ", ");
+            writeOrNull(out, rect.getRight());
+            out.append(minify_ ? "," : ", ");
+            writeOrNull(out, rect.getBottom());
+            out.append(minify_ ? "," : ", ");
+            writeOrNull(out, rect.getLeft());
+            out.append(')');
+        }
+        else if (v instanceof CounterImpl) {
+            final CounterImpl counter = (CounterImpl) v;
+            final String separator = counter.getSeparator();
+            out.append(separator == null ? "counter(" : "counters(").append(counter.getIdentifier());
+            if (separator != null) {
+                out.append(minify_ ? ",\"" : ", \"").append(separator).append('"');
+            }
+            if (counter.getListStyle() != null) {
+                out.append(minify_ ? "," : ", ").append(counter.getListStyle());
+            }
+            out.append(')');
+        }
+        else if (v != null) {
+            out.append(v.toString());
+        }
+    }
+
+    private void writeOrNull(final Appendable out, final CSSValueImpl value) throws IOException {
+        if (value == null) {
+            out.append("null");
+        }
+        else {
+            write(out, value);
+        }
+    }
+
+    /**
+     * Writes the lexical unit and all following units of the chain.
+     * @param out the target
+     * @param value the first unit
+     * @throws IOException in case of error
+     */
+    public void write(final Appendable out, final LexicalUnit value) throws IOException {
+        writeChain(out, value);
+    }
+
+    private void writeChain(final Appendable out, final LexicalUnit value) throws IOException {
+        LexicalUnit unit = value;
+        boolean separate = false;
+        while (unit != null) {
+            final boolean tight = isTight(unit);
+            if (separate && !tight && unit.getLexicalUnitType() != LexicalUnitType.OPERATOR_COMMA) {
+                out.append(' ');
+            }
+            writeUnit(out, unit);
+            separate = !tight;
+            unit = unit.getNextLexicalUnit();
+        }
+    }
+
+    /**
+     * The pretty form has a space after a comma only; the minified form needs no space
+     * around commas, slashes and multiplications (the spaces around + and - are
+     * required inside calc()).
+     */
+    private boolean isTight(final LexicalUnit unit) {
+        if (!minify_) {
+            return false;
+        }
+        final LexicalUnitType type = unit.getLexicalUnitType();
+        return type == LexicalUnitType.OPERATOR_COMMA
+                || type == LexicalUnitType.OPERATOR_SLASH
+                || type == LexicalUnitType.OPERATOR_MULTIPLY;
+    }
+
+    private void writeUnit(final Appendable out, final LexicalUnit unit) throws IOException {
+        switch (unit.getLexicalUnitType()) {
+            case FUNCTION:
+                if (null != unit.getFunctionName()) {
+                    out.append(unit.getFunctionName());
+                }
+                writeParameters(out, unit);
+                break;
+            case RGBCOLOR:
+                if (!minify_ || !writeHexColor(out, unit.getParameters())) {
+                    out.append("rgb");
+                    writeParameters(out, unit);
+                }
+                break;
+            case RECT_FUNCTION:
+                out.append("rect");
+                writeParameters(out, unit);
+                break;
+            case COUNTER_FUNCTION:
+                out.append("counter");
+                writeParameters(out, unit);
+                break;
+            case COUNTERS_FUNCTION:
+                out.append("counters");
+                writeParameters(out, unit);
+                break;
+            case INTEGER:
+            case REAL:
+            case EM:
+            case REM:
+            case EX:
+            case CH:
+            case VW:
+            case VH:
+            case VMIN:
+            case VMAX:
+            case PIXEL:
+            case INCH:
+            case CENTIMETER:
+            case MILLIMETER:
+            case POINT:
+            case PICA:
+            case PERCENTAGE:
+            case DEGREE:
+            case GRADIAN:
+            case RADIAN:
+            case MILLISECOND:
+            case SECOND:
+            case HERTZ:
+            case KILOHERTZ:
+            case DIMENSION:
+                // the unit caches its text
+                final String text = unit.toString();
+                if (minify_ && text.startsWith("0.")) {
+                    out.append(text, 1, text.length());
+                }
+                else if (minify_ && text.startsWith("-0.")) {
+                    out.append('-').append(text, 2, text.length());
+                }
+                else {
+                    out.append(text);
+                }
+                break;
+            default:
+                // the unit caches its text
+                out.append(unit.toString());
+                break;
+        }
+    }
+
+    private void writeParameters(final Appendable out, final LexicalUnit unit) throws IOException {
+        out.append('(');
+        writeChain(out, unit.getParameters());
+        out.append(')');
+    }
+
+    /**
+     * Writes #rrggbb or #rgb if the parameters are three integers in the range 0..255.
+     * @return false if nothing was written
+     */
+    private static boolean writeHexColor(final Appendable out, final LexicalUnit params) throws IOException {
+        final LexicalUnit red = params;
+        final LexicalUnit green = skipComma(red);
+        final LexicalUnit blue = skipComma(green);
+        if (blue == null || blue.getNextLexicalUnit() != null) {
+            return false;
+        }
+        return writeHexColor(out, red, green, blue);
+    }
+
+    private static LexicalUnit skipComma(final LexicalUnit unit) {
+        if (unit == null) {
+            return null;
+        }
+        final LexicalUnit comma = unit.getNextLexicalUnit();
+        if (comma == null || comma.getLexicalUnitType() != LexicalUnitType.OPERATOR_COMMA) {
+            return null;
+        }
+        return comma.getNextLexicalUnit();
+    }
+
+    private static boolean writeHexColor(final Appendable out, final CSSValueImpl red, final CSSValueImpl green,
+            final CSSValueImpl blue) throws IOException {
+        if (red == null || green == null || blue == null
+                || !(red.getValue() instanceof LexicalUnit)
+                || !(green.getValue() instanceof LexicalUnit)
+                || !(blue.getValue() instanceof LexicalUnit)) {
+            return false;
+        }
+        return writeHexColor(out, (LexicalUnit) red.getValue(), (LexicalUnit) green.getValue(),
+                (LexicalUnit) blue.getValue());
+    }
+
+    private static boolean writeHexColor(final Appendable out, final LexicalUnit red, final LexicalUnit green,
+            final LexicalUnit blue) throws IOException {
+        final int r = colorComponent(red);
+        final int g = colorComponent(green);
+        final int b = colorComponent(blue);
+        if (r < 0 || g < 0 || b < 0) {
+            return false;
+        }
+
+        out.append('#');
+        if (r % 17 == 0 && g % 17 == 0 && b % 17 == 0) {
+            out.append(HEX_DIGITS[r / 17]).append(HEX_DIGITS[g / 17]).append(HEX_DIGITS[b / 17]);
+        }
+        else {
+            out.append(HEX_DIGITS[r >> 4]).append(HEX_DIGITS[r & 0xf])
+                .append(HEX_DIGITS[g >> 4]).append(HEX_DIGITS[g & 0xf])
+                .append(HEX_DIGITS[b >> 4]).append(HEX_DIGITS[b & 0xf]);
+        }
+        return true;
+    }
+
+    private static int colorComponent(final LexicalUnit unit) {
+        if (unit == null || unit.getLexicalUnitType() != LexicalUnitType.INTEGER) {
+            return -1;
+        }
+        final int value = unit.getIntegerValue();
+        if (value < 0 || value > 255) {
+            return -1;
+        }
+        return value;
+    }
+}
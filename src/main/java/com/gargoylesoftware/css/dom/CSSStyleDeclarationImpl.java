@@ -21,6 +21,7 @@
 import org.w3c.dom.DOMException;
 
 import com.gargoylesoftware.css.parser.CSSOMParser;
+import com.gargoylesoftware.css.parser.PropertyValueCache;
 import com.gargoylesoftware.css.util.LangUtils;
 
 /**
@@ -86,6 +87,9 @@ public void setCssText(final String cssText) throws DOMException {
                 DOMExceptionImpl.SYNTAX_ERROR,
                 e.getMessage());
         }
+        finally {
+            changed();
+        }
     }
 
     /**
@@ -124,6 +128,7 @@ public String removeProperty(final String propertyName) throws DOMException {
             final Property p = properties_.get(i);
             if (p != null && propertyName.equalsIgnoreCase(p.getName())) {
                 properties_.remove(i);
+                changed();
                 if (p.getValue() == null) {
                     return "";
                 }
@@ -159,8 +164,7 @@ public void setProperty(
         try {
             CSSValueImpl expr = null;
             if (!value.isEmpty()) {
-                final CSSOMParser parser = new CSSOMParser();
-                expr = parser.parsePropertyValue(value);
+                expr = PropertyValueCache.DEFAULT.parsePropertyValue(value);
             }
             Property p = getPropertyDeclaration(propertyName);
             final boolean important = PRIORITY_IMPORTANT.equalsIgnoreCase(priority);
@@ -195,6 +199,14 @@ public AbstractCSSRuleImpl getParentRule() {
         return parentRule_;
     }
 
+    /**
+     * Moves this declaration to another rule.
+     * @param parentRule the new parent rule
+     */
+    void setParentRule(final AbstractCSSRuleImpl parentRule) {
+        parentRule_ = parentRule;
+    }
+
     /**
      * Add a property.
      * @param p the property to add
@@ -204,6 +216,17 @@ public void addProperty(final Property p) {
             return;
         }
         properties_.add(p);
+        changed();
+    }
+
+    // keeps the property index of the style sheet up to date
+    private void changed() {
+        if (parentRule_ instanceof CSSStyleRuleImpl) {
+            final CSSStyleSheetImpl styleSheet = parentRule_.getParentStyleSheet();
+            if (styleSheet != null) {
+                styleSheet.declarationChanged((CSSStyleRuleImpl) parentRule_);
+            }
+        }
     }
 
     /**
@@ -92,7 +92,7 @@ public void setCssText(final String cssText) throws DOMException {
             // The rule must be a style rule
             if (r instanceof CSSStyleRuleImpl) {
                 selectors_ = ((CSSStyleRuleImpl) r).selectors_;
-                style_ = ((CSSStyleRuleImpl) r).style_;
+                adoptStyle(((CSSStyleRuleImpl) r).style_);
             }
             else {
                 throw new DOMExceptionImpl(
@@ -157,7 +157,23 @@ public CSSStyleDeclarationImpl getStyle() {
      * @param style the new style
      */
     public void setStyle(final CSSStyleDeclarationImpl style) {
+        adoptStyle(style);
+    }
+
+    // the declaration reports its modifications to the parent rule
+    private void adoptStyle(final CSSStyleDeclarationImpl style) {
         style_ = style;
+        if (style != null) {
+            style.setParentRule(this);
+        }
+        styleChanged();
+    }
+
+    private void styleChanged() {
+        final CSSStyleSheetImpl styleSheet = getParentStyleSheet();
+        if (styleSheet != null) {
+            styleSheet.declarationChanged(this);
+        }
     }
 
     @Override
@@ -19,21 +19,30 @@
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 import org.w3c.dom.DOMException;
 import org.w3c.dom.Node;
 
 import com.gargoylesoftware.css.parser.CSSException;
 import com.gargoylesoftware.css.parser.CSSOMParser;
+import com.gargoylesoftware.css.parser.media.MediaDevice;
 import com.gargoylesoftware.css.parser.media.MediaQueryList;
+import com.gargoylesoftware.css.parser.media.MediaQueryPredicate;
 import com.gargoylesoftware.css.parser.selector.ElementSelector;
+import com.gargoylesoftware.css.parser.selector.PseudoElementSelector;
+import com.gargoylesoftware.css.parser.selector.RightmostKey;
 import com.gargoylesoftware.css.parser.selector.Selector;
+import com.gargoylesoftware.css.parser.selector.SelectorList;
 import com.gargoylesoftware.css.util.LangUtils;
 import com.gargoylesoftware.css.util.ThrowCssExceptionErrorHandler;
 
@@ -52,6 +61,8 @@ public class CSSStyleSheetImpl implements Serializable {
     private AbstractCSSRuleImpl ownerRule_;
     private CSSRuleListImpl cssRules_;
     private CSSStyleSheetRuleIndex index_;
+    // the lists whose combined rule index contains this sheet
+    private transient List<CSSStyleSheetListImpl> styleSheetLists_;
 
     /**
      * Ctor.
@@ -160,23 +171,25 @@ else if (getCssRules().getRules().get(0) instanceof CSSCharsetRuleImpl) {
                 else if (r instanceof CSSImportRuleImpl) {
                     // Import rules must preceed all other rules (except
                     // charset rules)
-                    if (index <= getCssRules().getLength()) {
-                        for (int i = 0; i < index; i++) {
-                            final AbstractCSSRuleImpl ri = getCssRules().getRules().get(i);
-                            if (!(ri instanceof CSSCharsetRuleImpl) && !(ri instanceof CSSImportRuleImpl)) {
-                                msg = DOMExceptionImpl.IMPORT_NOT_FIRST;
-                                break;
-                            }
-                        }
+                    if (index <= getCssRules().getLength()
+                            && index > getCssRules().getLeadingCharsetAndImportCount()) {
+                        msg = DOMExceptionImpl.IMPORT_NOT_FIRST;
                     }
                 }
                 else {
                     if (index <= getCssRules().getLength()) {
-                        for (int i = index; i < getCssRules().getLength(); i++) {
-                            final AbstractCSSRuleImpl ri = getCssRules().getRules().get(i);
-                            if ((ri instanceof CSSCharsetRuleImpl) || (ri instanceof CSSImportRuleImpl)) {
-                                msg = DOMExceptionImpl.INSERT_BEFORE_IMPORT;
-                                break;
+                        final int leading = getCssRules().getLeadingCharsetAndImportCount();
+                        if (index < leading) {
+                            msg = DOMExceptionImpl.INSERT_BEFORE_IMPORT;
+                        }
+                        else if (leading < getCssRules().getCharsetAndImportCount()) {
+                            // there are misplaced charset or import rules
+                            for (int i = index; i < getCssRules().getLength(); i++) {
+                                final AbstractCSSRuleImpl ri = getCssRules().getRules().get(i);
+                                if ((ri instanceof CSSCharsetRuleImpl) || (ri instanceof CSSImportRuleImpl)) {
+                                    msg = DOMExceptionImpl.INSERT_BEFORE_IMPORT;
+                                    break;
+                                }
                             }
                         }
                     }
@@ -188,7 +201,7 @@ else if (r instanceof CSSImportRuleImpl) {
 
             // Insert the rule into the list of rules
             getCssRules().insert(r, index);
-
+            ruleInserted(r, null, index);
         }
         catch (final IndexOutOfBoundsException e) {
             throw new DOMExceptionImpl(
@@ -210,6 +223,117 @@ else if (r instanceof CSSImportRuleImpl) {
         }
     }
 
+    /**
+     * Inserts a batch of rules. The texts are concatenated and parsed in one run;
+     * the placement is validated once for the whole batch, the rules are inserted
+     * in one step and the rule index is updated once.
+     *
+     * @param rules the rules to insert
+     * @param index the insert pos of the first rule
+     * @throws DOMException in case of error
+     */
+    public void insertRules(final List<String> rules, final int index) throws DOMException {
+        final StringBuilder text = new StringBuilder();
+        for (final String rule : rules) {
+            text.append(rule).append('\n');
+        }
+        insertRules(text.toString(), index);
+    }
+
+    /**
+     * Inserts all rules of the given text.
+     *
+     * @param rules the rules to insert
+     * @param index the insert pos of the first rule
+     * @throws DOMException in case of error
+     * @see #insertRules(List, int)
+     */
+    public void insertRules(final String rules, final int index) throws DOMException {
+        final List<AbstractCSSRuleImpl> parsed;
+        try {
+            final CSSOMParser parser = new CSSOMParser();
+            parser.setParentStyleSheet(this);
+            parser.setErrorHandler(ThrowCssExceptionErrorHandler.INSTANCE);
+            parsed = parser.parseRules(rules).getRules();
+        }
+        catch (final CSSException e) {
+            throw new DOMExceptionImpl(
+                DOMException.SYNTAX_ERR,
+                DOMExceptionImpl.SYNTAX_ERROR,
+                e.getMessage());
+        }
+        catch (final IOException e) {
+            throw new DOMExceptionImpl(
+                DOMException.SYNTAX_ERR,
+                DOMExceptionImpl.SYNTAX_ERROR,
+                e.getMessage());
+        }
+
+        if (parsed.isEmpty()) {
+            throw new DOMExceptionImpl(
+                    DOMException.SYNTAX_ERR,
+                    DOMExceptionImpl.SYNTAX_ERROR,
+                    "Parsing rules '" + rules + "' failed.");
+        }
+        if (index < 0 || index > getCssRules().getLength()) {
+            throw new DOMExceptionImpl(
+                DOMException.INDEX_SIZE_ERR,
+                DOMExceptionImpl.INDEX_OUT_OF_BOUNDS,
+                "Index: " + index + ", Size: " + getCssRules().getLength());
+        }
+
+        final int msg = checkPlacement(parsed, index);
+        if (msg > -1) {
+            throw new DOMExceptionImpl(DOMException.HIERARCHY_REQUEST_ERR, msg);
+        }
+
+        getCssRules().insertAll(parsed, index);
+        rulesInserted(parsed, null, index);
+    }
+
+    // the same checks insertRule does for every single rule
+    private int checkPlacement(final List<AbstractCSSRuleImpl> rules, final int index) {
+        final CSSRuleListImpl cssRules = getCssRules();
+        final int leading = cssRules.getLeadingCharsetAndImportCount();
+
+        boolean onlyCharsetAndImport = true;
+        int pos = index;
+        for (final AbstractCSSRuleImpl r : rules) {
+            if (r instanceof CSSCharsetRuleImpl) {
+                if (pos != 0) {
+                    return DOMExceptionImpl.CHARSET_NOT_FIRST;
+                }
+                if (cssRules.getLength() > 0 && cssRules.getRules().get(0) instanceof CSSCharsetRuleImpl) {
+                    return DOMExceptionImpl.CHARSET_NOT_UNIQUE;
+                }
+            }
+            else if (r instanceof CSSImportRuleImpl) {
+                if (!onlyCharsetAndImport || index > leading) {
+                    return DOMExceptionImpl.IMPORT_NOT_FIRST;
+                }
+            }
+            else {
+                if (onlyCharsetAndImport) {
+                    // the first rule that has to follow all charset and import rules
+                    if (index < leading) {
+                        return DOMExceptionImpl.INSERT_BEFORE_IMPORT;
+                    }
+                    if (leading < cssRules.getCharsetAndImportCount()) {
+                        for (int i = index; i < cssRules.getLength(); i++) {
+                            final AbstractCSSRuleImpl ri = cssRules.getRules().get(i);
+                            if ((ri instanceof CSSCharsetRuleImpl) || (ri instanceof CSSImportRuleImpl)) {
+                                return DOMExceptionImpl.INSERT_BEFORE_IMPORT;
+                            }
+                        }
+                    }
+                }
+                onlyCharsetAndImport = false;
+            }
+            pos++;
+        }
+        return -1;
+    }
+
     /**
      * delete the rule at the given pos.
      *
@@ -218,7 +342,9 @@ else if (r instanceof CSSImportRuleImpl) {
      */
     public void deleteRule(final int index) throws DOMException {
         try {
+            final AbstractCSSRuleImpl r = getCssRules().getRules().get(index);
             getCssRules().delete(index);
+            ruleDeleted(r);
         }
         catch (final IndexOutOfBoundsException e) {
             throw new DOMExceptionImpl(
@@ -261,6 +387,7 @@ public void setMediaText(final String mediaText) {
             final CSSOMParser parser = new CSSOMParser();
             final MediaQueryList sml = parser.parseMedia(mediaText);
             media_ = new MediaListImpl(sml);
+            styleSheetChanged();
         }
         catch (final IOException e) {
             // TODO handle exception
@@ -279,6 +406,7 @@ public void setOwnerRule(final AbstractCSSRuleImpl ownerRule) {
      */
     public void setCssRules(final CSSRuleListImpl rules) {
         cssRules_ = rules;
+        styleSheetChanged();
     }
 
     @Override
@@ -359,16 +487,163 @@ public void resetRuleIndex() {
         index_ = null;
     }
 
+    /**
+     * Updates the rule index (if there is one) after a rule was inserted.
+     * @param rule the inserted rule
+     * @param parentRule the media rule the rule was inserted into or null
+     * @param position the position in the rule list
+     */
+    void ruleInserted(final AbstractCSSRuleImpl rule, final CSSMediaRuleImpl parentRule, final int position) {
+        if (index_ != null && !index_.insertRule(this, rule, parentRule, position)) {
+            resetRuleIndex();
+        }
+        if (styleSheetLists_ != null) {
+            final List<AbstractCSSRuleImpl> rules = Collections.singletonList(rule);
+            for (final CSSStyleSheetListImpl list : styleSheetLists_) {
+                list.rulesInserted(this, rules, parentRule, position);
+            }
+        }
+    }
+
+    /**
+     * Updates the rule index (if there is one) after a block of rules was inserted.
+     * @param rules the inserted rules
+     * @param parentRule the media rule the rules were inserted into or null
+     * @param position the position of the first rule in the rule list
+     */
+    void rulesInserted(final List<AbstractCSSRuleImpl> rules, final CSSMediaRuleImpl parentRule,
+            final int position) {
+        if (index_ != null && !index_.insertRules(this, rules, parentRule, position)) {
+            resetRuleIndex();
+        }
+        if (styleSheetLists_ != null) {
+            for (final CSSStyleSheetListImpl list : styleSheetLists_) {
+                list.rulesInserted(this, rules, parentRule, position);
+            }
+        }
+    }
+
+    /**
+     * Parses the deferred rules of all media rules matching the device
+     * (see {@link com.gargoylesoftware.css.parser.CSSOMParser#setMediaDevice(MediaDevice)});
+     * required if the device changes. The rule index is updated.
+     * @param device the device
+     * @return the number of media rules parsed
+     */
+    public int parseDeferredRules(final MediaDevice device) {
+        return parseDeferredRules(getCssRules(), device);
+    }
+
+    private static int parseDeferredRules(final CSSRuleListImpl rules, final MediaDevice device) {
+        int count = 0;
+        for (final AbstractCSSRuleImpl rule : rules.getRules()) {
+            if (rule instanceof CSSMediaRuleImpl) {
+                final CSSMediaRuleImpl mediaRule = (CSSMediaRuleImpl) rule;
+                if (mediaRule.isDeferred()) {
+                    if (!mediaRule.getMediaList().getMediaPredicate().matches(device)) {
+                        continue;
+                    }
+                    mediaRule.parseDeferredRules(device);
+                    count++;
+                }
+                count += parseDeferredRules(mediaRule.getCssRules(), device);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Updates the property index of the rule index (if there is one) after the
+     * declaration of a style rule was modified.
+     * @param rule the style rule
+     */
+    void declarationChanged(final CSSStyleRuleImpl rule) {
+        if (index_ != null) {
+            index_.declarationChanged(rule);
+        }
+    }
+
+    /**
+     * Updates the rule index (if there is one) after a rule was deleted.
+     * @param rule the deleted rule
+     */
+    void ruleDeleted(final AbstractCSSRuleImpl rule) {
+        if (index_ != null && !index_.removeRule(rule)) {
+            resetRuleIndex();
+        }
+        if (styleSheetLists_ != null) {
+            for (final CSSStyleSheetListImpl list : styleSheetLists_) {
+                list.ruleDeleted(this, rule);
+            }
+        }
+    }
+
+    /**
+     * Registers a style sheet list whose combined rule index has to be updated
+     * if the rules or the media of this sheet change.
+     * @param styleSheetList the list
+     */
+    void addStyleSheetList(final CSSStyleSheetListImpl styleSheetList) {
+        if (styleSheetLists_ == null) {
+            styleSheetLists_ = new ArrayList<>(1);
+        }
+        for (final CSSStyleSheetListImpl list : styleSheetLists_) {
+            if (list == styleSheetList) {
+                return;
+            }
+        }
+        styleSheetLists_.add(styleSheetList);
+    }
+
+    /**
+     * Unregisters a style sheet list.
+     * @param styleSheetList the list
+     */
+    void removeStyleSheetList(final CSSStyleSheetListImpl styleSheetList) {
+        if (styleSheetLists_ != null) {
+            for (int i = 0; i < styleSheetLists_.size(); i++) {
+                if (styleSheetLists_.get(i) == styleSheetList) {
+                    styleSheetLists_.remove(i);
+                    return;
+                }
+            }
+        }
+    }
+
+    private void styleSheetChanged() {
+        if (styleSheetLists_ != null) {
+            for (final CSSStyleSheetListImpl list : styleSheetLists_) {
+                list.styleSheetChanged(this);
+            }
+        }
+    }
+
     /**
      * SelectorEntry.
      */
     public static final class SelectorEntry {
+
+        /**
+         * Orders the entries by specificity; entries with the same specificity
+         * are ordered by sequence number.
+         */
+        public static final Comparator<SelectorEntry> CASCADE_ORDER = (e1, e2) -> {
+            final int result = Integer.compare(e1.getSpecificity(), e2.getSpecificity());
+            if (result != 0) {
+                return result;
+            }
+            return Long.compare(e1.sequence_, e2.sequence_);
+        };
+
         private Selector selector_;
         private CSSStyleRuleImpl rule_;
+        private long sequence_;
+        private List<SelectorEntry> bucket_;
 
-        SelectorEntry(final Selector selector, final CSSStyleRuleImpl rule) {
+        SelectorEntry(final Selector selector, final CSSStyleRuleImpl rule, final long sequence) {
             selector_ = selector;
             rule_ = rule;
+            sequence_ = sequence;
         }
 
         /**
@@ -384,6 +659,27 @@ public Selector getSelector() {
         public CSSStyleRuleImpl getRule() {
             return rule_;
         }
+
+        /**
+         * The sequence number reflects the order the selectors were added to the index
+         * (and its children); usually this is the document order.
+         * @return the sequence number
+         */
+        public long getSequence() {
+            return sequence_;
+        }
+
+        void setSequence(final long sequence) {
+            sequence_ = sequence;
+        }
+
+        /**
+         * @return the packed specificity of the selector
+         * @see Selector#getSpecificity()
+         */
+        public int getSpecificity() {
+            return selector_.getSpecificity();
+        }
     }
 
     /**
@@ -401,7 +697,7 @@ void add(final String key, final SelectorEntry selector) {
                     entry = new ArrayList<>();
                     keyToSelectors_.put(key, entry);
                 }
-                entry.add(selector);
+                addSorted(entry, selector);
             }
 
             List<SelectorEntry> get(final String key) {
@@ -411,6 +707,25 @@ List<SelectorEntry> get(final String key) {
                 }
                 return entry;
             }
+
+            void addAllTo(final SelectorEntryCursor cursor) {
+                for (final List<SelectorEntry> entries : keyToSelectors_.values()) {
+                    cursor.add(entries);
+                }
+            }
+        }
+
+        private static final long SEQUENCE_GAP = 1L << 20;
+        private static final long NO_SEQUENCE = -1;
+
+        // shared by the index and all its children
+        private static final class IndexState {
+            private long nextSequence_ = SEQUENCE_GAP;
+            private long step_ = SEQUENCE_GAP;
+            private final Map<CSSStyleRuleImpl, List<SelectorEntry>> ruleEntries_ = new IdentityHashMap<>();
+            // property name -> rules declaring it; built on first use
+            private Map<String, Set<CSSStyleRuleImpl>> propertyRules_;
+            private Map<CSSStyleRuleImpl, List<String>> ruleProperties_;
         }
 
         private static final MediaListImpl DEFAULT_MEDIA_LIST = new MediaListImpl(null);
@@ -418,9 +733,474 @@ List<SelectorEntry> get(final String key) {
         private final List<CSSStyleSheetRuleIndex> children_ = new ArrayList<>();
 
         private MediaListImpl mediaList_ = DEFAULT_MEDIA_LIST;
+        private MediaQueryPredicate mediaPredicate_ = MediaQueryPredicate.ALL;
+        private IndexState state_ = new IndexState();
         private final SelectorIndex elementSelectors_ = new SelectorIndex();
-        private final SelectorIndex classSelectors_ = new SelectorIndex();
+        // class name -> element name (null for any element) -> selectors
+        private final Map<String, SelectorIndex> classSelectors_ = new HashMap<>();
+        private final SelectorIndex idSelectors_ = new SelectorIndex();
+        private final SelectorIndex attributeSelectors_ = new SelectorIndex();
         private final List<SelectorEntry> otherSelectors_ = new ArrayList<>();
+        private final Map<String, CSSStyleSheetRuleIndex> pseudoElementIndexes_ = new HashMap<>();
+
+        /**
+         * Add a selector. The bucket is chosen based on the most selective part
+         * of the rightmost compound selector (id, class, attribute name, element name).
+         * Selectors targeting a pseudo element are stored separately and only returned
+         * if the pseudo element is requested.
+         *
+         * @param s the selector
+         * @param styleRule the rule
+         * @see #getSelectorEntriesIteratorFor(String, String, String[], String[], String)
+         */
+        public void addSelector(final Selector s, final CSSStyleRuleImpl styleRule) {
+            final PseudoElementSelector pseudoElement = RightmostKey.getPseudoElement(s);
+            if (pseudoElement == null) {
+                addToBucket(s, styleRule);
+                return;
+            }
+
+            final String name = pseudoElement.getLocalName().toLowerCase(Locale.ROOT);
+            CSSStyleSheetRuleIndex pseudoElementIndex = pseudoElementIndexes_.get(name);
+            if (pseudoElementIndex == null) {
+                pseudoElementIndex = new CSSStyleSheetRuleIndex();
+                pseudoElementIndex.state_ = state_;
+                pseudoElementIndexes_.put(name, pseudoElementIndex);
+            }
+            pseudoElementIndex.addToBucket(s, styleRule);
+        }
+
+        private void addToBucket(final Selector s, final CSSStyleRuleImpl styleRule) {
+            final ElementSelector compound = RightmostKey.getRightmostCompound(s);
+            if (compound == null) {
+                addOtherSelector(s, styleRule);
+                return;
+            }
+
+            final RightmostKey key = new RightmostKey(s);
+            switch (key.getKeyType()) {
+                case ID:
+                    idSelectors_.add(key.getValue(), newEntry(s, styleRule));
+                    break;
+                case CLASS:
+                    addClassSelector(compound, key.getValue(), s, styleRule);
+                    break;
+                case ATTRIBUTE:
+                    attributeSelectors_.add(key.getValue().toLowerCase(Locale.ROOT), newEntry(s, styleRule));
+                    break;
+                default:
+                    addElementSelector(compound, s, styleRule);
+                    break;
+            }
+        }
+
+        private void addAllTo(final SelectorEntryCursor cursor) {
+            elementSelectors_.addAllTo(cursor);
+            for (final SelectorIndex byElement : classSelectors_.values()) {
+                byElement.addAllTo(cursor);
+            }
+            idSelectors_.addAllTo(cursor);
+            attributeSelectors_.addAllTo(cursor);
+            cursor.add(otherSelectors_);
+        }
+
+        private SelectorEntry newEntry(final Selector s, final CSSStyleRuleImpl styleRule) {
+            final SelectorEntry entry = new SelectorEntry(s, styleRule, state_.nextSequence_);
+            state_.nextSequence_ += state_.step_;
+
+            List<SelectorEntry> ruleEntries = state_.ruleEntries_.get(styleRule);
+            if (ruleEntries == null) {
+                ruleEntries = new ArrayList<>(1);
+                state_.ruleEntries_.put(styleRule, ruleEntries);
+                if (state_.propertyRules_ != null) {
+                    indexProperties(styleRule);
+                }
+            }
+            ruleEntries.add(entry);
+            return entry;
+        }
+
+        private static void addSorted(final List<SelectorEntry> bucket, final SelectorEntry entry) {
+            entry.bucket_ = bucket;
+
+            final int size = bucket.size();
+            if (size == 0 || bucket.get(size - 1).sequence_ < entry.sequence_) {
+                bucket.add(entry);
+                return;
+            }
+            bucket.add(search(bucket, entry.sequence_), entry);
+        }
+
+        private static boolean removeSorted(final List<SelectorEntry> bucket, final SelectorEntry entry) {
+            final int pos = search(bucket, entry.sequence_);
+            if (pos < bucket.size() && bucket.get(pos) == entry) {
+                bucket.remove(pos);
+                return true;
+            }
+            return false;
+        }
+
+        // the position of the first entry with a sequence number not lower than the given one
+        private static int search(final List<SelectorEntry> bucket, final long sequence) {
+            int low = 0;
+            int high = bucket.size();
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (bucket.get(mid).sequence_ < sequence) {
+                    low = mid + 1;
+                }
+                else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Adds the selectors of a rule inserted into the style sheet (or into one of its media rules).
+         * The sequence numbers of the new entries are placed between the ones of the
+         * neighbor rules; if there is no room left, all entries are renumbered.
+         *
+         * @return false if the index could not be updated and has to be rebuilt
+         */
+        boolean insertRule(final CSSStyleSheetImpl sheet, final AbstractCSSRuleImpl rule,
+                final CSSMediaRuleImpl parentRule, final int position) {
+            return insertRules(sheet, Collections.singletonList(rule), parentRule, position);
+        }
+
+        /**
+         * Adds the selectors of a block of rules inserted into the style sheet (or into one of its media rules).
+         *
+         * @return false if the index could not be updated and has to be rebuilt
+         * @see #insertRule(CSSStyleSheetImpl, AbstractCSSRuleImpl, CSSMediaRuleImpl, int)
+         */
+        boolean insertRules(final CSSStyleSheetImpl sheet, final List<AbstractCSSRuleImpl> rules,
+                final CSSMediaRuleImpl parentRule, final int position) {
+            int count = 0;
+            for (final AbstractCSSRuleImpl rule : rules) {
+                if (rule instanceof CSSImportRuleImpl) {
+                    // the content of imported sheets is unknown here
+                    return false;
+                }
+                count += countSelectors(rule);
+            }
+            if (count == 0) {
+                return true;
+            }
+            final int last = position + rules.size() - 1;
+
+            final List<CSSMediaRuleImpl> mediaRules = new ArrayList<>();
+            AbstractCSSRuleImpl current = parentRule;
+            while (current != null) {
+                if (!(current instanceof CSSMediaRuleImpl)) {
+                    return false;
+                }
+                mediaRules.add(0, (CSSMediaRuleImpl) current);
+                current = current.getParentRule();
+            }
+            if (!mediaRules.isEmpty() && indexOf(sheet.getCssRules().getRules(), mediaRules.get(0)) < 0) {
+                // not part of this style sheet
+                return true;
+            }
+
+            long previous = sequenceBefore(sheet, parentRule, position);
+            long next = sequenceAfter(sheet, parentRule, last);
+            long step = SEQUENCE_GAP;
+            if (next != NO_SEQUENCE) {
+                step = (next - previous) / (count + 1);
+                if (step < 1) {
+                    if (!renumber(sheet)) {
+                        return false;
+                    }
+                    previous = sequenceBefore(sheet, parentRule, position);
+                    next = sequenceAfter(sheet, parentRule, last);
+                    step = (next - previous) / (count + 1);
+                    if (step < 1) {
+                        return false;
+                    }
+                }
+            }
+
+            CSSStyleSheetRuleIndex target = this;
+            for (final CSSMediaRuleImpl mediaRule : mediaRules) {
+                target = target.addMedia(mediaRule.getMediaList());
+            }
+
+            final long nextSequence = state_.nextSequence_;
+            state_.nextSequence_ = previous + step;
+            state_.step_ = step;
+            final RuleIndexBuilder builder = new RuleIndexBuilder(target);
+            for (final AbstractCSSRuleImpl rule : rules) {
+                builder.addRule(rule);
+            }
+            state_.nextSequence_ = Math.max(nextSequence, state_.nextSequence_);
+            state_.step_ = SEQUENCE_GAP;
+            return true;
+        }
+
+        /**
+         * Removes the selectors of a rule deleted from the style sheet (or from one of its media rules).
+         *
+         * @return false if the index could not be updated and has to be rebuilt
+         */
+        boolean removeRule(final AbstractCSSRuleImpl rule) {
+            if (rule instanceof CSSImportRuleImpl) {
+                return false;
+            }
+
+            if (rule instanceof CSSStyleRuleImpl) {
+                final List<SelectorEntry> entries = state_.ruleEntries_.remove(rule);
+                if (entries == null) {
+                    // not indexed
+                    return true;
+                }
+                if (state_.propertyRules_ != null) {
+                    unindexProperties((CSSStyleRuleImpl) rule);
+                }
+                for (final SelectorEntry entry : entries) {
+                    if (!removeSorted(entry.bucket_, entry)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            if (rule instanceof CSSMediaRuleImpl) {
+                for (final AbstractCSSRuleImpl child : childRules((CSSMediaRuleImpl) rule)) {
+                    if (!removeRule(child)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Returns the style rules of this index (and all its children) declaring
+         * the given property. The property index is built on first access and
+         * updated if the declarations of the indexed rules are modified.
+         *
+         * @param propertyName the property name
+         * @return the rules, an unmodifiable set using identity comparison
+         */
+        public Set<CSSStyleRuleImpl> getRulesDeclaring(final String propertyName) {
+            if (state_.propertyRules_ == null) {
+                state_.propertyRules_ = new HashMap<>();
+                state_.ruleProperties_ = new IdentityHashMap<>();
+                for (final CSSStyleRuleImpl rule : state_.ruleEntries_.keySet()) {
+                    indexProperties(rule);
+                }
+            }
+
+            final Set<CSSStyleRuleImpl> rules = state_.propertyRules_.get(propertyName.toLowerCase(Locale.ROOT));
+            if (rules == null) {
+                return Collections.emptySet();
+            }
+            return Collections.unmodifiableSet(rules);
+        }
+
+        /**
+         * Updates the property index after the declaration of a rule was modified.
+         */
+        void declarationChanged(final CSSStyleRuleImpl rule) {
+            if (state_.propertyRules_ != null && state_.ruleEntries_.containsKey(rule)) {
+                unindexProperties(rule);
+                indexProperties(rule);
+            }
+        }
+
+        private void indexProperties(final CSSStyleRuleImpl rule) {
+            final CSSStyleDeclarationImpl style = rule.getStyle();
+            if (style == null) {
+                return;
+            }
+
+            final List<String> names = new ArrayList<>(style.getLength());
+            for (final Property property : style.getProperties()) {
+                final String name = property.getName().toLowerCase(Locale.ROOT);
+                Set<CSSStyleRuleImpl> rules = state_.propertyRules_.get(name);
+                if (rules == null) {
+                    rules = Collections.newSetFromMap(new IdentityHashMap<>());
+                    state_.propertyRules_.put(name, rules);
+                }
+                if (rules.add(rule)) {
+                    names.add(name);
+                }
+            }
+            state_.ruleProperties_.put(rule, names);
+        }
+
+        private void unindexProperties(final CSSStyleRuleImpl rule) {
+            final List<String> names = state_.ruleProperties_.remove(rule);
+            if (names == null) {
+                return;
+            }
+
+            for (final String name : names) {
+                final Set<CSSStyleRuleImpl> rules = state_.propertyRules_.get(name);
+                rules.remove(rule);
+                if (rules.isEmpty()) {
+                    state_.propertyRules_.remove(name);
+                }
+            }
+        }
+
+        private static int countSelectors(final AbstractCSSRuleImpl rule) {
+            if (rule instanceof CSSStyleRuleImpl) {
+                final SelectorList selectors = ((CSSStyleRuleImpl) rule).getSelectors();
+                return selectors == null ? 0 : selectors.size();
+            }
+            if (rule instanceof CSSMediaRuleImpl) {
+                int count = 0;
+                for (final AbstractCSSRuleImpl child : childRules((CSSMediaRuleImpl) rule)) {
+                    count += countSelectors(child);
+                }
+                return count;
+            }
+            return 0;
+        }
+
+        /**
+         * The rules of deferred media rules are not indexed; they must not be parsed
+         * as a side effect of updating the index.
+         */
+        private static List<AbstractCSSRuleImpl> childRules(final CSSMediaRuleImpl mediaRule) {
+            if (mediaRule.isDeferred()) {
+                return Collections.emptyList();
+            }
+            return mediaRule.getCssRules().getRules();
+        }
+
+        private static List<AbstractCSSRuleImpl> rulesOf(final CSSStyleSheetImpl sheet,
+                final CSSMediaRuleImpl mediaRule) {
+            if (mediaRule == null) {
+                return sheet.getCssRules().getRules();
+            }
+            return mediaRule.getCssRules().getRules();
+        }
+
+        private static int indexOf(final List<AbstractCSSRuleImpl> rules, final AbstractCSSRuleImpl rule) {
+            for (int i = 0; i < rules.size(); i++) {
+                if (rules.get(i) == rule) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private long sequenceBefore(final CSSStyleSheetImpl sheet, final CSSMediaRuleImpl parentRule,
+                final int position) {
+            CSSMediaRuleImpl mediaRule = parentRule;
+            List<AbstractCSSRuleImpl> rules = rulesOf(sheet, mediaRule);
+            int pos = position;
+            while (true) {
+                for (int i = pos - 1; i >= 0; i--) {
+                    final long sequence = lastSequence(rules.get(i));
+                    if (sequence != NO_SEQUENCE) {
+                        return sequence;
+                    }
+                }
+                if (mediaRule == null) {
+                    return 0;
+                }
+
+                final CSSMediaRuleImpl parent = (CSSMediaRuleImpl) mediaRule.getParentRule();
+                rules = rulesOf(sheet, parent);
+                pos = indexOf(rules, mediaRule);
+                mediaRule = parent;
+            }
+        }
+
+        private long sequenceAfter(final CSSStyleSheetImpl sheet, final CSSMediaRuleImpl parentRule,
+                final int position) {
+            CSSMediaRuleImpl mediaRule = parentRule;
+            List<AbstractCSSRuleImpl> rules = rulesOf(sheet, mediaRule);
+            int pos = position;
+            while (true) {
+                for (int i = pos + 1; i < rules.size(); i++) {
+                    final long sequence = firstSequence(rules.get(i));
+                    if (sequence != NO_SEQUENCE) {
+                        return sequence;
+                    }
+                }
+                if (mediaRule == null) {
+                    return NO_SEQUENCE;
+                }
+
+                final CSSMediaRuleImpl parent = (CSSMediaRuleImpl) mediaRule.getParentRule();
+                rules = rulesOf(sheet, parent);
+                pos = indexOf(rules, mediaRule);
+                mediaRule = parent;
+            }
+        }
+
+        private long lastSequence(final AbstractCSSRuleImpl rule) {
+            if (rule instanceof CSSStyleRuleImpl) {
+                final List<SelectorEntry> entries = state_.ruleEntries_.get(rule);
+                if (entries != null && !entries.isEmpty()) {
+                    return entries.get(entries.size() - 1).sequence_;
+                }
+            }
+            else if (rule instanceof CSSMediaRuleImpl) {
+                final List<AbstractCSSRuleImpl> rules = childRules((CSSMediaRuleImpl) rule);
+                for (int i = rules.size() - 1; i >= 0; i--) {
+                    final long sequence = lastSequence(rules.get(i));
+                    if (sequence != NO_SEQUENCE) {
+                        return sequence;
+                    }
+                }
+            }
+            return NO_SEQUENCE;
+        }
+
+        private long firstSequence(final AbstractCSSRuleImpl rule) {
+            if (rule instanceof CSSStyleRuleImpl) {
+                final List<SelectorEntry> entries = state_.ruleEntries_.get(rule);
+                if (entries != null && !entries.isEmpty()) {
+                    return entries.get(0).sequence_;
+                }
+            }
+            else if (rule instanceof CSSMediaRuleImpl) {
+                for (final AbstractCSSRuleImpl child : childRules((CSSMediaRuleImpl) rule)) {
+                    final long sequence = firstSequence(child);
+                    if (sequence != NO_SEQUENCE) {
+                        return sequence;
+                    }
+                }
+            }
+            return NO_SEQUENCE;
+        }
+
+        // assigns new sequence numbers in document order; the order inside the buckets does not change
+        private boolean renumber(final CSSStyleSheetImpl sheet) {
+            int total = 0;
+            for (final List<SelectorEntry> entries : state_.ruleEntries_.values()) {
+                total += entries.size();
+            }
+
+            state_.nextSequence_ = SEQUENCE_GAP;
+            return renumber(sheet.getCssRules().getRules()) == total;
+        }
+
+        private int renumber(final List<AbstractCSSRuleImpl> rules) {
+            int count = 0;
+            for (final AbstractCSSRuleImpl rule : rules) {
+                if (rule instanceof CSSStyleRuleImpl) {
+                    final List<SelectorEntry> entries = state_.ruleEntries_.get(rule);
+                    if (entries != null) {
+                        for (final SelectorEntry entry : entries) {
+                            entry.sequence_ = state_.nextSequence_;
+                            state_.nextSequence_ += SEQUENCE_GAP;
+                            count++;
+                        }
+                    }
+                }
+                else if (rule instanceof CSSMediaRuleImpl) {
+                    count += renumber(childRules((CSSMediaRuleImpl) rule));
+                }
+            }
+            return count;
+        }
 
         /**
          * Add an ElementSelector.
@@ -432,7 +1212,7 @@ List<SelectorEntry> get(final String key) {
         public void addElementSelector(final ElementSelector elementSelector,
                                         final Selector s, final CSSStyleRuleImpl styleRule) {
             final String elementName = elementSelector.getLocalNameLowerCase();
-            elementSelectors_.add(elementName, new SelectorEntry(s, styleRule));
+            elementSelectors_.add(elementName, newEntry(s, styleRule));
         }
 
         /**
@@ -445,15 +1225,12 @@ public void addElementSelector(final ElementSelector elementSelector,
          */
         public void addClassSelector(final ElementSelector elementSelector, final String className,
                 final Selector s, final CSSStyleRuleImpl styleRule) {
-            final String elementName = elementSelector.getLocalNameLowerCase();
-            final String key;
-            if (elementName == null) {
-                key = "." + className;
-            }
-            else {
-                key = elementName + "." + className;
+            SelectorIndex byElement = classSelectors_.get(className);
+            if (byElement == null) {
+                byElement = new SelectorIndex();
+                classSelectors_.put(className, byElement);
             }
-            classSelectors_.add(key, new SelectorEntry(s, styleRule));
+            byElement.add(elementSelector.getLocalNameLowerCase(), newEntry(s, styleRule));
         }
 
         /**
@@ -463,8 +1240,8 @@ public void addClassSelector(final ElementSelector elementSelector, final String
          * @param styleRule the rule
          */
         public void addOtherSelector(final Selector s, final CSSStyleRuleImpl styleRule) {
-            final SelectorEntry selectorEntry = new SelectorEntry(s, styleRule);
-            otherSelectors_.add(selectorEntry);
+            final SelectorEntry selectorEntry = newEntry(s, styleRule);
+            addSorted(otherSelectors_, selectorEntry);
         }
 
         /**
@@ -482,6 +1259,8 @@ public CSSStyleSheetRuleIndex addMedia(final MediaListImpl mediaList) {
 
             final CSSStyleSheetRuleIndex index = new CSSStyleSheetRuleIndex();
             index.mediaList_ = mediaList;
+            index.mediaPredicate_ = mediaList.getMediaPredicate();
+            index.state_ = state_;
 
             children_.add(index);
             return index;
@@ -494,6 +1273,13 @@ public MediaListImpl getMediaList() {
             return mediaList_;
         }
 
+        /**
+         * @return the compiled media list
+         */
+        public MediaQueryPredicate getMediaPredicate() {
+            return mediaPredicate_;
+        }
+
         /**
          * @return the children
          */
@@ -507,78 +1293,212 @@ public List<CSSStyleSheetRuleIndex> getChildren() {
          * @return Iterator of SelectorEntry
          */
         public Iterator<SelectorEntry> getSelectorEntriesIteratorFor(final String elementName, final String[] classes) {
-            return new SelectorEntriesIterator(this, elementName, classes);
+            return new SelectorEntriesIterator(new SelectorEntryCursor().resetAll(this, elementName, classes));
         }
-    }
 
-    static final class SelectorEntriesIterator implements Iterator<SelectorEntry> {
-        private LinkedList<Iterator<SelectorEntry>> iterators_;
+        /**
+         * Returns all selectors that may match the element. Selectors added using
+         * {@link #addOtherSelector(Selector, CSSStyleRuleImpl)} are always part of the result.
+         *
+         * @param elementName the lower case element name
+         * @param id the id of the element, may be null
+         * @param classes the classes of the element, may be null
+         * @param attributeNames the names of the attributes of the element, may be null
+         * @param pseudoElement the pseudo element (like 'before'); null for the element itself
+         * @return Iterator of SelectorEntry
+         */
+        public Iterator<SelectorEntry> getSelectorEntriesIteratorFor(final String elementName, final String id,
+                final String[] classes, final String[] attributeNames, final String pseudoElement) {
+            return new SelectorEntriesIterator(
+                    new SelectorEntryCursor().reset(this, elementName, id, classes, attributeNames, pseudoElement));
+        }
+    }
 
-        SelectorEntriesIterator(final CSSStyleSheetRuleIndex index,
-                final String elementName,
-                final String[] classes) {
+    /**
+     * Reusable cursor over the selectors of a {@link CSSStyleSheetRuleIndex} that may
+     * match an element. All relevant buckets are merged; the entries are returned
+     * ordered by their sequence number (document order). Once the internal arrays
+     * are large enough, reset() and next() do not allocate any objects.
+     * This class is not thread safe.
+     */
+    public static final class SelectorEntryCursor {
+        private final List<List<SelectorEntry>> lists_ = new ArrayList<>();
+        private int[] positions_ = new int[16];
 
-            iterators_ = new LinkedList<>();
+        /**
+         * Prepares the cursor for the given element; children of the index
+         * (media rules) are not included.
+         *
+         * @param index the index
+         * @param elementName the lower case element name
+         * @param id the id of the element, may be null
+         * @param classes the classes of the element, may be null
+         * @param attributeNames the names of the attributes of the element, may be null
+         * @param pseudoElement the pseudo element (like 'before'); null for the element itself
+         * @return this
+         */
+        public SelectorEntryCursor reset(final CSSStyleSheetRuleIndex index, final String elementName,
+                final String id, final String[] classes, final String[] attributeNames, final String pseudoElement) {
+            lists_.clear();
+            return include(index, elementName, id, classes, attributeNames, pseudoElement);
+        }
 
-            List<SelectorEntry> selectors = index.elementSelectors_.get(null);
-            if (!selectors.isEmpty()) {
-                iterators_.add(selectors.iterator());
+        /**
+         * Adds the selectors of another index (usually a child for a media rule) that
+         * may match the element; the result is still ordered by sequence number.
+         *
+         * @param index the index
+         * @param elementName the lower case element name
+         * @param id the id of the element, may be null
+         * @param classes the classes of the element, may be null
+         * @param attributeNames the names of the attributes of the element, may be null
+         * @param pseudoElement the pseudo element (like 'before'); null for the element itself
+         * @return this
+         */
+        public SelectorEntryCursor include(final CSSStyleSheetRuleIndex index, final String elementName,
+                final String id, final String[] classes, final String[] attributeNames, final String pseudoElement) {
+            CSSStyleSheetRuleIndex buckets = index;
+            if (pseudoElement != null) {
+                buckets = index.pseudoElementIndexes_.get(pseudoElement.toLowerCase(Locale.ROOT));
             }
 
-            selectors = index.elementSelectors_.get(elementName);
-            if (!selectors.isEmpty()) {
-                iterators_.add(selectors.iterator());
-            }
+            if (buckets != null) {
+                addBuckets(buckets, elementName, classes);
 
-            if (classes != null) {
-                for (final String clazz : classes) {
-                    selectors = index.classSelectors_.get("." + clazz);
-                    if (selectors != null && !selectors.isEmpty()) {
-                        iterators_.add(selectors.iterator());
-                    }
+                if (id != null) {
+                    add(buckets.idSelectors_.get(id));
+                }
 
-                    if (elementName != null) {
-                        selectors = index.classSelectors_.get(elementName + "." + clazz);
-                        if (selectors != null && !selectors.isEmpty()) {
-                            iterators_.add(selectors.iterator());
-                        }
+                if (attributeNames != null) {
+                    for (final String attributeName : attributeNames) {
+                        add(buckets.attributeSelectors_.get(attributeName.toLowerCase(Locale.ROOT)));
                     }
                 }
             }
 
-            if (index.otherSelectors_ != null && !index.otherSelectors_.isEmpty()) {
-                iterators_.add(index.otherSelectors_.iterator());
+            add(index.otherSelectors_);
+            return this;
+        }
+
+        /**
+         * Adds all selectors keyed by an attribute; required if the attribute names
+         * of the element are not known.
+         *
+         * @param index the index
+         * @param pseudoElement the pseudo element (like 'before'); null for the element itself
+         * @return this
+         */
+        public SelectorEntryCursor includeAttributeSelectors(final CSSStyleSheetRuleIndex index,
+                final String pseudoElement) {
+            CSSStyleSheetRuleIndex buckets = index;
+            if (pseudoElement != null) {
+                buckets = index.pseudoElementIndexes_.get(pseudoElement.toLowerCase(Locale.ROOT));
             }
+            if (buckets != null) {
+                buckets.attributeSelectors_.addAllTo(this);
+            }
+            return this;
         }
 
-        @Override
+        // all selectors that might match if only the element name and the classes are known
+        SelectorEntryCursor resetAll(final CSSStyleSheetRuleIndex index,
+                final String elementName, final String[] classes) {
+            lists_.clear();
+
+            addBuckets(index, elementName, classes);
+            index.idSelectors_.addAllTo(this);
+            index.attributeSelectors_.addAllTo(this);
+            for (final CSSStyleSheetRuleIndex pseudoElementIndex : index.pseudoElementIndexes_.values()) {
+                pseudoElementIndex.addAllTo(this);
+            }
+            add(index.otherSelectors_);
+            return this;
+        }
+
+        /**
+         * @return the next entry or null if there are no more entries
+         */
         public SelectorEntry next() {
-            if (iterators_.isEmpty()) {
+            int best = -1;
+            long bestSequence = Long.MAX_VALUE;
+            for (int i = 0; i < lists_.size(); i++) {
+                final List<SelectorEntry> list = lists_.get(i);
+                final int position = positions_[i];
+                if (position < list.size()) {
+                    final long sequence = list.get(position).sequence_;
+                    if (sequence < bestSequence) {
+                        bestSequence = sequence;
+                        best = i;
+                    }
+                }
+            }
+
+            if (best < 0) {
                 return null;
             }
+            return lists_.get(best).get(positions_[best]++);
+        }
 
-            final Iterator<SelectorEntry> iter = iterators_.peek();
-            if (iter.hasNext()) {
-                return iter.next();
+        private void addBuckets(final CSSStyleSheetRuleIndex index, final String elementName, final String[] classes) {
+            add(index.elementSelectors_.get(null));
+            if (elementName != null) {
+                add(index.elementSelectors_.get(elementName));
             }
 
-            iterators_.removeFirst();
-            return next();
+            if (classes != null) {
+                for (final String clazz : classes) {
+                    final CSSStyleSheetRuleIndex.SelectorIndex byElement = index.classSelectors_.get(clazz);
+                    if (byElement != null) {
+                        add(byElement.get(null));
+                        if (elementName != null) {
+                            add(byElement.get(elementName));
+                        }
+                    }
+                }
+            }
         }
 
-        @Override
-        public boolean hasNext() {
-            if (iterators_.isEmpty()) {
-                return false;
+        void add(final List<SelectorEntry> selectors) {
+            if (selectors.isEmpty()) {
+                return;
+            }
+            // the same class might be given twice
+            for (final List<SelectorEntry> list : lists_) {
+                if (list == selectors) {
+                    return;
+                }
             }
 
-            final Iterator<SelectorEntry> iter = iterators_.peek();
-            if (iter.hasNext()) {
-                return true;
+            final int size = lists_.size();
+            if (size == positions_.length) {
+                positions_ = Arrays.copyOf(positions_, size * 2);
             }
+            positions_[size] = 0;
+            lists_.add(selectors);
+        }
+    }
 
-            iterators_.pop();
-            return hasNext();
+    static final class SelectorEntriesIterator implements Iterator<SelectorEntry> {
+        private final SelectorEntryCursor cursor_;
+        private SelectorEntry next_;
+
+        SelectorEntriesIterator(final SelectorEntryCursor cursor) {
+            cursor_ = cursor;
+            next_ = cursor.next();
+        }
+
+        @Override
+        public SelectorEntry next() {
+            final SelectorEntry result = next_;
+            if (result != null) {
+                next_ = cursor_.next();
+            }
+            return result;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next_ != null;
         }
     }
 }
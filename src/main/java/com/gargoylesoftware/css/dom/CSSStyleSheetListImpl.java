@@ -27,6 +27,7 @@
  */
 public class CSSStyleSheetListImpl {
     private List<CSSStyleSheetImpl> cssStyleSheets_;
+    private StyleSheetListRuleIndex ruleIndex_;
 
     /**
      * @return the list of style sheets
@@ -52,9 +53,113 @@ public int getLength() {
      */
     public void add(final CSSStyleSheetImpl cssStyleSheet) {
         getCSSStyleSheets().add(cssStyleSheet);
+        if (ruleIndex_ != null) {
+            ruleIndex_.addStyleSheet(cssStyleSheet);
+            cssStyleSheet.addStyleSheetList(this);
+        }
+    }
+
+    /**
+     * Removes a CSSStyleSheet.
+     *
+     * @param cssStyleSheet the CSSStyleSheet
+     * @return true if the style sheet was part of this list
+     */
+    public boolean remove(final CSSStyleSheetImpl cssStyleSheet) {
+        final List<CSSStyleSheetImpl> styleSheets = getCSSStyleSheets();
+        for (int i = 0; i < styleSheets.size(); i++) {
+            if (styleSheets.get(i) == cssStyleSheet) {
+                styleSheets.remove(i);
+                if (ruleIndex_ != null) {
+                    ruleIndex_.removeStyleSheet(cssStyleSheet);
+                    if (!contains(cssStyleSheet)) {
+                        cssStyleSheet.removeStyleSheetList(this);
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
     }
     // end StyleSheetList
 
+    private boolean contains(final CSSStyleSheetImpl cssStyleSheet) {
+        for (final CSSStyleSheetImpl styleSheet : getCSSStyleSheets()) {
+            if (styleSheet == cssStyleSheet) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the combined rule index of all style sheets; the index is built on
+     * first access and updated by {@link #add(CSSStyleSheetImpl)},
+     * {@link #remove(CSSStyleSheetImpl)} and if the rules or the media of one
+     * of the sheets change. Call {@link #resetRuleIndex()} if the list
+     * returned by {@link #getCSSStyleSheets()} was modified directly.
+     *
+     * @return the rule index
+     */
+    public StyleSheetListRuleIndex getRuleIndex() {
+        if (ruleIndex_ == null) {
+            ruleIndex_ = new StyleSheetListRuleIndex(getCSSStyleSheets());
+            for (final CSSStyleSheetImpl styleSheet : getCSSStyleSheets()) {
+                styleSheet.addStyleSheetList(this);
+            }
+        }
+        return ruleIndex_;
+    }
+
+    /**
+     * Drops the combined rule index; it will be rebuilt on next access.
+     */
+    public void resetRuleIndex() {
+        if (ruleIndex_ != null) {
+            for (final CSSStyleSheetImpl styleSheet : getCSSStyleSheets()) {
+                styleSheet.removeStyleSheetList(this);
+            }
+        }
+        ruleIndex_ = null;
+    }
+
+    /**
+     * Updates the combined rule index (if there is one) after a block of rules was
+     * inserted into one of the style sheets.
+     * @param cssStyleSheet the style sheet
+     * @param rules the inserted rules
+     * @param parentRule the media rule the rules were inserted into or null
+     * @param position the position of the first rule in the rule list
+     */
+    void rulesInserted(final CSSStyleSheetImpl cssStyleSheet, final List<AbstractCSSRuleImpl> rules,
+            final CSSMediaRuleImpl parentRule, final int position) {
+        if (ruleIndex_ != null && !ruleIndex_.insertRules(cssStyleSheet, rules, parentRule, position)) {
+            styleSheetChanged(cssStyleSheet);
+        }
+    }
+
+    /**
+     * Updates the combined rule index (if there is one) after a rule was deleted
+     * from one of the style sheets.
+     * @param cssStyleSheet the style sheet
+     * @param rule the deleted rule
+     */
+    void ruleDeleted(final CSSStyleSheetImpl cssStyleSheet, final AbstractCSSRuleImpl rule) {
+        if (ruleIndex_ != null && !ruleIndex_.removeRule(cssStyleSheet, rule)) {
+            styleSheetChanged(cssStyleSheet);
+        }
+    }
+
+    /**
+     * Re-indexes a style sheet after its rule list or its media were replaced.
+     * @param cssStyleSheet the style sheet
+     */
+    void styleSheetChanged(final CSSStyleSheetImpl cssStyleSheet) {
+        if (ruleIndex_ != null && !ruleIndex_.updateStyleSheet(cssStyleSheet)) {
+            resetRuleIndex();
+        }
+    }
+
     /**
      * Merges all StyleSheets in this list into one.
      *
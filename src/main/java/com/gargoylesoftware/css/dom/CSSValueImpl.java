@@ -22,10 +22,10 @@
 import org.w3c.dom.DOMException;
 
 import com.gargoylesoftware.css.parser.AbstractLocatable;
-import com.gargoylesoftware.css.parser.CSSOMParser;
 import com.gargoylesoftware.css.parser.LexicalUnit;
 import com.gargoylesoftware.css.parser.LexicalUnit.LexicalUnitType;
 import com.gargoylesoftware.css.parser.LexicalUnitImpl;
+import com.gargoylesoftware.css.parser.PropertyValueCache;
 import com.gargoylesoftware.css.util.LangUtils;
 
 /**
@@ -157,6 +157,7 @@ public enum CSSPrimitiveValueType {
     }
 
     private Object value_;
+    private LexicalUnit lexicalUnit_;
 
     /**
      * @return the value
@@ -165,12 +166,20 @@ public Object getValue() {
         return value_;
     }
 
+    /**
+     * @return the lexical unit (the first of the chain) this value was created from
+     */
+    public LexicalUnit getLexicalUnit() {
+        return lexicalUnit_;
+    }
+
     /**
      * Constructor.
      * @param value the lexical unit value
      * @param forcePrimitive true or false
      */
     public CSSValueImpl(final LexicalUnit value, final boolean forcePrimitive) {
+        lexicalUnit_ = value;
         LexicalUnit parameters = null;
         if (value != null) {
             parameters = value.getParameters();
@@ -272,9 +281,9 @@ public String getCssText() {
      */
     public void setCssText(final String cssText) throws DOMException {
         try {
-            final CSSOMParser parser = new CSSOMParser();
-            final CSSValueImpl v2 = parser.parsePropertyValue(cssText);
+            final CSSValueImpl v2 = PropertyValueCache.DEFAULT.parsePropertyValue(cssText);
             value_ = v2.value_;
+            lexicalUnit_ = v2.lexicalUnit_;
         }
         catch (final Exception e) {
             throw new DOMExceptionImpl(
@@ -409,6 +418,7 @@ public LexicalUnit.LexicalUnitType getLexicalUnitType() {
      */
     public void setDoubleValue(final double doubleValue) throws DOMException {
         value_ = LexicalUnitImpl.createNumber(null, doubleValue);
+        lexicalUnit_ = (LexicalUnit) value_;
     }
 
     /**
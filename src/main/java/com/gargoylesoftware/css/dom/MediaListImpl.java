@@ -26,6 +26,7 @@
 import com.gargoylesoftware.css.parser.CSSParseException;
 import com.gargoylesoftware.css.parser.media.MediaQuery;
 import com.gargoylesoftware.css.parser.media.MediaQueryList;
+import com.gargoylesoftware.css.parser.media.MediaQueryPredicate;
 import com.gargoylesoftware.css.util.LangUtils;
 import com.gargoylesoftware.css.util.ThrowCssExceptionErrorHandler;
 
@@ -37,6 +38,8 @@
 public class MediaListImpl extends AbstractLocatable implements Serializable {
 
     private List<MediaQuery> mediaQueries_;
+    // compiled on demand, reset when the media queries are replaced
+    private transient MediaQueryPredicate mediaPredicate_;
 
     /**
      * Creates new MediaList.
@@ -69,6 +72,19 @@ public String getMediaText() {
         return sb.toString();
     }
 
+    /**
+     * @return the compiled predicate of this list; the predicate is created
+     *         on first access and reused until the media queries are replaced
+     */
+    public MediaQueryPredicate getMediaPredicate() {
+        MediaQueryPredicate predicate = mediaPredicate_;
+        if (predicate == null) {
+            predicate = MediaQueryPredicate.compile(this);
+            mediaPredicate_ = predicate;
+        }
+        return predicate;
+    }
+
     /**
      * Parses the given media text.
      * @param mediaText text to be parsed
@@ -117,6 +133,7 @@ public String toString() {
      * @param media the media queries string to be parsed
      */
     public void setMedia(final List<String> media) {
+        mediaPredicate_ = null;
         mediaQueries_.clear();
         for (final String medium : media) {
             mediaQueries_.add(new MediaQuery(medium));
@@ -124,6 +141,7 @@ public void setMedia(final List<String> media) {
     }
 
     private void setMediaList(final MediaQueryList mediaList) {
+        mediaPredicate_ = null;
         if (mediaList != null) {
             mediaQueries_.addAll(mediaList.getMediaQueries());
         }
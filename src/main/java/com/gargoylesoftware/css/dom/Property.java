@@ -27,6 +27,8 @@ public class Property extends AbstractLocatable implements Serializable {
     private String name_;
     private CSSValueImpl value_;
     private boolean important_;
+    // the id assigned by the last registry asking for it, see getCachedId()
+    private transient CachedId cachedId_;
 
     /**
      * Creates new Property.
@@ -54,6 +56,32 @@ public String getName() {
      */
     public void setName(final String name) {
         name_ = name;
+        cachedId_ = null;
+    }
+
+    /**
+     * Returns the id stored by {@link #setCachedId(Object, int)} for the given owner.
+     * Registries mapping property names to ids (like the property ids of a cascade)
+     * use this to look up the name only once; the id is dropped if the name changes.
+     * @param owner the registry the id belongs to
+     * @return the id or -1 if there is no id for this owner
+     */
+    public int getCachedId(final Object owner) {
+        final CachedId cachedId = cachedId_;
+        if (cachedId == null || cachedId.owner_ != owner) {
+            return -1;
+        }
+        return cachedId.id_;
+    }
+
+    /**
+     * Stores the id assigned to the name of this property by the given owner;
+     * replaces the id of any other owner.
+     * @param owner the registry the id belongs to
+     * @param id the id
+     */
+    public void setCachedId(final Object owner, final int id) {
+        cachedId_ = new CachedId(owner, id);
     }
 
     /**
@@ -134,4 +162,14 @@ public int hashCode() {
         hash = LangUtils.hashCode(hash, value_);
         return hash;
     }
+
+    private static final class CachedId {
+        private final Object owner_;
+        private final int id_;
+
+        CachedId(final Object owner, final int id) {
+            owner_ = owner;
+            id_ = id;
+        }
+    }
 }
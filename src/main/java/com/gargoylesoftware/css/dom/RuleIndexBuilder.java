@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.dom;
+
+import java.util.Stack;
+
+import com.gargoylesoftware.css.dom.CSSStyleSheetImpl.CSSStyleSheetRuleIndex;
+import com.gargoylesoftware.css.parser.selector.Selector;
+import com.gargoylesoftware.css.parser.selector.SelectorList;
+
+/**
+ * Builds a {@link CSSStyleSheetRuleIndex}. The builder can be driven by
+ * parser events (the rules are added while parsing) or can walk an
+ * already existing style sheet.
+ * Every selector is added to the bucket of the most selective part of
+ * its rightmost compound selector; media rules are added as children
+ * using {@link CSSStyleSheetRuleIndex#addMedia(MediaListImpl)}.
+ *
+ * @author Ronald Brill
+ */
+public class RuleIndexBuilder {
+
+    private final CSSStyleSheetRuleIndex index_;
+    private final Stack<CSSStyleSheetRuleIndex> indexStack_;
+
+    /**
+     * Ctor.
+     */
+    public RuleIndexBuilder() {
+        this(new CSSStyleSheetRuleIndex());
+    }
+
+    /**
+     * Ctor.
+     * @param index the index to add the rules to
+     */
+    RuleIndexBuilder(final CSSStyleSheetRuleIndex index) {
+        index_ = index;
+        indexStack_ = new Stack<>();
+        indexStack_.push(index_);
+    }
+
+    /**
+     * Builds the index for the given style sheet.
+     * @param styleSheet the style sheet
+     * @return the index
+     */
+    public static CSSStyleSheetRuleIndex build(final CSSStyleSheetImpl styleSheet) {
+        final RuleIndexBuilder builder = new RuleIndexBuilder();
+        builder.addRules(styleSheet.getCssRules());
+        return builder.getRuleIndex();
+    }
+
+    /**
+     * Adds all style and media rules of the given list.
+     * @param rules the rules
+     */
+    public void addRules(final CSSRuleListImpl rules) {
+        if (rules == null) {
+            return;
+        }
+
+        for (final AbstractCSSRuleImpl rule : rules.getRules()) {
+            addRule(rule);
+        }
+    }
+
+    /**
+     * Adds a style or media rule; all other rules are ignored.
+     * @param rule the rule
+     */
+    public void addRule(final AbstractCSSRuleImpl rule) {
+        if (rule instanceof CSSStyleRuleImpl) {
+            addStyleRule((CSSStyleRuleImpl) rule);
+        }
+        else if (rule instanceof CSSMediaRuleImpl) {
+            final CSSMediaRuleImpl mediaRule = (CSSMediaRuleImpl) rule;
+            startMedia(mediaRule.getMediaList());
+            if (!mediaRule.isDeferred()) {
+                addRules(mediaRule.getCssRules());
+            }
+            endMedia();
+        }
+    }
+
+    /**
+     * Adds all selectors of the style rule to the current index.
+     * @param rule the rule
+     */
+    public void addStyleRule(final CSSStyleRuleImpl rule) {
+        final SelectorList selectors = rule.getSelectors();
+        if (selectors == null) {
+            return;
+        }
+
+        final CSSStyleSheetRuleIndex index = indexStack_.peek();
+        for (final Selector selector : selectors) {
+            index.addSelector(selector, rule);
+        }
+    }
+
+    /**
+     * Starts a media rule; all following rules are added to the child index
+     * for this media list until {@link #endMedia()} is called.
+     * @param mediaList the media list
+     */
+    public void startMedia(final MediaListImpl mediaList) {
+        indexStack_.push(indexStack_.peek().addMedia(mediaList));
+    }
+
+    /**
+     * Ends the current media rule.
+     */
+    public void endMedia() {
+        if (indexStack_.size() < 2) {
+            throw new IllegalStateException("endMedia() without startMedia().");
+        }
+        indexStack_.pop();
+    }
+
+    /**
+     * @return the index
+     */
+    public CSSStyleSheetRuleIndex getRuleIndex() {
+        return index_;
+    }
+}
@@ -0,0 +1,746 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.dom;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.gargoylesoftware.css.dom.CSSStyleSheetImpl.SelectorEntry;
+import com.gargoylesoftware.css.parser.media.MediaDevice;
+import com.gargoylesoftware.css.parser.media.MediaQueryPredicate;
+import com.gargoylesoftware.css.parser.selector.PseudoElementSelector;
+import com.gargoylesoftware.css.parser.selector.RightmostKey;
+import com.gargoylesoftware.css.parser.selector.Selector;
+import com.gargoylesoftware.css.parser.selector.SelectorList;
+import com.gargoylesoftware.css.util.LRUCache;
+
+/**
+ * Combined rule index for all style sheets of a {@link CSSStyleSheetListImpl}.
+ * The selectors of all sheets are stored in one set of buckets (element name,
+ * class, id, attribute name), therefore a candidate lookup needs one hash probe
+ * per key instead of one per key and sheet. The sequence numbers of the entries
+ * reflect the position of the sheet in the list and the document order inside
+ * the sheet.
+ * Every entry is tagged with a condition: the sheet plus the media of the sheet
+ * and of the enclosing media rules. The media and the disabled flags of the
+ * sheets are evaluated into a bitmask of active conditions
+ * ({@link #getActiveConditions(MediaDevice)}); the index itself is never rebuilt
+ * if a sheet gets disabled or the device changes.
+ * Adding and removing sheets updates the index incrementally. Rules inserted into or
+ * deleted from a sheet are added or removed incrementally also (the sequence numbers
+ * of a sheet have gaps for that purpose); if the rule list or the media of a sheet are
+ * replaced {@link #updateStyleSheet(CSSStyleSheetImpl)} re-indexes the sheet. The
+ * updates are triggered by the sheets for indexes owned by a {@link CSSStyleSheetListImpl}.
+ * Imported style sheets are not resolved and the content of deferred media
+ * rules is indexed once the rules are parsed.
+ * This class is not thread safe.
+ *
+ * @author Ronald Brill
+ */
+public class StyleSheetListRuleIndex {
+
+    private static final int MEDIA_CACHE_SIZE = 16;
+    // the sequence number is the ordinal of the sheet followed by the position inside the sheet
+    private static final int SEQUENCE_SHIFT = 40;
+    private static final long MAX_LOCAL_SEQUENCE = (1L << SEQUENCE_SHIFT) - 1;
+    // leaves room for rules inserted later
+    private static final long SEQUENCE_GAP = 1L << 16;
+    private static final long NO_SEQUENCE = -1;
+
+    private final List<SheetState> sheets_ = new ArrayList<>();
+    private final Map<CSSStyleSheetImpl, SheetState> sheetStates_ = new IdentityHashMap<>();
+    private long nextOrdinal_;
+
+    // the predicates of every condition; null for unused ids
+    private final List<MediaQueryPredicate[]> conditions_ = new ArrayList<>();
+    private final Deque<Integer> freeConditions_ = new ArrayDeque<>();
+    private final LRUCache<MediaDevice, BitSet> mediaResults_ = new LRUCache<>(MEDIA_CACHE_SIZE);
+
+    private final Buckets buckets_ = new Buckets();
+    private final Map<String, Buckets> pseudoElementBuckets_ = new HashMap<>();
+
+    /**
+     * Ctor.
+     * @param styleSheets the style sheets
+     */
+    public StyleSheetListRuleIndex(final List<CSSStyleSheetImpl> styleSheets) {
+        for (final CSSStyleSheetImpl styleSheet : styleSheets) {
+            addStyleSheet(styleSheet);
+        }
+    }
+
+    /**
+     * Adds the rules of a style sheet appended to the list.
+     * @param styleSheet the style sheet
+     */
+    public void addStyleSheet(final CSSStyleSheetImpl styleSheet) {
+        final SheetState state = new SheetState(styleSheet, nextOrdinal_++);
+        sheets_.add(state);
+        sheetStates_.put(styleSheet, state);
+        index(state);
+    }
+
+    /**
+     * Removes the rules of a style sheet removed from the list.
+     * @param styleSheet the style sheet
+     * @return false if the sheet was not part of the index
+     */
+    public boolean removeStyleSheet(final CSSStyleSheetImpl styleSheet) {
+        final SheetState state = sheetStates_.remove(styleSheet);
+        if (state == null) {
+            return false;
+        }
+        sheets_.remove(state);
+        unindex(state);
+        return true;
+    }
+
+    /**
+     * Re-indexes the rules of a style sheet after its rules or its media changed;
+     * the position of the sheet in the cascade is kept.
+     * @param styleSheet the style sheet
+     * @return false if the sheet was not part of the index
+     */
+    public boolean updateStyleSheet(final CSSStyleSheetImpl styleSheet) {
+        final SheetState state = sheetStates_.get(styleSheet);
+        if (state == null) {
+            return false;
+        }
+        unindex(state);
+        index(state);
+        return true;
+    }
+
+    /**
+     * Adds the selectors of a block of rules inserted into a style sheet (or into one
+     * of its media rules). The sequence numbers of the new entries are placed between
+     * the ones of the neighbor rules; if there is no room left, the entries of the
+     * sheet are renumbered.
+     * @param styleSheet the style sheet
+     * @param rules the inserted rules
+     * @param parentRule the media rule the rules were inserted into or null
+     * @param position the position of the first rule in the rule list
+     * @return false if the index could not be updated and the sheet has to be re-indexed
+     */
+    boolean insertRules(final CSSStyleSheetImpl styleSheet, final List<AbstractCSSRuleImpl> rules,
+            final CSSMediaRuleImpl parentRule, final int position) {
+        final SheetState state = sheetStates_.get(styleSheet);
+        if (state == null) {
+            return false;
+        }
+        final Integer condition;
+        if (parentRule == null) {
+            condition = state.condition_;
+        }
+        else {
+            condition = state.mediaConditions_.get(parentRule);
+            if (condition == null) {
+                return false;
+            }
+        }
+
+        int count = 0;
+        boolean media = false;
+        for (final AbstractCSSRuleImpl rule : rules) {
+            if (state.ruleCandidates_.containsKey(rule)) {
+                // the same rule is part of the sheet twice
+                return false;
+            }
+            media |= rule instanceof CSSMediaRuleImpl;
+            count += countSelectors(rule);
+        }
+
+        if (count > 0) {
+            final int last = position + rules.size() - 1;
+            long previous = sequenceBefore(state, parentRule, position);
+            long step = step(previous, sequenceAfter(state, parentRule, last), count);
+            if (step < 1) {
+                if (!renumber(state)) {
+                    return false;
+                }
+                previous = sequenceBefore(state, parentRule, position);
+                step = step(previous, sequenceAfter(state, parentRule, last), count);
+                if (step < 1) {
+                    return false;
+                }
+            }
+            state.nextSequence_ = previous + step;
+            state.step_ = step;
+        }
+
+        if (media) {
+            mediaResults_.clear();
+        }
+        for (final AbstractCSSRuleImpl rule : rules) {
+            addRule(state, rule, condition);
+        }
+        return true;
+    }
+
+    /**
+     * Removes the selectors of a rule deleted from a style sheet (or from one of its media rules).
+     * @param styleSheet the style sheet
+     * @param rule the deleted rule
+     * @return false if the index could not be updated and the sheet has to be re-indexed
+     */
+    boolean removeRule(final CSSStyleSheetImpl styleSheet, final AbstractCSSRuleImpl rule) {
+        final SheetState state = sheetStates_.get(styleSheet);
+        if (state == null) {
+            return false;
+        }
+        removeRule(state, rule);
+        return true;
+    }
+
+    private void removeRule(final SheetState state, final AbstractCSSRuleImpl rule) {
+        if (rule instanceof CSSStyleRuleImpl) {
+            final List<Candidate> candidates = state.ruleCandidates_.remove(rule);
+            if (candidates != null) {
+                for (final Candidate candidate : candidates) {
+                    remove(candidate.bucket_, candidate.entry_.getSequence());
+                }
+            }
+        }
+        else if (rule instanceof CSSMediaRuleImpl) {
+            final CSSMediaRuleImpl mediaRule = (CSSMediaRuleImpl) rule;
+            final Integer condition = state.mediaConditions_.remove(mediaRule);
+            if (condition != null) {
+                mediaResults_.clear();
+                conditions_.set(condition, null);
+                freeConditions_.push(condition);
+                state.conditions_.clear(condition);
+            }
+            if (!mediaRule.isDeferred()) {
+                for (final AbstractCSSRuleImpl child : mediaRule.getCssRules().getRules()) {
+                    removeRule(state, child);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of indexed style sheets
+     */
+    public int getStyleSheetCount() {
+        return sheets_.size();
+    }
+
+    /**
+     * Evaluates the media of all conditions for the device (the results are cached
+     * for the most recently used devices) and removes the conditions of the disabled
+     * style sheets.
+     * @param device the device
+     * @return the active conditions
+     */
+    public BitSet getActiveConditions(final MediaDevice device) {
+        BitSet media = mediaResults_.get(device);
+        if (media == null) {
+            media = new BitSet(conditions_.size());
+            for (int c = 0; c < conditions_.size(); c++) {
+                final MediaQueryPredicate[] predicates = conditions_.get(c);
+                if (predicates != null && matches(predicates, device)) {
+                    media.set(c);
+                }
+            }
+            mediaResults_.put(device, media);
+        }
+
+        final BitSet active = (BitSet) media.clone();
+        for (final SheetState state : sheets_) {
+            if (state.sheet_.getDisabled()) {
+                active.andNot(state.conditions_);
+            }
+        }
+        return active;
+    }
+
+    private static boolean matches(final MediaQueryPredicate[] predicates, final MediaDevice device) {
+        for (final MediaQueryPredicate predicate : predicates) {
+            if (!predicate.matches(device)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the selectors of all sheets that may match the element, ordered by
+     * their sequence number (sheet order, then document order).
+     *
+     * @param activeConditions the active conditions, see {@link #getActiveConditions(MediaDevice)}
+     * @param elementName the lower case element name
+     * @param id the id of the element, may be null
+     * @param classes the classes of the element, may be null
+     * @param attributeNames the names of the attributes of the element; null to include all
+     *        selectors keyed by an attribute
+     * @param pseudoElement the pseudo element (like 'before'); null for the element itself
+     * @return the candidates
+     */
+    public List<SelectorEntry> getCandidates(final BitSet activeConditions, final String elementName,
+            final String id, final String[] classes, final String[] attributeNames, final String pseudoElement) {
+        final Buckets buckets;
+        if (pseudoElement == null) {
+            buckets = buckets_;
+        }
+        else {
+            buckets = pseudoElementBuckets_.get(pseudoElement.toLowerCase(Locale.ROOT));
+            if (buckets == null) {
+                return Collections.emptyList();
+            }
+        }
+
+        final List<List<Candidate>> lists = new ArrayList<>();
+        add(lists, buckets.elements_.get(null));
+        if (elementName != null) {
+            add(lists, buckets.elements_.get(elementName));
+        }
+        if (classes != null) {
+            for (final String clazz : classes) {
+                add(lists, buckets.classes_.get(clazz));
+            }
+        }
+        if (id != null) {
+            add(lists, buckets.ids_.get(id));
+        }
+        if (attributeNames == null) {
+            for (final List<Candidate> list : buckets.attributes_.values()) {
+                add(lists, list);
+            }
+        }
+        else {
+            for (final String attributeName : attributeNames) {
+                add(lists, buckets.attributes_.get(attributeName.toLowerCase(Locale.ROOT)));
+            }
+        }
+        add(lists, buckets.others_);
+
+        final List<SelectorEntry> result = new ArrayList<>();
+        final int[] positions = new int[lists.size()];
+        while (true) {
+            int best = -1;
+            long bestSequence = Long.MAX_VALUE;
+            for (int i = 0; i < lists.size(); i++) {
+                final List<Candidate> list = lists.get(i);
+                final int position = positions[i];
+                if (position < list.size()) {
+                    final long sequence = list.get(position).entry_.getSequence();
+                    if (sequence < bestSequence) {
+                        bestSequence = sequence;
+                        best = i;
+                    }
+                }
+            }
+            if (best < 0) {
+                return result;
+            }
+
+            final Candidate candidate = lists.get(best).get(positions[best]++);
+            if (activeConditions.get(candidate.condition_)) {
+                result.add(candidate.entry_);
+            }
+        }
+    }
+
+    private static void add(final List<List<Candidate>> lists, final List<Candidate> list) {
+        if (list == null || list.isEmpty()) {
+            return;
+        }
+        // the same class might be given twice
+        for (final List<Candidate> l : lists) {
+            if (l == list) {
+                return;
+            }
+        }
+        lists.add(list);
+    }
+
+    private void index(final SheetState state) {
+        mediaResults_.clear();
+        final CSSStyleSheetImpl sheet = state.sheet_;
+        int count = 0;
+        for (final AbstractCSSRuleImpl rule : sheet.getCssRules().getRules()) {
+            count += countSelectors(rule);
+        }
+        state.step_ = initialStep(count);
+        state.nextSequence_ = state.step_;
+
+        state.condition_ = condition(state, new MediaQueryPredicate[0], sheet.getMedia());
+        for (final AbstractCSSRuleImpl rule : sheet.getCssRules().getRules()) {
+            addRule(state, rule, state.condition_);
+        }
+    }
+
+    private void addRule(final SheetState state, final AbstractCSSRuleImpl rule, final int condition) {
+        if (rule instanceof CSSStyleRuleImpl) {
+            addStyleRule(state, (CSSStyleRuleImpl) rule, condition);
+        }
+        else if (rule instanceof CSSMediaRuleImpl) {
+            final CSSMediaRuleImpl mediaRule = (CSSMediaRuleImpl) rule;
+            // the condition of deferred rules is registered for the rules parsed later
+            final int child = condition(state, conditions_.get(condition), mediaRule.getMediaList());
+            state.mediaConditions_.put(mediaRule, child);
+            if (!mediaRule.isDeferred()) {
+                for (final AbstractCSSRuleImpl childRule : mediaRule.getCssRules().getRules()) {
+                    addRule(state, childRule, child);
+                }
+            }
+        }
+    }
+
+    private void addStyleRule(final SheetState state, final CSSStyleRuleImpl rule, final int condition) {
+        final SelectorList selectors = rule.getSelectors();
+        if (selectors == null) {
+            return;
+        }
+
+        List<Candidate> candidates = state.ruleCandidates_.get(rule);
+        if (candidates == null) {
+            candidates = new ArrayList<>(selectors.size());
+            state.ruleCandidates_.put(rule, candidates);
+        }
+        for (final Selector selector : selectors) {
+            final long sequence = state.ordinal_ << SEQUENCE_SHIFT | state.nextSequence_;
+            state.nextSequence_ += state.step_;
+            final Candidate candidate = new Candidate(new SelectorEntry(selector, rule, sequence), condition);
+            candidates.add(candidate);
+
+            Buckets buckets = buckets_;
+            final PseudoElementSelector pseudoElement = RightmostKey.getPseudoElement(selector);
+            if (pseudoElement != null) {
+                final String name = pseudoElement.getLocalName().toLowerCase(Locale.ROOT);
+                buckets = pseudoElementBuckets_.get(name);
+                if (buckets == null) {
+                    buckets = new Buckets();
+                    pseudoElementBuckets_.put(name, buckets);
+                }
+            }
+            buckets.add(selector, candidate);
+        }
+    }
+
+    private static int countSelectors(final AbstractCSSRuleImpl rule) {
+        if (rule instanceof CSSStyleRuleImpl) {
+            final SelectorList selectors = ((CSSStyleRuleImpl) rule).getSelectors();
+            return selectors == null ? 0 : selectors.size();
+        }
+        if (rule instanceof CSSMediaRuleImpl && !((CSSMediaRuleImpl) rule).isDeferred()) {
+            int count = 0;
+            for (final AbstractCSSRuleImpl child : ((CSSMediaRuleImpl) rule).getCssRules().getRules()) {
+                count += countSelectors(child);
+            }
+            return count;
+        }
+        return 0;
+    }
+
+    private static long initialStep(final int count) {
+        return Math.max(1, Math.min(SEQUENCE_GAP, MAX_LOCAL_SEQUENCE / (count + 1)));
+    }
+
+    // the step between the count new entries placed after previous and before next
+    private static long step(final long previous, final long next, final int count) {
+        if (next == NO_SEQUENCE) {
+            return Math.min(SEQUENCE_GAP, (MAX_LOCAL_SEQUENCE - previous) / (count + 1));
+        }
+        return (next - previous) / (count + 1);
+    }
+
+    private static List<AbstractCSSRuleImpl> rulesOf(final SheetState state, final CSSMediaRuleImpl mediaRule) {
+        if (mediaRule == null) {
+            return state.sheet_.getCssRules().getRules();
+        }
+        return mediaRule.getCssRules().getRules();
+    }
+
+    private static int indexOf(final List<AbstractCSSRuleImpl> rules, final AbstractCSSRuleImpl rule) {
+        // iterate, the rule lists are chunked lists
+        int i = 0;
+        for (final AbstractCSSRuleImpl r : rules) {
+            if (r == rule) {
+                return i;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    // the local sequence of the last entry before the position, 0 if there is none
+    private static long sequenceBefore(final SheetState state, final CSSMediaRuleImpl parentRule,
+            final int position) {
+        CSSMediaRuleImpl mediaRule = parentRule;
+        List<AbstractCSSRuleImpl> rules = rulesOf(state, mediaRule);
+        int pos = position;
+        while (true) {
+            for (int i = pos - 1; i >= 0; i--) {
+                final long sequence = lastSequence(state, rules.get(i));
+                if (sequence != NO_SEQUENCE) {
+                    return sequence;
+                }
+            }
+            if (mediaRule == null) {
+                return 0;
+            }
+
+            final CSSMediaRuleImpl parent = (CSSMediaRuleImpl) mediaRule.getParentRule();
+            rules = rulesOf(state, parent);
+            pos = indexOf(rules, mediaRule);
+            mediaRule = parent;
+        }
+    }
+
+    // the local sequence of the first entry after the position, NO_SEQUENCE if there is none
+    private static long sequenceAfter(final SheetState state, final CSSMediaRuleImpl parentRule,
+            final int position) {
+        CSSMediaRuleImpl mediaRule = parentRule;
+        List<AbstractCSSRuleImpl> rules = rulesOf(state, mediaRule);
+        int pos = position;
+        while (true) {
+            for (int i = pos + 1; i < rules.size(); i++) {
+                final long sequence = firstSequence(state, rules.get(i));
+                if (sequence != NO_SEQUENCE) {
+                    return sequence;
+                }
+            }
+            if (mediaRule == null) {
+                return NO_SEQUENCE;
+            }
+
+            final CSSMediaRuleImpl parent = (CSSMediaRuleImpl) mediaRule.getParentRule();
+            rules = rulesOf(state, parent);
+            pos = indexOf(rules, mediaRule);
+            mediaRule = parent;
+        }
+    }
+
+    private static long lastSequence(final SheetState state, final AbstractCSSRuleImpl rule) {
+        if (rule instanceof CSSStyleRuleImpl) {
+            final List<Candidate> candidates = state.ruleCandidates_.get(rule);
+            if (candidates != null && !candidates.isEmpty()) {
+                return candidates.get(candidates.size() - 1).entry_.getSequence() & MAX_LOCAL_SEQUENCE;
+            }
+        }
+        else if (rule instanceof CSSMediaRuleImpl && !((CSSMediaRuleImpl) rule).isDeferred()) {
+            final List<AbstractCSSRuleImpl> rules = ((CSSMediaRuleImpl) rule).getCssRules().getRules();
+            for (int i = rules.size() - 1; i >= 0; i--) {
+                final long sequence = lastSequence(state, rules.get(i));
+                if (sequence != NO_SEQUENCE) {
+                    return sequence;
+                }
+            }
+        }
+        return NO_SEQUENCE;
+    }
+
+    private static long firstSequence(final SheetState state, final AbstractCSSRuleImpl rule) {
+        if (rule instanceof CSSStyleRuleImpl) {
+            final List<Candidate> candidates = state.ruleCandidates_.get(rule);
+            if (candidates != null && !candidates.isEmpty()) {
+                return candidates.get(0).entry_.getSequence() & MAX_LOCAL_SEQUENCE;
+            }
+        }
+        else if (rule instanceof CSSMediaRuleImpl && !((CSSMediaRuleImpl) rule).isDeferred()) {
+            for (final AbstractCSSRuleImpl child : ((CSSMediaRuleImpl) rule).getCssRules().getRules()) {
+                final long sequence = firstSequence(state, child);
+                if (sequence != NO_SEQUENCE) {
+                    return sequence;
+                }
+            }
+        }
+        return NO_SEQUENCE;
+    }
+
+    // assigns new sequence numbers in document order; the order inside the buckets does not change
+    private static boolean renumber(final SheetState state) {
+        int total = 0;
+        for (final List<Candidate> candidates : state.ruleCandidates_.values()) {
+            total += candidates.size();
+        }
+
+        state.step_ = initialStep(total);
+        state.nextSequence_ = state.step_;
+        return renumber(state, state.sheet_.getCssRules().getRules()) == total;
+    }
+
+    private static int renumber(final SheetState state, final List<AbstractCSSRuleImpl> rules) {
+        int count = 0;
+        for (final AbstractCSSRuleImpl rule : rules) {
+            if (rule instanceof CSSStyleRuleImpl) {
+                final List<Candidate> candidates = state.ruleCandidates_.get(rule);
+                if (candidates != null) {
+                    for (final Candidate candidate : candidates) {
+                        candidate.entry_.setSequence(state.ordinal_ << SEQUENCE_SHIFT | state.nextSequence_);
+                        state.nextSequence_ += state.step_;
+                        count++;
+                    }
+                }
+            }
+            else if (rule instanceof CSSMediaRuleImpl && !((CSSMediaRuleImpl) rule).isDeferred()) {
+                count += renumber(state, ((CSSMediaRuleImpl) rule).getCssRules().getRules());
+            }
+        }
+        return count;
+    }
+
+    private int condition(final SheetState state, final MediaQueryPredicate[] parent, final MediaListImpl media) {
+        MediaQueryPredicate[] predicates = parent;
+        final MediaQueryPredicate predicate = media == null ? MediaQueryPredicate.ALL : media.getMediaPredicate();
+        if (!predicate.isAll()) {
+            predicates = new MediaQueryPredicate[parent.length + 1];
+            System.arraycopy(parent, 0, predicates, 0, parent.length);
+            predicates[parent.length] = predicate;
+        }
+
+        final int id;
+        if (freeConditions_.isEmpty()) {
+            id = conditions_.size();
+            conditions_.add(predicates);
+        }
+        else {
+            id = freeConditions_.pop();
+            conditions_.set(id, predicates);
+        }
+        state.conditions_.set(id);
+        return id;
+    }
+
+    private void unindex(final SheetState state) {
+        mediaResults_.clear();
+        for (final List<Candidate> candidates : state.ruleCandidates_.values()) {
+            for (final Candidate candidate : candidates) {
+                remove(candidate.bucket_, candidate.entry_.getSequence());
+            }
+        }
+        state.ruleCandidates_.clear();
+        state.mediaConditions_.clear();
+
+        for (int c = state.conditions_.nextSetBit(0); c >= 0; c = state.conditions_.nextSetBit(c + 1)) {
+            conditions_.set(c, null);
+            freeConditions_.push(c);
+        }
+        state.conditions_.clear();
+    }
+
+    private static void remove(final List<Candidate> bucket, final long sequence) {
+        int low = 0;
+        int high = bucket.size();
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (bucket.get(mid).entry_.getSequence() < sequence) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        bucket.remove(low);
+    }
+
+    private static final class SheetState {
+        private final CSSStyleSheetImpl sheet_;
+        private final long ordinal_;
+        // local sequence of the next entry and the distance between the entries
+        private long nextSequence_;
+        private long step_;
+        private int condition_;
+        private final Map<CSSStyleRuleImpl, List<Candidate>> ruleCandidates_ = new IdentityHashMap<>();
+        private final Map<CSSMediaRuleImpl, Integer> mediaConditions_ = new IdentityHashMap<>();
+        private final BitSet conditions_ = new BitSet();
+
+        SheetState(final CSSStyleSheetImpl sheet, final long ordinal) {
+            sheet_ = sheet;
+            ordinal_ = ordinal;
+        }
+    }
+
+    private static final class Candidate {
+        private final SelectorEntry entry_;
+        private final int condition_;
+        private List<Candidate> bucket_;
+
+        Candidate(final SelectorEntry entry, final int condition) {
+            entry_ = entry;
+            condition_ = condition;
+        }
+    }
+
+    private static final class Buckets {
+        private final Map<String, List<Candidate>> elements_ = new HashMap<>();
+        private final Map<String, List<Candidate>> classes_ = new HashMap<>();
+        private final Map<String, List<Candidate>> ids_ = new HashMap<>();
+        private final Map<String, List<Candidate>> attributes_ = new HashMap<>();
+        private final List<Candidate> others_ = new ArrayList<>();
+
+        void add(final Selector selector, final Candidate candidate) {
+            if (RightmostKey.getRightmostCompound(selector) == null) {
+                addSorted(others_, candidate);
+                return;
+            }
+
+            final RightmostKey key = new RightmostKey(selector);
+            switch (key.getKeyType()) {
+                case ID:
+                    addSorted(bucket(ids_, key.getValue()), candidate);
+                    break;
+                case CLASS:
+                    addSorted(bucket(classes_, key.getValue()), candidate);
+                    break;
+                case ATTRIBUTE:
+                    addSorted(bucket(attributes_, key.getValue().toLowerCase(Locale.ROOT)), candidate);
+                    break;
+                default:
+                    addSorted(bucket(elements_, key.getValue()), candidate);
+                    break;
+            }
+        }
+
+        private static List<Candidate> bucket(final Map<String, List<Candidate>> map, final String key) {
+            List<Candidate> bucket = map.get(key);
+            if (bucket == null) {
+                bucket = new ArrayList<>();
+                map.put(key, bucket);
+            }
+            return bucket;
+        }
+
+        private static void addSorted(final List<Candidate> bucket, final Candidate candidate) {
+            candidate.bucket_ = bucket;
+            final long sequence = candidate.entry_.getSequence();
+            // rules are usually appended, therefore the new entry is usually the last one
+            int low = 0;
+            int high = bucket.size();
+            if (high > 0 && bucket.get(high - 1).entry_.getSequence() < sequence) {
+                low = high;
+            }
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (bucket.get(mid).entry_.getSequence() < sequence) {
+                    low = mid + 1;
+                }
+                else {
+                    high = mid;
+                }
+            }
+            bucket.add(low, candidate);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.matching;
+
+import java.util.Arrays;
+
+import com.gargoylesoftware.css.parser.selector.AncestorHashes;
+
+/**
+ * Counting bloom filter for the tag names, ids and class names of the
+ * ancestors of the current element. A tree walker pushes every element
+ * before visiting the children and pops it afterwards; the filter then
+ * knows (with a small false positive rate) which features the ancestor
+ * chain of the current element has. This allows to reject most selectors
+ * with descendant or child combinators without walking up the tree.
+ * This class is not thread safe.
+ *
+ * @author Ronald Brill
+ */
+public class AncestorFilter {
+
+    private static final int BITS = 12;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final int MAX_COUNT = 0xFF;
+
+    private final byte[] counters_ = new byte[1 << BITS];
+
+    private int[] hashes_ = new int[64];
+    private int hashCount_;
+    private int[] elementStarts_ = new int[16];
+    private int depth_;
+
+    /**
+     * Pushes an element; has to be called before visiting the children of the element.
+     * @param localName the local name of the element
+     * @param id the id of the element, may be null
+     * @param classNames the class names of the element, may be null
+     */
+    public void pushElement(final String localName, final String id, final Iterable<String> classNames) {
+        if (depth_ == elementStarts_.length) {
+            elementStarts_ = Arrays.copyOf(elementStarts_, depth_ * 2);
+        }
+        elementStarts_[depth_++] = hashCount_;
+
+        if (localName != null) {
+            pushHash(AncestorHashes.tagHash(localName));
+        }
+        if (id != null) {
+            pushHash(AncestorHashes.idHash(id));
+        }
+        if (classNames != null) {
+            for (final String className : classNames) {
+                pushHash(AncestorHashes.classHash(className));
+            }
+        }
+    }
+
+    /**
+     * Pops the element pushed last.
+     */
+    public void popElement() {
+        if (depth_ == 0) {
+            throw new IllegalStateException("No element to pop.");
+        }
+        final int start = elementStarts_[--depth_];
+        while (hashCount_ > start) {
+            final int hash = hashes_[--hashCount_];
+            decrement(hash & MASK);
+            decrement((hash >>> BITS) & MASK);
+        }
+    }
+
+    /**
+     * @return the number of pushed elements
+     */
+    public int getDepth() {
+        return depth_;
+    }
+
+    /**
+     * Removes all elements.
+     */
+    public void clear() {
+        Arrays.fill(counters_, (byte) 0);
+        hashCount_ = 0;
+        depth_ = 0;
+    }
+
+    /**
+     * @param hash the hash
+     * @return false if no pushed element has the feature with the given hash;
+     * true if there might be one
+     */
+    public boolean mayContain(final int hash) {
+        return counters_[hash & MASK] != 0 && counters_[(hash >>> BITS) & MASK] != 0;
+    }
+
+    /**
+     * @param hashes the hashes
+     * @return false if at least one of the hashes is definitely not contained
+     */
+    public boolean mayContainAll(final int[] hashes) {
+        for (final int hash : hashes) {
+            if (!mayContain(hash)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void pushHash(final int hash) {
+        if (hashCount_ == hashes_.length) {
+            hashes_ = Arrays.copyOf(hashes_, hashCount_ * 2);
+        }
+        hashes_[hashCount_++] = hash;
+        increment(hash & MASK);
+        increment((hash >>> BITS) & MASK);
+    }
+
+    private void increment(final int index) {
+        final int count = counters_[index] & MAX_COUNT;
+        if (count < MAX_COUNT) {
+            counters_[index] = (byte) (count + 1);
+        }
+    }
+
+    private void decrement(final int index) {
+        final int count = counters_[index] & MAX_COUNT;
+        // saturated counters are never decremented, they stay 'maybe' forever
+        if (count > 0 && count < MAX_COUNT) {
+            counters_[index] = (byte) (count - 1);
+        }
+    }
+}
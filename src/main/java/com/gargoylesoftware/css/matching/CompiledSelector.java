@@ -0,0 +1,759 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.matching;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import com.gargoylesoftware.css.parser.CSSException;
+import com.gargoylesoftware.css.parser.InputSource;
+import com.gargoylesoftware.css.parser.condition.Condition;
+import com.gargoylesoftware.css.parser.javacc.CSS3Parser;
+import com.gargoylesoftware.css.parser.selector.AbstractSelector;
+import com.gargoylesoftware.css.parser.selector.AncestorHashes;
+import com.gargoylesoftware.css.parser.selector.ChildSelector;
+import com.gargoylesoftware.css.parser.selector.DescendantSelector;
+import com.gargoylesoftware.css.parser.selector.DirectAdjacentSelector;
+import com.gargoylesoftware.css.parser.selector.ElementSelector;
+import com.gargoylesoftware.css.parser.selector.GeneralAdjacentSelector;
+import com.gargoylesoftware.css.parser.selector.PseudoElementSelector;
+import com.gargoylesoftware.css.parser.selector.Selector;
+import com.gargoylesoftware.css.parser.selector.SelectorList;
+import com.gargoylesoftware.css.parser.selector.SimpleSelector;
+import com.gargoylesoftware.css.util.ThrowCssExceptionErrorHandler;
+
+/**
+ * A {@link Selector} compiled into a flat program. The program consists of
+ * the compound selectors (from right to left) and the combinators between them;
+ * the conditions of all compounds are stored in parallel arrays.
+ * Matching runs right to left and stops backtracking as early as possible.
+ * Instances are immutable and can be shared between threads.
+ *
+ * @author Ronald Brill
+ */
+public final class CompiledSelector {
+
+    /** The result depends on the siblings of the element. */
+    public static final int DEPENDS_ON_SIBLINGS = 1;
+    /** The result depends on the state of the element (like :hover). */
+    public static final int DEPENDS_ON_STATE = 2;
+    /** The result depends on attribute values of the element (including :lang). */
+    public static final int DEPENDS_ON_ATTRIBUTES = 4;
+    /** The result depends on the id of the element. */
+    public static final int DEPENDS_ON_ID = 8;
+
+    private static final int OP_ID = 0;
+    private static final int OP_CLASS = 1;
+    private static final int OP_ATTRIBUTE_EXISTS = 2;
+    private static final int OP_ATTRIBUTE_EQUALS = 3;
+    private static final int OP_ATTRIBUTE_ONE_OF = 4;
+    private static final int OP_ATTRIBUTE_BEGIN_HYPHEN = 5;
+    private static final int OP_ATTRIBUTE_PREFIX = 6;
+    private static final int OP_ATTRIBUTE_SUFFIX = 7;
+    private static final int OP_ATTRIBUTE_SUBSTRING = 8;
+    private static final int OP_ROOT = 9;
+    private static final int OP_NTH_CHILD = 10;
+    private static final int OP_NTH_LAST_CHILD = 11;
+    private static final int OP_NTH_OF_TYPE = 12;
+    private static final int OP_NTH_LAST_OF_TYPE = 13;
+    private static final int OP_ONLY_CHILD = 14;
+    private static final int OP_ONLY_OF_TYPE = 15;
+    private static final int OP_LANG = 16;
+    private static final int OP_NOT = 17;
+    private static final int OP_DYNAMIC = 18;
+    private static final int OP_NEVER = 19;
+
+    private static final int COMBINATOR_NONE = 0;
+    private static final int COMBINATOR_DESCENDANT = 1;
+    private static final int COMBINATOR_CHILD = 2;
+    private static final int COMBINATOR_DIRECT_ADJACENT = 3;
+    private static final int COMBINATOR_GENERAL_ADJACENT = 4;
+
+    private static final int MATCH = 0;
+    private static final int FAILS_LOCALLY = 1;
+    private static final int FAILS_ALL_SIBLINGS = 2;
+    private static final int FAILS_COMPLETELY = 3;
+
+    private final Selector selector_;
+    private final String pseudoElement_;
+    private final int[] ancestorHashes_;
+
+    // one entry per compound, index 0 is the rightmost compound
+    private final String[] localNames_;
+    private final int[] combinators_;
+    private final int[] opStart_;
+
+    // one entry per condition
+    private final int[] ops_;
+    private final String[] args_;
+    private final String[] values_;
+    private final int[] stepSizes_;
+    private final int[] offsets_;
+    private final CompiledSelector[] negations_;
+    private final int subjectDependencies_;
+
+    /**
+     * Ctor.
+     * @param selector the selector to compile
+     */
+    public CompiledSelector(final Selector selector) {
+        selector_ = selector;
+        if (selector instanceof AbstractSelector) {
+            ancestorHashes_ = ((AbstractSelector) selector).getAncestorHashes();
+        }
+        else {
+            ancestorHashes_ = AncestorHashes.compute(selector);
+        }
+
+        final List<ElementSelector> compounds = new ArrayList<>();
+        final List<Integer> combinators = new ArrayList<>();
+        PseudoElementSelector pseudoElement = null;
+        boolean never = false;
+
+        Selector current = selector;
+        while (current != null) {
+            final Selector next;
+            final int combinator;
+            switch (current.getSelectorType()) {
+                case ELEMENT_NODE_SELECTOR:
+                    compounds.add((ElementSelector) current);
+                    combinators.add(COMBINATOR_NONE);
+                    current = null;
+                    continue;
+                case PSEUDO_ELEMENT_SELECTOR:
+                    pseudoElement = (PseudoElementSelector) current;
+                    compounds.add(new ElementSelector(null, null));
+                    combinators.add(COMBINATOR_NONE);
+                    current = null;
+                    continue;
+                case DESCENDANT_SELECTOR:
+                    next = ((DescendantSelector) current).getAncestorSelector();
+                    combinator = COMBINATOR_DESCENDANT;
+                    break;
+                case CHILD_SELECTOR:
+                    next = ((ChildSelector) current).getAncestorSelector();
+                    combinator = COMBINATOR_CHILD;
+                    break;
+                case DIRECT_ADJACENT_SELECTOR:
+                    next = ((DirectAdjacentSelector) current).getSelector();
+                    combinator = COMBINATOR_DIRECT_ADJACENT;
+                    break;
+                case GENERAL_ADJACENT_SELECTOR:
+                    next = ((GeneralAdjacentSelector) current).getSelector();
+                    combinator = COMBINATOR_GENERAL_ADJACENT;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported selector type " + current.getSelectorType());
+            }
+
+            final SimpleSelector simple = current.getSimpleSelector();
+            if (Selector.SelectorType.PSEUDO_ELEMENT_SELECTOR == simple.getSelectorType()) {
+                if (compounds.isEmpty() && COMBINATOR_DESCENDANT == combinator) {
+                    // the trailing pseudo element is part of the rightmost compound
+                    pseudoElement = (PseudoElementSelector) simple;
+                    current = next;
+                    if (current == null) {
+                        compounds.add(new ElementSelector(null, null));
+                        combinators.add(COMBINATOR_NONE);
+                    }
+                    continue;
+                }
+                // pseudo elements are only allowed at the end
+                never = true;
+                compounds.add(new ElementSelector(null, null));
+            }
+            else {
+                compounds.add((ElementSelector) simple);
+            }
+            combinators.add(next == null ? COMBINATOR_NONE : combinator);
+            current = next;
+        }
+
+        if (pseudoElement == null) {
+            pseudoElement_ = null;
+        }
+        else {
+            pseudoElement_ = pseudoElement.getLocalName().toLowerCase(Locale.ROOT);
+        }
+
+        final int compoundCount = compounds.size();
+        localNames_ = new String[compoundCount];
+        combinators_ = new int[compoundCount];
+        opStart_ = new int[compoundCount + 1];
+
+        final List<Condition> conditions = new ArrayList<>();
+        for (int i = 0; i < compoundCount; i++) {
+            final ElementSelector compound = compounds.get(i);
+            localNames_[i] = compound.getLocalNameLowerCase();
+            combinators_[i] = combinators.get(i);
+            opStart_[i] = conditions.size();
+            if (compound.getConditions() != null) {
+                final List<Condition> compoundConditions = new ArrayList<>(compound.getConditions());
+                // cheap checks first
+                compoundConditions.sort((c1, c2) -> cost(c1) - cost(c2));
+                conditions.addAll(compoundConditions);
+            }
+        }
+        opStart_[compoundCount] = conditions.size();
+
+        final int opCount = conditions.size() + (never ? 1 : 0);
+        ops_ = new int[opCount];
+        args_ = new String[opCount];
+        values_ = new String[opCount];
+        stepSizes_ = new int[opCount];
+        offsets_ = new int[opCount];
+        negations_ = new CompiledSelector[opCount];
+        for (int i = 0; i < conditions.size(); i++) {
+            compileCondition(i, conditions.get(i));
+        }
+        if (never) {
+            ops_[opCount - 1] = OP_NEVER;
+            opStart_[compoundCount] = opCount;
+        }
+        subjectDependencies_ = computeSubjectDependencies();
+    }
+
+    // only the subject and its siblings count, the ancestors are the same for all siblings
+    private int computeSubjectDependencies() {
+        int dependencies = 0;
+        int compound = 0;
+        while (true) {
+            for (int op = opStart_[compound]; op < opStart_[compound + 1]; op++) {
+                dependencies |= dependencies(op);
+            }
+            final int combinator = combinators_[compound];
+            if (combinator != COMBINATOR_DIRECT_ADJACENT && combinator != COMBINATOR_GENERAL_ADJACENT) {
+                return dependencies;
+            }
+            dependencies |= DEPENDS_ON_SIBLINGS;
+            compound++;
+        }
+    }
+
+    private int dependencies(final int op) {
+        switch (ops_[op]) {
+            case OP_ID:
+                return DEPENDS_ON_ID;
+            case OP_ATTRIBUTE_EXISTS:
+            case OP_ATTRIBUTE_EQUALS:
+            case OP_ATTRIBUTE_ONE_OF:
+            case OP_ATTRIBUTE_BEGIN_HYPHEN:
+            case OP_ATTRIBUTE_PREFIX:
+            case OP_ATTRIBUTE_SUFFIX:
+            case OP_ATTRIBUTE_SUBSTRING:
+            case OP_LANG:
+                return DEPENDS_ON_ATTRIBUTES;
+            case OP_NTH_CHILD:
+            case OP_NTH_LAST_CHILD:
+            case OP_NTH_OF_TYPE:
+            case OP_NTH_LAST_OF_TYPE:
+            case OP_ONLY_CHILD:
+            case OP_ONLY_OF_TYPE:
+                return DEPENDS_ON_SIBLINGS;
+            case OP_DYNAMIC:
+                return DEPENDS_ON_STATE;
+            case OP_NOT:
+                return negations_[op].subjectDependencies_;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Compiles all selectors of the list.
+     * @param selectors the selector list
+     * @return the compiled selectors in the same order
+     */
+    public static CompiledSelector[] compile(final SelectorList selectors) {
+        final CompiledSelector[] result = new CompiledSelector[selectors.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = new CompiledSelector(selectors.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * @return the selector this was compiled from
+     */
+    public Selector getSelector() {
+        return selector_;
+    }
+
+    /**
+     * Describes which features of the element (besides the element name and
+     * the class names) influence the result; features of the ancestors are
+     * not included because they are the same for siblings.
+     * @return the combination of the DEPENDS_ON_... flags
+     */
+    public int getSubjectDependencies() {
+        return subjectDependencies_;
+    }
+
+    /**
+     * @return the lower case name of the pseudo element this selector targets or null
+     */
+    public String getPseudoElement() {
+        return pseudoElement_;
+    }
+
+    /**
+     * Checks if the selector matches the element itself (selectors targeting
+     * a pseudo element never match).
+     *
+     * @param <E> the type of the elements
+     * @param adapter the element adapter
+     * @param element the element
+     * @return true if the selector matches
+     */
+    public <E> boolean matches(final ElementAdapter<E> adapter, final E element) {
+        return matches(adapter, element, null);
+    }
+
+    /**
+     * Checks if the selector matches the given pseudo element of the element.
+     *
+     * @param <E> the type of the elements
+     * @param adapter the element adapter
+     * @param element the element
+     * @param pseudoElement the name of the pseudo element (without colons);
+     * null to match the element itself
+     * @return true if the selector matches
+     */
+    public <E> boolean matches(final ElementAdapter<E> adapter, final E element, final String pseudoElement) {
+        if (pseudoElement == null) {
+            if (pseudoElement_ != null) {
+                return false;
+            }
+        }
+        else if (!pseudoElement.equalsIgnoreCase(pseudoElement_)) {
+            return false;
+        }
+        return MATCH == match(adapter, 0, element);
+    }
+
+    /**
+     * Checks if the selector matches the given pseudo element of the element.
+     * The ancestor filter is used to reject the selector without walking up
+     * the tree if the ancestors of the element do not have the required
+     * tag names, ids or class names.
+     *
+     * @param <E> the type of the elements
+     * @param adapter the element adapter
+     * @param element the element
+     * @param pseudoElement the name of the pseudo element (without colons);
+     * null to match the element itself
+     * @param filter the filter containing exactly the ancestors of the element, may be null
+     * @return true if the selector matches
+     */
+    public <E> boolean matches(final ElementAdapter<E> adapter, final E element, final String pseudoElement,
+            final AncestorFilter filter) {
+        if (filter != null && !filter.mayContainAll(ancestorHashes_)) {
+            return false;
+        }
+        return matches(adapter, element, pseudoElement);
+    }
+
+    /**
+     * @param filter the filter containing exactly the ancestors of the element
+     * @return false if the selector can not match because the ancestors miss a required feature
+     */
+    public boolean mayMatch(final AncestorFilter filter) {
+        return filter.mayContainAll(ancestorHashes_);
+    }
+
+    private <E> int match(final ElementAdapter<E> adapter, final int compound, final E element) {
+        if (!matchesCompound(adapter, compound, element)) {
+            return FAILS_LOCALLY;
+        }
+
+        final int next = compound + 1;
+        switch (combinators_[compound]) {
+            case COMBINATOR_NONE:
+                return MATCH;
+
+            case COMBINATOR_CHILD:
+                final E parent = adapter.getParent(element);
+                if (parent == null) {
+                    return FAILS_COMPLETELY;
+                }
+                return match(adapter, next, parent);
+
+            case COMBINATOR_DESCENDANT:
+                E ancestor = adapter.getParent(element);
+                while (ancestor != null) {
+                    final int result = match(adapter, next, ancestor);
+                    if (MATCH == result || FAILS_COMPLETELY == result) {
+                        return result;
+                    }
+                    ancestor = adapter.getParent(ancestor);
+                }
+                return FAILS_COMPLETELY;
+
+            case COMBINATOR_DIRECT_ADJACENT:
+                final E previous = adapter.getPreviousSibling(element);
+                if (previous == null) {
+                    return FAILS_ALL_SIBLINGS;
+                }
+                return match(adapter, next, previous);
+
+            case COMBINATOR_GENERAL_ADJACENT:
+                E sibling = adapter.getPreviousSibling(element);
+                while (sibling != null) {
+                    final int result = match(adapter, next, sibling);
+                    if (FAILS_LOCALLY != result) {
+                        return result;
+                    }
+                    sibling = adapter.getPreviousSibling(sibling);
+                }
+                return FAILS_ALL_SIBLINGS;
+
+            default:
+                return FAILS_COMPLETELY;
+        }
+    }
+
+    private <E> boolean matchesCompound(final ElementAdapter<E> adapter, final int compound, final E element) {
+        final String localName = localNames_[compound];
+        if (localName != null && !localName.equalsIgnoreCase(adapter.getLocalName(element))) {
+            return false;
+        }
+
+        final int end = opStart_[compound + 1];
+        for (int i = opStart_[compound]; i < end; i++) {
+            if (!matchesCondition(adapter, i, element)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private <E> boolean matchesCondition(final ElementAdapter<E> adapter, final int op, final E element) {
+        final String value = values_[op];
+        final String attribute;
+        switch (ops_[op]) {
+            case OP_ID:
+                return value.equals(adapter.getId(element));
+            case OP_CLASS:
+                return adapter.hasClass(element, value);
+            case OP_ATTRIBUTE_EXISTS:
+                return adapter.getAttribute(element, args_[op]) != null;
+            case OP_ATTRIBUTE_EQUALS:
+                return value.equals(adapter.getAttribute(element, args_[op]));
+            case OP_ATTRIBUTE_ONE_OF:
+                attribute = adapter.getAttribute(element, args_[op]);
+                return attribute != null && containsWord(attribute, value);
+            case OP_ATTRIBUTE_BEGIN_HYPHEN:
+                attribute = adapter.getAttribute(element, args_[op]);
+                return attribute != null
+                        && attribute.startsWith(value)
+                        && (attribute.length() == value.length() || attribute.charAt(value.length()) == '-');
+            case OP_ATTRIBUTE_PREFIX:
+                attribute = adapter.getAttribute(element, args_[op]);
+                return attribute != null && attribute.startsWith(value);
+            case OP_ATTRIBUTE_SUFFIX:
+                attribute = adapter.getAttribute(element, args_[op]);
+                return attribute != null && attribute.endsWith(value);
+            case OP_ATTRIBUTE_SUBSTRING:
+                attribute = adapter.getAttribute(element, args_[op]);
+                return attribute != null && attribute.contains(value);
+            case OP_ROOT:
+                return adapter.getParent(element) == null;
+            case OP_NTH_CHILD:
+                return matchesNth(countPrevious(adapter, element, false) + 1, op);
+            case OP_NTH_LAST_CHILD:
+                return matchesNth(countNext(adapter, element, false) + 1, op);
+            case OP_NTH_OF_TYPE:
+                return matchesNth(countPrevious(adapter, element, true) + 1, op);
+            case OP_NTH_LAST_OF_TYPE:
+                return matchesNth(countNext(adapter, element, true) + 1, op);
+            case OP_ONLY_CHILD:
+                return adapter.getPreviousSibling(element) == null && adapter.getNextSibling(element) == null;
+            case OP_ONLY_OF_TYPE:
+                return countPrevious(adapter, element, true) == 0 && countNext(adapter, element, true) == 0;
+            case OP_LANG:
+                return matchesLang(adapter, element, value);
+            case OP_NOT:
+                return !negations_[op].matches(adapter, element);
+            case OP_DYNAMIC:
+                return adapter.matchesPseudoClass(element, value);
+            default:
+                return false;
+        }
+    }
+
+    private boolean matchesNth(final int position, final int op) {
+        final int step = stepSizes_[op];
+        final int diff = position - offsets_[op];
+        if (step == 0) {
+            return diff == 0;
+        }
+        return diff / step >= 0 && diff % step == 0;
+    }
+
+    private static <E> int countPrevious(final ElementAdapter<E> adapter, final E element, final boolean ofType) {
+        final String localName = ofType ? adapter.getLocalName(element) : null;
+        int count = 0;
+        E sibling = adapter.getPreviousSibling(element);
+        while (sibling != null) {
+            if (!ofType || localName.equalsIgnoreCase(adapter.getLocalName(sibling))) {
+                count++;
+            }
+            sibling = adapter.getPreviousSibling(sibling);
+        }
+        return count;
+    }
+
+    private static <E> int countNext(final ElementAdapter<E> adapter, final E element, final boolean ofType) {
+        final String localName = ofType ? adapter.getLocalName(element) : null;
+        int count = 0;
+        E sibling = adapter.getNextSibling(element);
+        while (sibling != null) {
+            if (!ofType || localName.equalsIgnoreCase(adapter.getLocalName(sibling))) {
+                count++;
+            }
+            sibling = adapter.getNextSibling(sibling);
+        }
+        return count;
+    }
+
+    private static <E> boolean matchesLang(final ElementAdapter<E> adapter, final E element, final String lang) {
+        E current = element;
+        while (current != null) {
+            final String value = adapter.getAttribute(current, "lang");
+            if (value != null) {
+                return value.length() >= lang.length()
+                        && value.regionMatches(true, 0, lang, 0, lang.length())
+                        && (value.length() == lang.length() || value.charAt(lang.length()) == '-');
+            }
+            current = adapter.getParent(current);
+        }
+        return false;
+    }
+
+    private static boolean containsWord(final String attribute, final String word) {
+        final int length = word.length();
+        int index = attribute.indexOf(word);
+        while (index > -1) {
+            final int end = index + length;
+            if ((index == 0 || Character.isWhitespace(attribute.charAt(index - 1)))
+                    && (end == attribute.length() || Character.isWhitespace(attribute.charAt(end)))) {
+                return true;
+            }
+            index = attribute.indexOf(word, index + 1);
+        }
+        return false;
+    }
+
+    private static int cost(final Condition condition) {
+        switch (condition.getConditionType()) {
+            case ID_CONDITION:
+                return 0;
+            case CLASS_CONDITION:
+                return 1;
+            case PSEUDO_CLASS_CONDITION:
+            case LANG_CONDITION:
+                return 3;
+            default:
+                return 2;
+        }
+    }
+
+    private void compileCondition(final int op, final Condition condition) {
+        final String value = condition.getValue();
+        args_[op] = condition.getLocalName();
+        values_[op] = value;
+
+        switch (condition.getConditionType()) {
+            case ID_CONDITION:
+                ops_[op] = OP_ID;
+                break;
+            case CLASS_CONDITION:
+                ops_[op] = OP_CLASS;
+                break;
+            case ATTRIBUTE_CONDITION:
+                ops_[op] = value == null ? OP_ATTRIBUTE_EXISTS : OP_ATTRIBUTE_EQUALS;
+                break;
+            case ONE_OF_ATTRIBUTE_CONDITION:
+                ops_[op] = OP_ATTRIBUTE_ONE_OF;
+                if (value == null || value.isEmpty() || containsWhitespace(value)) {
+                    ops_[op] = OP_NEVER;
+                }
+                break;
+            case BEGIN_HYPHEN_ATTRIBUTE_CONDITION:
+                ops_[op] = value == null ? OP_NEVER : OP_ATTRIBUTE_BEGIN_HYPHEN;
+                break;
+            case PREFIX_ATTRIBUTE_CONDITION:
+                ops_[op] = value == null || value.isEmpty() ? OP_NEVER : OP_ATTRIBUTE_PREFIX;
+                break;
+            case SUFFIX_ATTRIBUTE_CONDITION:
+                ops_[op] = value == null || value.isEmpty() ? OP_NEVER : OP_ATTRIBUTE_SUFFIX;
+                break;
+            case SUBSTRING_ATTRIBUTE_CONDITION:
+                ops_[op] = value == null || value.isEmpty() ? OP_NEVER : OP_ATTRIBUTE_SUBSTRING;
+                break;
+            case LANG_CONDITION:
+                ops_[op] = value == null ? OP_NEVER : OP_LANG;
+                break;
+            case PSEUDO_CLASS_CONDITION:
+                compilePseudoClass(op, value);
+                break;
+            default:
+                ops_[op] = OP_NEVER;
+                break;
+        }
+    }
+
+    private void compilePseudoClass(final int op, final String pseudoClass) {
+        final int parenthesis = pseudoClass.indexOf('(');
+        if (parenthesis < 0) {
+            final String name = pseudoClass.toLowerCase(Locale.ROOT);
+            switch (name) {
+                case "root":
+                    ops_[op] = OP_ROOT;
+                    break;
+                case "first-child":
+                    compileNth(op, OP_NTH_CHILD, "1");
+                    break;
+                case "last-child":
+                    compileNth(op, OP_NTH_LAST_CHILD, "1");
+                    break;
+                case "first-of-type":
+                    compileNth(op, OP_NTH_OF_TYPE, "1");
+                    break;
+                case "last-of-type":
+                    compileNth(op, OP_NTH_LAST_OF_TYPE, "1");
+                    break;
+                case "only-child":
+                    ops_[op] = OP_ONLY_CHILD;
+                    break;
+                case "only-of-type":
+                    ops_[op] = OP_ONLY_OF_TYPE;
+                    break;
+                default:
+                    ops_[op] = OP_DYNAMIC;
+                    values_[op] = name;
+                    break;
+            }
+            return;
+        }
+
+        final String name = pseudoClass.substring(0, parenthesis).toLowerCase(Locale.ROOT);
+        final int end = pseudoClass.lastIndexOf(')');
+        final String argument = pseudoClass.substring(parenthesis + 1, end < parenthesis ? pseudoClass.length() : end);
+        switch (name) {
+            case "not":
+                compileNot(op, argument);
+                break;
+            case "nth-child":
+                compileNth(op, OP_NTH_CHILD, argument);
+                break;
+            case "nth-last-child":
+                compileNth(op, OP_NTH_LAST_CHILD, argument);
+                break;
+            case "nth-of-type":
+                compileNth(op, OP_NTH_OF_TYPE, argument);
+                break;
+            case "nth-last-of-type":
+                compileNth(op, OP_NTH_LAST_OF_TYPE, argument);
+                break;
+            default:
+                ops_[op] = OP_DYNAMIC;
+                values_[op] = pseudoClass.toLowerCase(Locale.ROOT);
+                break;
+        }
+    }
+
+    private void compileNot(final int op, final String argument) {
+        final CSS3Parser parser = new CSS3Parser();
+        parser.setErrorHandler(ThrowCssExceptionErrorHandler.INSTANCE);
+        try (InputSource source = new InputSource(new StringReader(argument))) {
+            final SelectorList selectors = parser.parseSelectors(source);
+            if (selectors != null && selectors.size() == 1) {
+                ops_[op] = OP_NOT;
+                negations_[op] = new CompiledSelector(selectors.get(0));
+                return;
+            }
+        }
+        catch (final IOException | CSSException e) {
+            // handled below
+        }
+        ops_[op] = OP_NEVER;
+    }
+
+    // parses the an+b notation
+    private void compileNth(final int op, final int opCode, final String argument) {
+        final String nth = argument.replaceAll("\\s", "").toLowerCase(Locale.ROOT);
+        try {
+            if ("odd".equals(nth)) {
+                stepSizes_[op] = 2;
+                offsets_[op] = 1;
+            }
+            else if ("even".equals(nth)) {
+                stepSizes_[op] = 2;
+                offsets_[op] = 0;
+            }
+            else {
+                final int n = nth.indexOf('n');
+                if (n < 0) {
+                    stepSizes_[op] = 0;
+                    offsets_[op] = parseInt(nth);
+                }
+                else {
+                    final String step = nth.substring(0, n);
+                    if (step.isEmpty() || "+".equals(step)) {
+                        stepSizes_[op] = 1;
+                    }
+                    else if ("-".equals(step)) {
+                        stepSizes_[op] = -1;
+                    }
+                    else {
+                        stepSizes_[op] = parseInt(step);
+                    }
+
+                    final String offset = nth.substring(n + 1);
+                    offsets_[op] = offset.isEmpty() ? 0 : parseInt(offset);
+                }
+            }
+            ops_[op] = opCode;
+        }
+        catch (final NumberFormatException e) {
+            ops_[op] = OP_NEVER;
+        }
+    }
+
+    private static int parseInt(final String value) {
+        if (value.startsWith("+")) {
+            return Integer.parseInt(value.substring(1));
+        }
+        return Integer.parseInt(value);
+    }
+
+    private static boolean containsWhitespace(final String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (Character.isWhitespace(value.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(selector_);
+    }
+}
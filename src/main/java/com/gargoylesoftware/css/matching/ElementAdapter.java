@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.matching;
+
+/**
+ * Gives the selector matching access to the element tree of the consumer.
+ * Implementations are usually thin stateless wrappers around the DOM
+ * of the consumer.
+ *
+ * @param <E> the type of the elements
+ *
+ * @author Ronald Brill
+ */
+public interface ElementAdapter<E> {
+
+    /**
+     * @param element the element
+     * @return the parent element or null if this is the root element
+     */
+    E getParent(E element);
+
+    /**
+     * @param element the element
+     * @return the previous sibling element (text nodes and comments are skipped) or null
+     */
+    E getPreviousSibling(E element);
+
+    /**
+     * Only used for the structural pseudo classes counting from the end (like :last-child).
+     * @param element the element
+     * @return the next sibling element (text nodes and comments are skipped) or null
+     */
+    E getNextSibling(E element);
+
+    /**
+     * @param element the element
+     * @return the local name of the element; compared case insensitive
+     */
+    String getLocalName(E element);
+
+    /**
+     * @param element the element
+     * @return the id of the element or null
+     */
+    String getId(E element);
+
+    /**
+     * @param element the element
+     * @param className the class name
+     * @return true if the class attribute of the element contains the given class name
+     */
+    boolean hasClass(E element, String className);
+
+    /**
+     * @param element the element
+     * @param name the attribute name as written in the selector
+     * @return the value of the attribute or null if the element has no attribute with this name
+     */
+    String getAttribute(E element, String name);
+
+    /**
+     * Used to look up the candidate rules of an element.
+     * @param element the element
+     * @return the class names of the element or null
+     */
+    default String[] getClassNames(final E element) {
+        final String classes = getAttribute(element, "class");
+        if (classes == null) {
+            return null;
+        }
+        final String trimmed = classes.trim();
+        if (trimmed.isEmpty()) {
+            return null;
+        }
+        return trimmed.split("\\s+");
+    }
+
+    /**
+     * Used to look up the candidate rules of an element.
+     * @param element the element
+     * @return the names of all attributes of the element or null if not available;
+     *         in this case all rules with attribute selectors are checked
+     */
+    default String[] getAttributeNames(final E element) {
+        return null;
+    }
+
+    /**
+     * Called for all pseudo classes that can not be answered by looking at the
+     * tree structure (like :hover, :checked or :empty).
+     * @param element the element
+     * @param pseudoClass the lower case name of the pseudo class (without colon)
+     * @return true if the element is in the given state
+     */
+    default boolean matchesPseudoClass(final E element, final String pseudoClass) {
+        return false;
+    }
+}
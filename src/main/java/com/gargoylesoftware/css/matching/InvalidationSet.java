@@ -0,0 +1,299 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.matching;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import com.gargoylesoftware.css.dom.AbstractCSSRuleImpl;
+import com.gargoylesoftware.css.dom.CSSMediaRuleImpl;
+import com.gargoylesoftware.css.dom.CSSRuleListImpl;
+import com.gargoylesoftware.css.dom.CSSStyleRuleImpl;
+import com.gargoylesoftware.css.dom.CSSStyleSheetImpl;
+import com.gargoylesoftware.css.parser.CSSException;
+import com.gargoylesoftware.css.parser.InputSource;
+import com.gargoylesoftware.css.parser.condition.Condition;
+import com.gargoylesoftware.css.parser.javacc.CSS3Parser;
+import com.gargoylesoftware.css.parser.selector.ChildSelector;
+import com.gargoylesoftware.css.parser.selector.DescendantSelector;
+import com.gargoylesoftware.css.parser.selector.DirectAdjacentSelector;
+import com.gargoylesoftware.css.parser.selector.ElementSelector;
+import com.gargoylesoftware.css.parser.selector.GeneralAdjacentSelector;
+import com.gargoylesoftware.css.parser.selector.Selector;
+import com.gargoylesoftware.css.parser.selector.SelectorList;
+import com.gargoylesoftware.css.util.ThrowCssExceptionErrorHandler;
+
+/**
+ * Knows for every class name, id, attribute name and pseudo class used by the
+ * selectors which elements may change their matching state if the feature of
+ * an element changes: the element itself ({@link #SELF}), its descendants
+ * ({@link #DESCENDANTS}) and/or its following siblings ({@link #SIBLINGS});
+ * if both of the later are set the descendants of the siblings are affected too.
+ * A result of zero means that no selector uses the feature and nothing has
+ * to be restyled.
+ * Class names and ids are case sensitive, attribute names and pseudo classes
+ * are not. The selectors inside :not() are included.
+ * This class is not thread safe.
+ *
+ * @author Ronald Brill
+ */
+public class InvalidationSet {
+
+    /** The element itself is affected. */
+    public static final int SELF = 1;
+    /** The descendants of the element are affected. */
+    public static final int DESCENDANTS = 2;
+    /** The following siblings of the element are affected. */
+    public static final int SIBLINGS = 4;
+
+    private final Map<String, Integer> classes_ = new HashMap<>();
+    private final Map<String, Integer> ids_ = new HashMap<>();
+    private final Map<String, Integer> attributes_ = new HashMap<>();
+    private final Map<String, Integer> pseudoClasses_ = new HashMap<>();
+
+    /**
+     * Adds the selectors of all style rules of the sheet (including all
+     * media rules without evaluating the media).
+     * @param sheet the style sheet
+     */
+    public void addStyleSheet(final CSSStyleSheetImpl sheet) {
+        addRules(sheet.getCssRules());
+    }
+
+    /**
+     * Adds all selectors of the list.
+     * @param selectors the selectors
+     */
+    public void addSelectors(final SelectorList selectors) {
+        for (final Selector selector : selectors) {
+            addSelector(selector);
+        }
+    }
+
+    /**
+     * Adds the features of the selector.
+     * @param selector the selector
+     */
+    public void addSelector(final Selector selector) {
+        addSelector(selector, SELF);
+    }
+
+    /**
+     * @param className the class name
+     * @return the affected elements if the class is added to or removed from an element
+     */
+    public int getClassInvalidation(final String className) {
+        return get(classes_, className);
+    }
+
+    /**
+     * Combines the invalidation of all classes that differ between the old
+     * and the new value of the class attribute.
+     * @param oldValue the old value of the class attribute, may be null
+     * @param newValue the new value of the class attribute, may be null
+     * @return the affected elements
+     */
+    public int getClassChangeInvalidation(final String oldValue, final String newValue) {
+        final String[] oldClasses = split(oldValue);
+        final String[] newClasses = split(newValue);
+        int result = 0;
+        for (final String className : oldClasses) {
+            if (!contains(newClasses, className)) {
+                result |= getClassInvalidation(className);
+            }
+        }
+        for (final String className : newClasses) {
+            if (!contains(oldClasses, className)) {
+                result |= getClassInvalidation(className);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param id the id
+     * @return the affected elements if an element gets or looses the id
+     */
+    public int getIdInvalidation(final String id) {
+        return get(ids_, id);
+    }
+
+    /**
+     * @param name the attribute name
+     * @return the affected elements if the value of the attribute changes
+     */
+    public int getAttributeInvalidation(final String name) {
+        return get(attributes_, name.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * @param pseudoClass the name of the pseudo class without colon and arguments (like hover)
+     * @return the affected elements if the pseudo class state of an element changes
+     */
+    public int getPseudoClassInvalidation(final String pseudoClass) {
+        return get(pseudoClasses_, pseudoClass.toLowerCase(Locale.ROOT));
+    }
+
+    private void addRules(final CSSRuleListImpl rules) {
+        for (final AbstractCSSRuleImpl rule : rules.getRules()) {
+            if (rule instanceof CSSStyleRuleImpl) {
+                addSelectors(((CSSStyleRuleImpl) rule).getSelectors());
+            }
+            else if (rule instanceof CSSMediaRuleImpl) {
+                addRules(((CSSMediaRuleImpl) rule).getCssRules());
+            }
+        }
+    }
+
+    // walks from the subject to the left; the flags describe the position
+    // of the subject relative to the current compound
+    private void addSelector(final Selector selector, final int subjectFlags) {
+        int flags = subjectFlags;
+        Selector current = selector;
+        while (current != null) {
+            final Selector next;
+            final int combinator;
+            switch (current.getSelectorType()) {
+                case DESCENDANT_SELECTOR:
+                    next = ((DescendantSelector) current).getAncestorSelector();
+                    combinator = DESCENDANTS;
+                    break;
+                case CHILD_SELECTOR:
+                    next = ((ChildSelector) current).getAncestorSelector();
+                    combinator = DESCENDANTS;
+                    break;
+                case DIRECT_ADJACENT_SELECTOR:
+                    next = ((DirectAdjacentSelector) current).getSelector();
+                    combinator = SIBLINGS;
+                    break;
+                case GENERAL_ADJACENT_SELECTOR:
+                    next = ((GeneralAdjacentSelector) current).getSelector();
+                    combinator = SIBLINGS;
+                    break;
+                default:
+                    addCompound(current, flags);
+                    return;
+            }
+
+            addCompound(current.getSimpleSelector(), flags);
+            flags = (flags & ~SELF) | combinator;
+            current = next;
+        }
+    }
+
+    private void addCompound(final Selector compound, final int flags) {
+        if (!(compound instanceof ElementSelector)) {
+            // pseudo elements have no conditions
+            return;
+        }
+        final ElementSelector elementSelector = (ElementSelector) compound;
+        if (elementSelector.getConditions() == null) {
+            return;
+        }
+        for (final Condition condition : elementSelector.getConditions()) {
+            addCondition(condition, flags);
+        }
+    }
+
+    private void addCondition(final Condition condition, final int flags) {
+        switch (condition.getConditionType()) {
+            case ID_CONDITION:
+                add(ids_, condition.getValue(), flags);
+                break;
+            case CLASS_CONDITION:
+                add(classes_, condition.getValue(), flags);
+                break;
+            case ATTRIBUTE_CONDITION:
+            case ONE_OF_ATTRIBUTE_CONDITION:
+            case BEGIN_HYPHEN_ATTRIBUTE_CONDITION:
+            case PREFIX_ATTRIBUTE_CONDITION:
+            case SUFFIX_ATTRIBUTE_CONDITION:
+            case SUBSTRING_ATTRIBUTE_CONDITION:
+                add(attributes_, condition.getLocalName().toLowerCase(Locale.ROOT), flags);
+                break;
+            case LANG_CONDITION:
+                add(attributes_, "lang", flags);
+                break;
+            case PSEUDO_CLASS_CONDITION:
+                addPseudoClass(condition.getValue(), flags);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void addPseudoClass(final String pseudoClass, final int flags) {
+        final int parenthesis = pseudoClass.indexOf('(');
+        if (parenthesis < 0) {
+            add(pseudoClasses_, pseudoClass.toLowerCase(Locale.ROOT), flags);
+            return;
+        }
+
+        final String name = pseudoClass.substring(0, parenthesis).toLowerCase(Locale.ROOT);
+        add(pseudoClasses_, name, flags);
+        if ("not".equals(name)) {
+            final int end = pseudoClass.lastIndexOf(')');
+            final String argument = pseudoClass.substring(parenthesis + 1,
+                    end < parenthesis ? pseudoClass.length() : end);
+            final CSS3Parser parser = new CSS3Parser();
+            parser.setErrorHandler(ThrowCssExceptionErrorHandler.INSTANCE);
+            try (InputSource source = new InputSource(new StringReader(argument))) {
+                final SelectorList selectors = parser.parseSelectors(source);
+                if (selectors != null) {
+                    for (final Selector selector : selectors) {
+                        addSelector(selector, flags);
+                    }
+                }
+            }
+            catch (final IOException | CSSException e) {
+                // invalid negations never match
+            }
+        }
+    }
+
+    private static void add(final Map<String, Integer> map, final String key, final int flags) {
+        if (key != null) {
+            map.merge(key, flags, (f1, f2) -> f1 | f2);
+        }
+    }
+
+    private static int get(final Map<String, Integer> map, final String key) {
+        final Integer flags = map.get(key);
+        return flags == null ? 0 : flags;
+    }
+
+    private static String[] split(final String value) {
+        if (value == null) {
+            return new String[0];
+        }
+        final String trimmed = value.trim();
+        if (trimmed.isEmpty()) {
+            return new String[0];
+        }
+        return trimmed.split("\\s+");
+    }
+
+    private static boolean contains(final String[] values, final String value) {
+        for (final String v : values) {
+            if (v.equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -26,7 +26,9 @@
 import com.gargoylesoftware.css.parser.javacc.ParseException;
 import com.gargoylesoftware.css.parser.javacc.Token;
 import com.gargoylesoftware.css.parser.javacc.TokenMgrError;
+import com.gargoylesoftware.css.parser.media.MediaDevice;
 import com.gargoylesoftware.css.parser.media.MediaQueryList;
+import com.gargoylesoftware.css.parser.media.MediaQueryPredicate;
 import com.gargoylesoftware.css.parser.selector.SelectorList;
 
 /**
@@ -38,6 +40,8 @@ public abstract class AbstractCSSParser implements CSSParser {
     private DocumentHandler documentHandler_;
     private CSSErrorHandler errorHandler_;
     private InputSource source_;
+    private MediaDevice mediaDevice_;
+    private CssCharStream charStream_;
 
     private static final HashMap<String, String> parserMessages_ = new HashMap<>();
 
@@ -437,15 +441,48 @@ public MediaQueryList parseMedia(final InputSource source) throws IOException {
         return ml;
     }
 
-    private static CharStream getCharStream(final InputSource source) throws IOException {
+    private CharStream getCharStream(final InputSource source) throws IOException {
+        charStream_ = null;
         if (source.getReader() != null) {
-            return new CssCharStream(source.getReader(), 1, 1);
+            charStream_ = new CssCharStream(source.getReader(), source.getLineNumber(), source.getColumnNumber());
         }
-        if (source.getURI() != null) {
+        else if (source.getURI() != null) {
             final InputStreamReader reader = new InputStreamReader(new URL(source.getURI()).openStream());
-            return new CssCharStream(reader, 1, 1);
+            charStream_ = new CssCharStream(reader, source.getLineNumber(), source.getColumnNumber());
         }
-        return null;
+        if (charStream_ != null && mediaDevice_ != null) {
+            charStream_.startRecording();
+        }
+        return charStream_;
+    }
+
+    /**
+     * If a device is set, the content of media rules not matching the device
+     * is not parsed if the document handler is a {@link DeferredMediaDocumentHandler};
+     * the source of the rules is passed to
+     * {@link DeferredMediaDocumentHandler#deferredMedia(MediaQueryList, String, Locator, Locator)}.
+     * @param device the device or null to parse all media rules
+     */
+    public void setMediaDevice(final MediaDevice device) {
+        mediaDevice_ = device;
+    }
+
+    /**
+     * @return the device used to defer media rules or null
+     */
+    public MediaDevice getMediaDevice() {
+        return mediaDevice_;
+    }
+
+    /**
+     * @param media the media query list of a media rule
+     * @return true if the content of the media rule should not be parsed now
+     */
+    protected boolean isDeferredMedia(final MediaQueryList media) {
+        return mediaDevice_ != null
+                && charStream_ != null
+                && getDocumentHandler() instanceof DeferredMediaDocumentHandler
+                && !MediaQueryPredicate.compile(media).matches(mediaDevice_);
     }
 
     @Override
@@ -568,6 +605,28 @@ protected void handleStartMedia(final MediaQueryList media, final Locator locato
         getDocumentHandler().startMedia(media, locator);
     }
 
+    /**
+     * deferred media handler.
+     *
+     * @param media the media query list
+     * @param open the '{' token
+     * @param close the matching '}' token or EOF
+     * @param locator the locator
+     */
+    protected void handleDeferredMedia(final MediaQueryList media, final Token open, final Token close,
+            final Locator locator) {
+        final String rules;
+        if (close.kind == 0) {
+            // EOF
+            rules = charStream_.getRecordedText(open.endLine, open.endColumn, -1, -1);
+        }
+        else {
+            rules = charStream_.getRecordedText(open.endLine, open.endColumn, close.beginLine, close.beginColumn);
+        }
+        final Locator rulesLocator = new Locator(getInputSource().getURI(), open.endLine, open.endColumn + 1);
+        ((DeferredMediaDocumentHandler) getDocumentHandler()).deferredMedia(media, rules, rulesLocator, locator);
+    }
+
     /**
      * medium handler.
      *
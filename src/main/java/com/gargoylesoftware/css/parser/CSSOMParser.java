@@ -34,7 +34,9 @@
 import com.gargoylesoftware.css.dom.CSSValueImpl;
 import com.gargoylesoftware.css.dom.MediaListImpl;
 import com.gargoylesoftware.css.dom.Property;
+import com.gargoylesoftware.css.dom.RuleIndexBuilder;
 import com.gargoylesoftware.css.parser.javacc.CSS3Parser;
+import com.gargoylesoftware.css.parser.media.MediaDevice;
 import com.gargoylesoftware.css.parser.media.MediaQueryList;
 import com.gargoylesoftware.css.parser.selector.SelectorList;
 
@@ -45,6 +47,9 @@ public class CSSOMParser {
 
     private CSSParser parser_;
     private CSSStyleSheetImpl parentStyleSheet_;
+    private boolean buildRuleIndex_;
+    private MediaDevice mediaDevice_;
+    private CSSErrorHandler errorHandler_;
 
     /**
      * Creates new CSSOMParser.
@@ -65,9 +70,35 @@ public CSSOMParser() {
      * @param eh the error handler to be used
      */
     public void setErrorHandler(final CSSErrorHandler eh) {
+        errorHandler_ = eh;
         parser_.setErrorHandler(eh);
     }
 
+    /**
+     * If a device is set, the rules of media rules not matching the device
+     * are not parsed; they are parsed if accessed using
+     * {@link CSSMediaRuleImpl#getCssRules()} or if
+     * {@link CSSStyleSheetImpl#parseDeferredRules(MediaDevice)} is called
+     * for a matching device. Requires a parser based on {@link AbstractCSSParser}.
+     * @param device the device or null to parse all media rules
+     */
+    public void setMediaDevice(final MediaDevice device) {
+        mediaDevice_ = device;
+        if (parser_ instanceof AbstractCSSParser) {
+            ((AbstractCSSParser) parser_).setMediaDevice(device);
+        }
+    }
+
+    /**
+     * If enabled, the rule index of parsed style sheets is built while parsing;
+     * the index is available from {@link CSSStyleSheetImpl#getRuleIndex()}
+     * as soon as the style sheet is returned.
+     * @param buildRuleIndex true to build the rule index
+     */
+    public void setBuildRuleIndex(final boolean buildRuleIndex) {
+        buildRuleIndex_ = buildRuleIndex;
+    }
+
     /**
      * Parses a SAC input source into a CSSOM style sheet.
      *
@@ -153,6 +184,39 @@ public AbstractCSSRuleImpl parseRule(final String rule) throws IOException {
         }
     }
 
+    /**
+     * Parses a string containing any number of rules. The rules are not
+     * wrapped into a style sheet, the parent style sheet is used instead.
+     *
+     * @param rules the input string
+     * @return the list of rules
+     * @throws IOException if the underlying SAC parser throws an IOException
+     */
+    public CSSRuleListImpl parseRules(final String rules) throws IOException {
+        try (InputSource source = new InputSource(new StringReader(rules))) {
+            return parseRules(source);
+        }
+    }
+
+    /**
+     * Parses a sequence of rules (like the content of a media rule).
+     * The rules are not added to the parent style sheet.
+     *
+     * @param source the source
+     * @return the rule list
+     * @throws IOException if the underlying SAC parser throws an IOException
+     */
+    public CSSRuleListImpl parseRules(final InputSource source) throws IOException {
+        final CSSRuleListImpl ruleList = new CSSRuleListImpl();
+        final Stack<Object> nodeStack = new Stack<>();
+        nodeStack.push(getParentStyleSheet());
+        nodeStack.push(ruleList);
+        final CSSOMHandler handler = new CSSOMHandler(nodeStack);
+        parser_.setDocumentHandler(handler);
+        parser_.parseStyleSheet(source);
+        return ruleList;
+    }
+
     /**
      * Parses a string into a CSSSelectorList.
      *
@@ -200,10 +264,11 @@ protected CSSStyleSheetImpl getParentStyleSheet() {
         return parentStyleSheet_;
     }
 
-    class CSSOMHandler implements DocumentHandler {
+    class CSSOMHandler implements DeferredMediaDocumentHandler {
         private Stack<Object> nodeStack_;
         private Object root_;
         private String href_;
+        private RuleIndexBuilder ruleIndexBuilder_;
 
         private String getHref() {
             return href_;
@@ -238,6 +303,10 @@ public void startDocument(final InputSource source) throws CSSException {
                 ss.setCssRules(rules);
                 nodeStack_.push(ss);
                 nodeStack_.push(rules);
+
+                if (buildRuleIndex_) {
+                    ruleIndexBuilder_ = new RuleIndexBuilder();
+                }
             }
         }
 
@@ -246,6 +315,11 @@ public void endDocument(final InputSource source) throws CSSException {
             // Pop the rule list and style sheet nodes
             nodeStack_.pop();
             root_ = nodeStack_.pop();
+
+            if (ruleIndexBuilder_ != null) {
+                ((CSSStyleSheetImpl) root_).setRuleIndex(ruleIndexBuilder_.getRuleIndex());
+                ruleIndexBuilder_ = null;
+            }
         }
 
         @Override
@@ -316,6 +390,19 @@ public void startMedia(final MediaQueryList media, final Locator locator) throws
             mr.setRuleList(rules);
             nodeStack_.push(mr);
             nodeStack_.push(rules);
+
+            if (ruleIndexBuilder_ != null) {
+                ruleIndexBuilder_.startMedia(ml);
+            }
+        }
+
+        @Override
+        public void deferredMedia(final MediaQueryList media, final String rules, final Locator rulesLocator,
+                final Locator locator) throws CSSException {
+            startMedia(media, locator);
+            final CSSMediaRuleImpl mr = (CSSMediaRuleImpl) nodeStack_.get(nodeStack_.size() - 2);
+            mr.setDeferredRules(rules, rulesLocator, mediaDevice_, errorHandler_);
+            endMedia(media);
         }
 
         @Override
@@ -323,6 +410,10 @@ public void endMedia(final MediaQueryList media) throws CSSException {
             // Pop the rule list and media rule nodes
             nodeStack_.pop();
             root_ = nodeStack_.pop();
+
+            if (ruleIndexBuilder_ != null) {
+                ruleIndexBuilder_.endMedia();
+            }
         }
 
         @Override
@@ -393,6 +484,10 @@ public void startSelector(final SelectorList selectors, final Locator locator) t
             sr.setStyle(decl);
             nodeStack_.push(sr);
             nodeStack_.push(decl);
+
+            if (ruleIndexBuilder_ != null) {
+                ruleIndexBuilder_.addStyleRule(sr);
+            }
         }
 
         @Override
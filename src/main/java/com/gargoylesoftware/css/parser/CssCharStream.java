@@ -41,6 +41,15 @@ public final class CssCharStream implements CharStream
   private int tabSize = 1;
   private boolean trackLineColumn = true;
 
+  // all chars read so far (only if recording is enabled)
+  private StringBuilder recording;
+  private int recordingLine;
+  private int recordingColumn;
+  // offsets of the line starts of the recording
+  private int[] lineStarts = new int[16];
+  private int lineCount;
+  private int scanned;
+
   private void ExpandBuff(boolean wrapAround)
   {
     char[] newbuffer = new char[bufsize + BUFFER_SIZE];
@@ -121,6 +130,8 @@ else if ((tokenBegin - available) < BUFFER_SIZE)
         throw new java.io.IOException();
       }
 
+      if (recording != null)
+        recording.append(buffer, maxNextCharInd, i);
       maxNextCharInd += i;
       return;
     }
@@ -373,6 +384,64 @@ public void adjustBeginLineColumn(int newLine, int newCol)
     column = bufcolumn[j];
   }
 
+  /**
+   * Enables the recording of the source; has to be called before the first char is read.
+   */
+  public void startRecording()
+  {
+    recording = new StringBuilder();
+    recordingLine = line;
+    recordingColumn = column + 1;
+    lineStarts[0] = 0;
+    lineCount = 1;
+    scanned = 0;
+  }
+
+  /**
+   * Returns the recorded source between two positions (both exclusive).
+   * @param afterLine the line of the char before the text
+   * @param afterColumn the column of the char before the text
+   * @param beforeLine the line of the char after the text; -1 for the end of the recording
+   * @param beforeColumn the column of the char after the text
+   * @return the text
+   */
+  public String getRecordedText(int afterLine, int afterColumn, int beforeLine, int beforeColumn)
+  {
+    if (recording == null)
+      throw new IllegalStateException("Recording is not enabled.");
+
+    int start = offset(afterLine, afterColumn) + 1;
+    int end = beforeLine < 0 ? recording.length() : offset(beforeLine, beforeColumn);
+    if (end < start)
+      return "";
+    return recording.substring(start, end);
+  }
+
+  private int offset(int line, int column)
+  {
+    int lineIndex = line - recordingLine;
+    while (lineIndex >= lineCount && scanned < recording.length())
+    {
+      // same line break rules as UpdateLineColumn
+      char c = recording.charAt(scanned);
+      if (c == '\r' && scanned + 1 == recording.length())
+        break; // wait for the next char
+      if (c == '\r' && recording.charAt(scanned + 1) == '\n')
+        scanned++;
+      scanned++;
+      if (c == '\r' || c == '\n')
+      {
+        if (lineCount == lineStarts.length)
+          lineStarts = java.util.Arrays.copyOf(lineStarts, lineCount * 2);
+        lineStarts[lineCount++] = scanned;
+      }
+    }
+    if (lineIndex >= lineCount)
+      return recording.length();
+    int offset = lineStarts[lineIndex] + column - (lineIndex == 0 ? recordingColumn : 1);
+    return Math.min(offset, recording.length());
+  }
+
   @Override
 public void setTabSize(int i) {
       tabSize = i;
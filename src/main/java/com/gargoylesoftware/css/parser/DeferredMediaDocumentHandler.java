@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.parser;
+
+import com.gargoylesoftware.css.parser.media.MediaQueryList;
+
+/**
+ * A {@link DocumentHandler} that is able to store the content of media rules
+ * for later parsing. The parser only defers media rules if the document handler
+ * implements this interface; all other handlers receive the parsed rules.
+ *
+ * @author Ronald Brill
+ */
+public interface DeferredMediaDocumentHandler extends DocumentHandler {
+
+    /**
+     * Receive notification of a media statement whose rules were not parsed
+     * because the media does not match the media device of the parser.
+     *
+     * @param media The intended destination media for style information.
+     * @param rules the source of the rules inside the braces
+     * @param rulesLocator the position of the first char of the rules
+     * @param locator the locator
+     * @exception CSSException Any CSS exception, possibly wrapping another
+     *                         exception.
+     */
+    void deferredMedia(MediaQueryList media, String rules, Locator rulesLocator, Locator locator)
+            throws CSSException;
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.parser;
+
+/**
+ * Handler used by the parser caches. Remembers if there was an error and
+ * forwards all notifications to the given error handler (or to the default
+ * implementation if there is none).
+ *
+ * @author Ronald Brill
+ */
+class ErrorTrackingHandler extends HandlerBase {
+
+    private final CSSErrorHandler errorHandler_;
+    private boolean errorFound_;
+
+    /**
+     * Ctor.
+     * @param errorHandler the error handler to forward to, may be null
+     */
+    ErrorTrackingHandler(final CSSErrorHandler errorHandler) {
+        errorHandler_ = errorHandler;
+    }
+
+    /**
+     * @return true if an error or a fatal error was reported
+     */
+    boolean isErrorFound() {
+        return errorFound_;
+    }
+
+    @Override
+    public void warning(final CSSParseException exception) throws CSSException {
+        if (errorHandler_ == null) {
+            super.warning(exception);
+            return;
+        }
+        errorHandler_.warning(exception);
+    }
+
+    @Override
+    public void error(final CSSParseException exception) throws CSSException {
+        errorFound_ = true;
+        if (errorHandler_ == null) {
+            super.error(exception);
+            return;
+        }
+        errorHandler_.error(exception);
+    }
+
+    @Override
+    public void fatalError(final CSSParseException exception) throws CSSException {
+        errorFound_ = true;
+        if (errorHandler_ == null) {
+            super.fatalError(exception);
+            return;
+        }
+        errorHandler_.fatalError(exception);
+    }
+}
@@ -28,6 +28,8 @@ public class InputSource implements Closeable {
     private Reader reader_;
     private String media_;
     private String title_;
+    private int lineNumber_ = 1;
+    private int columnNumber_ = 1;
 
     /**
      * Create a new input source backed by a reader.
@@ -89,6 +91,31 @@ public void setTitle(final String title) {
         title_ = title;
     }
 
+    /**
+     * @return the line number of the first char (default 1)
+     */
+    public int getLineNumber() {
+        return lineNumber_;
+    }
+
+    /**
+     * @return the column number of the first char (default 1)
+     */
+    public int getColumnNumber() {
+        return columnNumber_;
+    }
+
+    /**
+     * Sets the position of the first char; useful if the source is part of a larger
+     * source and the locators should refer to the larger source.
+     * @param lineNumber the line number of the first char
+     * @param columnNumber the column number of the first char
+     */
+    public void setStartPosition(final int lineNumber, final int columnNumber) {
+        lineNumber_ = lineNumber;
+        columnNumber_ = columnNumber;
+    }
+
     @Override
     public void close() throws IOException {
         reader_.close();
@@ -743,6 +743,57 @@ private String getTrimedDoubleValue() {
         return decimalFormat.format(f);
     }
 
+    /**
+     * Creates a copy of a single unit; the following units are not copied,
+     * parameters and sub values are shared with the original.
+     *
+     * @param prev the previous LexicalUnit
+     * @param unit the unit to copy
+     * @return the copy
+     */
+    public static LexicalUnit copyOf(final LexicalUnit prev, final LexicalUnit unit) {
+        final LexicalUnitImpl copy = new LexicalUnitImpl(prev, unit.getLexicalUnitType());
+        copy.doubleValue_ = unit.getDoubleValue();
+        copy.functionName_ = unit.getFunctionName();
+        copy.parameters_ = unit.getParameters();
+        copy.stringValue_ = unit.getStringValue();
+        if (unit instanceof LexicalUnitImpl) {
+            copy.dimension_ = ((LexicalUnitImpl) unit).dimension_;
+        }
+        else if (unit.getLexicalUnitType() == LexicalUnitType.DIMENSION) {
+            copy.dimension_ = unit.getDimensionUnitText();
+        }
+        copy.setLocator(unit.getLocator());
+        return copy;
+    }
+
+    /**
+     * Creates a deep copy of the chain starting with the given unit; the parameters
+     * of functions and the locators are copied too.
+     *
+     * @param value the first unit of the chain, may be null
+     * @return the copy
+     */
+    public static LexicalUnit copyChain(final LexicalUnit value) {
+        LexicalUnit first = null;
+        LexicalUnit last = null;
+        for (LexicalUnit unit = value; unit != null; unit = unit.getNextLexicalUnit()) {
+            last = copyOf(last, unit);
+            if (unit.getParameters() != null) {
+                ((LexicalUnitImpl) last).parameters_ = copyChain(unit.getParameters());
+            }
+            final Locator locator = unit.getLocator();
+            if (locator != null) {
+                ((LexicalUnitImpl) last).setLocator(
+                        new Locator(locator.getUri(), locator.getLineNumber(), locator.getColumnNumber()));
+            }
+            if (first == null) {
+                first = last;
+            }
+        }
+        return first;
+    }
+
     /**
      * @param prev the previous LexicalUnit
      * @param i the integer value
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.parser;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import com.gargoylesoftware.css.dom.CSSValueImpl;
+import com.gargoylesoftware.css.parser.javacc.CSS3Parser;
+import com.gargoylesoftware.css.util.LRUCache;
+
+/**
+ * Bounded cache for parsed property values.
+ * The cache stores the parsed lexical units only; every lookup creates a new
+ * {@link CSSValueImpl} with a copy of the lexical units, therefore modifications
+ * of the returned value are not visible to other callers.
+ * Values with errors are not cached, the error handler passed to the call will be
+ * informed about every occurrence.
+ * This class is thread safe.
+ *
+ * @author Ronald Brill
+ */
+public class PropertyValueCache {
+
+    /** The cache used by {@link com.gargoylesoftware.css.dom.CSSStyleDeclarationImpl} and CSSValueImpl. */
+    public static final PropertyValueCache DEFAULT = new PropertyValueCache(1000, 256);
+
+    private final LRUCache<String, LexicalUnit> cache_;
+    private final int maxValueLength_;
+
+    /**
+     * Ctor.
+     * @param maxSize the maximum number of cached values
+     * @param maxValueLength values longer than this are parsed but not cached
+     */
+    public PropertyValueCache(final int maxSize, final int maxValueLength) {
+        cache_ = new LRUCache<>(maxSize);
+        maxValueLength_ = maxValueLength;
+    }
+
+    /**
+     * Parses a input string into a CSSValue; errors are reported to the default handler.
+     *
+     * @param propertyValue the input string
+     * @return a new css value or null if the input contains no value
+     * @throws IOException if the underlying SAC parser throws an IOException
+     */
+    public CSSValueImpl parsePropertyValue(final String propertyValue) throws IOException {
+        return parsePropertyValue(propertyValue, null);
+    }
+
+    /**
+     * Parses a input string into a CSSValue.
+     *
+     * @param propertyValue the input string
+     * @param errorHandler the error handler informed about errors, may be null
+     * @return a new css value or null if the input contains no value
+     * @throws IOException if the underlying SAC parser throws an IOException
+     */
+    public CSSValueImpl parsePropertyValue(final String propertyValue, final CSSErrorHandler errorHandler)
+            throws IOException {
+        final boolean cacheable = propertyValue.length() <= maxValueLength_;
+        if (cacheable) {
+            final LexicalUnit cached = cache_.get(propertyValue);
+            if (cached != null) {
+                return new CSSValueImpl(LexicalUnitImpl.copyChain(cached));
+            }
+        }
+
+        final CSS3Parser parser = new CSS3Parser();
+        final ErrorTrackingHandler handler = new ErrorTrackingHandler(errorHandler);
+        parser.setDocumentHandler(handler);
+        parser.setErrorHandler(handler);
+        final LexicalUnit lu;
+        try (InputSource source = new InputSource(new StringReader(propertyValue))) {
+            lu = parser.parsePropertyValue(source);
+        }
+        if (null == lu) {
+            return null;
+        }
+
+        if (cacheable && !handler.isErrorFound()) {
+            // the cached units are never handed out
+            cache_.put(propertyValue, LexicalUnitImpl.copyChain(lu));
+        }
+        return new CSSValueImpl(lu);
+    }
+
+    /**
+     * @return the number of cached values
+     */
+    public int size() {
+        return cache_.size();
+    }
+
+    /**
+     * Removes all cached values and resets the statistics.
+     */
+    public void clear() {
+        cache_.clear();
+    }
+
+    /**
+     * @return the number of lookups answered from the cache
+     */
+    public long getHitCount() {
+        return cache_.getHitCount();
+    }
+
+    /**
+     * @return the number of lookups that required parsing
+     */
+    public long getMissCount() {
+        return cache_.getMissCount();
+    }
+
+    /**
+     * @return the ratio of hits to all lookups
+     */
+    public double getHitRate() {
+        return cache_.getHitRate();
+    }
+}
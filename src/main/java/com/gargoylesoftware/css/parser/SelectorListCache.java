@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.parser;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import com.gargoylesoftware.css.parser.javacc.CSS3Parser;
+import com.gargoylesoftware.css.parser.selector.RightmostKey;
+import com.gargoylesoftware.css.parser.selector.Selector;
+import com.gargoylesoftware.css.parser.selector.SelectorList;
+import com.gargoylesoftware.css.parser.selector.SelectorSpecificity;
+import com.gargoylesoftware.css.util.LRUCache;
+
+/**
+ * Bounded cache for parsed selector lists like the arguments of querySelector calls.
+ * Invalid selectors are cached also; the errors are reported again to the
+ * error handler passed to the call on every lookup without parsing the text again.
+ * The cached {@link SelectorList}s are shared between all callers, therefore
+ * only unmodifiable views are handed out. The views protect the lists only,
+ * the {@link Selector}s and their conditions are shared also and must not be
+ * modified by the callers.
+ * This class is thread safe.
+ *
+ * @author Ronald Brill
+ */
+public class SelectorListCache {
+
+    private final LRUCache<String, Entry> cache_;
+
+    /**
+     * Ctor.
+     * @param maxSize the maximum number of cached selector lists
+     */
+    public SelectorListCache(final int maxSize) {
+        cache_ = new LRUCache<>(maxSize);
+    }
+
+    /**
+     * Parses a string into a SelectorList; errors are reported to the default handler.
+     *
+     * @param selectors the input string
+     * @return the selector list or null if the selectors are not valid
+     * @throws IOException if the underlying SAC parser throws an IOException
+     */
+    public SelectorList parseSelectors(final String selectors) throws IOException {
+        return parseSelectors(selectors, null);
+    }
+
+    /**
+     * Parses a string into a SelectorList.
+     *
+     * @param selectors the input string
+     * @param errorHandler the error handler informed about errors, may be null
+     * @return the selector list or null if the selectors are not valid
+     * @throws IOException if the underlying SAC parser throws an IOException
+     */
+    public SelectorList parseSelectors(final String selectors, final CSSErrorHandler errorHandler)
+            throws IOException {
+        return getEntry(selectors, errorHandler).getSelectorList();
+    }
+
+    /**
+     * Returns the cache entry for the given selectors; parses the selectors
+     * if not already cached. Errors are reported to the default handler.
+     *
+     * @param selectors the input string
+     * @return the entry, never null
+     * @throws IOException if the underlying SAC parser throws an IOException
+     */
+    public Entry getEntry(final String selectors) throws IOException {
+        return getEntry(selectors, null);
+    }
+
+    /**
+     * Returns the cache entry for the given selectors; parses the selectors
+     * if not already cached.
+     *
+     * @param selectors the input string
+     * @param errorHandler the error handler informed about errors, may be null
+     * @return the entry, never null
+     * @throws IOException if the underlying SAC parser throws an IOException
+     */
+    public Entry getEntry(final String selectors, final CSSErrorHandler errorHandler) throws IOException {
+        Entry entry = cache_.get(selectors);
+        if (entry == null) {
+            // the errors are only recorded while parsing; the entry has to be
+            // stored even if the error handler throws
+            final CSS3Parser parser = new CSS3Parser();
+            final RecordingHandler handler = new RecordingHandler(errorHandler);
+            parser.setDocumentHandler(handler);
+            parser.setErrorHandler(handler);
+            final SelectorList selectorList;
+            try (InputSource source = new InputSource(new StringReader(selectors))) {
+                selectorList = parser.parseSelectors(source);
+            }
+
+            if (selectorList == null || !handler.errors_.isEmpty()) {
+                entry = new Entry(null, handler.errors_.toArray(new CSSParseException[handler.errors_.size()]),
+                        handler.fatalErrors_);
+            }
+            else {
+                entry = new Entry(new UnmodifiableSelectorList(selectorList), null, null);
+            }
+            cache_.put(selectors, entry);
+        }
+
+        if (!entry.isValid()) {
+            final ErrorTrackingHandler handler = new ErrorTrackingHandler(errorHandler);
+            for (int i = 0; i < entry.errors_.length; i++) {
+                if (entry.fatalErrors_.get(i)) {
+                    handler.fatalError(entry.errors_[i]);
+                }
+                else {
+                    handler.error(entry.errors_[i]);
+                }
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * @return the number of cached selector lists
+     */
+    public int size() {
+        return cache_.size();
+    }
+
+    /**
+     * Removes all cached selector lists and resets the statistics.
+     */
+    public void clear() {
+        cache_.clear();
+    }
+
+    /**
+     * @return the number of lookups answered from the cache
+     */
+    public long getHitCount() {
+        return cache_.getHitCount();
+    }
+
+    /**
+     * @return the number of lookups that required parsing
+     */
+    public long getMissCount() {
+        return cache_.getMissCount();
+    }
+
+    /**
+     * @return the ratio of hits to all lookups
+     */
+    public double getHitRate() {
+        return cache_.getHitRate();
+    }
+
+    /**
+     * A cached parse result together with the precomputed matching
+     * metadata for every selector of the list.
+     */
+    public static final class Entry {
+        private final SelectorList selectorList_;
+        private final CSSParseException[] errors_;
+        private final BitSet fatalErrors_;
+        private final SelectorSpecificity[] specificities_;
+        private final RightmostKey[] rightmostKeys_;
+
+        Entry(final SelectorList selectorList, final CSSParseException[] errors, final BitSet fatalErrors) {
+            selectorList_ = selectorList;
+            errors_ = errors;
+            fatalErrors_ = fatalErrors;
+
+            if (selectorList == null) {
+                specificities_ = new SelectorSpecificity[0];
+                rightmostKeys_ = new RightmostKey[0];
+                return;
+            }
+
+            final int size = selectorList.size();
+            specificities_ = new SelectorSpecificity[size];
+            rightmostKeys_ = new RightmostKey[size];
+            for (int i = 0; i < size; i++) {
+                specificities_[i] = selectorList.get(i).getSelectorSpecificity();
+                rightmostKeys_[i] = new RightmostKey(selectorList.get(i));
+            }
+        }
+
+        /**
+         * The returned list is shared with all other callers; the list itself is
+         * unmodifiable but the selectors are not, they must not be modified.
+         * @return the unmodifiable selector list or null if the selectors are not valid
+         */
+        public SelectorList getSelectorList() {
+            return selectorList_;
+        }
+
+        /**
+         * @return true if the selectors are valid
+         */
+        public boolean isValid() {
+            return selectorList_ != null;
+        }
+
+        /**
+         * @param index the index of the selector in the list
+         * @return the specificity of the selector
+         */
+        public SelectorSpecificity getSpecificity(final int index) {
+            return specificities_[index];
+        }
+
+        /**
+         * @param index the index of the selector in the list
+         * @return the key of the rightmost compound of the selector
+         */
+        public RightmostKey getRightmostKey(final int index) {
+            return rightmostKeys_[index];
+        }
+    }
+
+    /**
+     * Read only view of a cached selector list; the selectors are not copied.
+     */
+    private static final class UnmodifiableSelectorList extends AbstractList<Selector> implements SelectorList {
+        private final SelectorList selectorList_;
+
+        UnmodifiableSelectorList(final SelectorList selectorList) {
+            selectorList_ = selectorList;
+        }
+
+        @Override
+        public Selector get(final int index) {
+            return selectorList_.get(index);
+        }
+
+        @Override
+        public int size() {
+            return selectorList_.size();
+        }
+
+        @Override
+        public String toString() {
+            return selectorList_.toString();
+        }
+    }
+
+    /**
+     * Records the errors without reporting them; warnings are forwarded.
+     */
+    private static final class RecordingHandler extends ErrorTrackingHandler {
+        private final List<CSSParseException> errors_ = new ArrayList<>();
+        private final BitSet fatalErrors_ = new BitSet();
+
+        RecordingHandler(final CSSErrorHandler errorHandler) {
+            super(errorHandler);
+        }
+
+        @Override
+        public void error(final CSSParseException exception) throws CSSException {
+            errors_.add(exception);
+        }
+
+        @Override
+        public void fatalError(final CSSParseException exception) throws CSSException {
+            fatalErrors_.set(errors_.size());
+            errors_.add(exception);
+        }
+    }
+}
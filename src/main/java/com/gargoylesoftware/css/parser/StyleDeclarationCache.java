@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.parser;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.w3c.dom.DOMException;
+
+import com.gargoylesoftware.css.dom.CSSStyleDeclarationImpl;
+import com.gargoylesoftware.css.dom.CSSValueImpl;
+import com.gargoylesoftware.css.dom.Property;
+import com.gargoylesoftware.css.parser.javacc.CSS3Parser;
+import com.gargoylesoftware.css.util.LRUCache;
+
+/**
+ * Bounded cache for parsed style declarations like the content of style attributes.
+ * The cache stores the parsed lexical units only; every lookup creates new
+ * {@link Property} and {@link CSSValueImpl} objects with copies of the lexical
+ * units and locators, therefore modifications
+ * of the returned declaration are not visible to other callers.
+ * Declarations with errors are not cached, the error handler passed to the call
+ * will be informed about every occurrence.
+ * This class is thread safe.
+ *
+ * @author Ronald Brill
+ */
+public class StyleDeclarationCache {
+
+    private final LRUCache<String, CachedProperty[]> cache_;
+
+    /**
+     * Ctor.
+     * @param maxSize the maximum number of cached declarations
+     */
+    public StyleDeclarationCache(final int maxSize) {
+        cache_ = new LRUCache<>(maxSize);
+    }
+
+    /**
+     * Parses a input string into a CSSOM style declaration; errors are reported to the default handler.
+     *
+     * @param styleDecl the input string
+     * @return the CSSOM style declaration
+     * @throws IOException if the underlying SAC parser throws an IOException
+     */
+    public CSSStyleDeclarationImpl parseStyleDeclaration(final String styleDecl) throws IOException {
+        return parseStyleDeclaration(styleDecl, null);
+    }
+
+    /**
+     * Parses a input string into a CSSOM style declaration.
+     *
+     * @param styleDecl the input string
+     * @param errorHandler the error handler informed about errors, may be null
+     * @return the CSSOM style declaration
+     * @throws IOException if the underlying SAC parser throws an IOException
+     */
+    public CSSStyleDeclarationImpl parseStyleDeclaration(final String styleDecl, final CSSErrorHandler errorHandler)
+            throws IOException {
+        final CSSStyleDeclarationImpl sd = new CSSStyleDeclarationImpl(null);
+        parseStyleDeclaration(sd, styleDecl, errorHandler);
+        return sd;
+    }
+
+    /**
+     * Parses a input string into a CSSOM style declaration. The properties are
+     * added to the given declaration; errors are reported to the default handler.
+     *
+     * @param sd the CSSOM style declaration
+     * @param styleDecl the input string
+     * @throws IOException if the underlying SAC parser throws an IOException
+     */
+    public void parseStyleDeclaration(final CSSStyleDeclarationImpl sd, final String styleDecl) throws IOException {
+        parseStyleDeclaration(sd, styleDecl, null);
+    }
+
+    /**
+     * Parses a input string into a CSSOM style declaration. The properties are
+     * added to the given declaration.
+     *
+     * @param sd the CSSOM style declaration
+     * @param styleDecl the input string
+     * @param errorHandler the error handler informed about errors, may be null
+     * @throws IOException if the underlying SAC parser throws an IOException
+     */
+    public void parseStyleDeclaration(final CSSStyleDeclarationImpl sd, final String styleDecl,
+            final CSSErrorHandler errorHandler) throws IOException {
+        final CachedProperty[] cached = cache_.get(styleDecl);
+        if (cached != null) {
+            for (final CachedProperty cachedProperty : cached) {
+                sd.addProperty(cachedProperty.createProperty());
+            }
+            return;
+        }
+
+        final CSS3Parser parser = new CSS3Parser();
+        final CachingHandler handler = new CachingHandler(parser, sd, errorHandler);
+        parser.setDocumentHandler(handler);
+        parser.setErrorHandler(handler);
+        try (InputSource source = new InputSource(new StringReader(styleDecl))) {
+            parser.parseStyleDeclaration(source);
+        }
+
+        if (!handler.isErrorFound()) {
+            cache_.put(styleDecl, handler.properties_.toArray(new CachedProperty[handler.properties_.size()]));
+        }
+    }
+
+    /**
+     * @return the number of cached declarations
+     */
+    public int size() {
+        return cache_.size();
+    }
+
+    /**
+     * Removes all cached declarations and resets the statistics.
+     */
+    public void clear() {
+        cache_.clear();
+    }
+
+    /**
+     * @return the number of lookups answered from the cache
+     */
+    public long getHitCount() {
+        return cache_.getHitCount();
+    }
+
+    /**
+     * @return the number of lookups that required parsing
+     */
+    public long getMissCount() {
+        return cache_.getMissCount();
+    }
+
+    /**
+     * @return the ratio of hits to all lookups
+     */
+    public double getHitRate() {
+        return cache_.getHitRate();
+    }
+
+    private static final class CachedProperty {
+        private final String name_;
+        private final LexicalUnit value_;
+        private final boolean important_;
+        private final Locator locator_;
+
+        CachedProperty(final String name, final LexicalUnit value, final boolean important, final Locator locator) {
+            name_ = name;
+            value_ = LexicalUnitImpl.copyChain(value);
+            important_ = important;
+            locator_ = copyOf(locator);
+        }
+
+        Property createProperty() {
+            final Property property = new Property(name_,
+                    new CSSValueImpl(LexicalUnitImpl.copyChain(value_)), important_);
+            property.setLocator(copyOf(locator_));
+            return property;
+        }
+
+        private static Locator copyOf(final Locator locator) {
+            if (locator == null) {
+                return null;
+            }
+            return new Locator(locator.getUri(), locator.getLineNumber(), locator.getColumnNumber());
+        }
+    }
+
+    private static final class CachingHandler extends ErrorTrackingHandler {
+        private final AbstractCSSParser parser_;
+        private final CSSStyleDeclarationImpl styleDeclaration_;
+        private final List<CachedProperty> properties_ = new ArrayList<>();
+
+        CachingHandler(final AbstractCSSParser parser, final CSSStyleDeclarationImpl styleDeclaration,
+                final CSSErrorHandler errorHandler) {
+            super(errorHandler);
+            parser_ = parser;
+            styleDeclaration_ = styleDeclaration;
+        }
+
+        @Override
+        public void property(final String name, final LexicalUnit value, final boolean important,
+                final Locator locator) {
+            final CachedProperty cachedProperty = new CachedProperty(name, value, important, locator);
+            try {
+                styleDeclaration_.addProperty(cachedProperty.createProperty());
+                properties_.add(cachedProperty);
+            }
+            catch (final DOMException e) {
+                error(parser_.toCSSParseException(e));
+            }
+        }
+    }
+}
@@ -61,6 +61,13 @@ public String getValue() {
         return value_;
     }
 
+    /**
+     * @return true if the condition was prefixed by double colon
+     */
+    public boolean isDoubleColon() {
+        return doubleColon_;
+    }
+
     @Override
     public String toString() {
         final String value = getValue();
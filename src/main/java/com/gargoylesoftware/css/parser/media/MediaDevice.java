@@ -0,0 +1,314 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.parser.media;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Describes the device media queries are evaluated against. Instances are
+ * immutable; the with... methods return modified copies.
+ * Lengths are in CSS pixels, the resolution in dots per CSS pixel (dppx).
+ * Discrete features (like hover, pointer or prefers-color-scheme) are stored
+ * by name; the defaults describe a desktop browser with a mouse and a light
+ * color scheme.
+ *
+ * @author Ronald Brill
+ */
+public final class MediaDevice implements Serializable {
+
+    private static final Map<String, String> DEFAULT_FEATURES;
+
+    static {
+        final Map<String, String> features = new HashMap<>();
+        features.put("hover", "hover");
+        features.put("any-hover", "hover");
+        features.put("pointer", "fine");
+        features.put("any-pointer", "fine");
+        features.put("prefers-color-scheme", "light");
+        features.put("prefers-reduced-motion", "no-preference");
+        features.put("prefers-reduced-transparency", "no-preference");
+        features.put("prefers-contrast", "no-preference");
+        features.put("forced-colors", "none");
+        features.put("inverted-colors", "none");
+        features.put("scan", "progressive");
+        features.put("update", "fast");
+        features.put("scripting", "enabled");
+        features.put("display-mode", "browser");
+        DEFAULT_FEATURES = Collections.unmodifiableMap(features);
+    }
+
+    private final String mediaType_;
+    private final double width_;
+    private final double height_;
+    private final double deviceWidth_;
+    private final double deviceHeight_;
+    private final double resolution_;
+    private final int color_;
+    private final int colorIndex_;
+    private final int monochrome_;
+    private final boolean grid_;
+    private final double fontSize_;
+    private final Map<String, String> features_;
+    private final int hash_;
+
+    /**
+     * Ctor.
+     * @param mediaType the media type (like screen or print)
+     * @param width the width of the viewport
+     * @param height the height of the viewport
+     */
+    public MediaDevice(final String mediaType, final double width, final double height) {
+        this(mediaType.toLowerCase(Locale.ROOT), width, height, width, height, 1, 8, 0, 0, false, 16,
+                DEFAULT_FEATURES);
+    }
+
+    private MediaDevice(final String mediaType, final double width, final double height,
+            final double deviceWidth, final double deviceHeight, final double resolution,
+            final int color, final int colorIndex, final int monochrome, final boolean grid,
+            final double fontSize, final Map<String, String> features) {
+        mediaType_ = mediaType;
+        width_ = width;
+        height_ = height;
+        deviceWidth_ = deviceWidth;
+        deviceHeight_ = deviceHeight;
+        resolution_ = resolution;
+        color_ = color;
+        colorIndex_ = colorIndex;
+        monochrome_ = monochrome;
+        grid_ = grid;
+        fontSize_ = fontSize;
+        features_ = features;
+        hash_ = computeHash();
+    }
+
+    /**
+     * @param width the width of the viewport
+     * @param height the height of the viewport
+     * @return a copy with the given viewport size
+     */
+    public MediaDevice withSize(final double width, final double height) {
+        return new MediaDevice(mediaType_, width, height, deviceWidth_, deviceHeight_, resolution_,
+                color_, colorIndex_, monochrome_, grid_, fontSize_, features_);
+    }
+
+    /**
+     * @param width the width of the screen
+     * @param height the height of the screen
+     * @return a copy with the given screen size
+     */
+    public MediaDevice withDeviceSize(final double width, final double height) {
+        return new MediaDevice(mediaType_, width_, height_, width, height, resolution_,
+                color_, colorIndex_, monochrome_, grid_, fontSize_, features_);
+    }
+
+    /**
+     * @param dppx the number of device pixels per CSS pixel
+     * @return a copy with the given resolution
+     */
+    public MediaDevice withResolution(final double dppx) {
+        return new MediaDevice(mediaType_, width_, height_, deviceWidth_, deviceHeight_, dppx,
+                color_, colorIndex_, monochrome_, grid_, fontSize_, features_);
+    }
+
+    /**
+     * @param bitsPerComponent the number of bits per color component; 0 for monochrome devices
+     * @param colorIndex the number of entries in the color lookup table
+     * @param monochrome the number of bits per pixel of a monochrome device
+     * @return a copy with the given color capabilities
+     */
+    public MediaDevice withColor(final int bitsPerComponent, final int colorIndex, final int monochrome) {
+        return new MediaDevice(mediaType_, width_, height_, deviceWidth_, deviceHeight_, resolution_,
+                bitsPerComponent, colorIndex, monochrome, grid_, fontSize_, features_);
+    }
+
+    /**
+     * @param grid true for grid devices (like terminals)
+     * @return a copy with the given grid flag
+     */
+    public MediaDevice withGrid(final boolean grid) {
+        return new MediaDevice(mediaType_, width_, height_, deviceWidth_, deviceHeight_, resolution_,
+                color_, colorIndex_, monochrome_, grid, fontSize_, features_);
+    }
+
+    /**
+     * @param fontSize the initial font size in pixels, used for em based media features
+     * @return a copy with the given font size
+     */
+    public MediaDevice withFontSize(final double fontSize) {
+        return new MediaDevice(mediaType_, width_, height_, deviceWidth_, deviceHeight_, resolution_,
+                color_, colorIndex_, monochrome_, grid_, fontSize, features_);
+    }
+
+    /**
+     * @param name the name of a discrete feature (like prefers-color-scheme)
+     * @param value the value (like dark)
+     * @return a copy with the given feature
+     */
+    public MediaDevice withFeature(final String name, final String value) {
+        final Map<String, String> features = new HashMap<>(features_);
+        features.put(name.toLowerCase(Locale.ROOT), value.toLowerCase(Locale.ROOT));
+        return new MediaDevice(mediaType_, width_, height_, deviceWidth_, deviceHeight_, resolution_,
+                color_, colorIndex_, monochrome_, grid_, fontSize_, Collections.unmodifiableMap(features));
+    }
+
+    /**
+     * @return the lower case media type
+     */
+    public String getMediaType() {
+        return mediaType_;
+    }
+
+    /**
+     * @return the width of the viewport
+     */
+    public double getWidth() {
+        return width_;
+    }
+
+    /**
+     * @return the height of the viewport
+     */
+    public double getHeight() {
+        return height_;
+    }
+
+    /**
+     * @return the width of the screen
+     */
+    public double getDeviceWidth() {
+        return deviceWidth_;
+    }
+
+    /**
+     * @return the height of the screen
+     */
+    public double getDeviceHeight() {
+        return deviceHeight_;
+    }
+
+    /**
+     * @return the resolution in dppx
+     */
+    public double getResolution() {
+        return resolution_;
+    }
+
+    /**
+     * @return the number of bits per color component
+     */
+    public int getColor() {
+        return color_;
+    }
+
+    /**
+     * @return the number of entries in the color lookup table
+     */
+    public int getColorIndex() {
+        return colorIndex_;
+    }
+
+    /**
+     * @return the number of bits per pixel of a monochrome device
+     */
+    public int getMonochrome() {
+        return monochrome_;
+    }
+
+    /**
+     * @return true for grid devices
+     */
+    public boolean isGrid() {
+        return grid_;
+    }
+
+    /**
+     * @return the initial font size in pixels
+     */
+    public double getFontSize() {
+        return fontSize_;
+    }
+
+    /**
+     * @return portrait or landscape
+     */
+    public String getOrientation() {
+        return height_ >= width_ ? "portrait" : "landscape";
+    }
+
+    /**
+     * @param name the lower case name of a discrete feature
+     * @return the lower case value or null if the feature is unknown
+     */
+    public String getFeature(final String name) {
+        if ("orientation".equals(name)) {
+            return getOrientation();
+        }
+        return features_.get(name);
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof MediaDevice)) {
+            return false;
+        }
+        final MediaDevice other = (MediaDevice) obj;
+        return hash_ == other.hash_
+                && mediaType_.equals(other.mediaType_)
+                && width_ == other.width_
+                && height_ == other.height_
+                && deviceWidth_ == other.deviceWidth_
+                && deviceHeight_ == other.deviceHeight_
+                && resolution_ == other.resolution_
+                && color_ == other.color_
+                && colorIndex_ == other.colorIndex_
+                && monochrome_ == other.monochrome_
+                && grid_ == other.grid_
+                && fontSize_ == other.fontSize_
+                && features_.equals(other.features_);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash_;
+    }
+
+    private int computeHash() {
+        int hash = mediaType_.hashCode();
+        hash = 31 * hash + Double.hashCode(width_);
+        hash = 31 * hash + Double.hashCode(height_);
+        hash = 31 * hash + Double.hashCode(deviceWidth_);
+        hash = 31 * hash + Double.hashCode(deviceHeight_);
+        hash = 31 * hash + Double.hashCode(resolution_);
+        hash = 31 * hash + color_;
+        hash = 31 * hash + colorIndex_;
+        hash = 31 * hash + monochrome_;
+        hash = 31 * hash + (grid_ ? 1 : 0);
+        hash = 31 * hash + Double.hashCode(fontSize_);
+        hash = 31 * hash + features_.hashCode();
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return mediaType_ + " " + width_ + "x" + height_;
+    }
+}
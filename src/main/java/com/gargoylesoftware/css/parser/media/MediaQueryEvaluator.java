@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.parser.media;
+
+import com.gargoylesoftware.css.dom.MediaListImpl;
+import com.gargoylesoftware.css.util.LRUCache;
+
+/**
+ * Evaluates media lists against devices. The compiled predicates are kept by
+ * the media lists (see {@link MediaListImpl#getMediaPredicate()}), the results
+ * are cached by media text and device.
+ * This class is thread safe.
+ *
+ * @author Ronald Brill
+ */
+public class MediaQueryEvaluator {
+
+    private final LRUCache<ResultKey, Boolean> results_;
+
+    /**
+     * Ctor.
+     * @param maxSize the maximum number of cached results
+     */
+    public MediaQueryEvaluator(final int maxSize) {
+        results_ = new LRUCache<>(maxSize);
+    }
+
+    /**
+     * Returns the compiled predicate for the media list.
+     * @param mediaList the media list, may be null
+     * @return the predicate
+     */
+    public MediaQueryPredicate compile(final MediaListImpl mediaList) {
+        if (mediaList == null) {
+            return MediaQueryPredicate.ALL;
+        }
+        return mediaList.getMediaPredicate();
+    }
+
+    /**
+     * @param mediaList the media list, may be null
+     * @param device the device
+     * @return true if the media list matches the device
+     */
+    public boolean matches(final MediaListImpl mediaList, final MediaDevice device) {
+        return matches(compile(mediaList), device);
+    }
+
+    /**
+     * @param predicate the compiled predicate
+     * @param device the device
+     * @return true if the predicate matches the device
+     */
+    public boolean matches(final MediaQueryPredicate predicate, final MediaDevice device) {
+        if (predicate == MediaQueryPredicate.ALL) {
+            return true;
+        }
+        final ResultKey key = new ResultKey(predicate.getMediaText(), device);
+        final Boolean cached = results_.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        final boolean result = predicate.matches(device);
+        results_.put(key, result);
+        return result;
+    }
+
+    /**
+     * @return the number of results answered from the cache
+     */
+    public long getHitCount() {
+        return results_.getHitCount();
+    }
+
+    /**
+     * @return the number of evaluated results
+     */
+    public long getMissCount() {
+        return results_.getMissCount();
+    }
+
+    /**
+     * Removes all cached results.
+     */
+    public void clear() {
+        results_.clear();
+    }
+
+    private static final class ResultKey {
+        private final String mediaText_;
+        private final MediaDevice device_;
+
+        ResultKey(final String mediaText, final MediaDevice device) {
+            mediaText_ = mediaText;
+            device_ = device;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * mediaText_.hashCode() + device_.hashCode();
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ResultKey)) {
+                return false;
+            }
+            final ResultKey other = (ResultKey) obj;
+            return mediaText_.equals(other.mediaText_) && device_.equals(other.device_);
+        }
+    }
+}
@@ -0,0 +1,529 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.parser.media;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import com.gargoylesoftware.css.dom.CSSValueImpl;
+import com.gargoylesoftware.css.dom.MediaListImpl;
+import com.gargoylesoftware.css.dom.Property;
+import com.gargoylesoftware.css.parser.LexicalUnit;
+import com.gargoylesoftware.css.parser.LexicalUnit.LexicalUnitType;
+
+/**
+ * A media query list compiled into a predicate over a {@link MediaDevice}.
+ * The feature names, min-/max- prefixes and units are resolved once;
+ * lengths are converted to pixels (em based lengths are scaled by the
+ * font size of the device) and resolutions to dppx.
+ * Queries with unknown media features or invalid values never match.
+ * Instances are immutable and thread safe.
+ *
+ * @author Ronald Brill
+ */
+public final class MediaQueryPredicate {
+
+    /** Matches every device. */
+    public static final MediaQueryPredicate ALL = new MediaQueryPredicate("", null);
+
+    private static final int FEATURE_WIDTH = 0;
+    private static final int FEATURE_HEIGHT = 1;
+    private static final int FEATURE_DEVICE_WIDTH = 2;
+    private static final int FEATURE_DEVICE_HEIGHT = 3;
+    private static final int FEATURE_ASPECT_RATIO = 4;
+    private static final int FEATURE_DEVICE_ASPECT_RATIO = 5;
+    private static final int FEATURE_RESOLUTION = 6;
+    private static final int FEATURE_COLOR = 7;
+    private static final int FEATURE_COLOR_INDEX = 8;
+    private static final int FEATURE_MONOCHROME = 9;
+    private static final int FEATURE_GRID = 10;
+    private static final int FEATURE_DISCRETE = 11;
+
+    private static final int COMPARE_EXISTS = 0;
+    private static final int COMPARE_EQUAL = 1;
+    private static final int COMPARE_MIN = 2;
+    private static final int COMPARE_MAX = 3;
+
+    private static final double PX_PER_IN = 96;
+
+    private final String mediaText_;
+    // null matches all
+    private final Query[] queries_;
+
+    private MediaQueryPredicate(final String mediaText, final Query[] queries) {
+        mediaText_ = mediaText;
+        queries_ = queries;
+    }
+
+    /**
+     * Compiles the given media list.
+     * @param mediaList the media list, may be null
+     * @return the predicate
+     */
+    public static MediaQueryPredicate compile(final MediaListImpl mediaList) {
+        if (mediaList == null || mediaList.getLength() == 0) {
+            return ALL;
+        }
+        final List<MediaQuery> mediaQueries = new ArrayList<>(mediaList.getLength());
+        for (int i = 0; i < mediaList.getLength(); i++) {
+            mediaQueries.add(mediaList.mediaQuery(i));
+        }
+        return compile(mediaList.getMediaText(), mediaQueries);
+    }
+
+    /**
+     * Compiles the given media query list.
+     * @param mediaQueryList the media query list, may be null
+     * @return the predicate
+     */
+    public static MediaQueryPredicate compile(final MediaQueryList mediaQueryList) {
+        if (mediaQueryList == null || mediaQueryList.getLength() == 0) {
+            return ALL;
+        }
+        return compile(new MediaListImpl(mediaQueryList).getMediaText(), mediaQueryList.getMediaQueries());
+    }
+
+    private static MediaQueryPredicate compile(final String mediaText, final List<MediaQuery> mediaQueries) {
+        final Query[] queries = new Query[mediaQueries.size()];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = compileQuery(mediaQueries.get(i));
+        }
+        return new MediaQueryPredicate(mediaText, queries);
+    }
+
+    /**
+     * @return the media text this was compiled from
+     */
+    public String getMediaText() {
+        return mediaText_;
+    }
+
+    /**
+     * @param device the device
+     * @return true if at least one of the media queries matches the device
+     */
+    public boolean matches(final MediaDevice device) {
+        if (queries_ == null) {
+            return true;
+        }
+        for (final Query query : queries_) {
+            if (query.matches(device)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if this matches every device (like the media 'all')
+     */
+    public boolean isAll() {
+        if (queries_ == null) {
+            return true;
+        }
+        for (final Query query : queries_) {
+            if (query.isAll()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the thresholds of all width or height tests; the result of
+     * this predicate can only change if the viewport size crosses one of
+     * these values (or if {@link #dependsOnViewportShape()} is true).
+     * @param width true for the width tests, false for the height tests
+     * @param fontSize the font size used to convert em based values
+     * @return the thresholds in pixels, maybe empty
+     */
+    public double[] getBreakpoints(final boolean width, final double fontSize) {
+        final int feature = width ? FEATURE_WIDTH : FEATURE_HEIGHT;
+        double[] breakpoints = new double[0];
+        if (queries_ == null) {
+            return breakpoints;
+        }
+        for (final Query query : queries_) {
+            if (query.tests_ != null) {
+                for (final Test test : query.tests_) {
+                    if (test.feature_ == feature) {
+                        breakpoints = Arrays.copyOf(breakpoints, breakpoints.length + 1);
+                        breakpoints[breakpoints.length - 1] =
+                                test.compare_ == COMPARE_EXISTS ? 0 : test.expected(fontSize);
+                    }
+                }
+            }
+        }
+        return breakpoints;
+    }
+
+    /**
+     * @return true if the result depends on the ratio between the width and the
+     *         height of the viewport (aspect-ratio, orientation)
+     */
+    public boolean dependsOnViewportShape() {
+        if (queries_ == null) {
+            return false;
+        }
+        for (final Query query : queries_) {
+            if (query.tests_ != null) {
+                for (final Test test : query.tests_) {
+                    if (test.feature_ == FEATURE_ASPECT_RATIO
+                            || (test.feature_ == FEATURE_DISCRETE && "orientation".equals(test.name_))) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return mediaText_;
+    }
+
+    private static Query compileQuery(final MediaQuery mediaQuery) {
+        final String media = mediaQuery.getMedia();
+        String type = media == null ? "all" : media.toLowerCase(Locale.ROOT);
+        if ("all".equals(type)) {
+            type = null;
+        }
+
+        final List<Property> properties = mediaQuery.getProperties();
+        final Test[] tests = new Test[properties.size()];
+        for (int i = 0; i < tests.length; i++) {
+            tests[i] = compileTest(properties.get(i));
+            if (tests[i] == null) {
+                return new Query(type, mediaQuery.isNot(), null);
+            }
+        }
+        return new Query(type, mediaQuery.isNot(), tests);
+    }
+
+    // returns null for unknown features and invalid values
+    private static Test compileTest(final Property property) {
+        String name = property.getName().toLowerCase(Locale.ROOT);
+        int compare = COMPARE_EQUAL;
+        if (name.startsWith("min-")) {
+            compare = COMPARE_MIN;
+            name = name.substring(4);
+        }
+        else if (name.startsWith("max-")) {
+            compare = COMPARE_MAX;
+            name = name.substring(4);
+        }
+
+        final LexicalUnit value = firstUnit(property.getValue());
+        if (value == null) {
+            if (compare != COMPARE_EQUAL) {
+                return null;
+            }
+            compare = COMPARE_EXISTS;
+        }
+
+        final int feature;
+        switch (name) {
+            case "width":
+                feature = FEATURE_WIDTH;
+                break;
+            case "height":
+                feature = FEATURE_HEIGHT;
+                break;
+            case "device-width":
+                feature = FEATURE_DEVICE_WIDTH;
+                break;
+            case "device-height":
+                feature = FEATURE_DEVICE_HEIGHT;
+                break;
+            case "aspect-ratio":
+                feature = FEATURE_ASPECT_RATIO;
+                break;
+            case "device-aspect-ratio":
+                feature = FEATURE_DEVICE_ASPECT_RATIO;
+                break;
+            case "resolution":
+                feature = FEATURE_RESOLUTION;
+                break;
+            case "color":
+                feature = FEATURE_COLOR;
+                break;
+            case "color-index":
+                feature = FEATURE_COLOR_INDEX;
+                break;
+            case "monochrome":
+                feature = FEATURE_MONOCHROME;
+                break;
+            case "grid":
+                feature = FEATURE_GRID;
+                break;
+            case "orientation":
+            case "hover":
+            case "any-hover":
+            case "pointer":
+            case "any-pointer":
+            case "prefers-color-scheme":
+            case "prefers-reduced-motion":
+            case "prefers-reduced-transparency":
+            case "prefers-contrast":
+            case "forced-colors":
+            case "inverted-colors":
+            case "scan":
+            case "update":
+            case "scripting":
+            case "display-mode":
+                if (compare == COMPARE_MIN || compare == COMPARE_MAX) {
+                    return null;
+                }
+                if (value == null) {
+                    return new Test(FEATURE_DISCRETE, name, COMPARE_EXISTS, 0, false);
+                }
+                if (value.getLexicalUnitType() != LexicalUnitType.IDENT || value.getNextLexicalUnit() != null) {
+                    return null;
+                }
+                return new Test(FEATURE_DISCRETE, name, compare, 0, false, value.getStringValue());
+            default:
+                return null;
+        }
+
+        if (value == null) {
+            return new Test(feature, name, COMPARE_EXISTS, 0, false);
+        }
+
+        switch (feature) {
+            case FEATURE_WIDTH:
+            case FEATURE_HEIGHT:
+            case FEATURE_DEVICE_WIDTH:
+            case FEATURE_DEVICE_HEIGHT:
+                return lengthTest(feature, name, compare, value);
+            case FEATURE_ASPECT_RATIO:
+            case FEATURE_DEVICE_ASPECT_RATIO:
+                return ratioTest(feature, name, compare, value);
+            case FEATURE_RESOLUTION:
+                return resolutionTest(name, compare, value);
+            default:
+                // integers
+                if (value.getLexicalUnitType() != LexicalUnitType.INTEGER || value.getNextLexicalUnit() != null) {
+                    return null;
+                }
+                return new Test(feature, name, compare, value.getIntegerValue(), false);
+        }
+    }
+
+    private static Test lengthTest(final int feature, final String name, final int compare, final LexicalUnit value) {
+        if (value.getNextLexicalUnit() != null) {
+            return null;
+        }
+        final double number = value.getDoubleValue();
+        switch (value.getLexicalUnitType()) {
+            case PIXEL:
+                return new Test(feature, name, compare, number, false);
+            case INCH:
+                return new Test(feature, name, compare, number * PX_PER_IN, false);
+            case CENTIMETER:
+                return new Test(feature, name, compare, number * PX_PER_IN / 2.54, false);
+            case MILLIMETER:
+                return new Test(feature, name, compare, number * PX_PER_IN / 25.4, false);
+            case POINT:
+                return new Test(feature, name, compare, number * PX_PER_IN / 72, false);
+            case PICA:
+                return new Test(feature, name, compare, number * PX_PER_IN / 6, false);
+            case EM:
+            case REM:
+                return new Test(feature, name, compare, number, true);
+            case EX:
+            case CH:
+                // the usual approximation
+                return new Test(feature, name, compare, number / 2, true);
+            case INTEGER:
+            case REAL:
+                if (number == 0) {
+                    return new Test(feature, name, compare, 0, false);
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    private static Test ratioTest(final int feature, final String name, final int compare, final LexicalUnit value) {
+        if (!isNumber(value) || value.getDoubleValue() < 0) {
+            return null;
+        }
+        double ratio = value.getDoubleValue();
+        final LexicalUnit slash = value.getNextLexicalUnit();
+        if (slash != null) {
+            final LexicalUnit denominator = slash.getNextLexicalUnit();
+            if (slash.getLexicalUnitType() != LexicalUnitType.OPERATOR_SLASH
+                    || !isNumber(denominator)
+                    || denominator.getDoubleValue() <= 0
+                    || denominator.getNextLexicalUnit() != null) {
+                return null;
+            }
+            ratio = ratio / denominator.getDoubleValue();
+        }
+        return new Test(feature, name, compare, ratio, false);
+    }
+
+    private static Test resolutionTest(final String name, final int compare, final LexicalUnit value) {
+        if (value.getLexicalUnitType() != LexicalUnitType.DIMENSION || value.getNextLexicalUnit() != null) {
+            return null;
+        }
+        final double number = value.getDoubleValue();
+        switch (value.getDimensionUnitText().toLowerCase(Locale.ROOT)) {
+            case "dppx":
+            case "x":
+                return new Test(FEATURE_RESOLUTION, name, compare, number, false);
+            case "dpi":
+                return new Test(FEATURE_RESOLUTION, name, compare, number / PX_PER_IN, false);
+            case "dpcm":
+                return new Test(FEATURE_RESOLUTION, name, compare, number * 2.54 / PX_PER_IN, false);
+            default:
+                return null;
+        }
+    }
+
+    private static boolean isNumber(final LexicalUnit value) {
+        return value != null
+                && (value.getLexicalUnitType() == LexicalUnitType.INTEGER
+                    || value.getLexicalUnitType() == LexicalUnitType.REAL);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static LexicalUnit firstUnit(final CSSValueImpl value) {
+        if (value == null) {
+            return null;
+        }
+        final Object v = value.getValue();
+        if (v instanceof LexicalUnit) {
+            return (LexicalUnit) v;
+        }
+        if (v instanceof List) {
+            final List<CSSValueImpl> values = (List<CSSValueImpl>) v;
+            if (!values.isEmpty() && values.get(0).getValue() instanceof LexicalUnit) {
+                return (LexicalUnit) values.get(0).getValue();
+            }
+        }
+        return null;
+    }
+
+    private static final class Query {
+        // null for all
+        private final String mediaType_;
+        private final boolean not_;
+        // null if the query is invalid
+        private final Test[] tests_;
+
+        Query(final String mediaType, final boolean not, final Test[] tests) {
+            mediaType_ = mediaType;
+            not_ = not;
+            tests_ = tests;
+        }
+
+        boolean matches(final MediaDevice device) {
+            if (tests_ == null) {
+                return false;
+            }
+            boolean result = mediaType_ == null || mediaType_.equals(device.getMediaType());
+            for (int i = 0; result && i < tests_.length; i++) {
+                result = tests_[i].matches(device);
+            }
+            return result != not_;
+        }
+
+        boolean isAll() {
+            return mediaType_ == null && !not_ && tests_ != null && tests_.length == 0;
+        }
+    }
+
+    private static final class Test {
+        private final int feature_;
+        private final String name_;
+        private final int compare_;
+        private final double value_;
+        private final boolean fontRelative_;
+        private final String ident_;
+
+        Test(final int feature, final String name, final int compare, final double value,
+                final boolean fontRelative) {
+            this(feature, name, compare, value, fontRelative, null);
+        }
+
+        Test(final int feature, final String name, final int compare, final double value,
+                final boolean fontRelative, final String ident) {
+            feature_ = feature;
+            name_ = name;
+            compare_ = compare;
+            value_ = value;
+            fontRelative_ = fontRelative;
+            ident_ = ident == null ? null : ident.toLowerCase(Locale.ROOT);
+        }
+
+        boolean matches(final MediaDevice device) {
+            if (feature_ == FEATURE_DISCRETE) {
+                final String actual = device.getFeature(name_);
+                if (compare_ == COMPARE_EXISTS) {
+                    return actual != null && !"none".equals(actual) && !"no-preference".equals(actual);
+                }
+                return ident_.equals(actual);
+            }
+
+            final double actual = actual(device);
+            switch (compare_) {
+                case COMPARE_EXISTS:
+                    return actual != 0;
+                case COMPARE_MIN:
+                    return actual >= expected(device.getFontSize());
+                case COMPARE_MAX:
+                    return actual <= expected(device.getFontSize());
+                default:
+                    return actual == expected(device.getFontSize());
+            }
+        }
+
+        private double expected(final double fontSize) {
+            return fontRelative_ ? value_ * fontSize : value_;
+        }
+
+        private double actual(final MediaDevice device) {
+            switch (feature_) {
+                case FEATURE_WIDTH:
+                    return device.getWidth();
+                case FEATURE_HEIGHT:
+                    return device.getHeight();
+                case FEATURE_DEVICE_WIDTH:
+                    return device.getDeviceWidth();
+                case FEATURE_DEVICE_HEIGHT:
+                    return device.getDeviceHeight();
+                case FEATURE_ASPECT_RATIO:
+                    return device.getHeight() == 0 ? 0 : device.getWidth() / device.getHeight();
+                case FEATURE_DEVICE_ASPECT_RATIO:
+                    return device.getDeviceHeight() == 0 ? 0 : device.getDeviceWidth() / device.getDeviceHeight();
+                case FEATURE_RESOLUTION:
+                    return device.getResolution();
+                case FEATURE_COLOR:
+                    return device.getColor();
+                case FEATURE_COLOR_INDEX:
+                    return device.getColorIndex();
+                case FEATURE_MONOCHROME:
+                    return device.getMonochrome();
+                default:
+                    return device.isGrid() ? 1 : 0;
+            }
+        }
+    }
+}
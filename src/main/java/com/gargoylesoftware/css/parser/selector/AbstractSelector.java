@@ -23,13 +23,58 @@
  */
 public abstract class AbstractSelector extends AbstractLocatable implements Selector, Serializable {
 
-    private SelectorSpecificity specificity_;
+    private int specificity_;
+    private SelectorSpecificity selectorSpecificity_;
+    private int[] ancestorHashes_;
 
     @Override
     public SelectorSpecificity getSelectorSpecificity() {
-        if (specificity_ == null) {
-            specificity_ = new SelectorSpecificity(this);
+        if (selectorSpecificity_ == null || selectorSpecificity_.getPacked() != specificity_) {
+            selectorSpecificity_ = new SelectorSpecificity(this);
         }
+        return selectorSpecificity_;
+    }
+
+    /**
+     * The specificity is calculated while the selector is built; therefore
+     * this is a simple field access.
+     * @return the packed specificity
+     * @see SelectorSpecificity#getPacked()
+     */
+    @Override
+    public int getSpecificity() {
         return specificity_;
     }
+
+    /**
+     * Adds the given specificity to the specificity of this selector.
+     * @param specificity the packed specificity to add
+     */
+    protected void addSpecificity(final int specificity) {
+        specificity_ = SelectorSpecificity.add(specificity_, specificity);
+    }
+
+    /**
+     * @param selector the selector or null
+     * @return the packed specificity of the given selector, 0 for null
+     */
+    protected static int specificityOf(final Selector selector) {
+        if (selector == null) {
+            return 0;
+        }
+        return selector.getSpecificity();
+    }
+
+    /**
+     * Returns the hashes of the tag names, ids and class names required from
+     * the ancestors of the subject element.
+     * @return the hashes; do not modify the returned array
+     * @see AncestorHashes#compute(Selector)
+     */
+    public int[] getAncestorHashes() {
+        if (ancestorHashes_ == null) {
+            ancestorHashes_ = AncestorHashes.compute(this);
+        }
+        return ancestorHashes_;
+    }
 }
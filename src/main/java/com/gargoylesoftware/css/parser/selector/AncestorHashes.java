@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.parser.selector;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import com.gargoylesoftware.css.parser.condition.Condition;
+import com.gargoylesoftware.css.parser.selector.Selector.SelectorType;
+
+/**
+ * Hashes of the tag names, ids and class names an element (or its ancestors) has.
+ * The same hash functions have to be used for the selectors and for the elements
+ * pushed into an ancestor filter.
+ *
+ * @author Ronald Brill
+ */
+public final class AncestorHashes {
+
+    private static final int TAG_SALT = 13;
+    private static final int ID_SALT = 17;
+    private static final int CLASS_SALT = 19;
+
+    private static final int[] EMPTY = new int[0];
+
+    private AncestorHashes() {
+    }
+
+    /**
+     * @param localName the local name of the element
+     * @return the hash
+     */
+    public static int tagHash(final String localName) {
+        return localName.toLowerCase(Locale.ROOT).hashCode() * TAG_SALT;
+    }
+
+    /**
+     * @param id the id of the element
+     * @return the hash
+     */
+    public static int idHash(final String id) {
+        return id.hashCode() * ID_SALT;
+    }
+
+    /**
+     * @param className the class name
+     * @return the hash
+     */
+    public static int classHash(final String className) {
+        return className.hashCode() * CLASS_SALT;
+    }
+
+    /**
+     * Collects the hashes of the tag names, ids and class names of all
+     * compounds of the selector that have to match an ancestor of the
+     * subject element (the compounds left of a descendant or child combinator).
+     *
+     * @param selector the selector
+     * @return the hashes, never null
+     */
+    public static int[] compute(final Selector selector) {
+        int[] hashes = EMPTY;
+        int count = 0;
+
+        Selector current = selector;
+        boolean ancestor = false;
+        while (current != null) {
+            final ElementSelector compound;
+            final Selector next;
+            final SelectorType type = current.getSelectorType();
+            switch (type) {
+                case ELEMENT_NODE_SELECTOR:
+                    compound = (ElementSelector) current;
+                    next = null;
+                    break;
+                case DESCENDANT_SELECTOR:
+                    next = ((DescendantSelector) current).getAncestorSelector();
+                    compound = elementSelector(current);
+                    break;
+                case CHILD_SELECTOR:
+                    next = ((ChildSelector) current).getAncestorSelector();
+                    compound = elementSelector(current);
+                    break;
+                case DIRECT_ADJACENT_SELECTOR:
+                    next = ((DirectAdjacentSelector) current).getSelector();
+                    compound = elementSelector(current);
+                    break;
+                case GENERAL_ADJACENT_SELECTOR:
+                    next = ((GeneralAdjacentSelector) current).getSelector();
+                    compound = elementSelector(current);
+                    break;
+                default:
+                    compound = null;
+                    next = null;
+                    break;
+            }
+
+            if (ancestor && compound != null) {
+                final int maxSize = count + 1 + conditionCount(compound);
+                if (hashes.length < maxSize) {
+                    hashes = Arrays.copyOf(hashes, maxSize);
+                }
+                count = addHashes(compound, hashes, count);
+            }
+
+            // the pseudo element wrapper is not a real combinator
+            if (compound != null || current.getSimpleSelector() == null) {
+                ancestor = SelectorType.DESCENDANT_SELECTOR == type || SelectorType.CHILD_SELECTOR == type;
+            }
+            current = next;
+        }
+
+        if (count == hashes.length) {
+            return hashes;
+        }
+        return Arrays.copyOf(hashes, count);
+    }
+
+    private static ElementSelector elementSelector(final Selector selector) {
+        final SimpleSelector simple = selector.getSimpleSelector();
+        if (simple instanceof ElementSelector) {
+            return (ElementSelector) simple;
+        }
+        return null;
+    }
+
+    private static int conditionCount(final ElementSelector compound) {
+        final List<Condition> conditions = compound.getConditions();
+        return conditions == null ? 0 : conditions.size();
+    }
+
+    private static int addHashes(final ElementSelector compound, final int[] hashes, final int start) {
+        int count = start;
+        if (compound.getLocalName() != null) {
+            hashes[count++] = tagHash(compound.getLocalName());
+        }
+
+        final List<Condition> conditions = compound.getConditions();
+        if (conditions != null) {
+            for (final Condition condition : conditions) {
+                switch (condition.getConditionType()) {
+                    case ID_CONDITION:
+                        hashes[count++] = idHash(condition.getValue());
+                        break;
+                    case CLASS_CONDITION:
+                        hashes[count++] = classHash(condition.getValue());
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+        return count;
+    }
+}
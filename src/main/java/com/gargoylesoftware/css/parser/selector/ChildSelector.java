@@ -34,6 +34,9 @@ public ChildSelector(final Selector ancestorSelector, final SimpleSelector simpl
         }
 
         simpleSelector_ = simpleSelector;
+
+        addSpecificity(specificityOf(ancestorSelector));
+        addSpecificity(specificityOf(simpleSelector));
     }
 
     @Override
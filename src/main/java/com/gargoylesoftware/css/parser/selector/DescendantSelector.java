@@ -34,6 +34,9 @@ public DescendantSelector(final Selector ancestorSelector, final SimpleSelector
         }
 
         simpleSelector_ = simpleSelector;
+
+        addSpecificity(specificityOf(ancestorSelector));
+        addSpecificity(specificityOf(simpleSelector));
     }
 
     @Override
@@ -33,6 +33,9 @@ public DirectAdjacentSelector(final Selector child, final SimpleSelector simpleS
             setLocator(child.getLocator());
         }
         simpleSelector_ = simpleSelector;
+
+        addSpecificity(specificityOf(child));
+        addSpecificity(specificityOf(simpleSelector));
     }
 
     @Override
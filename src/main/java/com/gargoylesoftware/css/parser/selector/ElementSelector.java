@@ -39,6 +39,7 @@ public ElementSelector(final String localName, final Locator locator) {
         localName_ = localName;
         if (localName != null) {
             localNameLC_ = localName.toLowerCase(Locale.ROOT);
+            addSpecificity(SelectorSpecificity.ELEMENT);
         }
         else {
             localNameLC_ = null;
@@ -91,6 +92,9 @@ public List<Condition> getConditions() {
 
     /**
      * Add a condition.
+     * Conditions have to be added before this selector is combined with other
+     * selectors because the specificity of the combination is calculated at
+     * construction time.
      * @param condition the condition to be added
      */
     public void addCondition(final Condition condition) {
@@ -98,11 +102,12 @@ public void addCondition(final Condition condition) {
             conditions_ = new ArrayList<>();
         }
         conditions_.add(condition);
+        addSpecificity(SelectorSpecificity.of(condition));
     }
 
     @Override
     public String toString() {
-        final StringBuffer result = new StringBuffer();
+        final StringBuilder result = new StringBuilder();
         result.append(getElementName());
 
         if (conditions_ != null) {
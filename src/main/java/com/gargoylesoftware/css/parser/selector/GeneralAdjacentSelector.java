@@ -33,6 +33,9 @@ public GeneralAdjacentSelector(final Selector child, final SimpleSelector simple
             setLocator(child.getLocator());
         }
         simpleSelector_ = simpleSelector;
+
+        addSpecificity(specificityOf(child));
+        addSpecificity(specificityOf(simpleSelector));
     }
 
     @Override
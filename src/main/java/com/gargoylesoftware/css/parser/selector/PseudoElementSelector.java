@@ -35,6 +35,9 @@ public PseudoElementSelector(final String localName, final Locator locator, fina
         localName_ = localName;
         setLocator(locator);
         doubleColon_ = doubleColon;
+        if (localName != null) {
+            addSpecificity(SelectorSpecificity.ELEMENT);
+        }
     }
 
     @Override
@@ -54,6 +57,13 @@ public String getLocalName() {
         return localName_;
     }
 
+    /**
+     * @return true if the selector was prefixed by double colon
+     */
+    public boolean isDoubleColon() {
+        return doubleColon_;
+    }
+
     @Override
     public String toString() {
         if (localName_ == null) {
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.parser.selector;
+
+import java.io.Serializable;
+import java.util.List;
+
+import com.gargoylesoftware.css.parser.condition.Condition;
+import com.gargoylesoftware.css.parser.selector.Selector.SelectorType;
+
+/**
+ * The most selective key of the rightmost compound selector.
+ * The key type is chosen in this order: id, class, attribute, element name
+ * and finally universal.
+ *
+ * @author Ronald Brill
+ */
+public final class RightmostKey implements Serializable {
+
+    /**
+     * KeyType enum.
+     */
+    public enum KeyType {
+        /** Id key. */
+        ID,
+        /** Class key. */
+        CLASS,
+        /** Attribute name key. */
+        ATTRIBUTE,
+        /** Element name key. */
+        ELEMENT,
+        /** No key at all. */
+        UNIVERSAL
+    }
+
+    private final KeyType keyType_;
+    private final String value_;
+
+    /**
+     * Ctor.
+     * @param selector the selector
+     */
+    public RightmostKey(final Selector selector) {
+        final ElementSelector compound = getRightmostCompound(selector);
+        if (compound == null) {
+            keyType_ = KeyType.UNIVERSAL;
+            value_ = null;
+            return;
+        }
+
+        String id = null;
+        String cls = null;
+        String attribute = null;
+        final List<Condition> conditions = compound.getConditions();
+        if (conditions != null) {
+            for (final Condition condition : conditions) {
+                switch (condition.getConditionType()) {
+                    case ID_CONDITION:
+                        if (id == null) {
+                            id = condition.getValue();
+                        }
+                        break;
+                    case CLASS_CONDITION:
+                        if (cls == null) {
+                            cls = condition.getValue();
+                        }
+                        break;
+                    case ATTRIBUTE_CONDITION:
+                    case ONE_OF_ATTRIBUTE_CONDITION:
+                    case BEGIN_HYPHEN_ATTRIBUTE_CONDITION:
+                    case PREFIX_ATTRIBUTE_CONDITION:
+                    case SUBSTRING_ATTRIBUTE_CONDITION:
+                    case SUFFIX_ATTRIBUTE_CONDITION:
+                        if (attribute == null) {
+                            attribute = condition.getLocalName();
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+
+        if (id != null) {
+            keyType_ = KeyType.ID;
+            value_ = id;
+        }
+        else if (cls != null) {
+            keyType_ = KeyType.CLASS;
+            value_ = cls;
+        }
+        else if (attribute != null) {
+            keyType_ = KeyType.ATTRIBUTE;
+            value_ = attribute;
+        }
+        else if (compound.getLocalNameLowerCase() != null) {
+            keyType_ = KeyType.ELEMENT;
+            value_ = compound.getLocalNameLowerCase();
+        }
+        else {
+            keyType_ = KeyType.UNIVERSAL;
+            value_ = null;
+        }
+    }
+
+    /**
+     * @return the key type
+     */
+    public KeyType getKeyType() {
+        return keyType_;
+    }
+
+    /**
+     * @return the key value (the id, class name, attribute name or lower case element name);
+     * null for universal keys
+     */
+    public String getValue() {
+        return value_;
+    }
+
+    /**
+     * Returns the rightmost compound selector (the one that has to match the element itself).
+     * A trailing pseudo element is skipped.
+     * @param selector the selector
+     * @return the rightmost compound or null
+     */
+    public static ElementSelector getRightmostCompound(final Selector selector) {
+        if (selector == null) {
+            return null;
+        }
+        if (SelectorType.ELEMENT_NODE_SELECTOR == selector.getSelectorType()) {
+            return (ElementSelector) selector;
+        }
+
+        final SimpleSelector simple = selector.getSimpleSelector();
+        if (simple != null && SelectorType.PSEUDO_ELEMENT_SELECTOR == simple.getSelectorType()
+                && SelectorType.DESCENDANT_SELECTOR == selector.getSelectorType()) {
+            return getRightmostCompound(((DescendantSelector) selector).getAncestorSelector());
+        }
+        if (simple instanceof ElementSelector) {
+            return (ElementSelector) simple;
+        }
+        return null;
+    }
+
+    /**
+     * @param selector the selector
+     * @return the trailing pseudo element or null
+     */
+    public static PseudoElementSelector getPseudoElement(final Selector selector) {
+        if (selector == null) {
+            return null;
+        }
+        if (SelectorType.PSEUDO_ELEMENT_SELECTOR == selector.getSelectorType()) {
+            return (PseudoElementSelector) selector;
+        }
+        final SimpleSelector simple = selector.getSimpleSelector();
+        if (simple != null && SelectorType.PSEUDO_ELEMENT_SELECTOR == simple.getSelectorType()) {
+            return (PseudoElementSelector) simple;
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        if (value_ == null) {
+            return keyType_.name();
+        }
+        return keyType_.name() + " " + value_;
+    }
+}
@@ -47,4 +47,13 @@ enum SelectorType {
      * @return the selector specificity
      */
     SelectorSpecificity getSelectorSpecificity();
+
+    /**
+     * @return the selector specificity packed into an int; packed values can be
+     *         compared directly
+     * @see SelectorSpecificity#getPacked()
+     */
+    default int getSpecificity() {
+        return getSelectorSpecificity().getPacked();
+    }
 }
@@ -36,6 +36,17 @@ public class SelectorSpecificity implements Comparable<SelectorSpecificity>, Ser
      */
     public static final SelectorSpecificity DEFAULT_STYLE_ATTRIBUTE = new SelectorSpecificity(0, 0, 0, 0);
 
+    /** Packed specificity of an element name or a pseudo element. */
+    public static final int ELEMENT = 1;
+    /** Packed specificity of a class, attribute or pseudo class condition. */
+    public static final int CLASS = 1 << 10;
+    /** Packed specificity of an id condition. */
+    public static final int ID = 1 << 20;
+    /** Packed specificity of declarations made in the style attributes. */
+    public static final int STYLE_ATTRIBUTE = 1 << 30;
+
+    private static final int MAX_COUNT = 0x3FF;
+
     private int fieldA_;
     private int fieldB_;
     private int fieldC_;
@@ -46,6 +57,14 @@ public class SelectorSpecificity implements Comparable<SelectorSpecificity>, Ser
      * @param selector the selector to read from
      */
     public SelectorSpecificity(final Selector selector) {
+        if (selector instanceof AbstractSelector) {
+            final int packed = ((AbstractSelector) selector).getSpecificity();
+            fieldA_ = packed >>> 30;
+            fieldB_ = (packed >>> 20) & MAX_COUNT;
+            fieldC_ = (packed >>> 10) & MAX_COUNT;
+            fieldD_ = packed & MAX_COUNT;
+            return;
+        }
         readSelectorSpecificity(selector);
     }
 
@@ -140,6 +159,44 @@ private void readSelectorSpecificity(final Condition condition) {
         }
     }
 
+    /**
+     * Packs the specificity into an int; the packed values of two specificities
+     * compare like the specificities. Every part uses 10 bits, larger counts are
+     * capped at 1023.
+     * @return the packed specificity
+     */
+    public int getPacked() {
+        return Math.min(fieldA_, 1) << 30
+                | Math.min(fieldB_, MAX_COUNT) << 20
+                | Math.min(fieldC_, MAX_COUNT) << 10
+                | Math.min(fieldD_, MAX_COUNT);
+    }
+
+    /**
+     * Adds two packed specificities; every part is capped at its maximum.
+     * @param packed1 the first packed specificity
+     * @param packed2 the second packed specificity
+     * @return the packed sum
+     */
+    public static int add(final int packed1, final int packed2) {
+        final int a = Math.min((packed1 >>> 30) + (packed2 >>> 30), 1);
+        final int b = Math.min(((packed1 >>> 20) & MAX_COUNT) + ((packed2 >>> 20) & MAX_COUNT), MAX_COUNT);
+        final int c = Math.min(((packed1 >>> 10) & MAX_COUNT) + ((packed2 >>> 10) & MAX_COUNT), MAX_COUNT);
+        final int d = Math.min((packed1 & MAX_COUNT) + (packed2 & MAX_COUNT), MAX_COUNT);
+        return a << 30 | b << 20 | c << 10 | d;
+    }
+
+    /**
+     * @param condition the condition
+     * @return the packed specificity of the given condition
+     */
+    public static int of(final Condition condition) {
+        if (condition.getConditionType() == Condition.ConditionType.ID_CONDITION) {
+            return ID;
+        }
+        return CLASS;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,457 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.util;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A list stored as a counted tree of small chunks. Positional access, insert and
+ * remove are O(log n) because only one chunk has to be shifted; iteration walks
+ * the linked chunks. Inserting a large collection rebuilds the tree in one pass.
+ * Chunks emptied by remove operations are dropped, chunks are not merged.
+ * This class is not thread safe.
+ *
+ * @param <E> the type of the elements
+ *
+ * @author Ronald Brill
+ */
+public class ChunkedList<E> extends AbstractList<E> implements Serializable {
+
+    private static final int CHUNK_SIZE = 64;
+    private static final int FANOUT = 32;
+    // leaves built in one pass keep some space for later inserts
+    private static final int BULK_FILL = CHUNK_SIZE * 3 / 4;
+
+    private transient Node root_;
+    private transient Node first_;
+
+    /**
+     * Ctor.
+     */
+    public ChunkedList() {
+        init();
+    }
+
+    private void init() {
+        first_ = Node.newLeaf();
+        root_ = first_;
+    }
+
+    @Override
+    public int size() {
+        return root_.size_;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(final int index) {
+        checkIndex(index);
+
+        Node node = root_;
+        int idx = index;
+        while (!node.isLeaf()) {
+            int i = 0;
+            while (idx >= node.children_[i].size_) {
+                idx -= node.children_[i].size_;
+                i++;
+            }
+            node = node.children_[i];
+        }
+        return (E) node.items_[idx];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E set(final int index, final E element) {
+        checkIndex(index);
+
+        Node node = root_;
+        int idx = index;
+        while (!node.isLeaf()) {
+            int i = 0;
+            while (idx >= node.children_[i].size_) {
+                idx -= node.children_[i].size_;
+                i++;
+            }
+            node = node.children_[i];
+        }
+        final E old = (E) node.items_[idx];
+        node.items_[idx] = element;
+        return old;
+    }
+
+    @Override
+    public void add(final int index, final E element) {
+        if (index < 0 || index > size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        modCount++;
+        insert(index, element);
+    }
+
+    @Override
+    public boolean addAll(final Collection<? extends E> c) {
+        return addAll(size(), c);
+    }
+
+    @Override
+    public boolean addAll(final int index, final Collection<? extends E> c) {
+        if (index < 0 || index > size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        final Object[] elements = c.toArray();
+        if (elements.length == 0) {
+            return false;
+        }
+        modCount++;
+
+        // a few elements are cheaper to insert one by one
+        if ((long) elements.length * BULK_FILL < size()) {
+            for (int i = 0; i < elements.length; i++) {
+                insert(index + i, elements[i]);
+            }
+            return true;
+        }
+
+        final Object[] all = new Object[size() + elements.length];
+        int i = 0;
+        for (final E e : this) {
+            if (i == index) {
+                i += elements.length;
+            }
+            all[i++] = e;
+        }
+        System.arraycopy(elements, 0, all, index, elements.length);
+        build(all);
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E remove(final int index) {
+        checkIndex(index);
+        modCount++;
+
+        final Object removed = remove(root_, index);
+        while (!root_.isLeaf() && root_.childCount_ == 1) {
+            root_ = root_.children_[0];
+        }
+        return (E) removed;
+    }
+
+    @Override
+    public void clear() {
+        modCount++;
+        init();
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new ChunkIterator();
+    }
+
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+    }
+
+    private void insert(final int index, final Object element) {
+        final Node split = insert(root_, index, element);
+        if (split != null) {
+            final Node newRoot = Node.newInner();
+            newRoot.addChild(0, root_);
+            newRoot.addChild(1, split);
+            newRoot.size_ = root_.size_ + split.size_;
+            root_ = newRoot;
+        }
+    }
+
+    private void build(final Object[] elements) {
+        init();
+        if (elements.length == 0) {
+            return;
+        }
+
+        Node[] level = new Node[(elements.length + BULK_FILL - 1) / BULK_FILL];
+        Node prev = null;
+        for (int i = 0; i < level.length; i++) {
+            final Node leaf = Node.newLeaf();
+            final int from = i * BULK_FILL;
+            leaf.size_ = Math.min(BULK_FILL, elements.length - from);
+            System.arraycopy(elements, from, leaf.items_, 0, leaf.size_);
+            leaf.prev_ = prev;
+            if (prev != null) {
+                prev.next_ = leaf;
+            }
+            prev = leaf;
+            level[i] = leaf;
+        }
+        first_ = level[0];
+
+        while (level.length > 1) {
+            final Node[] parents = new Node[(level.length + FANOUT - 1) / FANOUT];
+            for (int i = 0; i < level.length; i++) {
+                Node parent = parents[i / FANOUT];
+                if (parent == null) {
+                    parent = Node.newInner();
+                    parents[i / FANOUT] = parent;
+                }
+                parent.addChild(parent.childCount_, level[i]);
+                parent.size_ += level[i].size_;
+            }
+            level = parents;
+        }
+        root_ = level[0];
+    }
+
+    // returns the new right sibling if the node was split
+    private static Node insert(final Node node, final int index, final Object element) {
+        node.size_++;
+        if (node.isLeaf()) {
+            return node.insertItem(index, element);
+        }
+
+        int idx = index;
+        int i = 0;
+        while (i < node.childCount_ - 1 && idx > node.children_[i].size_) {
+            idx -= node.children_[i].size_;
+            i++;
+        }
+        final Node split = insert(node.children_[i], idx, element);
+        if (split == null) {
+            return null;
+        }
+        node.addChild(i + 1, split);
+        if (node.childCount_ > FANOUT) {
+            return node.splitInner();
+        }
+        return null;
+    }
+
+    private Object remove(final Node node, final int index) {
+        node.size_--;
+        if (node.isLeaf()) {
+            return node.removeItem(index);
+        }
+
+        int idx = index;
+        int i = 0;
+        while (idx >= node.children_[i].size_) {
+            idx -= node.children_[i].size_;
+            i++;
+        }
+        final Node child = node.children_[i];
+        final Object removed = remove(child, idx);
+        if (child.size_ == 0) {
+            node.removeChild(i);
+            if (child.isLeaf()) {
+                unlink(child);
+            }
+        }
+        return removed;
+    }
+
+    private void unlink(final Node leaf) {
+        if (leaf.prev_ == null) {
+            first_ = leaf.next_;
+        }
+        else {
+            leaf.prev_.next_ = leaf.next_;
+        }
+        if (leaf.next_ != null) {
+            leaf.next_.prev_ = leaf.prev_;
+        }
+    }
+
+    private void writeObject(final ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(size());
+        for (final E e : this) {
+            out.writeObject(e);
+        }
+    }
+
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        final Object[] elements = new Object[in.readInt()];
+        for (int i = 0; i < elements.length; i++) {
+            elements[i] = in.readObject();
+        }
+        build(elements);
+    }
+
+    /**
+     * A node of the tree; leaves hold the elements, inner nodes the children.
+     * The size is the number of elements stored below the node.
+     */
+    private static final class Node {
+        private int size_;
+
+        private Object[] items_;
+        private Node prev_;
+        private Node next_;
+
+        private Node[] children_;
+        private int childCount_;
+
+        static Node newLeaf() {
+            final Node leaf = new Node();
+            leaf.items_ = new Object[CHUNK_SIZE + 1];
+            return leaf;
+        }
+
+        static Node newInner() {
+            final Node inner = new Node();
+            inner.children_ = new Node[FANOUT + 1];
+            return inner;
+        }
+
+        boolean isLeaf() {
+            return items_ != null;
+        }
+
+        // the size is already incremented
+        Node insertItem(final int index, final Object element) {
+            System.arraycopy(items_, index, items_, index + 1, size_ - 1 - index);
+            items_[index] = element;
+            if (size_ <= CHUNK_SIZE) {
+                return null;
+            }
+
+            final Node right = newLeaf();
+            final int half = size_ / 2;
+            right.size_ = size_ - half;
+            System.arraycopy(items_, half, right.items_, 0, right.size_);
+            Arrays.fill(items_, half, size_, null);
+            size_ = half;
+
+            right.prev_ = this;
+            right.next_ = next_;
+            if (next_ != null) {
+                next_.prev_ = right;
+            }
+            next_ = right;
+            return right;
+        }
+
+        // the size is already decremented
+        Object removeItem(final int index) {
+            final Object removed = items_[index];
+            System.arraycopy(items_, index + 1, items_, index, size_ - index);
+            items_[size_] = null;
+            return removed;
+        }
+
+        void addChild(final int index, final Node child) {
+            System.arraycopy(children_, index, children_, index + 1, childCount_ - index);
+            children_[index] = child;
+            childCount_++;
+        }
+
+        void removeChild(final int index) {
+            childCount_--;
+            System.arraycopy(children_, index + 1, children_, index, childCount_ - index);
+            children_[childCount_] = null;
+        }
+
+        Node splitInner() {
+            final Node right = newInner();
+            final int half = childCount_ / 2;
+            for (int i = half; i < childCount_; i++) {
+                right.children_[i - half] = children_[i];
+                right.size_ += children_[i].size_;
+                children_[i] = null;
+            }
+            right.childCount_ = childCount_ - half;
+            childCount_ = half;
+            size_ -= right.size_;
+            return right;
+        }
+    }
+
+    private final class ChunkIterator implements Iterator<E> {
+        private Node leaf_ = first_;
+        private int offset_;
+        private int cursor_;
+        private int lastReturned_ = -1;
+        private int expectedModCount_ = modCount;
+
+        @Override
+        public boolean hasNext() {
+            return cursor_ < size();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public E next() {
+            if (modCount != expectedModCount_) {
+                throw new ConcurrentModificationException();
+            }
+            if (cursor_ >= size()) {
+                throw new NoSuchElementException();
+            }
+
+            while (offset_ >= leaf_.size_) {
+                leaf_ = leaf_.next_;
+                offset_ = 0;
+            }
+            lastReturned_ = cursor_;
+            cursor_++;
+            return (E) leaf_.items_[offset_++];
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned_ < 0) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount_) {
+                throw new ConcurrentModificationException();
+            }
+            ChunkedList.this.remove(lastReturned_);
+            cursor_ = lastReturned_;
+            lastReturned_ = -1;
+            expectedModCount_ = modCount;
+            if (cursor_ < size()) {
+                position(cursor_);
+            }
+        }
+
+        private void position(final int index) {
+            Node node = root_;
+            int idx = index;
+            while (!node.isLeaf()) {
+                int i = 0;
+                while (idx >= node.children_[i].size_) {
+                    idx -= node.children_[i].size_;
+                    i++;
+                }
+                node = node.children_[i];
+            }
+            leaf_ = node;
+            offset_ = idx;
+        }
+    }
+}
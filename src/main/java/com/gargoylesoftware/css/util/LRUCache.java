@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A simple thread safe cache with a fixed maximum size. If the cache is full
+ * the least recently used entry is evicted.
+ * The cache counts hits and misses to make the effectiveness visible.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ *
+ * @author Ronald Brill
+ */
+public class LRUCache<K, V> {
+
+    private final int maxSize_;
+    private final LinkedHashMap<K, V> map_;
+    private long hits_;
+    private long misses_;
+
+    /**
+     * Ctor.
+     * @param maxSize the maximum number of entries
+     */
+    public LRUCache(final int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize has to be positive (" + maxSize + ").");
+        }
+        maxSize_ = maxSize;
+        map_ = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<K, V> eldest) {
+                return size() > maxSize_;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached value and counts the hit or miss.
+     * @param key the key
+     * @return the cached value or null
+     */
+    public synchronized V get(final K key) {
+        final V value = map_.get(key);
+        if (value == null) {
+            misses_++;
+        }
+        else {
+            hits_++;
+        }
+        return value;
+    }
+
+    /**
+     * Adds a value to the cache; maybe evicts the least recently used entry.
+     * @param key the key
+     * @param value the value, null values are ignored
+     */
+    public synchronized void put(final K key, final V value) {
+        if (value != null) {
+            map_.put(key, value);
+        }
+    }
+
+    /**
+     * @return the number of cached entries
+     */
+    public synchronized int size() {
+        return map_.size();
+    }
+
+    /**
+     * @return the maximum number of cached entries
+     */
+    public int getMaxSize() {
+        return maxSize_;
+    }
+
+    /**
+     * Removes all entries and resets the statistics.
+     */
+    public synchronized void clear() {
+        map_.clear();
+        hits_ = 0;
+        misses_ = 0;
+    }
+
+    /**
+     * @return the number of successful lookups
+     */
+    public synchronized long getHitCount() {
+        return hits_;
+    }
+
+    /**
+     * @return the number of failed lookups
+     */
+    public synchronized long getMissCount() {
+        return misses_;
+    }
+
+    /**
+     * @return the ratio of hits to all lookups (0 if there was no lookup so far)
+     */
+    public synchronized double getHitRate() {
+        final long total = hits_ + misses_;
+        if (total == 0) {
+            return 0;
+        }
+        return (double) hits_ / total;
+    }
+}
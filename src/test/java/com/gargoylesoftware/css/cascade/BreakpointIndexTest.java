@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.cascade;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.gargoylesoftware.css.dom.CSSMediaRuleImpl;
+import com.gargoylesoftware.css.dom.CSSStyleSheetImpl;
+import com.gargoylesoftware.css.parser.CSSOMParser;
+import com.gargoylesoftware.css.parser.InputSource;
+import com.gargoylesoftware.css.parser.media.MediaDevice;
+
+/**
+ * Unit tests for {@link BreakpointIndex}.
+ *
+ * @author Ronald Brill
+ */
+public class BreakpointIndexTest {
+
+    private static final String CSS = "@media (min-width: 600px) { div { top: 1px } }\n"
+            + "@media (max-width: 599px) { div { top: 2px } }\n"
+            + "@media screen and (min-width: 1000px) {\n"
+            + "  @media (min-height: 500px) { div { top: 3px } }\n"
+            + "}\n"
+            + "@media print { div { top: 4px } }\n"
+            + "@media (orientation: portrait) { div { top: 5px } }\n"
+            + "@media (min-width: 40em) { div { top: 6px } }";
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void resize() throws Exception {
+        final BreakpointIndex index = new BreakpointIndex(parse(CSS), new MediaDevice("screen", 800, 600));
+        Assert.assertEquals(7, index.getMediaRules().size());
+        Assert.assertEquals("{0, 6}", index.getActiveRules().toString());
+        Assert.assertArrayEquals(new double[] {599, 600, 640, 1000}, index.getWidthBreakpoints(), 0);
+
+        // nothing between 800 and 900
+        long evaluations = index.getEvaluationCount();
+        Assert.assertEquals("[]", texts(index.resize(900, 600)));
+        Assert.assertEquals(1, index.getEvaluationCount() - evaluations);
+
+        evaluations = index.getEvaluationCount();
+        Assert.assertEquals("[screen and (min-width: 1000px), all and (min-height: 500px)]",
+                texts(index.resize(1200, 600)));
+        Assert.assertEquals("{0, 2, 3, 6}", index.getActiveRules().toString());
+        Assert.assertEquals(3, index.getEvaluationCount() - evaluations);
+
+        Assert.assertEquals("[all and (min-height: 500px)]", texts(index.resize(1200, 400)));
+        Assert.assertEquals("[all and (min-width: 600px), all and (max-width: 599px), "
+                + "screen and (min-width: 1000px), all and (orientation: portrait), all and (min-width: 40em)]",
+                texts(index.resize(300, 400)));
+        Assert.assertEquals("{1, 5}", index.getActiveRules().toString());
+        Assert.assertTrue(index.isActive(5));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void setDevice() throws Exception {
+        final BreakpointIndex index = new BreakpointIndex(parse(CSS), new MediaDevice("screen", 620, 600));
+        Assert.assertEquals("{0}", index.getActiveRules().toString());
+
+        Assert.assertEquals("[print]", texts(index.setDevice(new MediaDevice("print", 620, 600))));
+
+        // the em breakpoint moves with the font size
+        Assert.assertEquals("[print, all and (min-width: 40em)]",
+                texts(index.setDevice(new MediaDevice("screen", 620, 600).withFontSize(15))));
+        Assert.assertArrayEquals(new double[] {599, 600, 1000}, index.getWidthBreakpoints(), 0);
+        Assert.assertEquals("[]", texts(index.setDevice(new MediaDevice("screen", 630, 600).withFontSize(15))));
+        Assert.assertEquals(630, index.getDevice().getWidth(), 0);
+    }
+
+    private static String texts(final List<CSSMediaRuleImpl> rules) {
+        final List<String> texts = new ArrayList<>();
+        for (final CSSMediaRuleImpl rule : rules) {
+            texts.add(rule.getMediaList().getMediaText());
+        }
+        return texts.toString();
+    }
+
+    private static CSSStyleSheetImpl parse(final String css) throws Exception {
+        return new CSSOMParser().parseStyleSheet(new InputSource(new StringReader(css)), null);
+    }
+}
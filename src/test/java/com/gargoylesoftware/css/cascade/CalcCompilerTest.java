@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.cascade;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.gargoylesoftware.css.parser.CSSOMParser;
+import com.gargoylesoftware.css.parser.LexicalUnit;
+
+/**
+ * Unit tests for {@link CalcCompiler}.
+ *
+ * @author Ronald Brill
+ */
+public class CalcCompilerTest {
+
+    private static final CalcContext CONTEXT = new CalcContext()
+            .setFontSize(20)
+            .setRootFontSize(10)
+            .setViewport(1000, 500)
+            .setPercentageBasis(300);
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void constants() throws Exception {
+        assertCalc(3, CalcExpression.Type.LENGTH, "calc(1px + 2px)");
+        assertCalc(7, CalcExpression.Type.LENGTH, "calc(1px + 2px * 3)");
+        assertCalc(9, CalcExpression.Type.LENGTH, "calc((1px + 2px) * 3)");
+        assertCalc(1.5, CalcExpression.Type.LENGTH, "calc(3px / 2)");
+        assertCalc(96 + 12, CalcExpression.Type.LENGTH, "calc(1in + 9pt)");
+        assertCalc(6, CalcExpression.Type.NUMBER, "calc(2 * 3)");
+        assertCalc(1, CalcExpression.Type.LENGTH, "calc(4px / calc(2 + 2))");
+        assertCalc(-4, CalcExpression.Type.LENGTH, "calc(-2 * 2px)");
+        assertCalc(540, CalcExpression.Type.ANGLE, "calc(1.5 * 360deg)");
+        assertCalc(1500, CalcExpression.Type.TIME, "calc(1s + 500ms)");
+        assertCalc(2, CalcExpression.Type.RESOLUTION, "calc(96dpi * 2)");
+
+        final CalcExpression expression = compile("calc(1cm * 2)");
+        Assert.assertTrue(expression.isConstant());
+        Assert.assertEquals(2 * 96 / 2.54, expression.evaluate(null), 0.0001);
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void relativeUnits() throws Exception {
+        assertCalc(10 + 40, CalcExpression.Type.LENGTH, "calc(10px + 2em)");
+        assertCalc(10 + 20, CalcExpression.Type.LENGTH, "calc(10px + 1ex + 1rem)");
+        assertCalc(100 - 25 + 5 + 100, CalcExpression.Type.LENGTH, "calc(10vw - 5vh + 1vmin + 10vmax)");
+        assertCalc(150 - 8, CalcExpression.Type.LENGTH, "calc(50% - 8px)");
+        assertCalc(-60, CalcExpression.Type.LENGTH, "calc((50% - 2em * 5) * 3 / 2 + 15px)");
+
+        final CalcExpression expression = compile("calc(50% - 8px)");
+        Assert.assertFalse(expression.isConstant());
+        Assert.assertTrue(expression.hasPercentage());
+        Assert.assertEquals("LENGTH(-8.0 + 50.0%)", expression.toString());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void invalid() throws Exception {
+        Assert.assertNull(compile("calc(1px + 2)"));
+        Assert.assertNull(compile("calc(1px * 2px)"));
+        Assert.assertNull(compile("calc(1px / 0)"));
+        Assert.assertNull(compile("calc(1px + 1deg)"));
+        Assert.assertNull(compile("calc(1px + var(--x))"));
+        Assert.assertNull(new CalcCompiler(10).compile(parse("1px")));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void cache() throws Exception {
+        final CalcCompiler compiler = new CalcCompiler(10);
+        final CalcExpression expression = compiler.compile(parse("calc(1px + 2em)"));
+        Assert.assertSame(expression, compiler.compile(parse("calc(1px + 2em)")));
+        Assert.assertNull(compiler.compile(parse("calc(1px + var(--x))")));
+        Assert.assertNull(compiler.compile(parse("calc(1px + var(--x))")));
+        Assert.assertEquals(2, compiler.getHitCount());
+        Assert.assertEquals(2, compiler.getMissCount());
+        Assert.assertEquals(2, compiler.size());
+
+        compiler.clear();
+        Assert.assertEquals(0, compiler.size());
+    }
+
+    private static void assertCalc(final double expected, final CalcExpression.Type type, final String calc)
+            throws Exception {
+        final CalcExpression expression = compile(calc);
+        Assert.assertNotNull(calc, expression);
+        Assert.assertEquals(calc, type, expression.getType());
+        Assert.assertEquals(calc, expected, expression.evaluate(CONTEXT), 0.0001);
+    }
+
+    private static CalcExpression compile(final String calc) throws Exception {
+        return new CalcCompiler(10).compile(parse(calc));
+    }
+
+    private static LexicalUnit parse(final String value) throws Exception {
+        return new CSSOMParser().parsePropertyValue(value).getLexicalUnit();
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.cascade;
+
+import java.io.StringReader;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.gargoylesoftware.css.dom.CSSStyleDeclarationImpl;
+import com.gargoylesoftware.css.dom.CSSStyleRuleImpl;
+import com.gargoylesoftware.css.dom.CSSStyleSheetImpl;
+import com.gargoylesoftware.css.matching.TreeElement;
+import com.gargoylesoftware.css.parser.CSSOMParser;
+import com.gargoylesoftware.css.parser.InputSource;
+import com.gargoylesoftware.css.parser.media.MediaDevice;
+import com.gargoylesoftware.css.parser.media.MediaQueryEvaluator;
+
+/**
+ * Unit tests for {@link Cascade}.
+ *
+ * @author Ronald Brill
+ */
+public class CascadeTest {
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void specificityAndOrder() throws Exception {
+        final Cascade<TreeElement> cascade = new Cascade<>(TreeElement.ADAPTER, MediaContext.ALL);
+        cascade.addStyleSheet(parse("div { color: red; top: 1px }\n"
+                + ".a { color: blue }\n"
+                + "div { color: green; left: 2px }\n"
+                + "p { color: black }"), Origin.AUTHOR);
+
+        final TreeElement div = new TreeElement("div").attribute("class", "a");
+        final CascadedStyle style = cascade.compute(div);
+        Assert.assertEquals(3, style.getLength());
+        Assert.assertEquals("blue", style.getProperty("color").getValue().getCssText());
+        Assert.assertEquals("1px", style.getProperty("top").getValue().getCssText());
+        Assert.assertEquals("2px", style.getProperty("LEFT").getValue().getCssText());
+        Assert.assertNull(style.getProperty("right"));
+
+        Assert.assertEquals("green",
+                cascade.compute(new TreeElement("div")).getProperty("color").getValue().getCssText());
+
+        // local names are compared case insensitive
+        Assert.assertEquals("green",
+                cascade.compute(new TreeElement("DIV")).getProperty("color").getValue().getCssText());
+        Assert.assertEquals("2px", cascade.computeProperty(new TreeElement("Div"), null, null, "left")
+                .getValue().getCssText());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void originsAndImportance() throws Exception {
+        final Cascade<TreeElement> cascade = new Cascade<>(TreeElement.ADAPTER, MediaContext.ALL);
+        cascade.addStyleSheet(parse("div { color: red; top: 1px !important; left: 1px !important }"),
+                Origin.USER_AGENT);
+        cascade.addStyleSheet(parse("div { color: green; top: 2px; width: 2px !important }"), Origin.USER);
+        cascade.addStyleSheet(parse("#x { color: blue; left: 3px !important; width: 3px !important }\n"
+                + "div { height: 3px !important }"), Origin.AUTHOR);
+
+        final CSSStyleDeclarationImpl inline = new CSSOMParser().parseStyleDeclaration(
+                "color: black; height: 4px; margin: 4px");
+
+        final CascadedStyle style = cascade.compute(new TreeElement("div").attribute("id", "x"), null, inline);
+        Assert.assertEquals("black", style.getProperty("color").getValue().getCssText());
+        // important user agent declarations win
+        Assert.assertEquals("1px", style.getProperty("top").getValue().getCssText());
+        Assert.assertEquals("1px", style.getProperty("left").getValue().getCssText());
+        // important user declarations win over important author declarations
+        Assert.assertEquals("2px", style.getProperty("width").getValue().getCssText());
+        // important author declarations win over the style attribute
+        Assert.assertEquals("3px", style.getProperty("height").getValue().getCssText());
+        Assert.assertEquals("4px", style.getProperty("margin").getValue().getCssText());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void media() throws Exception {
+        final CSSStyleSheetImpl sheet = parse("div { top: 0 }\n"
+                + "@media print { div { top: 1px } @media (min-width: 10px) { div { left: 2px } } }\n"
+                + "@media screen { div { top: 3px } }");
+
+        Cascade<TreeElement> cascade = new Cascade<>(TreeElement.ADAPTER, MediaContext.ALL);
+        cascade.addStyleSheet(sheet, Origin.AUTHOR);
+        CascadedStyle style = cascade.compute(new TreeElement("div"));
+        Assert.assertEquals("3px", style.getProperty("top").getValue().getCssText());
+        Assert.assertEquals("2px", style.getProperty("left").getValue().getCssText());
+
+        // the style sheet itself has the media 'all'
+        cascade = new Cascade<>(TreeElement.ADAPTER,
+            media -> "all".equals(media.getMediaText()) || "print".equals(media.getMediaText()));
+        cascade.addStyleSheet(sheet, Origin.AUTHOR);
+        style = cascade.compute(new TreeElement("div"));
+        Assert.assertEquals("1px", style.getProperty("top").getValue().getCssText());
+        Assert.assertNull(style.getProperty("left"));
+
+        final MediaQueryEvaluator evaluator = new MediaQueryEvaluator(10);
+        cascade = new Cascade<>(TreeElement.ADAPTER,
+                new DeviceMediaContext(new MediaDevice("print", 5, 5), evaluator));
+        cascade.addStyleSheet(sheet, Origin.AUTHOR);
+        style = cascade.compute(new TreeElement("div"));
+        Assert.assertEquals("1px", style.getProperty("top").getValue().getCssText());
+        Assert.assertNull(style.getProperty("left"));
+
+        cascade = new Cascade<>(TreeElement.ADAPTER,
+                new DeviceMediaContext(new MediaDevice("print", 50, 5), evaluator));
+        cascade.addStyleSheet(sheet, Origin.AUTHOR);
+        style = cascade.compute(new TreeElement("div"));
+        Assert.assertEquals("1px", style.getProperty("top").getValue().getCssText());
+        Assert.assertEquals("2px", style.getProperty("left").getValue().getCssText());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void attributesAndPseudoElements() throws Exception {
+        final Cascade<TreeElement> cascade = new Cascade<>(TreeElement.ADAPTER, MediaContext.ALL);
+        cascade.addStyleSheet(parse("[title] { top: 1px }\n"
+                + "ul > li { left: 1px }\n"
+                + "li::before { content: 'x' }\n"
+                + "li:first-child { right: 1px }"), Origin.AUTHOR);
+
+        final TreeElement ul = new TreeElement("ul");
+        final TreeElement li = ul.append(new TreeElement("li").attribute("title", "t"));
+        ul.append(new TreeElement("li"));
+
+        CascadedStyle style = cascade.compute(li);
+        Assert.assertEquals("top: 1px; left: 1px; right: 1px", style.toString());
+
+        style = cascade.compute(li, "before", null);
+        Assert.assertEquals("content: \"x\"", style.toString());
+
+        style = cascade.compute(ul.child(1));
+        Assert.assertEquals("left: 1px", style.toString());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void computeProperty() throws Exception {
+        final Cascade<TreeElement> cascade = new Cascade<>(TreeElement.ADAPTER, MediaContext.ALL);
+        cascade.addStyleSheet(parse("div { display: block; color: red }\n"
+                + ".a { DISPLAY: inline !important; display: none }\n"
+                + "div { color: green }"), Origin.USER_AGENT);
+        final CSSStyleSheetImpl author = parse("#x { display: flex } div { color: blue }");
+        cascade.addStyleSheet(author, Origin.AUTHOR);
+
+        final TreeElement div = new TreeElement("div");
+        Assert.assertEquals("block", cascade.computeProperty(div, null, null, "display").getValue().getCssText());
+        Assert.assertEquals("blue", cascade.computeProperty(div, null, null, "color").getValue().getCssText());
+        Assert.assertNull(cascade.computeProperty(div, null, null, "top"));
+
+        div.attribute("id", "x");
+        Assert.assertEquals("flex", cascade.computeProperty(div, null, null, "display").getValue().getCssText());
+        div.attribute("class", "a");
+        Assert.assertEquals("inline", cascade.computeProperty(div, null, null, "display").getValue().getCssText());
+
+        final CSSStyleDeclarationImpl inline = new CSSOMParser().parseStyleDeclaration("color: black");
+        Assert.assertEquals("black",
+                cascade.computeProperty(div, null, inline, "color").getValue().getCssText());
+
+        // the property index follows modifications of the declarations
+        ((CSSStyleRuleImpl) author.getCssRules().getRules().get(1)).getStyle().setProperty("top", "5px", null);
+        Assert.assertEquals("5px", cascade.computeProperty(div, null, null, "top").getValue().getCssText());
+        Assert.assertEquals(cascade.compute(div).getProperty("top"), cascade.computeProperty(div, null, null, "top"));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void disabledStyleSheet() throws Exception {
+        final Cascade<TreeElement> cascade = new Cascade<>(TreeElement.ADAPTER, MediaContext.ALL);
+        cascade.addStyleSheet(parse("div { color: red }"), Origin.AUTHOR);
+        final CSSStyleSheetImpl disabled = parse("div { color: blue; top: 1px }");
+        disabled.setDisabled(true);
+        cascade.addStyleSheet(disabled, Origin.AUTHOR);
+
+        final TreeElement div = new TreeElement("div");
+        final CascadedStyle style = cascade.compute(div);
+        Assert.assertEquals("red", style.getProperty("color").getValue().getCssText());
+        Assert.assertNull(style.getProperty("top"));
+        Assert.assertEquals("red", cascade.computeProperty(div, null, null, "color").getValue().getCssText());
+        Assert.assertNull(cascade.computeProperty(div, null, null, "top"));
+
+        disabled.setDisabled(false);
+        Assert.assertEquals("blue", cascade.compute(div).getProperty("color").getValue().getCssText());
+        Assert.assertEquals("blue", cascade.computeProperty(div, null, null, "color").getValue().getCssText());
+    }
+
+    private static CSSStyleSheetImpl parse(final String css) throws Exception {
+        return new CSSOMParser().parseStyleSheet(new InputSource(new StringReader(css)), null);
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.cascade;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.gargoylesoftware.css.dom.CSSValueImpl;
+import com.gargoylesoftware.css.dom.Property;
+import com.gargoylesoftware.css.parser.CSSOMParser;
+import com.gargoylesoftware.css.parser.LexicalUnit;
+
+/**
+ * Unit tests for {@link CustomPropertyScope}.
+ *
+ * @author Ronald Brill
+ */
+public class CustomPropertyScopeTest {
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void substitution() throws Exception {
+        final CustomPropertyScope scope = new CustomPropertyScope(null);
+        declare(scope, "--a: 1px solid red; --b: var(--a); --c: 2px; --rgb: 1, 2, 3");
+
+        Assert.assertEquals("1px solid red", value(scope, "--b"));
+        Assert.assertEquals("1px solid red", resolve(scope, "border: var(--b)"));
+        Assert.assertEquals("calc(2px + 4px)", resolve(scope, "width: calc(var(--c) + 4px)"));
+        Assert.assertEquals("rgba(1, 2, 3, 0.5)", resolve(scope, "color: rgba(var(--rgb), 0.5)"));
+        Assert.assertNull(value(scope, "--unknown"));
+
+        // the declared chain is not modified
+        Assert.assertEquals("var(--a)", new CSSValueImpl(scope.getDeclaredValue("--b")).getCssText());
+
+        // values without references are not copied
+        final LexicalUnit plain = parse("width: 1px").getValue().getLexicalUnit();
+        Assert.assertSame(plain, scope.resolve(plain));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void fallback() throws Exception {
+        final CustomPropertyScope scope = new CustomPropertyScope(null);
+        declare(scope, "--a: 4px; --b: var(--x, 3px); --c: var(--x, var(--a)); --d: var(--x)");
+
+        Assert.assertEquals("3px", value(scope, "--b"));
+        Assert.assertEquals("4px", value(scope, "--c"));
+        Assert.assertNull(value(scope, "--d"));
+        Assert.assertEquals("1px, 2px", resolve(scope, "x: var(--x, 1px, 2px)"));
+        Assert.assertEquals("1px", resolve(scope, "x: 1px var(--x,)"));
+        Assert.assertNull(resolve(scope, "width: var(--d)"));
+        Assert.assertNull(resolve(scope, "width: calc(var(--x) + 1px)"));
+        Assert.assertEquals("5px", resolve(scope, "width: var(--d, 5px)"));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void cycles() throws Exception {
+        final CustomPropertyScope scope = new CustomPropertyScope(null);
+        declare(scope, "--a: var(--b); --b: var(--c); --c: var(--a, 1px); --self: var(--self, 2px); "
+                + "--d: var(--a, 3px); --e: 4px");
+
+        Assert.assertTrue(scope.isCyclic("--a"));
+        Assert.assertTrue(scope.isCyclic("--b"));
+        Assert.assertTrue(scope.isCyclic("--c"));
+        Assert.assertTrue(scope.isCyclic("--self"));
+        Assert.assertFalse(scope.isCyclic("--d"));
+        Assert.assertFalse(scope.isCyclic("--e"));
+
+        Assert.assertNull(value(scope, "--a"));
+        Assert.assertNull(value(scope, "--c"));
+        Assert.assertNull(value(scope, "--self"));
+        Assert.assertEquals("3px", value(scope, "--d"));
+
+        // breaking the cycle
+        declare(scope, "--b: 5px");
+        Assert.assertFalse(scope.isCyclic("--a"));
+        Assert.assertEquals("5px", value(scope, "--a"));
+        Assert.assertEquals("5px", value(scope, "--d"));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void inheritance() throws Exception {
+        final CustomPropertyScope root = new CustomPropertyScope(null);
+        declare(root, "--size: 10px; --gap: var(--size)");
+        final CustomPropertyScope child = new CustomPropertyScope(root);
+        declare(child, "--size: 20px; --pad: var(--gap)");
+        final CustomPropertyScope grandChild = new CustomPropertyScope(child);
+
+        // inherited custom properties use the value computed for the parent
+        Assert.assertEquals("10px", value(child, "--gap"));
+        Assert.assertEquals("10px", value(child, "--pad"));
+        Assert.assertEquals("20px", resolve(grandChild, "width: var(--size)"));
+
+        // a reference to the own name refers to the parent only if not declared
+        declare(child, "--gap: var(--gap) 1px");
+        Assert.assertTrue(child.isCyclic("--gap"));
+        Assert.assertNull(value(child, "--pad"));
+
+        child.removeProperty("--gap");
+        Assert.assertEquals("10px", value(grandChild, "--pad"));
+
+        // changes of a parent are visible in all descendants
+        declare(root, "--size: 30px");
+        Assert.assertEquals("30px", value(grandChild, "--pad"));
+        Assert.assertEquals("20px", value(grandChild, "--size"));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void memoization() throws Exception {
+        final CustomPropertyScope scope = new CustomPropertyScope(null);
+        declare(scope, "--a: 1px; --b: var(--a); --c: 2px; --d: var(--c)");
+
+        final LexicalUnit b = scope.getValue("--b");
+        final LexicalUnit d = scope.getValue("--d");
+        Assert.assertSame(b, scope.getValue("--b"));
+
+        // only the dependents of the changed property are resolved again
+        declare(scope, "--a: 3px");
+        Assert.assertNotSame(b, scope.getValue("--b"));
+        Assert.assertEquals("3px", value(scope, "--b"));
+        Assert.assertSame(d, scope.getValue("--d"));
+
+        // setting the same lexical units again changes nothing
+        final LexicalUnit a = scope.getDeclaredValue("--a");
+        final LexicalUnit b2 = scope.getValue("--b");
+        scope.setProperty("--a", a);
+        Assert.assertSame(b2, scope.getValue("--b"));
+    }
+
+    private static void declare(final CustomPropertyScope scope, final String declarations) throws Exception {
+        for (final Property property : new CSSOMParser().parseStyleDeclaration(declarations).getProperties()) {
+            scope.setProperty(property.getName(), property.getValue().getLexicalUnit());
+        }
+    }
+
+    private static String value(final CustomPropertyScope scope, final String name) {
+        final LexicalUnit value = scope.getValue(name);
+        if (value == null) {
+            return null;
+        }
+        return new CSSValueImpl(value).getCssText();
+    }
+
+    private static String resolve(final CustomPropertyScope scope, final String declaration) throws Exception {
+        final LexicalUnit value = scope.resolve(parse(declaration).getValue().getLexicalUnit());
+        if (value == null) {
+            return null;
+        }
+        return new CSSValueImpl(value).getCssText();
+    }
+
+    private static Property parse(final String declaration) throws Exception {
+        return new CSSOMParser().parseStyleDeclaration(declaration).getProperties().get(0);
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.cascade;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.gargoylesoftware.css.dom.CSSStyleRuleImpl;
+import com.gargoylesoftware.css.dom.CSSStyleSheetImpl;
+import com.gargoylesoftware.css.dom.CSSStyleSheetListImpl;
+import com.gargoylesoftware.css.parser.CSSOMParser;
+import com.gargoylesoftware.css.parser.InputSource;
+import com.gargoylesoftware.css.parser.media.MediaDevice;
+
+/**
+ * Unit tests for {@link FlattenedRuleList}.
+ *
+ * @author Ronald Brill
+ */
+public class FlattenedRuleListTest {
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void singleSheet() throws Exception {
+        final CSSStyleSheetImpl sheet = parse("a { top: 0 }\n"
+                + "@media screen { b { top: 1px } @media (min-width: 600px) { c { top: 2px } } }\n"
+                + "@media print { d { top: 3px } }\n"
+                + "@media all { e { top: 4px } }\n"
+                + "@media screen { f { top: 5px } }", null);
+        final FlattenedRuleList rules = new FlattenedRuleList(sheet);
+
+        Assert.assertEquals(6, rules.size());
+        Assert.assertEquals(4, rules.getConditionCount());
+        Assert.assertEquals("a b c d e f", selectors(rules));
+        Assert.assertEquals(0, rules.getCondition(0));
+        Assert.assertEquals(1, rules.getCondition(1));
+        Assert.assertEquals(2, rules.getCondition(2));
+        Assert.assertEquals(3, rules.getCondition(3));
+        Assert.assertEquals(0, rules.getCondition(4));
+        Assert.assertEquals(1, rules.getCondition(5));
+        Assert.assertArrayEquals(new String[] {"screen", "all and (min-width: 600px)"},
+                rules.getConditionMediaTexts(2));
+
+        Assert.assertEquals("[a, b, c, e, f]", texts(rules.getActiveRules(new MediaDevice("screen", 800, 600))));
+        Assert.assertEquals("[a, b, e, f]", texts(rules.getActiveRules(new MediaDevice("screen", 500, 600))));
+        Assert.assertEquals("[a, d, e]", texts(rules.getActiveRules(new MediaDevice("print", 800, 600))));
+
+        final FlattenedRuleList.Activation activation = rules.getActivation(new MediaDevice("print", 800, 600));
+        Assert.assertSame(activation, rules.getActivation(new MediaDevice("print", 800, 600)));
+        Assert.assertTrue(activation.isConditionActive(0));
+        Assert.assertFalse(activation.isConditionActive(1));
+        Assert.assertTrue(activation.isActive(3));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void sheetList() throws Exception {
+        final CSSStyleSheetListImpl sheets = new CSSStyleSheetListImpl();
+        sheets.add(parse("a { top: 0 } @media (min-width: 600px) { b { top: 1px } }", null));
+        sheets.add(parse("c { top: 2px } @media (min-width: 600px) { d { top: 3px } }", "print"));
+        sheets.add(parse("e { top: 4px } @media (min-width: 600px) { f { top: 5px } }", "screen, print"));
+        final CSSStyleSheetImpl disabled = parse("g { top: 6px }", null);
+        disabled.setDisabled(true);
+        sheets.add(disabled);
+
+        final FlattenedRuleList rules = new FlattenedRuleList(sheets);
+        Assert.assertEquals("a b c d e f", selectors(rules));
+        Assert.assertEquals(6, rules.getConditionCount());
+
+        Assert.assertEquals("[a, b, e, f]", texts(rules.getActiveRules(new MediaDevice("screen", 800, 600))));
+        Assert.assertEquals("[a, e]", texts(rules.getActiveRules(new MediaDevice("screen", 500, 600))));
+        Assert.assertEquals("[a, c, e]", texts(rules.getActiveRules(new MediaDevice("print", 500, 600))));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void manyConditions() throws Exception {
+        final StringBuilder css = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            css.append("@media (min-width: ").append(i * 10).append("px) { p").append(i).append(" { top: 0 } }\n");
+        }
+        final FlattenedRuleList rules = new FlattenedRuleList(parse(css.toString(), null));
+        Assert.assertEquals(101, rules.getConditionCount());
+        Assert.assertEquals(71, rules.getActiveRules(new MediaDevice("screen", 700, 600)).size());
+        Assert.assertTrue(rules.getActivation(new MediaDevice("screen", 700, 600)).isActive(70));
+        Assert.assertFalse(rules.getActivation(new MediaDevice("screen", 700, 600)).isActive(71));
+    }
+
+    private static String selectors(final FlattenedRuleList rules) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < rules.size(); i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(rules.getRule(i).getSelectorText());
+        }
+        return sb.toString();
+    }
+
+    private static String texts(final List<CSSStyleRuleImpl> rules) {
+        final List<String> texts = new ArrayList<>();
+        for (final CSSStyleRuleImpl rule : rules) {
+            texts.add(rule.getSelectorText());
+        }
+        return texts.toString();
+    }
+
+    private static CSSStyleSheetImpl parse(final String css, final String media) throws Exception {
+        final CSSStyleSheetImpl sheet = new CSSOMParser().parseStyleSheet(new InputSource(new StringReader(css)), null);
+        if (media != null) {
+            sheet.setMediaText(media);
+        }
+        return sheet;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.cascade;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.gargoylesoftware.css.dom.Property;
+
+/**
+ * Unit tests for {@link PropertyIds}.
+ *
+ * @author Ronald Brill
+ */
+public class PropertyIdsTest {
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void ids() throws Exception {
+        final PropertyIds ids = new PropertyIds();
+        Assert.assertEquals(-1, ids.lookup("x-property-ids-test"));
+
+        final int id = ids.getId("x-Property-Ids-Test");
+        Assert.assertEquals(id, ids.getId("x-property-ids-test"));
+        Assert.assertEquals(id, ids.lookup("X-PROPERTY-IDS-TEST"));
+        Assert.assertEquals("x-property-ids-test", ids.getName(id));
+        Assert.assertEquals(1, ids.size());
+
+        Assert.assertNotEquals(id, ids.getId("x-property-ids-test2"));
+        Assert.assertEquals(2, ids.size());
+
+        // the ids are not shared
+        Assert.assertEquals(-1, new PropertyIds().lookup("x-property-ids-test"));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void grow() throws Exception {
+        final PropertyIds ids = new PropertyIds();
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals(i, ids.getId("p" + i));
+        }
+        Assert.assertEquals(1000, ids.size());
+        Assert.assertEquals("p999", ids.getName(999));
+        Assert.assertEquals(500, ids.lookup("P500"));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void cachedOnProperty() throws Exception {
+        final PropertyIds ids = new PropertyIds();
+        ids.getId("top");
+        final Property property = new Property("Color", null, false);
+
+        final int id = ids.getId(property);
+        Assert.assertEquals(id, property.getCachedId(ids));
+        Assert.assertEquals(id, ids.getId(property));
+        Assert.assertEquals("color", ids.getName(id));
+
+        // ids of other owners are not mixed up
+        final PropertyIds other = new PropertyIds();
+        Assert.assertEquals(-1, property.getCachedId(other));
+        Assert.assertEquals(0, other.getId(property));
+        Assert.assertEquals(-1, property.getCachedId(ids));
+        Assert.assertEquals(id, ids.getId(property));
+
+        property.setName("top");
+        Assert.assertEquals(-1, property.getCachedId(ids));
+        Assert.assertEquals(0, ids.getId(property));
+    }
+}
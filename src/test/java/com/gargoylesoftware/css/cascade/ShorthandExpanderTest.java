@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.cascade;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.gargoylesoftware.css.dom.CSSStyleDeclarationImpl;
+import com.gargoylesoftware.css.dom.Property;
+import com.gargoylesoftware.css.parser.CSSOMParser;
+import com.gargoylesoftware.css.parser.LexicalUnitImpl;
+
+/**
+ * Unit tests for {@link ShorthandExpander}.
+ *
+ * @author Ronald Brill
+ */
+public class ShorthandExpanderTest {
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void box() throws Exception {
+        assertExpansion("margin-top: 1px; margin-right: 1px; margin-bottom: 1px; margin-left: 1px", "margin: 1px");
+        assertExpansion("padding-top: 1px; padding-right: 2em; padding-bottom: 1px; padding-left: 2em",
+                "padding: 1px 2em");
+        assertExpansion("margin-top: 1px; margin-right: auto; margin-bottom: 3%; margin-left: auto",
+                "margin: 1px auto 3%");
+        assertExpansion("border-top-color: red; border-right-color: green; border-bottom-color: blue; "
+                + "border-left-color: rgb(0, 0, 0)", "border-color: red green blue #000");
+        assertExpansion("border-top-left-radius: 1px 3px; border-top-right-radius: 2px 3px; "
+                + "border-bottom-right-radius: 1px 3px; border-bottom-left-radius: 2px 3px",
+                "border-radius: 1px 2px / 3px");
+        assertExpansion(null, "margin: 1px 2px 3px 4px 5px");
+        assertExpansion(null, "margin: 1px, 2px");
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void border() throws Exception {
+        assertExpansion("border-top-width: medium; border-top-style: dashed; border-top-color: red",
+                "border-top: red dashed");
+        assertExpansion("outline-width: thin; outline-style: none; outline-color: currentcolor", "outline: thin");
+        assertExpansion(null, "border-top: 1px 2px");
+
+        final List<Property> border = expand("border: 1px solid #fff !important");
+        Assert.assertEquals(12, border.size());
+        Assert.assertEquals("border-left-width: 1px !important", border.get(3).toString());
+        Assert.assertEquals("border-bottom-style: solid !important", border.get(6).toString());
+        Assert.assertEquals("border-right-color: rgb(255, 255, 255) !important", border.get(9).toString());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void flexAndGrid() throws Exception {
+        assertExpansion("flex-grow: 2; flex-shrink: 1; flex-basis: 0%", "flex: 2");
+        assertExpansion("flex-grow: 2; flex-shrink: 3; flex-basis: 10px", "flex: 2 3 10px");
+        assertExpansion("flex-grow: 1; flex-shrink: 1; flex-basis: content", "flex: content");
+        assertExpansion("flex-grow: 0; flex-shrink: 0; flex-basis: auto", "flex: none");
+        assertExpansion("flex-grow: 1; flex-shrink: 1; flex-basis: auto", "flex: auto");
+        assertExpansion("flex-direction: column; flex-wrap: wrap", "flex-flow: wrap column");
+
+        assertExpansion("grid-row-start: a; grid-column-start: a; grid-row-end: a; grid-column-end: a",
+                "grid-area: a");
+        assertExpansion("grid-row-start: 1; grid-column-start: span 2; grid-row-end: auto; grid-column-end: auto",
+                "grid-area: 1 / span 2");
+        assertExpansion("grid-column-start: 2; grid-column-end: -1", "grid-column: 2 / -1");
+        assertExpansion(null, "grid-area: 1 / 2 / 3 / 4 / 5");
+        assertExpansion(null, "grid-row: 1 / 2 / 3");
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void fontAndBackground() throws Exception {
+        assertExpansion("font-style: italic; font-variant: normal; font-weight: bold; font-stretch: normal; "
+                + "font-size: 12px; line-height: 1.5; font-family: Arial, \"Times New Roman\"",
+                "font: italic bold 12px/1.5 Arial, 'Times New Roman'");
+        assertExpansion("font-style: normal; font-variant: normal; font-weight: normal; font-stretch: normal; "
+                + "font-size: small; line-height: normal; font-family: serif", "font: small serif");
+        assertExpansion(null, "font: caption");
+        assertExpansion(null, "font: 12px");
+
+        assertExpansion("background-color: red; background-image: url(x.png); background-repeat: no-repeat; "
+                + "background-attachment: scroll; background-position: left 10px; background-size: cover; "
+                + "background-origin: content-box; background-clip: content-box",
+                "background: url(x.png) red no-repeat left 10px / cover content-box");
+        assertExpansion("background-color: transparent; background-image: none; background-repeat: repeat; "
+                + "background-attachment: scroll; background-position: 0% 0%; background-size: auto; "
+                + "background-origin: padding-box; background-clip: border-box", "background: none");
+        assertExpansion(null, "background: url(a.png), url(b.png)");
+
+        assertExpansion("list-style-type: none; list-style-position: inside; list-style-image: none",
+                "list-style: inside none");
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void keywordsAndVariables() throws Exception {
+        assertExpansion("overflow-x: inherit; overflow-y: inherit", "overflow: inherit");
+        assertExpansion("row-gap: initial; column-gap: initial", "gap: initial");
+        assertExpansion(null, "margin: var(--x) 1px");
+        assertExpansion(null, "color: red");
+
+        Assert.assertTrue(ShorthandExpander.isShorthand("Margin"));
+        Assert.assertFalse(ShorthandExpander.isShorthand("margin-top"));
+        Assert.assertEquals("[overflow-x, overflow-y]", ShorthandExpander.getLonghands("overflow").toString());
+        Assert.assertTrue(ShorthandExpander.getLonghands("color").isEmpty());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void cache() throws Exception {
+        final ShorthandExpander expander = new ShorthandExpander(10);
+        final Property margin = parse("margin: 1px 2px").getProperties().get(0);
+
+        final List<Property> first = expander.expand(margin);
+        final List<Property> second = expander.expand(margin);
+        Assert.assertEquals(1, expander.getMissCount());
+        Assert.assertEquals(1, expander.getHitCount());
+        Assert.assertEquals(first.toString(), second.toString());
+        Assert.assertNotSame(first.get(0), second.get(0));
+        Assert.assertNotSame(first.get(0).getValue(), second.get(0).getValue());
+
+        // the shorthand is not modified
+        Assert.assertEquals("1px 2px", margin.getValue().getCssText());
+
+        margin.getValue().setCssText("3px");
+        Assert.assertEquals("margin-top: 3px", expander.expand(margin).get(0).toString());
+        Assert.assertEquals(2, expander.getMissCount());
+        Assert.assertEquals(2, expander.size());
+
+        expander.clear();
+        Assert.assertEquals(0, expander.size());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void resultsAreNotShared() throws Exception {
+        final ShorthandExpander expander = new ShorthandExpander(10);
+        final Property border = parse("border: 1px").getProperties().get(0);
+
+        final List<Property> first = expander.expand(border);
+        ((LexicalUnitImpl) first.get(4).getValue().getLexicalUnit()).setStringValue("HACKED");
+        ((LexicalUnitImpl) first.get(0).getValue().getLexicalUnit()).setDoubleValue(7);
+
+        final List<Property> second = expander.expand(border);
+        Assert.assertEquals(1, expander.getHitCount());
+        Assert.assertEquals("border-top-style: none", second.get(4).toString());
+        Assert.assertEquals("border-top-width: 1px", second.get(0).toString());
+        Assert.assertNotSame(first.get(4).getValue().getLexicalUnit(), second.get(4).getValue().getLexicalUnit());
+        Assert.assertNotSame(first.get(0).getValue().getLexicalUnit(), second.get(0).getValue().getLexicalUnit());
+
+        Assert.assertEquals("border-top-style: none", expand("border-top: 2px").get(1).toString());
+    }
+
+    private static void assertExpansion(final String expected, final String declaration) throws Exception {
+        final List<Property> longhands = expand(declaration);
+        if (expected == null) {
+            Assert.assertNull(declaration, longhands);
+            return;
+        }
+        Assert.assertNotNull(declaration, longhands);
+
+        final CSSStyleDeclarationImpl result = new CSSStyleDeclarationImpl(null);
+        for (final Property property : longhands) {
+            result.addProperty(property);
+        }
+        Assert.assertEquals(declaration, expected, result.getCssText());
+    }
+
+    private static List<Property> expand(final String declaration) throws Exception {
+        return new ShorthandExpander(10).expand(parse(declaration).getProperties().get(0));
+    }
+
+    private static CSSStyleDeclarationImpl parse(final String declaration) throws Exception {
+        return new CSSOMParser().parseStyleDeclaration(declaration);
+    }
+}
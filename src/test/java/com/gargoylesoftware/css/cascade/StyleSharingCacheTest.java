@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.cascade;
+
+import java.io.StringReader;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.gargoylesoftware.css.dom.CSSStyleSheetImpl;
+import com.gargoylesoftware.css.matching.CompiledSelector;
+import com.gargoylesoftware.css.matching.TreeElement;
+import com.gargoylesoftware.css.parser.CSSOMParser;
+import com.gargoylesoftware.css.parser.InputSource;
+import com.gargoylesoftware.css.parser.selector.SelectorList;
+
+/**
+ * Unit tests for {@link StyleSharingCache}.
+ *
+ * @author Ronald Brill
+ */
+public class StyleSharingCacheTest {
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void shareSiblings() throws Exception {
+        final StyleSharingCache<TreeElement> cache = cache("li { color: red }\n"
+                + ".x { color: blue }\n"
+                + "ul li { top: 1px }");
+
+        final TreeElement ul = new TreeElement("ul");
+        final TreeElement first = ul.append(new TreeElement("li"));
+        final TreeElement second = ul.append(new TreeElement("li"));
+        final TreeElement third = ul.append(new TreeElement("li").attribute("class", "x"));
+        final Object parentStyle = new Object();
+
+        final CascadedStyle style = cache.compute(first, parentStyle);
+        Assert.assertEquals("red", style.getProperty("color").getValue().getCssText());
+        Assert.assertSame(style, cache.compute(second, parentStyle));
+        Assert.assertEquals("blue", cache.compute(third, parentStyle).getProperty("color").getValue().getCssText());
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(2, cache.getMissCount());
+
+        // other parent style
+        Assert.assertNotSame(style, cache.compute(second, new Object()));
+        // other parent
+        final TreeElement other = new TreeElement("ul").append(new TreeElement("li"));
+        Assert.assertNotSame(style, cache.compute(other, parentStyle));
+        Assert.assertEquals(1, cache.getHitCount());
+
+        cache.clear();
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(0, cache.getHitCount());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void notShareable() throws Exception {
+        assertNotShared("li:first-child { color: red }");
+        assertNotShared("li + li { color: red }");
+        assertNotShared("li:hover { color: red }");
+        assertNotShared("li:not(:nth-child(2n)) { color: red }");
+        assertNotShared("li[title] { color: red }");
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void withId() throws Exception {
+        final StyleSharingCache<TreeElement> cache = cache("li { color: red }");
+        final TreeElement ul = new TreeElement("ul");
+        final TreeElement first = ul.append(new TreeElement("li").attribute("id", "a"));
+        final TreeElement second = ul.append(new TreeElement("li").attribute("id", "a"));
+
+        Assert.assertNotSame(cache.compute(first, null), cache.compute(second, null));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void subjectDependencies() throws Exception {
+        Assert.assertEquals(0, dependencies("div p.x"));
+        Assert.assertEquals(0, dependencies("div:hover > p"));
+        Assert.assertEquals(CompiledSelector.DEPENDS_ON_SIBLINGS, dependencies("div ~ p"));
+        Assert.assertEquals(CompiledSelector.DEPENDS_ON_SIBLINGS | CompiledSelector.DEPENDS_ON_STATE,
+                dependencies("div:hover + p"));
+        Assert.assertEquals(CompiledSelector.DEPENDS_ON_ATTRIBUTES, dependencies("p:lang(en)"));
+        Assert.assertEquals(CompiledSelector.DEPENDS_ON_ID | CompiledSelector.DEPENDS_ON_ATTRIBUTES,
+                dependencies("p#a[title]"));
+        Assert.assertEquals(CompiledSelector.DEPENDS_ON_STATE, dependencies("p:not(:focus)"));
+    }
+
+    private static void assertNotShared(final String css) throws Exception {
+        final StyleSharingCache<TreeElement> cache = cache(css + "\nli { top: 1px }");
+        final TreeElement ul = new TreeElement("ul");
+        final TreeElement first = ul.append(new TreeElement("li"));
+        final TreeElement second = ul.append(new TreeElement("li"));
+
+        cache.compute(first, null);
+        cache.compute(second, null);
+        Assert.assertEquals(css, 0, cache.getHitCount());
+        Assert.assertEquals(css, 0, cache.size());
+    }
+
+    private static int dependencies(final String selector) throws Exception {
+        final SelectorList selectors = new CSSOMParser().parseSelectors(selector);
+        return new CompiledSelector(selectors.get(0)).getSubjectDependencies();
+    }
+
+    private static StyleSharingCache<TreeElement> cache(final String css) throws Exception {
+        final CSSStyleSheetImpl sheet = new CSSOMParser().parseStyleSheet(new InputSource(new StringReader(css)), null);
+        final Cascade<TreeElement> cascade = new Cascade<>(TreeElement.ADAPTER, MediaContext.ALL);
+        cascade.addStyleSheet(sheet, Origin.AUTHOR);
+        return new StyleSharingCache<>(cascade, 100);
+    }
+}
@@ -15,6 +15,7 @@
 package com.gargoylesoftware.css.dom;
 
 import java.io.StringReader;
+import java.util.Arrays;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -58,6 +59,75 @@ public void getLength() throws Exception {
         Assert.assertEquals(3, rl.getLength());
     }
 
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void charsetAndImportCount() throws Exception {
+        final CSSRuleListImpl rl = parseRuleList("@charset 'utf-8'; @import 'a.css'; h1 {} @import 'b.css'; h2 {}");
+        Assert.assertEquals(4, rl.getLength());
+        Assert.assertEquals(2, rl.getLeadingCharsetAndImportCount());
+        Assert.assertEquals(2, rl.getCharsetAndImportCount());
+
+        final AbstractCSSRuleImpl imp = rl.getRules().get(1);
+        rl.insert(imp, 2);
+        Assert.assertEquals(3, rl.getLeadingCharsetAndImportCount());
+        Assert.assertEquals(3, rl.getCharsetAndImportCount());
+
+        // misplaced
+        rl.add(imp);
+        Assert.assertEquals(3, rl.getLeadingCharsetAndImportCount());
+        Assert.assertEquals(4, rl.getCharsetAndImportCount());
+
+        rl.insert(rl.getRules().get(3), 1);
+        Assert.assertEquals(1, rl.getLeadingCharsetAndImportCount());
+        Assert.assertEquals(4, rl.getCharsetAndImportCount());
+
+        rl.delete(1);
+        Assert.assertEquals(3, rl.getLeadingCharsetAndImportCount());
+
+        rl.getRules().set(0, rl.getRules().get(3));
+        Assert.assertEquals(0, rl.getLeadingCharsetAndImportCount());
+        Assert.assertEquals(3, rl.getCharsetAndImportCount());
+
+        rl.getRules().clear();
+        Assert.assertEquals(0, rl.getLeadingCharsetAndImportCount());
+        Assert.assertEquals(0, rl.getCharsetAndImportCount());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void charsetAndImportCountInsertAll() throws Exception {
+        final CSSRuleListImpl rl = parseRuleList("@charset 'utf-8'; @import 'a.css'; h1 {} @import 'b.css'; h2 {}");
+        final AbstractCSSRuleImpl imp = rl.getRules().get(1);
+        final AbstractCSSRuleImpl h1 = rl.getRules().get(2);
+
+        rl.insertAll(Arrays.asList(imp, imp), 2);
+        Assert.assertEquals(6, rl.getLength());
+        Assert.assertEquals(4, rl.getLeadingCharsetAndImportCount());
+        Assert.assertEquals(4, rl.getCharsetAndImportCount());
+
+        rl.insertAll(Arrays.asList(imp, h1, imp), 1);
+        Assert.assertEquals(9, rl.getLength());
+        Assert.assertEquals(2, rl.getLeadingCharsetAndImportCount());
+        Assert.assertEquals(6, rl.getCharsetAndImportCount());
+
+        rl.insertAll(Arrays.asList(h1, imp), 5);
+        Assert.assertEquals(2, rl.getLeadingCharsetAndImportCount());
+        Assert.assertEquals(7, rl.getCharsetAndImportCount());
+
+        rl.insertAll(Arrays.asList(h1), 0);
+        Assert.assertEquals(0, rl.getLeadingCharsetAndImportCount());
+        Assert.assertEquals(7, rl.getCharsetAndImportCount());
+
+        rl.delete(0);
+        rl.delete(2);
+        Assert.assertEquals(4, rl.getLeadingCharsetAndImportCount());
+        Assert.assertEquals(7, rl.getCharsetAndImportCount());
+    }
+
     private CSSRuleListImpl parseRuleList(final String rules) throws Exception {
         final InputSource is = new InputSource(new StringReader(rules));
         final CSSStyleSheetImpl ss = new CSSOMParser().parseStyleSheet(is, null);
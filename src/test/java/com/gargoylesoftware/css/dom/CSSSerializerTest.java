@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.dom;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.gargoylesoftware.css.parser.CSSOMParser;
+import com.gargoylesoftware.css.parser.InputSource;
+
+/**
+ * Unit tests for {@link CSSSerializer}.
+ *
+ * @author Ronald Brill
+ */
+public class CSSSerializerTest {
+
+    private static final String CSS = "@charset \"utf-8\";\n"
+            + "@import url(base.css) screen, print;\n"
+            + "h1, div.intro > p:first-child, ul li + li, a ~ b, *.x, p::first-line, [href^=\"http\"]:hover"
+            + " { color: #ff0000; margin: 0.5em -0.25em 0 auto !important }\n"
+            + "p { font: 12px/1.5 \"Open Sans\", serif; background: url(x.png) rgb(1, 2, 3); "
+            + "width: calc(100% - 2 * 0.5px); clip: rect(1px, 2px, 3px, 4px); content: counter(c, decimal) }\n"
+            + "p:lang(de) {}\n"
+            + "@media screen and (min-width: 100px), print { #main .col { float: left } a { color: #123456 } }\n"
+            + "@page :first { margin: 1in }\n"
+            + "@font-face { font-family: Foo; src: url(foo.woff) }\n";
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void pretty() throws Exception {
+        final CSSStyleSheetImpl sheet = parse(CSS);
+
+        final StringBuilder expected = new StringBuilder();
+        for (final AbstractCSSRuleImpl rule : sheet.getCssRules().getRules()) {
+            if (expected.length() > 0) {
+                expected.append("\r\n");
+            }
+            expected.append(rule.getCssText());
+        }
+        Assert.assertEquals(expected.toString(), CSSSerializer.PRETTY.serialize(sheet));
+        Assert.assertEquals(expected.toString(), sheet.toString());
+
+        for (final AbstractCSSRuleImpl rule : sheet.getCssRules().getRules()) {
+            final StringBuilder sb = new StringBuilder();
+            CSSSerializer.PRETTY.write(sb, rule);
+            Assert.assertEquals(rule.getCssText(), sb.toString());
+        }
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void minified() throws Exception {
+        final String minified = CSSSerializer.MINIFIED.serialize(parse(CSS));
+        Assert.assertEquals("@charset \"utf-8\";"
+                + "@import url(base.css) screen,print;"
+                + "h1,div.intro>p:first-child,ul li+li,a~b,.x,p::first-line,[href^=\"http\"]:hover"
+                + "{color:#f00;margin:.5em -.25em 0 auto!important}"
+                + "p{font:12px/1.5 \"Open Sans\",serif;background:url(x.png) #010203;"
+                + "width:calc(100% - 2*.5px);clip:rect(1px,2px,3px,4px);content:counter(c,decimal)}"
+                + "p:lang(de){}"
+                + "@media screen and (min-width:100px),print{#main .col{float:left}a{color:#123456}}"
+                + "@page :first{margin:1in}"
+                + "@font-face{font-family:Foo;src:url(foo.woff)}", minified);
+
+        // the minified text has the same meaning
+        Assert.assertEquals(parse(CSS).toString(), parse(minified).toString());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void writer() throws Exception {
+        final CSSStyleSheetImpl sheet = parse(CSS);
+        final StringWriter writer = new StringWriter();
+        CSSSerializer.MINIFIED.write(writer, sheet);
+        Assert.assertEquals(CSSSerializer.MINIFIED.serialize(sheet), writer.toString());
+
+        final CSSStyleRuleImpl rule = (CSSStyleRuleImpl) sheet.getCssRules().getRules().get(2);
+        final StringBuilder sb = new StringBuilder();
+        CSSSerializer.MINIFIED.write(sb, rule.getStyle().getPropertyCSSValue("color"));
+        Assert.assertEquals("#f00", sb.toString());
+
+        sb.setLength(0);
+        CSSSerializer.PRETTY.write(sb, rule.getStyle());
+        Assert.assertEquals(rule.getStyle().getCssText(), sb.toString());
+    }
+
+    private static CSSStyleSheetImpl parse(final String css) throws Exception {
+        return new CSSOMParser().parseStyleSheet(new InputSource(new StringReader(css)), null);
+    }
+}
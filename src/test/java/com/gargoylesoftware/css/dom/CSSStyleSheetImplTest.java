@@ -19,6 +19,11 @@
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -26,6 +31,8 @@
 
 import com.gargoylesoftware.css.parser.CSSOMParser;
 import com.gargoylesoftware.css.parser.InputSource;
+import com.gargoylesoftware.css.parser.media.MediaDevice;
+import com.gargoylesoftware.css.parser.selector.Selector;
 
 /**
  * Unit tests for {@link CSSStyleSheetImpl}.
@@ -140,6 +147,81 @@ public void insertRuleRuleImport() throws Exception {
         }
     }
 
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void insertRules() throws Exception {
+        final CSSStyleSheetImpl ss = parseStyleSheet("h1 { top: 0 } h4 { top: 3px }");
+
+        ss.insertRules("h2 { top: 1px } @media print { h3 { top: 2px } }", 1);
+        Assert.assertEquals(4, ss.getCssRules().getLength());
+        Assert.assertEquals("h1 { top: 0 }\r\nh2 { top: 1px }\r\n@media print {h3 { top: 2px } }\r\nh4 { top: 3px }",
+                ss.getCssRules().toString());
+        for (final AbstractCSSRuleImpl rule : ss.getCssRules().getRules()) {
+            Assert.assertSame(ss, rule.getParentStyleSheet());
+            Assert.assertNull(rule.getParentRule());
+        }
+        final CSSMediaRuleImpl media = (CSSMediaRuleImpl) ss.getCssRules().getRules().get(2);
+        Assert.assertSame(media, media.getCssRules().getRules().get(0).getParentRule());
+
+        ss.insertRules(Arrays.asList("@charset \"US-ASCII\";", "@import \"great.css\";", "h0 { top: 0 }"), 0);
+        Assert.assertEquals(7, ss.getCssRules().getLength());
+        Assert.assertTrue(ss.getCssRules().getRules().get(1) instanceof CSSImportRuleImpl);
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void insertRulesPlacement() throws Exception {
+        final CSSStyleSheetImpl ss = parseStyleSheet("@import \"great.css\"; h1 { top: 0 }");
+
+        try {
+            ss.insertRules("h2 { top: 1px } h3 { top: 2px }", 0);
+            Assert.fail("DOMException expected");
+        }
+        catch (final DOMException e) {
+            Assert.assertTrue(e.getMessage(),
+                    e.getMessage().startsWith("Can't insert a rule before the last charset or import rule"));
+        }
+
+        try {
+            ss.insertRules(Arrays.asList("@import \"a.css\";", "h2 { top: 1px }"), 2);
+            Assert.fail("DOMException expected");
+        }
+        catch (final DOMException e) {
+            Assert.assertTrue(e.getMessage(),
+                    e.getMessage().startsWith("An import rule must preceed all other rules"));
+        }
+
+        try {
+            ss.insertRules("h2 { top: 1px }", 3);
+            Assert.fail("DOMException expected");
+        }
+        catch (final DOMException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("Index out of bounds error"));
+        }
+
+        // nothing was inserted
+        Assert.assertEquals(2, ss.getCssRules().getLength());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void insertRulesUpdatesRuleIndex() throws Exception {
+        final CSSStyleSheetImpl ss = parseStyleSheet("div { top: 0 }\n.a { top: 1px }");
+        ss.setRuleIndex(RuleIndexBuilder.build(ss));
+        final CSSStyleSheetImpl.CSSStyleSheetRuleIndex index = ss.getRuleIndex();
+
+        ss.insertRules("div.a { top: 2px } @media print { div { top: 3px } } * { top: 4px }", 1);
+        ss.insertRules(Arrays.asList("div { top: 5px }", ".a { top: 6px }"), 5);
+        Assert.assertSame(index, ss.getRuleIndex());
+        Assert.assertEquals(dump(RuleIndexBuilder.build(ss)), dump(ss.getRuleIndex()));
+    }
+
     /**
      * @throws Exception if any error occurs
      */
@@ -216,4 +298,338 @@ public void getCssTextFormated() throws Exception {
 
         Assert.assertEquals("h1 { color: blue }", value.toString());
     }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void ruleIndexBuckets() throws Exception {
+        final CSSStyleSheetImpl ss = parseStyleSheet("* { top: 0 }\n"
+                + "div { top: 1px }\n"
+                + "#main { top: 2px }\n"
+                + "div.a { top: 3px }\n"
+                + "[data-x] { top: 4px }\n"
+                + "p[data-y] { top: 5px }\n"
+                + "div::before { top: 6px }\n"
+                + ".a::after { top: 7px }\n"
+                + "span { top: 8px }");
+
+        final CSSStyleSheetImpl.CSSStyleSheetRuleIndex index = buildRuleIndex(ss);
+
+        Assert.assertEquals("[*, div, *#main, div.a, *[data-x]]",
+                selectors(index.getSelectorEntriesIteratorFor("div", "main", new String[] {"a"},
+                        new String[] {"DATA-X", "title"}, null)));
+        Assert.assertEquals("[*, div]",
+                selectors(index.getSelectorEntriesIteratorFor("div", "other", null, null, null)));
+        Assert.assertEquals("[*, p[data-y]]",
+                selectors(index.getSelectorEntriesIteratorFor("p", null, null, new String[] {"data-y"}, null)));
+
+        Assert.assertEquals("[div::before]",
+                selectors(index.getSelectorEntriesIteratorFor("div", "main", new String[] {"a"}, null, "before")));
+        Assert.assertEquals("[*.a::after]",
+                selectors(index.getSelectorEntriesIteratorFor("div", null, new String[] {"a"}, null, "AFTER")));
+        Assert.assertEquals("[]",
+                selectors(index.getSelectorEntriesIteratorFor("span", null, null, null, "after")));
+
+        // the old lookup has to return everything that might match
+        Assert.assertEquals(8,
+                selectors(index.getSelectorEntriesIteratorFor("div", new String[] {"a"})).split(",").length);
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void ruleIndexCursor() throws Exception {
+        final CSSStyleSheetImpl ss = parseStyleSheet(".b { top: 0 }\n"
+                + "div { top: 1px }\n"
+                + "div.a { top: 2px }\n"
+                + "* { top: 3px }\n"
+                + ".a { top: 4px }\n"
+                + "p.a { top: 5px }\n"
+                + "div.b { top: 6px }\n"
+                + "div { top: 7px }");
+
+        final CSSStyleSheetImpl.CSSStyleSheetRuleIndex index = buildRuleIndex(ss);
+        final CSSStyleSheetImpl.SelectorEntryCursor cursor = new CSSStyleSheetImpl.SelectorEntryCursor();
+
+        cursor.reset(index, "div", null, new String[] {"a", "b", "a"}, null, null);
+        final List<String> found = new ArrayList<>();
+        long lastSequence = -1;
+        CSSStyleSheetImpl.SelectorEntry entry = cursor.next();
+        while (entry != null) {
+            Assert.assertTrue(entry.getSequence() > lastSequence);
+            lastSequence = entry.getSequence();
+            found.add(entry.getRule().getStyle().getCssText());
+            entry = cursor.next();
+        }
+        Assert.assertEquals("[top: 0, top: 1px, top: 2px, top: 3px, top: 4px, top: 6px, top: 7px]", found.toString());
+        Assert.assertNull(cursor.next());
+
+        // reuse
+        cursor.reset(index, "p", null, new String[] {"a"}, null, null);
+        Assert.assertEquals("[*, *.a, p.a]", selectors(new CSSStyleSheetImpl.SelectorEntriesIterator(cursor)));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void ruleIndexIncremental() throws Exception {
+        final CSSStyleSheetImpl ss = parseStyleSheet("div { top: 0 }\n"
+                + "@media print { div.a { top: 1px } }\n"
+                + ".a { top: 2px }");
+        ss.setRuleIndex(RuleIndexBuilder.build(ss));
+        final CSSStyleSheetImpl.CSSStyleSheetRuleIndex index = ss.getRuleIndex();
+
+        ss.insertRule("div, .a { top: 3px }", 1);
+        ss.insertRule("@media print { .a { top: 4px } @media screen { div { top: 5px } } }", 0);
+        ss.insertRule("* { top: 6px }", ss.getCssRules().getLength());
+        final CSSMediaRuleImpl media = (CSSMediaRuleImpl) ss.getCssRules().getRules().get(0);
+        media.insertRule("p.a, div { top: 7px }", 0);
+        media.insertRule("div { top: 8px }", 2);
+        Assert.assertSame(index, ss.getRuleIndex());
+        Assert.assertEquals(dump(RuleIndexBuilder.build(ss)), dump(ss.getRuleIndex()));
+
+        media.deleteRule(1);
+        ss.deleteRule(3);
+        ss.deleteRule(0);
+
+        // the media rule is no longer part of the sheet
+        media.deleteRule(0);
+        media.insertRule("div { top: 9px }", 0);
+        Assert.assertSame(index, ss.getRuleIndex());
+        Assert.assertEquals(dump(RuleIndexBuilder.build(ss)), dump(ss.getRuleIndex()));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void ruleIndexIncrementalRenumber() throws Exception {
+        final CSSStyleSheetImpl ss = parseStyleSheet("div { top: 0 }\ndiv { top: 1px }");
+        ss.setRuleIndex(RuleIndexBuilder.build(ss));
+        final CSSStyleSheetImpl.CSSStyleSheetRuleIndex index = ss.getRuleIndex();
+
+        // always insert at the same place to use up the room between the sequence numbers
+        for (int i = 0; i < 30; i++) {
+            ss.insertRule("div, .a { top: " + (i + 2) + "px }", 1);
+        }
+        Assert.assertSame(index, ss.getRuleIndex());
+        Assert.assertEquals(dump(RuleIndexBuilder.build(ss)), dump(ss.getRuleIndex()));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void ruleIndexResetOnImport() throws Exception {
+        final CSSStyleSheetImpl ss = parseStyleSheet("div { top: 0 }");
+        ss.setRuleIndex(RuleIndexBuilder.build(ss));
+
+        ss.insertRule("@font-face { font-family: x }", 1);
+        Assert.assertNotNull(ss.getRuleIndex());
+
+        ss.insertRule("@import url('x.css');", 0);
+        Assert.assertNull(ss.getRuleIndex());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void ruleIndexRulesDeclaring() throws Exception {
+        final CSSStyleSheetImpl ss = parseStyleSheet("div { display: block; top: 0 }\n"
+                + "@media print { p { Display: none } }\n"
+                + "p::before { top: 1px }");
+        ss.setRuleIndex(RuleIndexBuilder.build(ss));
+        final CSSStyleSheetImpl.CSSStyleSheetRuleIndex index = ss.getRuleIndex();
+        Assert.assertEquals("[div, p]", declaring(index, "display"));
+        Assert.assertEquals("[div, p::before]", declaring(index, "TOP"));
+        Assert.assertEquals("[]", declaring(index, "color"));
+
+        final CSSStyleRuleImpl div = (CSSStyleRuleImpl) ss.getCssRules().getRules().get(0);
+        div.getStyle().setProperty("color", "red", null);
+        div.getStyle().removeProperty("display");
+        Assert.assertEquals("[div]", declaring(index, "color"));
+        Assert.assertEquals("[p]", declaring(index, "display"));
+
+        div.getStyle().setCssText("display: inline");
+        Assert.assertEquals("[]", declaring(index, "color"));
+        Assert.assertEquals("[div, p]", declaring(index, "display"));
+
+        ss.insertRule("a { color: blue }", 1);
+        ss.deleteRule(0);
+        Assert.assertEquals("[a]", declaring(index, "color"));
+        Assert.assertEquals("[p]", declaring(index, "display"));
+
+        // replaced declarations report their modifications also
+        final CSSStyleRuleImpl a = (CSSStyleRuleImpl) ss.getCssRules().getRules().get(0);
+        a.setCssText("a { color: green }");
+        Assert.assertSame(a, a.getStyle().getParentRule());
+        a.getStyle().setProperty("display", "block", "");
+        Assert.assertEquals("[a, p]", declaring(index, "display"));
+
+        final CSSStyleDeclarationImpl style = new CSSStyleDeclarationImpl(null);
+        a.setStyle(style);
+        Assert.assertEquals("[]", declaring(index, "color"));
+        style.setProperty("color", "red", "");
+        Assert.assertEquals("[a]", declaring(index, "color"));
+        Assert.assertSame(index, ss.getRuleIndex());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void deferredMediaRules() throws Exception {
+        final String css = "div { top: 0 }\n"
+                + "@media print { div.a { top: 1px; content: '}' }\n"
+                + "  @media (min-width: 1px) { .a { top: 2px } } }\n"
+                + "@media screen {\r\n  div { top: 3px } }\n"
+                + ".a { top: 4px }";
+        final CSSStyleSheetImpl expected = parseStyleSheet(css);
+
+        final CSSOMParser parser = new CSSOMParser();
+        parser.setBuildRuleIndex(true);
+        parser.setMediaDevice(new MediaDevice("screen", 800, 600));
+        CSSStyleSheetImpl ss = parser.parseStyleSheet(new InputSource(new StringReader(css)), null);
+        CSSMediaRuleImpl print = (CSSMediaRuleImpl) ss.getCssRules().getRules().get(1);
+        final CSSMediaRuleImpl screen = (CSSMediaRuleImpl) ss.getCssRules().getRules().get(2);
+        Assert.assertTrue(print.isDeferred());
+        Assert.assertFalse(screen.isDeferred());
+
+        final CSSStyleSheetImpl.CSSStyleSheetRuleIndex index = ss.getRuleIndex();
+        Assert.assertEquals("div top: 0\n"
+                + "*.a top: 4px\n"
+                + "@media screen {\n"
+                + "div top: 3px\n"
+                + "}\n", dump(index));
+
+        // not matching
+        Assert.assertEquals(0, ss.parseDeferredRules(new MediaDevice("tv", 800, 600)));
+        Assert.assertTrue(print.isDeferred());
+
+        Assert.assertEquals(1, ss.parseDeferredRules(new MediaDevice("print", 800, 600)));
+        Assert.assertFalse(print.isDeferred());
+        Assert.assertSame(index, ss.getRuleIndex());
+        Assert.assertEquals(dump(RuleIndexBuilder.build(expected)), dump(index));
+        Assert.assertEquals(expected.toString(), ss.toString());
+
+        // parsed on access
+        ss = parser.parseStyleSheet(new InputSource(new StringReader(css)), null);
+        print = (CSSMediaRuleImpl) ss.getCssRules().getRules().get(1);
+        Assert.assertTrue(print.isDeferred());
+        Assert.assertEquals(2, print.getCssRules().getLength());
+        Assert.assertFalse(print.isDeferred());
+        Assert.assertEquals(expected.toString(), ss.toString());
+        Assert.assertEquals(dump(RuleIndexBuilder.build(expected)), dump(ss.getRuleIndex()));
+
+        final AbstractCSSRuleImpl rule = print.getCssRules().getRules().get(1);
+        final AbstractCSSRuleImpl expectedRule =
+                ((CSSMediaRuleImpl) expected.getCssRules().getRules().get(1)).getCssRules().getRules().get(1);
+        Assert.assertSame(print, rule.getParentRule());
+        Assert.assertSame(ss, rule.getParentStyleSheet());
+        Assert.assertEquals(expectedRule.getLocator().getLineNumber(), rule.getLocator().getLineNumber());
+        Assert.assertEquals(expectedRule.getLocator().getColumnNumber(), rule.getLocator().getColumnNumber());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void deferredMediaRulesStayDeferred() throws Exception {
+        final String css = "div { top: 0 }\n"
+                + "@media print { div { top: 1px } }\n"
+                + "@media print { div { top: 2px } }\n"
+                + "p { top: 3px }\n"
+                + "@media print { div { top: 4px } }\n"
+                + "@media print { div { top: 5px } }";
+
+        final CSSOMParser parser = new CSSOMParser();
+        parser.setBuildRuleIndex(true);
+        parser.setMediaDevice(new MediaDevice("screen", 800, 600));
+        final CSSStyleSheetImpl ss = parser.parseStyleSheet(new InputSource(new StringReader(css)), null);
+        final List<AbstractCSSRuleImpl> rules = ss.getCssRules().getRules();
+        final CSSStyleSheetImpl.CSSStyleSheetRuleIndex index = ss.getRuleIndex();
+
+        final CSSMediaRuleImpl third = (CSSMediaRuleImpl) rules.get(4);
+        Assert.assertEquals(1, third.getCssRules().getLength());
+        Assert.assertTrue(((CSSMediaRuleImpl) rules.get(1)).isDeferred());
+        Assert.assertTrue(((CSSMediaRuleImpl) rules.get(2)).isDeferred());
+        Assert.assertTrue(((CSSMediaRuleImpl) rules.get(5)).isDeferred());
+        Assert.assertSame(index, ss.getRuleIndex());
+
+        ss.deleteRule(1);
+        Assert.assertTrue(((CSSMediaRuleImpl) rules.get(1)).isDeferred());
+        Assert.assertSame(index, ss.getRuleIndex());
+
+        // hash code does not parse
+        final CSSMediaRuleImpl last = (CSSMediaRuleImpl) rules.get(4);
+        last.hashCode();
+        Assert.assertTrue(last.isDeferred());
+
+        // serialization parses to keep the serialized form
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(last);
+        }
+        Assert.assertFalse(last.isDeferred());
+        Assert.assertSame(index, ss.getRuleIndex());
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            final CSSMediaRuleImpl read = (CSSMediaRuleImpl) in.readObject();
+            Assert.assertFalse(read.isDeferred());
+            Assert.assertEquals("@media print {div { top: 5px } }", read.getCssText());
+        }
+    }
+
+    private static String dump(final CSSStyleSheetImpl.CSSStyleSheetRuleIndex index) {
+        final StringBuilder result = new StringBuilder();
+        final Iterator<CSSStyleSheetImpl.SelectorEntry> entries =
+                index.getSelectorEntriesIteratorFor("div", new String[] {"a"});
+        long lastSequence = -1;
+        while (entries.hasNext()) {
+            final CSSStyleSheetImpl.SelectorEntry entry = entries.next();
+            Assert.assertTrue(entry.getSequence() > lastSequence);
+            lastSequence = entry.getSequence();
+            result.append(entry.getSelector()).append(' ').append(entry.getRule().getStyle()).append('\n');
+        }
+        // deleting rules may leave empty media indexes behind
+        for (final CSSStyleSheetImpl.CSSStyleSheetRuleIndex child : index.getChildren()) {
+            final String childDump = dump(child);
+            if (!childDump.isEmpty()) {
+                result.append("@media ").append(child.getMediaList()).append(" {\n")
+                    .append(childDump).append("}\n");
+            }
+        }
+        return result.toString();
+    }
+
+    private static CSSStyleSheetImpl.CSSStyleSheetRuleIndex buildRuleIndex(final CSSStyleSheetImpl ss) {
+        final CSSStyleSheetImpl.CSSStyleSheetRuleIndex index = new CSSStyleSheetImpl.CSSStyleSheetRuleIndex();
+        for (final AbstractCSSRuleImpl rule : ss.getCssRules().getRules()) {
+            final CSSStyleRuleImpl styleRule = (CSSStyleRuleImpl) rule;
+            for (final Selector selector : styleRule.getSelectors()) {
+                index.addSelector(selector, styleRule);
+            }
+        }
+        return index;
+    }
+
+    private static String declaring(final CSSStyleSheetImpl.CSSStyleSheetRuleIndex index, final String name) {
+        final List<String> result = new ArrayList<>();
+        for (final CSSStyleRuleImpl rule : index.getRulesDeclaring(name)) {
+            result.add(rule.getSelectorText());
+        }
+        Collections.sort(result);
+        return result.toString();
+    }
+
+    private static String selectors(final Iterator<CSSStyleSheetImpl.SelectorEntry> entries) {
+        final List<String> result = new ArrayList<>();
+        while (entries.hasNext()) {
+            result.add(entries.next().getSelector().toString());
+        }
+        return result.toString();
+    }
 }
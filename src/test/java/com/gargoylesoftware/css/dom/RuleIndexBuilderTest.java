@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.dom;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.gargoylesoftware.css.dom.CSSStyleSheetImpl.CSSStyleSheetRuleIndex;
+import com.gargoylesoftware.css.dom.CSSStyleSheetImpl.SelectorEntry;
+import com.gargoylesoftware.css.parser.CSSOMParser;
+import com.gargoylesoftware.css.parser.InputSource;
+
+/**
+ * Unit tests for {@link RuleIndexBuilder}.
+ *
+ * @author Ronald Brill
+ */
+public class RuleIndexBuilderTest {
+
+    private static final String CSS = "div { top: 0 }\n"
+            + "@import url('x.css');\n"
+            + "@media print { div.a { top: 1px } @media (min-width: 10px) { #x { top: 2px } } }\n"
+            + "@font-face { font-family: x }\n"
+            + "@media print { p { top: 3px } }\n"
+            + ".a::before { top: 4px }";
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void buildWhileParsing() throws Exception {
+        final CSSOMParser parser = new CSSOMParser();
+        parser.setBuildRuleIndex(true);
+        final CSSStyleSheetImpl ss = parser.parseStyleSheet(new InputSource(new StringReader(CSS)), null);
+
+        verify(ss.getRuleIndex());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void noIndexByDefault() throws Exception {
+        final CSSStyleSheetImpl ss = new CSSOMParser().parseStyleSheet(new InputSource(new StringReader(CSS)), null);
+        Assert.assertNull(ss.getRuleIndex());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void buildFromStyleSheet() throws Exception {
+        final CSSStyleSheetImpl ss = new CSSOMParser().parseStyleSheet(new InputSource(new StringReader(CSS)), null);
+        verify(RuleIndexBuilder.build(ss));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test(expected = IllegalStateException.class)
+    public void endMediaWithoutStart() throws Exception {
+        new RuleIndexBuilder().endMedia();
+    }
+
+    private static void verify(final CSSStyleSheetRuleIndex index) {
+        Assert.assertEquals("[div]", selectors(index.getSelectorEntriesIteratorFor("div", "x",
+                new String[] {"a"}, null, null)));
+        Assert.assertEquals("[*.a::before]", selectors(index.getSelectorEntriesIteratorFor("div", "x",
+                new String[] {"a"}, null, "before")));
+
+        Assert.assertEquals(1, index.getChildren().size());
+        final CSSStyleSheetRuleIndex print = index.getChildren().get(0);
+        Assert.assertEquals("print", print.getMediaList().getMediaText());
+        Assert.assertEquals("[div.a]", selectors(print.getSelectorEntriesIteratorFor("div", "x",
+                new String[] {"a"}, null, null)));
+        Assert.assertEquals("[p]", selectors(print.getSelectorEntriesIteratorFor("p", null, null, null, null)));
+
+        Assert.assertEquals(1, print.getChildren().size());
+        final CSSStyleSheetRuleIndex width = print.getChildren().get(0);
+        Assert.assertEquals("all and (min-width: 10px)", width.getMediaList().getMediaText());
+        Assert.assertEquals("[*#x]", selectors(width.getSelectorEntriesIteratorFor("div", "x",
+                null, null, null)));
+    }
+
+    private static String selectors(final Iterator<SelectorEntry> entries) {
+        final List<String> result = new ArrayList<>();
+        while (entries.hasNext()) {
+            result.add(entries.next().getSelector().toString());
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.dom;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.gargoylesoftware.css.dom.CSSStyleSheetImpl.SelectorEntry;
+import com.gargoylesoftware.css.parser.CSSOMParser;
+import com.gargoylesoftware.css.parser.InputSource;
+import com.gargoylesoftware.css.parser.media.MediaDevice;
+
+/**
+ * Unit tests for {@link StyleSheetListRuleIndex}.
+ *
+ * @author Ronald Brill
+ */
+public class StyleSheetListRuleIndexTest {
+
+    private static final MediaDevice SCREEN = new MediaDevice("screen", 800, 600);
+    private static final MediaDevice PRINT = new MediaDevice("print", 800, 600);
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void candidates() throws Exception {
+        final CSSStyleSheetListImpl sheets = new CSSStyleSheetListImpl();
+        sheets.add(parse("div { top: 1px } .a { top: 2px } #x { top: 3px } [title] { top: 4px }"));
+        sheets.add(parse("* { top: 5px } div.a { top: 6px } p { top: 7px } div::before { top: 8px }"));
+
+        final StyleSheetListRuleIndex index = sheets.getRuleIndex();
+        Assert.assertEquals(2, index.getStyleSheetCount());
+        final BitSet active = index.getActiveConditions(SCREEN);
+
+        Assert.assertEquals("[div, *.a, *, div.a]",
+                selectors(index.getCandidates(active, "div", null, new String[] {"a"}, new String[0], null)));
+        Assert.assertEquals("[div, *#x, *[title], *]",
+                selectors(index.getCandidates(active, "div", "x", null, null, null)));
+        Assert.assertEquals("[div::before]",
+                selectors(index.getCandidates(active, "div", null, null, null, "before")));
+        Assert.assertEquals("[]",
+                selectors(index.getCandidates(active, "div", null, null, null, "after")));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void mediaAndDisabled() throws Exception {
+        final CSSStyleSheetListImpl sheets = new CSSStyleSheetListImpl();
+        final CSSStyleSheetImpl first = parse("div { top: 1px } @media print { div { top: 2px } }");
+        final CSSStyleSheetImpl second = parse("div { top: 3px } @media (min-width: 1000px) { div { top: 4px } }");
+        second.setMediaText("screen");
+        sheets.add(first);
+        sheets.add(second);
+        final StyleSheetListRuleIndex index = sheets.getRuleIndex();
+
+        Assert.assertEquals("[1px, 3px]", tops(index, SCREEN));
+        Assert.assertEquals("[1px, 2px]", tops(index, PRINT));
+        Assert.assertEquals("[1px, 3px, 4px]", tops(index, SCREEN.withSize(1200, 600)));
+
+        first.setDisabled(true);
+        Assert.assertEquals("[3px]", tops(index, SCREEN));
+        first.setDisabled(false);
+        Assert.assertEquals("[1px, 3px]", tops(index, SCREEN));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void incrementalUpdates() throws Exception {
+        final CSSStyleSheetListImpl sheets = new CSSStyleSheetListImpl();
+        final CSSStyleSheetImpl first = parse("div { top: 1px }");
+        final CSSStyleSheetImpl second = parse("div { top: 2px }");
+        sheets.add(first);
+        sheets.add(second);
+        final StyleSheetListRuleIndex index = sheets.getRuleIndex();
+        Assert.assertEquals("[1px, 2px]", tops(index, SCREEN));
+
+        sheets.add(parse("@media screen { div { top: 3px } }"));
+        Assert.assertEquals("[1px, 2px, 3px]", tops(index, SCREEN));
+        Assert.assertEquals("[1px, 2px]", tops(index, PRINT));
+
+        Assert.assertTrue(sheets.remove(second));
+        Assert.assertFalse(sheets.remove(second));
+        Assert.assertEquals(2, sheets.getLength());
+        Assert.assertEquals("[1px, 3px]", tops(index, SCREEN));
+
+        first.insertRule("div { top: 9px }", 1);
+        Assert.assertEquals("[1px, 9px, 3px]", tops(index, SCREEN));
+        Assert.assertTrue(index.updateStyleSheet(first));
+        Assert.assertEquals("[1px, 9px, 3px]", tops(index, SCREEN));
+
+        sheets.add(second);
+        Assert.assertEquals("[1px, 9px, 3px, 2px]", tops(index, SCREEN));
+        Assert.assertSame(index, sheets.getRuleIndex());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void styleSheetChanges() throws Exception {
+        final CSSStyleSheetListImpl sheets = new CSSStyleSheetListImpl();
+        final CSSStyleSheetImpl first = parse("div { top: 1px } @media screen { div { top: 2px } }");
+        final CSSOMParser parser = new CSSOMParser();
+        parser.setMediaDevice(SCREEN);
+        final CSSStyleSheetImpl second = parser.parseStyleSheet(
+                new InputSource(new StringReader("div { top: 3px } @media print { div { top: 4px } }")), null);
+        sheets.add(first);
+        sheets.add(second);
+        final StyleSheetListRuleIndex index = sheets.getRuleIndex();
+        Assert.assertEquals("[1px, 2px, 3px]", tops(index, SCREEN));
+        Assert.assertEquals("[1px, 3px]", tops(index, PRINT));
+
+        first.insertRules("div { top: 5px } div { top: 6px }", 1);
+        Assert.assertEquals("[1px, 5px, 6px, 2px, 3px]", tops(index, SCREEN));
+
+        first.deleteRule(0);
+        ((CSSMediaRuleImpl) first.getCssRules().getRules().get(2)).insertRule("div { top: 7px }", 0);
+        Assert.assertEquals("[5px, 6px, 7px, 2px, 3px]", tops(index, SCREEN));
+
+        // the deferred print rules are indexed once parsed
+        Assert.assertEquals(1, second.parseDeferredRules(PRINT));
+        Assert.assertEquals("[5px, 6px, 3px, 4px]", tops(index, PRINT));
+
+        second.setMediaText("print");
+        Assert.assertEquals("[5px, 6px, 7px, 2px]", tops(index, SCREEN));
+
+        // removed sheets are not tracked any longer
+        Assert.assertTrue(sheets.remove(first));
+        first.deleteRule(0);
+        Assert.assertEquals("[3px, 4px]", tops(index, PRINT));
+        Assert.assertSame(index, sheets.getRuleIndex());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void insertManyRules() throws Exception {
+        final CSSStyleSheetListImpl sheets = new CSSStyleSheetListImpl();
+        sheets.add(parse("div { top: 0px }"));
+        final CSSStyleSheetImpl sheet = parse("p { top: 0px } @media screen { div { top: 0px } }");
+        sheets.add(sheet);
+        sheets.add(parse("div { top: 0px }"));
+        final StyleSheetListRuleIndex index = sheets.getRuleIndex();
+        final CSSMediaRuleImpl mediaRule = (CSSMediaRuleImpl) sheet.getCssRules().getRules().get(1);
+
+        for (int i = 1; i <= 20000; i++) {
+            final String rule = "div, .c" + (i % 7) + " { top: " + i + "px }";
+            switch (i % 5) {
+                case 0:
+                    // always at the same position, forces renumbering
+                    sheet.insertRule(rule, 0);
+                    break;
+                case 1:
+                    mediaRule.insertRule(rule, mediaRule.getCssRules().getLength());
+                    break;
+                case 2:
+                    sheet.insertRule(rule, sheet.getCssRules().getLength() / 2);
+                    break;
+                default:
+                    sheet.insertRule(rule, sheet.getCssRules().getLength());
+                    break;
+            }
+            if (i % 11 == 0) {
+                sheet.deleteRule(sheet.getCssRules().getLength() - 1);
+            }
+        }
+        Assert.assertSame(index, sheets.getRuleIndex());
+
+        final StyleSheetListRuleIndex expected = new StyleSheetListRuleIndex(sheets.getCSSStyleSheets());
+        Assert.assertEquals(tops(expected, SCREEN), tops(index, SCREEN));
+        Assert.assertEquals(tops(expected, PRINT), tops(index, PRINT));
+        for (int c = 0; c < 7; c++) {
+            final String[] classes = {"c" + c};
+            Assert.assertEquals(
+                    tops(expected.getCandidates(expected.getActiveConditions(SCREEN),
+                            "p", null, classes, null, null)),
+                    tops(index.getCandidates(index.getActiveConditions(SCREEN),
+                            "p", null, classes, null, null)));
+        }
+    }
+
+    private static String tops(final StyleSheetListRuleIndex index, final MediaDevice device) {
+        return tops(index.getCandidates(index.getActiveConditions(device), "div", null, null, null, null));
+    }
+
+    private static String tops(final List<SelectorEntry> entries) {
+        final List<String> tops = new ArrayList<>();
+        for (final SelectorEntry entry : entries) {
+            tops.add(entry.getRule().getStyle().getPropertyValue("top"));
+        }
+        return tops.toString();
+    }
+
+    private static String selectors(final List<SelectorEntry> entries) {
+        final List<String> selectors = new ArrayList<>();
+        for (final SelectorEntry entry : entries) {
+            selectors.add(entry.getSelector().toString());
+        }
+        return selectors.toString();
+    }
+
+    private static CSSStyleSheetImpl parse(final String css) throws Exception {
+        return new CSSOMParser().parseStyleSheet(new InputSource(new StringReader(css)), null);
+    }
+}
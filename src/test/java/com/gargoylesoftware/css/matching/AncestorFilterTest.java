@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.matching;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.gargoylesoftware.css.parser.CSSOMParser;
+import com.gargoylesoftware.css.parser.selector.AncestorHashes;
+
+/**
+ * Unit tests for {@link AncestorFilter}.
+ *
+ * @author Ronald Brill
+ */
+public class AncestorFilterTest {
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void pushPop() throws Exception {
+        final AncestorFilter filter = new AncestorFilter();
+        filter.pushElement("DIV", "main", Arrays.asList("a", "b"));
+        filter.pushElement("p", null, null);
+
+        Assert.assertEquals(2, filter.getDepth());
+        Assert.assertTrue(filter.mayContain(AncestorHashes.tagHash("div")));
+        Assert.assertTrue(filter.mayContain(AncestorHashes.tagHash("p")));
+        Assert.assertTrue(filter.mayContain(AncestorHashes.idHash("main")));
+        Assert.assertTrue(filter.mayContain(AncestorHashes.classHash("b")));
+        Assert.assertFalse(filter.mayContain(AncestorHashes.classHash("main")));
+        Assert.assertFalse(filter.mayContain(AncestorHashes.tagHash("span")));
+
+        Assert.assertTrue(compile("div.a p span").mayMatch(filter));
+        Assert.assertFalse(compile("div.c span").mayMatch(filter));
+        Assert.assertTrue(compile("div.c + span").mayMatch(filter));
+
+        filter.popElement();
+        Assert.assertFalse(filter.mayContain(AncestorHashes.tagHash("p")));
+        Assert.assertTrue(filter.mayContain(AncestorHashes.tagHash("div")));
+
+        filter.popElement();
+        Assert.assertEquals(0, filter.getDepth());
+        Assert.assertFalse(filter.mayContain(AncestorHashes.tagHash("div")));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test(expected = IllegalStateException.class)
+    public void popEmpty() throws Exception {
+        new AncestorFilter().popElement();
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void sameResultsAsWithoutFilter() throws Exception {
+        final TreeElement root = new TreeElement("html");
+        final TreeElement body = root.append(new TreeElement("body").attribute("class", "page"));
+        for (int i = 0; i < 4; i++) {
+            final TreeElement section = body.append(new TreeElement("section").attribute("id", "s" + i));
+            for (int j = 0; j < 3; j++) {
+                final TreeElement div = section.append(new TreeElement("div").attribute("class", "c" + j));
+                div.append(new TreeElement("p"));
+                div.append(new TreeElement("span").attribute("class", "x"));
+            }
+        }
+
+        final String[] selectors = {"body p", ".page > section div.c1 > p", "#s2 span.x", "#s5 span",
+            "section > span", "div.c0 + div span", "html *", ".x p", "div > p ~ span"};
+        for (final String selector : selectors) {
+            final CompiledSelector compiled = compile(selector);
+            final AncestorFilter filter = new AncestorFilter();
+            final int[] counts = new int[2];
+            walk(root, compiled, filter, counts);
+            Assert.assertEquals(selector, counts[0], counts[1]);
+            Assert.assertEquals(0, filter.getDepth());
+        }
+    }
+
+    private static CompiledSelector compile(final String selector) throws Exception {
+        return new CompiledSelector(new CSSOMParser().parseSelectors(selector).get(0));
+    }
+
+    private static void walk(final TreeElement element, final CompiledSelector selector,
+            final AncestorFilter filter, final int[] counts) {
+        if (selector.matches(TreeElement.ADAPTER, element)) {
+            counts[0]++;
+        }
+        if (selector.matches(TreeElement.ADAPTER, element, null, filter)) {
+            counts[1]++;
+        }
+
+        element.pushTo(filter);
+        for (final TreeElement child : element.getChildren()) {
+            walk(child, selector, filter, counts);
+        }
+        filter.popElement();
+    }
+}
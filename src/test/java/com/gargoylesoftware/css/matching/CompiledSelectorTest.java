@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.matching;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.gargoylesoftware.css.parser.CSSOMParser;
+
+/**
+ * Unit tests for {@link CompiledSelector}.
+ *
+ * @author Ronald Brill
+ */
+public class CompiledSelectorTest {
+
+    private TreeElement html_;
+    private TreeElement div_;
+    private TreeElement p1_;
+    private TreeElement span_;
+    private TreeElement p2_;
+    private TreeElement p3_;
+    private TreeElement ul_;
+
+    /**
+     * Builds the test tree.
+     */
+    @Before
+    public void setUp() {
+        html_ = new TreeElement("html").attribute("lang", "en-US");
+        final TreeElement body = html_.append(new TreeElement("body"));
+        div_ = body.append(new TreeElement("div").attribute("id", "main").attribute("class", "a b"));
+        p1_ = div_.append(new TreeElement("p").attribute("class", "first").attribute("title", "hello world"));
+        span_ = div_.append(new TreeElement("span").state("hover"));
+        p2_ = div_.append(new TreeElement("p").attribute("data-x", "foo-bar").attribute("lang", "de"));
+        p3_ = div_.append(new TreeElement("P"));
+        ul_ = body.append(new TreeElement("ul"));
+        for (int i = 0; i < 5; i++) {
+            ul_.append(new TreeElement("li"));
+        }
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void elementAndConditions() throws Exception {
+        match("*", p1_, true);
+        match("p", p3_, true);
+        match("div", p1_, false);
+        match("#main", div_, true);
+        match("div#main.a.b", div_, true);
+        match("div#main.a.c", div_, false);
+        match(".first", p1_, true);
+        match("[title]", p1_, true);
+        match("[title]", p2_, false);
+        match("[title='hello world']", p1_, true);
+        match("[title='hello']", p1_, false);
+        match("[title~=world]", p1_, true);
+        match("[title~=wor]", p1_, false);
+        match("[title~='']", p1_, false);
+        match("[data-x|=foo]", p2_, true);
+        match("[data-x|=fo]", p2_, false);
+        match("[title^=hell]", p1_, true);
+        match("[title^='']", p1_, false);
+        match("[title$=rld]", p1_, true);
+        match("[title*='o w']", p1_, true);
+        match("[title*=xyz]", p1_, false);
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void combinators() throws Exception {
+        match("html p", p1_, true);
+        match("body > div > p", p1_, true);
+        match("body > p", p1_, false);
+        match("ul p", p1_, false);
+        match("p + span", span_, true);
+        match("p + p", p2_, false);
+        match("p ~ p", p3_, true);
+        match(".first ~ p", p2_, true);
+        match(".first ~ p", p1_, false);
+        match("#main > .first + span ~ p", p3_, true);
+        match("html div span + p", p2_, true);
+        match("ul li + li", ul_.child(0), false);
+        match("body > ul li:last-child", ul_.child(4), true);
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void structuralPseudoClasses() throws Exception {
+        match(":root", html_, true);
+        match(":root", div_, false);
+        match("p:first-child", p1_, true);
+        match("p:first-child", p2_, false);
+        match("p:last-child", p3_, true);
+        match("span:only-of-type", span_, true);
+        match("p:only-of-type", p1_, false);
+        match("div:only-child", div_, false);
+        match("p:first-of-type", p1_, true);
+        match("p:last-of-type", p3_, true);
+        match("p:nth-of-type(2)", p2_, true);
+        match("p:nth-last-of-type(2)", p2_, true);
+
+        match("li:nth-child(odd)", ul_.child(0), true);
+        match("li:nth-child(odd)", ul_.child(1), false);
+        match("li:nth-child(even)", ul_.child(1), true);
+        match("li:nth-child(2n+1)", ul_.child(4), true);
+        match("li:nth-child(3n)", ul_.child(2), true);
+        match("li:nth-child(3n)", ul_.child(3), false);
+        match("li:nth-child(-n+2)", ul_.child(1), true);
+        match("li:nth-child(-n+2)", ul_.child(2), false);
+        match("li:nth-child(n)", ul_.child(3), true);
+        match("li:nth-last-child(1)", ul_.child(4), true);
+        match("li:nth-last-child(2)", ul_.child(3), true);
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void otherPseudoClasses() throws Exception {
+        match("span:hover", span_, true);
+        match("p:hover", p1_, false);
+        match("div :hover", span_, true);
+
+        match("p:not(.first)", p1_, false);
+        match("p:not(.first)", p2_, true);
+        match("*:not(p)", span_, true);
+        match("p:not([data-x])", p3_, true);
+
+        match(":lang(en)", p1_, true);
+        match(":lang(en-us)", p1_, true);
+        match(":lang(e)", p1_, false);
+        match(":lang(de)", p2_, true);
+        match(":lang(en)", p2_, false);
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void pseudoElements() throws Exception {
+        final CompiledSelector selector = compile("div > p.first::before");
+        Assert.assertEquals("before", selector.getPseudoElement());
+        Assert.assertFalse(selector.matches(TreeElement.ADAPTER, p1_));
+        Assert.assertTrue(selector.matches(TreeElement.ADAPTER, p1_, "before"));
+        Assert.assertFalse(selector.matches(TreeElement.ADAPTER, p1_, "after"));
+        Assert.assertFalse(selector.matches(TreeElement.ADAPTER, p2_, "before"));
+
+        Assert.assertTrue(compile("::after").matches(TreeElement.ADAPTER, p2_, "after"));
+        Assert.assertFalse(compile("p").matches(TreeElement.ADAPTER, p2_, "after"));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void deepBacktracking() throws Exception {
+        TreeElement current = new TreeElement("div");
+        final TreeElement root = current;
+        for (int i = 0; i < 200; i++) {
+            current = current.append(new TreeElement("div"));
+        }
+        Assert.assertNull(root.getParent());
+        match("div div div div div div span", current, false);
+        match("div div div div div div div", current, true);
+        match("p div div div div div div", current, false);
+    }
+
+    private static CompiledSelector compile(final String selector) throws Exception {
+        return new CompiledSelector(new CSSOMParser().parseSelectors(selector).get(0));
+    }
+
+    private static void match(final String selector, final TreeElement element, final boolean expected)
+            throws Exception {
+        Assert.assertEquals(selector + " / " + element, expected,
+                compile(selector).matches(TreeElement.ADAPTER, element));
+    }
+}
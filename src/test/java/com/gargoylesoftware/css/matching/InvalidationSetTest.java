@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.matching;
+
+import java.io.StringReader;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.gargoylesoftware.css.parser.CSSOMParser;
+import com.gargoylesoftware.css.parser.InputSource;
+
+/**
+ * Unit tests for {@link InvalidationSet}.
+ *
+ * @author Ronald Brill
+ */
+public class InvalidationSetTest {
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void classes() throws Exception {
+        final InvalidationSet set = parse(".a { color: red }\n"
+                + ".b span { color: red }\n"
+                + ".c + p { color: red }\n"
+                + ".d ~ p span { color: red }\n"
+                + "div > .e.f { color: red }\n"
+                + ".f div { color: red }");
+
+        Assert.assertEquals(InvalidationSet.SELF, set.getClassInvalidation("a"));
+        Assert.assertEquals(0, set.getClassInvalidation("A"));
+        Assert.assertEquals(InvalidationSet.DESCENDANTS, set.getClassInvalidation("b"));
+        Assert.assertEquals(InvalidationSet.SIBLINGS, set.getClassInvalidation("c"));
+        Assert.assertEquals(InvalidationSet.SIBLINGS | InvalidationSet.DESCENDANTS, set.getClassInvalidation("d"));
+        Assert.assertEquals(InvalidationSet.SELF, set.getClassInvalidation("e"));
+        Assert.assertEquals(InvalidationSet.SELF | InvalidationSet.DESCENDANTS, set.getClassInvalidation("f"));
+        Assert.assertEquals(0, set.getClassInvalidation("x"));
+
+        Assert.assertEquals(InvalidationSet.SELF | InvalidationSet.DESCENDANTS,
+                set.getClassChangeInvalidation("a x", " x  b "));
+        Assert.assertEquals(0, set.getClassChangeInvalidation("a b", "b a"));
+        Assert.assertEquals(InvalidationSet.SIBLINGS, set.getClassChangeInvalidation(null, "c"));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void idsAttributesPseudoClasses() throws Exception {
+        final InvalidationSet set = parse("#main p { color: red }\n"
+                + "input[TYPE=text] { color: red }\n"
+                + "a[href^=http] + span, p:lang(de) { color: red }\n"
+                + "li:hover { color: red }\n"
+                + "@media print { div:first-child ::before { color: red } }\n"
+                + "div:not(.x) span { color: red }");
+
+        Assert.assertEquals(InvalidationSet.DESCENDANTS, set.getIdInvalidation("main"));
+        Assert.assertEquals(0, set.getIdInvalidation("MAIN"));
+        Assert.assertEquals(InvalidationSet.SELF, set.getAttributeInvalidation("type"));
+        Assert.assertEquals(InvalidationSet.SIBLINGS, set.getAttributeInvalidation("HREF"));
+        Assert.assertEquals(InvalidationSet.SELF, set.getAttributeInvalidation("lang"));
+        Assert.assertEquals(InvalidationSet.SELF, set.getPseudoClassInvalidation("Hover"));
+        Assert.assertEquals(InvalidationSet.DESCENDANTS, set.getPseudoClassInvalidation("first-child"));
+        Assert.assertEquals(InvalidationSet.DESCENDANTS, set.getPseudoClassInvalidation("not"));
+        Assert.assertEquals(InvalidationSet.DESCENDANTS, set.getClassInvalidation("x"));
+        Assert.assertEquals(0, set.getPseudoClassInvalidation("focus"));
+    }
+
+    private static InvalidationSet parse(final String css) throws Exception {
+        final InvalidationSet set = new InvalidationSet();
+        set.addStyleSheet(new CSSOMParser().parseStyleSheet(new InputSource(new StringReader(css)), null));
+        return set;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.matching;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Simple element tree used by the matching tests.
+ *
+ * @author Ronald Brill
+ */
+public class TreeElement {
+
+    /** The adapter for this test tree. */
+    public static final ElementAdapter<TreeElement> ADAPTER = new ElementAdapter<TreeElement>() {
+        @Override
+        public TreeElement getParent(final TreeElement element) {
+            return element.parent_;
+        }
+
+        @Override
+        public TreeElement getPreviousSibling(final TreeElement element) {
+            if (element.parent_ == null) {
+                return null;
+            }
+            final int index = element.parent_.children_.indexOf(element);
+            return index > 0 ? element.parent_.children_.get(index - 1) : null;
+        }
+
+        @Override
+        public TreeElement getNextSibling(final TreeElement element) {
+            if (element.parent_ == null) {
+                return null;
+            }
+            final List<TreeElement> siblings = element.parent_.children_;
+            final int index = siblings.indexOf(element);
+            return index < siblings.size() - 1 ? siblings.get(index + 1) : null;
+        }
+
+        @Override
+        public String getLocalName(final TreeElement element) {
+            return element.localName_;
+        }
+
+        @Override
+        public String getId(final TreeElement element) {
+            return element.attributes_.get("id");
+        }
+
+        @Override
+        public boolean hasClass(final TreeElement element, final String className) {
+            return element.classes_.contains(className);
+        }
+
+        @Override
+        public String getAttribute(final TreeElement element, final String name) {
+            return element.attributes_.get(name);
+        }
+
+        @Override
+        public boolean matchesPseudoClass(final TreeElement element, final String pseudoClass) {
+            return element.states_.contains(pseudoClass);
+        }
+    };
+
+    private final String localName_;
+    private final Map<String, String> attributes_ = new HashMap<>();
+    private final Set<String> classes_ = new HashSet<>();
+    private final Set<String> states_ = new HashSet<>();
+    private final List<TreeElement> children_ = new ArrayList<>();
+    private TreeElement parent_;
+
+    /**
+     * Ctor.
+     * @param localName the local name
+     */
+    public TreeElement(final String localName) {
+        localName_ = localName;
+    }
+
+    /**
+     * @param name the attribute name
+     * @param value the attribute value
+     * @return this
+     */
+    public TreeElement attribute(final String name, final String value) {
+        attributes_.put(name, value);
+        if ("class".equals(name)) {
+            classes_.addAll(Arrays.asList(value.split(" ")));
+        }
+        return this;
+    }
+
+    /**
+     * @param state the dynamic state (like hover)
+     * @return this
+     */
+    public TreeElement state(final String state) {
+        states_.add(state);
+        return this;
+    }
+
+    /**
+     * @param child the child to append
+     * @return the child
+     */
+    public TreeElement append(final TreeElement child) {
+        child.parent_ = this;
+        children_.add(child);
+        return child;
+    }
+
+    /**
+     * @param index the index
+     * @return the child
+     */
+    public TreeElement child(final int index) {
+        return children_.get(index);
+    }
+
+    /**
+     * Pushes this element into the given filter.
+     * @param filter the filter
+     */
+    public void pushTo(final AncestorFilter filter) {
+        filter.pushElement(localName_, attributes_.get("id"), classes_);
+    }
+
+    /**
+     * @return the parent
+     */
+    public TreeElement getParent() {
+        return parent_;
+    }
+
+    /**
+     * @return the children
+     */
+    public List<TreeElement> getChildren() {
+        return children_;
+    }
+
+    @Override
+    public String toString() {
+        return localName_ + attributes_;
+    }
+}
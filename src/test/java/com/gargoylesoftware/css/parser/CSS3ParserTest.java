@@ -48,7 +48,9 @@
 import com.gargoylesoftware.css.parser.condition.SubstringAttributeCondition;
 import com.gargoylesoftware.css.parser.condition.SuffixAttributeCondition;
 import com.gargoylesoftware.css.parser.javacc.CSS3Parser;
+import com.gargoylesoftware.css.parser.media.MediaDevice;
 import com.gargoylesoftware.css.parser.media.MediaQuery;
+import com.gargoylesoftware.css.parser.media.MediaQueryList;
 import com.gargoylesoftware.css.parser.selector.ChildSelector;
 import com.gargoylesoftware.css.parser.selector.ElementSelector;
 import com.gargoylesoftware.css.parser.selector.Selector;
@@ -61,6 +63,57 @@
  */
 public class CSS3ParserTest  extends AbstractCSSParserTest {
 
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void deferredMediaNotDeferringHandler() throws Exception {
+        final StringBuilder events = new StringBuilder();
+        final HandlerBase handler = new HandlerBase() {
+            @Override
+            public void startMedia(final MediaQueryList media, final Locator locator) {
+                events.append("startMedia(").append(media).append(") ");
+            }
+
+            @Override
+            public void endMedia(final MediaQueryList media) {
+                events.append("endMedia ");
+            }
+
+            @Override
+            public void startSelector(final SelectorList selectors, final Locator locator) {
+                events.append(selectors).append('@').append(locator.getLineNumber()).append(' ');
+            }
+
+            @Override
+            public void property(final String name, final LexicalUnit value, final boolean important,
+                    final Locator locator) {
+                events.append(name).append(' ');
+            }
+
+            @Override
+            public void endDocument(final InputSource source) {
+                events.append("endDocument");
+            }
+        };
+
+        final ErrorHandler errorHandler = new ErrorHandler();
+
+        final CSS3Parser parser = new CSS3Parser();
+        parser.setDocumentHandler(handler);
+        parser.setErrorHandler(errorHandler);
+        parser.setMediaDevice(new MediaDevice("screen", 800, 600));
+        parser.parseStyleSheet(new InputSource(new StringReader(
+                "@media print {\n  h1 { color: red; ~ }\n  @media (min-width: 1px) { p { top: 0 } } }\n"
+                + "div { left: 0 }")));
+
+        Assert.assertEquals("startMedia(print) h1@2 color "
+                + "startMedia(all) p@3 top endMedia endMedia div@4 left endDocument",
+                events.toString());
+        Assert.assertEquals(1, errorHandler.getErrorCount());
+        Assert.assertEquals(1, errorHandler.getWarningCount());
+    }
+
     /**
      * @throws Exception if any error occurs
      */
@@ -54,6 +54,27 @@ public void setLexicalUnitType() throws Exception {
         Assert.assertEquals("OPERATOR_GT", unit.toDebugString());
     }
 
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void copyOf() throws Exception {
+        final LexicalUnit dimension = LexicalUnitImpl.createDimension(null, 2.5, "foo");
+        final LexicalUnit function = LexicalUnitImpl.createFunction(dimension, "calc",
+                LexicalUnitImpl.createPixel(null, 1));
+
+        final LexicalUnit copy = LexicalUnitImpl.copyOf(null, dimension);
+        Assert.assertEquals("2.5foo", copy.toString());
+        Assert.assertNull(copy.getNextLexicalUnit());
+
+        final LexicalUnit copy2 = LexicalUnitImpl.copyOf(copy, function);
+        Assert.assertSame(copy2, copy.getNextLexicalUnit());
+        Assert.assertSame(copy, copy2.getPreviousLexicalUnit());
+        Assert.assertSame(function.getParameters(), copy2.getParameters());
+        Assert.assertEquals("calc(1px)", copy2.toString());
+        Assert.assertSame(function, dimension.getNextLexicalUnit());
+    }
+
     /**
      * @throws Exception if any error occurs
      */
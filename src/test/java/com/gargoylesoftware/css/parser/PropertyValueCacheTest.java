@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.parser;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.gargoylesoftware.css.ErrorHandler;
+import com.gargoylesoftware.css.dom.CSSStyleDeclarationImpl;
+import com.gargoylesoftware.css.dom.CSSValueImpl;
+
+/**
+ * Unit tests for {@link PropertyValueCache}.
+ *
+ * @author Ronald Brill
+ */
+public class PropertyValueCacheTest {
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void parse() throws Exception {
+        final PropertyValueCache cache = new PropertyValueCache(10, 100);
+
+        Assert.assertEquals("0px", cache.parsePropertyValue("0px").getCssText());
+        Assert.assertEquals("0px", cache.parsePropertyValue("0px").getCssText());
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertEquals(1, cache.size());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void noSharedState() throws Exception {
+        final PropertyValueCache cache = new PropertyValueCache(10, 100);
+
+        final CSSValueImpl value = cache.parsePropertyValue("1px 2px");
+        value.item(0).setDoubleValue(7);
+        Assert.assertEquals("7 2px", value.getCssText());
+
+        Assert.assertEquals("1px 2px", cache.parsePropertyValue("1px 2px").getCssText());
+        Assert.assertEquals(1, cache.getHitCount());
+
+        // the lexical units are not shared
+        final LexicalUnitImpl unit = (LexicalUnitImpl) cache.parsePropertyValue("rgb(1, 2, 3) 4px").getLexicalUnit();
+        ((LexicalUnitImpl) unit.getParameters()).setDoubleValue(9);
+        ((LexicalUnitImpl) unit.getNextLexicalUnit()).setDoubleValue(9);
+        final CSSValueImpl hit = cache.parsePropertyValue("rgb(1, 2, 3) 4px");
+        Assert.assertNotSame(unit, hit.getLexicalUnit());
+        Assert.assertNotSame(unit.getParameters(), hit.getLexicalUnit().getParameters());
+        Assert.assertEquals(1, hit.getLexicalUnit().getParameters().getIntegerValue());
+        Assert.assertEquals(4, hit.getLexicalUnit().getNextLexicalUnit().getDoubleValue(), 0);
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void errorsAreNotCached() throws Exception {
+        final PropertyValueCache cache = new PropertyValueCache(10, 100);
+        final ErrorHandler errorHandler = new ErrorHandler();
+
+        Assert.assertNull(cache.parsePropertyValue("} 1px", errorHandler));
+        Assert.assertNull(cache.parsePropertyValue("} 1px", errorHandler));
+        Assert.assertEquals(2, errorHandler.getErrorCount());
+
+        // the handler is used for this call only
+        final ErrorHandler other = new ErrorHandler();
+        Assert.assertNull(cache.parsePropertyValue("} 2px", other));
+        Assert.assertEquals(2, errorHandler.getErrorCount());
+        Assert.assertEquals(1, other.getErrorCount());
+        Assert.assertEquals(0, cache.size());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void longValuesAreNotCached() throws Exception {
+        final PropertyValueCache cache = new PropertyValueCache(10, 4);
+
+        Assert.assertEquals("block", cache.parsePropertyValue("block").getCssText());
+        Assert.assertEquals(0, cache.size());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void setProperty() throws Exception {
+        final CSSStyleDeclarationImpl style = new CSSStyleDeclarationImpl(null);
+        style.setProperty("display", "block", "");
+        style.setProperty("visibility", "hidden", "");
+        style.getPropertyCSSValue("display").setCssText("inline");
+
+        final CSSStyleDeclarationImpl style2 = new CSSStyleDeclarationImpl(null);
+        style2.setProperty("display", "block", "");
+        Assert.assertEquals("display: inline; visibility: hidden", style.getCssText());
+        Assert.assertEquals("display: block", style2.getCssText());
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.parser;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.gargoylesoftware.css.ErrorHandler;
+import com.gargoylesoftware.css.parser.selector.RightmostKey.KeyType;
+import com.gargoylesoftware.css.parser.selector.SelectorList;
+import com.gargoylesoftware.css.util.ThrowCssExceptionErrorHandler;
+
+/**
+ * Unit tests for {@link SelectorListCache}.
+ *
+ * @author Ronald Brill
+ */
+public class SelectorListCacheTest {
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void parse() throws Exception {
+        final SelectorListCache cache = new SelectorListCache(10);
+
+        final SelectorList selectors = cache.parseSelectors("div.a > p, #id");
+        Assert.assertEquals("div.a > p, *#id", selectors.toString());
+        Assert.assertSame(selectors, cache.parseSelectors("div.a > p, #id"));
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertEquals(1, cache.size());
+
+        try {
+            selectors.remove(0);
+            Assert.fail("UnsupportedOperationException expected");
+        }
+        catch (final UnsupportedOperationException e) {
+            // expected
+        }
+        Assert.assertEquals(2, cache.parseSelectors("div.a > p, #id").size());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void metadata() throws Exception {
+        final SelectorListCache cache = new SelectorListCache(10);
+
+        final SelectorListCache.Entry entry = cache.getEntry("div.a > p, #id");
+        Assert.assertTrue(entry.isValid());
+        Assert.assertEquals("0,0,1,2", entry.getSpecificity(0).toString());
+        Assert.assertEquals(KeyType.ELEMENT, entry.getRightmostKey(0).getKeyType());
+        Assert.assertEquals("p", entry.getRightmostKey(0).getValue());
+        Assert.assertEquals("0,1,0,0", entry.getSpecificity(1).toString());
+        Assert.assertEquals(KeyType.ID, entry.getRightmostKey(1).getKeyType());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void invalid() throws Exception {
+        final SelectorListCache cache = new SelectorListCache(10);
+        final ErrorHandler errorHandler = new ErrorHandler();
+
+        Assert.assertNull(cache.parseSelectors("div >", errorHandler));
+        Assert.assertEquals(1, errorHandler.getErrorCount());
+        Assert.assertEquals(1, cache.size());
+
+        Assert.assertNull(cache.parseSelectors("div >", errorHandler));
+        Assert.assertFalse(cache.getEntry("div >", errorHandler).isValid());
+        Assert.assertEquals(3, errorHandler.getErrorCount());
+        Assert.assertEquals(2, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+
+        // the handler is used for this call only
+        final ErrorHandler otherErrorHandler = new ErrorHandler();
+        Assert.assertNull(cache.parseSelectors("div >", otherErrorHandler));
+        Assert.assertEquals(3, errorHandler.getErrorCount());
+        Assert.assertEquals(1, otherErrorHandler.getErrorCount());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void invalidThrowingErrorHandler() throws Exception {
+        final SelectorListCache cache = new SelectorListCache(10);
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.parseSelectors("div >", ThrowCssExceptionErrorHandler.INSTANCE);
+                Assert.fail("CSSParseException expected");
+            }
+            catch (final CSSParseException e) {
+                // expected
+            }
+        }
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.parser;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.gargoylesoftware.css.ErrorHandler;
+import com.gargoylesoftware.css.dom.CSSStyleDeclarationImpl;
+import com.gargoylesoftware.css.dom.Property;
+
+/**
+ * Unit tests for {@link StyleDeclarationCache}.
+ *
+ * @author Ronald Brill
+ */
+public class StyleDeclarationCacheTest {
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void parse() throws Exception {
+        final StyleDeclarationCache cache = new StyleDeclarationCache(10);
+
+        final CSSStyleDeclarationImpl style = cache.parseStyleDeclaration("display: none; width: 100% !important");
+        Assert.assertEquals("display: none; width: 100% !important", style.getCssText());
+        Assert.assertEquals(0, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertEquals(1, cache.size());
+
+        final CSSStyleDeclarationImpl style2 = cache.parseStyleDeclaration("display: none; width: 100% !important");
+        Assert.assertEquals("display: none; width: 100% !important", style2.getCssText());
+        Assert.assertEquals("important", style2.getPropertyPriority("width"));
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertEquals(0.5d, cache.getHitRate(), 0.0001);
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void parseIntoTarget() throws Exception {
+        final StyleDeclarationCache cache = new StyleDeclarationCache(10);
+        cache.parseStyleDeclaration("color: red");
+
+        final CSSStyleDeclarationImpl style = new CSSStyleDeclarationImpl(null);
+        style.setProperty("top", "1px", "");
+        cache.parseStyleDeclaration(style, "color: red");
+        Assert.assertEquals("top: 1px; color: red", style.getCssText());
+        Assert.assertEquals(1, cache.getHitCount());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void noSharedState() throws Exception {
+        final StyleDeclarationCache cache = new StyleDeclarationCache(10);
+
+        final CSSStyleDeclarationImpl style = cache.parseStyleDeclaration("margin: 1px 2px; color: red");
+        style.setProperty("color", "blue", "important");
+        style.getPropertyCSSValue("margin").item(0).setDoubleValue(7);
+        Assert.assertEquals("margin: 7 2px; color: blue !important", style.getCssText());
+
+        final CSSStyleDeclarationImpl style2 = cache.parseStyleDeclaration("margin: 1px 2px; color: red");
+        Assert.assertEquals("margin: 1px 2px; color: red", style2.getCssText());
+        Assert.assertEquals(1, cache.getHitCount());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void lexicalUnitsAndLocatorsAreNotShared() throws Exception {
+        final StyleDeclarationCache cache = new StyleDeclarationCache(10);
+
+        final CSSStyleDeclarationImpl style = cache.parseStyleDeclaration("color: rgb(1, 2, 3)");
+        final Property property = style.getPropertyDeclaration("color");
+        final LexicalUnitImpl unit = (LexicalUnitImpl) property.getValue().getLexicalUnit();
+        ((LexicalUnitImpl) unit.getParameters()).setDoubleValue(9);
+        property.getLocator().setLineNumber(42);
+
+        final Property hit = cache.parseStyleDeclaration("color: rgb(1, 2, 3)").getPropertyDeclaration("color");
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertNotSame(unit, hit.getValue().getLexicalUnit());
+        Assert.assertEquals(1, hit.getValue().getLexicalUnit().getParameters().getIntegerValue());
+        Assert.assertNotSame(property.getLocator(), hit.getLocator());
+        Assert.assertEquals(1, hit.getLocator().getLineNumber());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void errorsAreNotCached() throws Exception {
+        final StyleDeclarationCache cache = new StyleDeclarationCache(10);
+        final ErrorHandler errorHandler = new ErrorHandler();
+
+        CSSStyleDeclarationImpl style = cache.parseStyleDeclaration("color: red; ;; width: }", errorHandler);
+        Assert.assertEquals("color: red", style.getCssText());
+        Assert.assertEquals(1, errorHandler.getErrorCount());
+
+        style = cache.parseStyleDeclaration("color: red; ;; width: }", errorHandler);
+        Assert.assertEquals("color: red", style.getCssText());
+        Assert.assertEquals(2, errorHandler.getErrorCount());
+
+        // the handler is used for this call only
+        final ErrorHandler otherErrorHandler = new ErrorHandler();
+        style = new CSSStyleDeclarationImpl(null);
+        cache.parseStyleDeclaration(style, "color: red; ;; width: }", otherErrorHandler);
+        Assert.assertEquals("color: red", style.getCssText());
+        Assert.assertEquals(2, errorHandler.getErrorCount());
+        Assert.assertEquals(1, otherErrorHandler.getErrorCount());
+
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(0, cache.getHitCount());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void evict() throws Exception {
+        final StyleDeclarationCache cache = new StyleDeclarationCache(2);
+        cache.parseStyleDeclaration("top: 1px");
+        cache.parseStyleDeclaration("top: 2px");
+        cache.parseStyleDeclaration("top: 3px");
+        Assert.assertEquals(2, cache.size());
+
+        cache.parseStyleDeclaration("top: 1px");
+        Assert.assertEquals(0, cache.getHitCount());
+        Assert.assertEquals(4, cache.getMissCount());
+
+        cache.clear();
+        Assert.assertEquals(0, cache.size());
+    }
+}
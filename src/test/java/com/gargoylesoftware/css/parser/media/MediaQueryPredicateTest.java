@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.parser.media;
+
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.gargoylesoftware.css.dom.MediaListImpl;
+import com.gargoylesoftware.css.parser.CSSOMParser;
+
+/**
+ * Unit tests for {@link MediaQueryPredicate} and {@link MediaQueryEvaluator}.
+ *
+ * @author Ronald Brill
+ */
+public class MediaQueryPredicateTest {
+
+    private static final MediaDevice SCREEN = new MediaDevice("Screen", 1024, 768);
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void mediaTypes() throws Exception {
+        assertMatches(true, "all", SCREEN);
+        assertMatches(true, "screen", SCREEN);
+        assertMatches(true, "only screen", SCREEN);
+        assertMatches(false, "print", SCREEN);
+        assertMatches(true, "not print", SCREEN);
+        assertMatches(false, "not screen", SCREEN);
+        assertMatches(true, "print, screen", SCREEN);
+        assertMatches(false, "tv", SCREEN);
+        assertMatches(true, "print", new MediaDevice("print", 600, 800));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void isAll() throws Exception {
+        Assert.assertTrue(MediaQueryPredicate.ALL.isAll());
+        Assert.assertTrue(MediaQueryPredicate.compile(parse("all")).isAll());
+        Assert.assertTrue(MediaQueryPredicate.compile(parse("print, all")).isAll());
+        Assert.assertFalse(MediaQueryPredicate.compile(parse("screen")).isAll());
+        Assert.assertFalse(MediaQueryPredicate.compile(parse("not all")).isAll());
+        Assert.assertFalse(MediaQueryPredicate.compile(parse("all and (min-width: 1px)")).isAll());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void lengths() throws Exception {
+        assertMatches(true, "(min-width: 1024px)", SCREEN);
+        assertMatches(false, "(min-width: 1025px)", SCREEN);
+        assertMatches(true, "(max-width: 1024px)", SCREEN);
+        assertMatches(true, "(width: 1024px)", SCREEN);
+        assertMatches(true, "screen and (min-width: 600px) and (max-height: 800px)", SCREEN);
+        assertMatches(false, "screen and (min-width: 600px) and (max-height: 700px)", SCREEN);
+        assertMatches(true, "(min-width: 64em)", SCREEN);
+        assertMatches(false, "(min-width: 64em)", SCREEN.withFontSize(20));
+        assertMatches(true, "(min-width: 10in)", SCREEN);
+        assertMatches(false, "(min-width: 11in)", SCREEN);
+        assertMatches(true, "(max-width: 27.1cm)", SCREEN);
+        assertMatches(true, "(width)", SCREEN);
+        assertMatches(false, "(width)", new MediaDevice("screen", 0, 0));
+        assertMatches(true, "(max-device-width: 800px)", SCREEN.withDeviceSize(800, 600));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void otherFeatures() throws Exception {
+        assertMatches(true, "(orientation: landscape)", SCREEN);
+        assertMatches(false, "(orientation: portrait)", SCREEN);
+        assertMatches(true, "(min-aspect-ratio: 4/3)", SCREEN);
+        assertMatches(false, "(min-aspect-ratio: 16/9)", SCREEN);
+        assertMatches(true, "(min-resolution: 2dppx)", SCREEN.withResolution(2));
+        assertMatches(true, "(min-resolution: 192dpi)", SCREEN.withResolution(2));
+        assertMatches(false, "(min-resolution: 192dpi)", SCREEN);
+        assertMatches(true, "(color)", SCREEN);
+        assertMatches(false, "(monochrome)", SCREEN);
+        assertMatches(true, "(min-monochrome: 2)", SCREEN.withColor(0, 0, 8));
+        assertMatches(false, "(grid)", SCREEN);
+        assertMatches(true, "(hover: hover) and (pointer: fine)", SCREEN);
+        assertMatches(true, "(prefers-color-scheme: light)", SCREEN);
+        assertMatches(true, "(prefers-color-scheme: dark)", SCREEN.withFeature("prefers-color-scheme", "Dark"));
+        assertMatches(false, "(prefers-reduced-motion)", SCREEN);
+        assertMatches(true, "(prefers-reduced-motion)", SCREEN.withFeature("prefers-reduced-motion", "reduce"));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void invalid() throws Exception {
+        assertMatches(false, "(unknown-feature: 1px)", SCREEN);
+        assertMatches(false, "not screen and (unknown-feature: 1px)", SCREEN);
+        assertMatches(false, "(min-width: 10)", SCREEN);
+        assertMatches(false, "(min-orientation: portrait)", SCREEN);
+        assertMatches(true, "(unknown-feature), screen", SCREEN);
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void evaluatorCache() throws Exception {
+        final MediaQueryEvaluator evaluator = new MediaQueryEvaluator(10);
+        final MediaListImpl media = parse("screen and (min-width: 800px)");
+
+        Assert.assertTrue(evaluator.matches(media, SCREEN));
+        Assert.assertTrue(evaluator.matches(parse("screen and (min-width: 800px)"),
+                new MediaDevice("screen", 1024, 768)));
+        Assert.assertFalse(evaluator.matches(media, new MediaDevice("screen", 640, 480)));
+        Assert.assertEquals(1, evaluator.getHitCount());
+        Assert.assertEquals(2, evaluator.getMissCount());
+
+        // the predicate is kept by the media list
+        final MediaQueryPredicate predicate = evaluator.compile(media);
+        Assert.assertSame(predicate, media.getMediaPredicate());
+        Assert.assertSame(predicate, evaluator.compile(media));
+        Assert.assertTrue(evaluator.matches(predicate, SCREEN));
+        Assert.assertEquals(2, evaluator.getHitCount());
+
+        media.setMedia(Collections.singletonList("print"));
+        Assert.assertNotSame(predicate, evaluator.compile(media));
+        Assert.assertFalse(evaluator.matches(media, SCREEN));
+
+        Assert.assertTrue(evaluator.matches(new MediaListImpl(null), SCREEN));
+        Assert.assertSame(MediaQueryPredicate.ALL, evaluator.compile(null));
+    }
+
+    private static void assertMatches(final boolean expected, final String media, final MediaDevice device)
+            throws Exception {
+        Assert.assertEquals(media, expected, MediaQueryPredicate.compile(parse(media)).matches(device));
+    }
+
+    private static MediaListImpl parse(final String media) throws Exception {
+        return new MediaListImpl(new CSSOMParser().parseMedia(media));
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.parser.selector;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.gargoylesoftware.css.parser.CSSOMParser;
+
+/**
+ * Unit tests for {@link AncestorHashes}.
+ *
+ * @author Ronald Brill
+ */
+public class AncestorHashesTest {
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void compute() throws Exception {
+        hashes("div", new int[0]);
+        hashes("div.a#b::before", new int[0]);
+        hashes("DIV p", AncestorHashes.tagHash("div"));
+        hashes("div.a > p", AncestorHashes.tagHash("div"), AncestorHashes.classHash("a"));
+        hashes("#main *[title] span", AncestorHashes.idHash("main"));
+        hashes("div.a > p::after", AncestorHashes.tagHash("div"), AncestorHashes.classHash("a"));
+
+        // siblings are not ancestors, but ancestors of siblings are
+        hashes("p + span", new int[0]);
+        hashes("ul li.x ~ li", AncestorHashes.tagHash("ul"));
+        hashes("ul > li + li span", AncestorHashes.tagHash("li"), AncestorHashes.tagHash("ul"));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void cached() throws Exception {
+        final AbstractSelector selector = (AbstractSelector) new CSSOMParser().parseSelectors("div p").get(0);
+        Assert.assertSame(selector.getAncestorHashes(), selector.getAncestorHashes());
+    }
+
+    private static void hashes(final String selector, final int... expected) throws Exception {
+        final Selector sel = new CSSOMParser().parseSelectors(selector).get(0);
+        Assert.assertArrayEquals(selector, expected, AncestorHashes.compute(sel));
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.parser.selector;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.gargoylesoftware.css.parser.CSSOMParser;
+import com.gargoylesoftware.css.parser.selector.RightmostKey.KeyType;
+
+/**
+ * Unit tests for {@link RightmostKey}.
+ *
+ * @author Ronald Brill
+ */
+public class RightmostKeyTest {
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void keys() throws Exception {
+        key("*", KeyType.UNIVERSAL, null);
+        key("DIV", KeyType.ELEMENT, "div");
+        key("div[title]", KeyType.ATTRIBUTE, "title");
+        key("div[title^=x].Cls", KeyType.CLASS, "Cls");
+        key("div.cls#myId", KeyType.ID, "myId");
+        key("#top p > span.x", KeyType.CLASS, "x");
+        key("#top p + span", KeyType.ELEMENT, "span");
+        key("#top ~ :hover", KeyType.UNIVERSAL, null);
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void pseudoElement() throws Exception {
+        final Selector selector = parse("ul > li.item::before");
+        key("ul > li.item::before", KeyType.CLASS, "item");
+        Assert.assertEquals("before", RightmostKey.getPseudoElement(selector).getLocalName());
+        Assert.assertEquals("li.item", RightmostKey.getRightmostCompound(selector).toString());
+
+        Assert.assertNull(RightmostKey.getPseudoElement(parse("ul > li")));
+    }
+
+    private static void key(final String selector, final KeyType expectedType, final String expectedValue)
+            throws Exception {
+        final RightmostKey key = new RightmostKey(parse(selector));
+        Assert.assertEquals(expectedType, key.getKeyType());
+        Assert.assertEquals(expectedValue, key.getValue());
+    }
+
+    private static Selector parse(final String selector) throws Exception {
+        return new CSSOMParser().parseSelectors(selector).get(0);
+    }
+}
@@ -21,6 +21,8 @@
 import org.junit.Test;
 
 import com.gargoylesoftware.css.parser.CSSOMParser;
+import com.gargoylesoftware.css.parser.condition.ClassCondition;
+import com.gargoylesoftware.css.parser.condition.IdCondition;
 
 /**
  * Tests for {@link SelectorSpecificity}.
@@ -128,9 +130,60 @@ private SelectorSpecificity selectorSpecifity(final String selector, final Strin
 
         final SelectorSpecificity specificity = new SelectorSpecificity(sl.get(0));
         assertEquals(expectedSpecificity, specificity.toString());
+        assertEquals(specificity.getPacked(), sl.get(0).getSpecificity());
         return specificity;
     }
 
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void packedOrder() throws Exception {
+        final String[] selectors = {"*", "li", "ul li", "ul ol+li", "h1 + *[rel=up]", "ul ol li.red",
+            "li.red.level", ".a.b.c.d.e.f.g.h.i.j.k", "#x34y", "test#x34y", "#a #b", "li::before"};
+        for (final String selector1 : selectors) {
+            final Selector s1 = new CSSOMParser().parseSelectors(selector1).get(0);
+            for (final String selector2 : selectors) {
+                final Selector s2 = new CSSOMParser().parseSelectors(selector2).get(0);
+                assertEquals(selector1 + " <> " + selector2,
+                        Integer.signum(s1.getSelectorSpecificity().compareTo(s2.getSelectorSpecificity())),
+                        Integer.signum(Integer.compare(s1.getSpecificity(), s2.getSpecificity())));
+            }
+            assertTrue(SelectorSpecificity.FROM_STYLE_ATTRIBUTE.getPacked() > s1.getSpecificity());
+        }
+        assertEquals(SelectorSpecificity.STYLE_ATTRIBUTE, SelectorSpecificity.FROM_STYLE_ATTRIBUTE.getPacked());
+        assertEquals(0, SelectorSpecificity.DEFAULT_STYLE_ATTRIBUTE.getPacked());
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void addCondition() throws Exception {
+        final ElementSelector selector = new ElementSelector("div", null);
+        assertEquals("0,0,0,1", selector.getSelectorSpecificity().toString());
+
+        selector.addCondition(new ClassCondition("a", null));
+        assertEquals("0,0,1,1", selector.getSelectorSpecificity().toString());
+        selector.addCondition(new IdCondition("x", null));
+        assertEquals("0,1,1,1", selector.getSelectorSpecificity().toString());
+
+        final ChildSelector child = new ChildSelector(selector, new ElementSelector("p", null));
+        assertEquals("0,1,1,2", child.getSelectorSpecificity().toString());
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void addSaturates() throws Exception {
+        final int max = SelectorSpecificity.add(1023 * SelectorSpecificity.CLASS, SelectorSpecificity.CLASS);
+        assertEquals(1023 * SelectorSpecificity.CLASS, max);
+        assertTrue(max < SelectorSpecificity.ID);
+        assertEquals(SelectorSpecificity.ID + SelectorSpecificity.ELEMENT,
+                SelectorSpecificity.add(SelectorSpecificity.ID, SelectorSpecificity.ELEMENT));
+    }
+
     /**
      * @throws Exception if the test fails
      */
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link ChunkedList}.
+ *
+ * @author Ronald Brill
+ */
+public class ChunkedListTest {
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void sameAsArrayList() throws Exception {
+        final List<Integer> expected = new ArrayList<>();
+        final ChunkedList<Integer> list = new ChunkedList<>();
+        final Random random = new Random(4711);
+
+        for (int i = 0; i < 20000; i++) {
+            final int op = random.nextInt(10);
+            if (op < 6 || expected.isEmpty()) {
+                final int pos = random.nextInt(expected.size() + 1);
+                expected.add(pos, i);
+                list.add(pos, i);
+            }
+            else if (op < 9) {
+                final int pos = random.nextInt(expected.size());
+                Assert.assertEquals(expected.remove(pos), list.remove(pos));
+            }
+            else {
+                final int pos = random.nextInt(expected.size());
+                Assert.assertEquals(expected.set(pos, -i), list.set(pos, -i));
+            }
+        }
+
+        Assert.assertEquals(expected.size(), list.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(expected.get(i), list.get(i));
+        }
+        Assert.assertEquals(expected, list);
+        Assert.assertEquals(expected.hashCode(), list.hashCode());
+
+        // remove everything from the front
+        while (!list.isEmpty()) {
+            Assert.assertEquals(expected.remove(0), list.remove(0));
+        }
+        Assert.assertEquals(0, list.size());
+        list.add("x".length());
+        Assert.assertEquals("[1]", list.toString());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void addAll() throws Exception {
+        final List<Integer> expected = new ArrayList<>();
+        final ChunkedList<Integer> list = new ChunkedList<>();
+        final Random random = new Random(4711);
+
+        int next = 0;
+        for (int i = 0; i < 200; i++) {
+            final List<Integer> chunk = new ArrayList<>();
+            // mix small inserts with large ones rebuilding the tree
+            final int count = random.nextInt(4) == 0 ? random.nextInt(3000) : random.nextInt(5);
+            for (int j = 0; j < count; j++) {
+                chunk.add(next++);
+            }
+            final int pos = random.nextInt(expected.size() + 1);
+            Assert.assertEquals(expected.addAll(pos, chunk), list.addAll(pos, chunk));
+
+            if (!expected.isEmpty()) {
+                final int remove = random.nextInt(expected.size());
+                Assert.assertEquals(expected.remove(remove), list.remove(remove));
+                final int add = random.nextInt(expected.size() + 1);
+                expected.add(add, -i);
+                list.add(add, -i);
+            }
+        }
+
+        Assert.assertEquals(expected.size(), list.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(expected.get(i), list.get(i));
+        }
+        Assert.assertEquals(expected, list);
+
+        list.addAll(expected.subList(0, 10));
+        expected.addAll(expected.subList(0, 10));
+        Assert.assertEquals(expected, list);
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void iteratorRemove() throws Exception {
+        final ChunkedList<Integer> list = new ChunkedList<>();
+        for (int i = 0; i < 1000; i++) {
+            list.add(i);
+        }
+
+        final Iterator<Integer> it = list.iterator();
+        while (it.hasNext()) {
+            if (it.next() % 3 != 0) {
+                it.remove();
+            }
+        }
+        Assert.assertEquals(334, list.size());
+        int expected = 0;
+        for (final Integer i : list) {
+            Assert.assertEquals(expected, i.intValue());
+            expected += 3;
+        }
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test(expected = ConcurrentModificationException.class)
+    public void concurrentModification() throws Exception {
+        final ChunkedList<String> list = new ChunkedList<>();
+        list.add("a");
+        list.add("b");
+
+        for (final String s : list) {
+            list.add(s);
+        }
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getOutOfBounds() throws Exception {
+        final ChunkedList<String> list = new ChunkedList<>();
+        list.add("a");
+        list.get(1);
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void addOutOfBounds() throws Exception {
+        new ChunkedList<String>().add(1, "a");
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void clear() throws Exception {
+        final ChunkedList<Integer> list = new ChunkedList<>();
+        for (int i = 0; i < 500; i++) {
+            list.add(i);
+        }
+        list.clear();
+        Assert.assertTrue(list.isEmpty());
+        Assert.assertFalse(list.iterator().hasNext());
+
+        list.add(7);
+        Assert.assertEquals("[7]", list.toString());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void serialize() throws Exception {
+        final ChunkedList<Integer> list = new ChunkedList<>();
+        for (int i = 0; i < 500; i++) {
+            list.add(0, i);
+        }
+
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            oos.writeObject(list);
+        }
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()))) {
+            final ChunkedList<Integer> copy = (ChunkedList<Integer>) ois.readObject();
+            Assert.assertEquals(list, copy);
+
+            copy.add(250, -1);
+            Assert.assertEquals(-1, copy.get(250).intValue());
+        }
+    }
+}
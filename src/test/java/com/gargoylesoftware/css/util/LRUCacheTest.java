@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2019-2020 Ronald Brill.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.css.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link LRUCache}.
+ *
+ * @author Ronald Brill
+ */
+public class LRUCacheTest {
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void evictLeastRecentlyUsed() throws Exception {
+        final LRUCache<String, String> cache = new LRUCache<>(2);
+        cache.put("a", "A");
+        cache.put("b", "B");
+
+        // touch a, b is now the eldest
+        Assert.assertEquals("A", cache.get("a"));
+        cache.put("c", "C");
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals("A", cache.get("a"));
+        Assert.assertNull(cache.get("b"));
+        Assert.assertEquals("C", cache.get("c"));
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test
+    public void statistics() throws Exception {
+        final LRUCache<String, String> cache = new LRUCache<>(10);
+        Assert.assertEquals(0d, cache.getHitRate(), 0.0001);
+
+        Assert.assertNull(cache.get("a"));
+        cache.put("a", "A");
+        Assert.assertEquals("A", cache.get("a"));
+        Assert.assertEquals("A", cache.get("a"));
+        Assert.assertEquals("A", cache.get("a"));
+
+        Assert.assertEquals(3, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertEquals(0.75d, cache.getHitRate(), 0.0001);
+
+        cache.clear();
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(0, cache.getHitCount());
+        Assert.assertEquals(0, cache.getMissCount());
+    }
+
+    /**
+     * @throws Exception if any error occurs
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidSize() throws Exception {
+        new LRUCache<String, String>(0);
+    }
+}